@@ -0,0 +1,149 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.oxtrust.ldap.cache.model.CacheCompoundKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xdi.util.ArrayHelper;
+
+/**
+ * Cache Refresh compound key maps. Building map repeats what
+ * getSourcePersonCompoundKeyMap does and lookup repeats lookups of source keys
+ * in getPrimaryKeyAttrValueInumMap result. Legacy key is copy of key before
+ * values normalization
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class CacheCompoundKeyBenchmark {
+
+	@Param({ "1000000" })
+	private int keysCount;
+
+	private String[][][] keysValues;
+
+	private Map<CacheCompoundKey, Integer> keyMap;
+	private Map<LegacyCacheCompoundKey, Integer> legacyKeyMap;
+
+	@Setup
+	public void setup() {
+		this.keysValues = new String[keysCount][][];
+		for (int i = 0; i < keysCount; i++) {
+			keysValues[i] = new String[][] { { "user" + i }, { "user" + i + "@example.com", "User" + i + "@mail.example.com" } };
+		}
+
+		this.keyMap = buildKeyMap();
+		this.legacyKeyMap = buildLegacyKeyMap();
+	}
+
+	@Benchmark
+	public Map<CacheCompoundKey, Integer> buildKeyMap() {
+		Map<CacheCompoundKey, Integer> result = new HashMap<CacheCompoundKey, Integer>();
+		for (int i = 0; i < keysCount; i++) {
+			result.put(new CacheCompoundKey(keysValues[i]), i);
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	public Map<LegacyCacheCompoundKey, Integer> buildLegacyKeyMap() {
+		Map<LegacyCacheCompoundKey, Integer> result = new HashMap<LegacyCacheCompoundKey, Integer>();
+		for (int i = 0; i < keysCount; i++) {
+			result.put(new LegacyCacheCompoundKey(keysValues[i]), i);
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	public long lookupKeys() {
+		long result = 0;
+		for (int i = 0; i < keysCount; i++) {
+			result += keyMap.get(new CacheCompoundKey(keysValues[i]));
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	public long lookupLegacyKeys() {
+		long result = 0;
+		for (int i = 0; i < keysCount; i++) {
+			result += legacyKeyMap.get(new LegacyCacheCompoundKey(keysValues[i]));
+		}
+
+		return result;
+	}
+
+	public static class LegacyCacheCompoundKey {
+
+		private String[] primaryKeyValues;
+		private String[] secondaryKeyValues;
+		private String[] tertiaryKeyValues;
+
+		public LegacyCacheCompoundKey(String[][] keyValues) {
+			if (keyValues.length > 0) {
+				primaryKeyValues = keyValues[0];
+			}
+			if (keyValues.length > 1) {
+				secondaryKeyValues = keyValues[1];
+			}
+			if (keyValues.length > 2) {
+				tertiaryKeyValues = keyValues[2];
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + Arrays.hashCode(primaryKeyValues);
+			result = prime * result + Arrays.hashCode(secondaryKeyValues);
+			result = prime * result + Arrays.hashCode(tertiaryKeyValues);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			LegacyCacheCompoundKey other = (LegacyCacheCompoundKey) obj;
+			if (!ArrayHelper.equalsIgnoreOrder(primaryKeyValues, other.primaryKeyValues))
+				return false;
+			if (!ArrayHelper.equalsIgnoreOrder(secondaryKeyValues, other.secondaryKeyValues))
+				return false;
+			if (!ArrayHelper.equalsIgnoreOrder(tertiaryKeyValues, other.tertiaryKeyValues))
+				return false;
+			return true;
+		}
+
+	}
+
+}
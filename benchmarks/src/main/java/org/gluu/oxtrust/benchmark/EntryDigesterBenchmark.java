@@ -0,0 +1,104 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.ldap.cache.service.LegacyEntryDigester;
+import org.gluu.oxtrust.ldap.cache.service.Murmur64EntryDigester;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.site.ldap.OperationsFacade;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of Cache Refresh source entry digest per entry: legacy 32-bit
+ * LdapEntryManager hash code vs 64-bit MurmurHash64A digest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EntryDigesterBenchmark {
+
+	private static final int PERSONS_COUNT = 1024;
+
+	@Param({ "10", "40" })
+	private int attributesCount;
+
+	private GluuSimplePerson[] persons;
+
+	private LegacyEntryDigester legacyEntryDigester;
+	private Murmur64EntryDigester murmur64EntryDigester;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(1);
+
+		this.persons = new GluuSimplePerson[PERSONS_COUNT];
+		for (int i = 0; i < PERSONS_COUNT; i++) {
+			List<GluuCustomAttribute> customAttributes = new ArrayList<GluuCustomAttribute>(attributesCount);
+			for (int j = 0; j < attributesCount; j++) {
+				// Every fourth attribute is multi-valued
+				int valuesCount = (j % 4 == 0) ? 3 : 1;
+				String[] values = new String[valuesCount];
+				for (int k = 0; k < valuesCount; k++) {
+					values[k] = "value-" + Long.toHexString(random.nextLong());
+				}
+				customAttributes.add(new GluuCustomAttribute("attribute" + j, values));
+			}
+
+			GluuSimplePerson person = new GluuSimplePerson();
+			person.setCustomAttributes(customAttributes);
+			persons[i] = person;
+		}
+
+		// Hash code calculation uses only entry annotations. It doesn't need connection
+		this.legacyEntryDigester = new LegacyEntryDigester(new LdapEntryManager((OperationsFacade) null));
+		this.murmur64EntryDigester = new Murmur64EntryDigester();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PERSONS_COUNT)
+	public long legacy() {
+		long result = 0;
+		for (GluuSimplePerson person : persons) {
+			result += legacyEntryDigester.digest(person);
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PERSONS_COUNT)
+	public long murmur64() {
+		long result = 0;
+		for (GluuSimplePerson person : persons) {
+			result += murmur64EntryDigester.digest(person);
+		}
+
+		return result;
+	}
+
+}
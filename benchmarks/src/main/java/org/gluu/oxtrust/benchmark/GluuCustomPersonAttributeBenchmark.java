@@ -0,0 +1,122 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per user cost of attribute reads done by CopyUtils2 conversion of
+ * GluuCustomPerson to SCIM 2.0 User. Full conversion needs Seam services,
+ * so benchmark repeats its lookups. Linear variant is copy of lookups before
+ * person got attributes index: value was read twice, once for null check
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GluuCustomPersonAttributeBenchmark {
+
+	private static final int PERSONS_COUNT = 256;
+
+	// Attributes which conversion reads. Some of them are missing in person
+	private static final String[] CONVERSION_ATTRIBUTES = { "inum", "uid", "oxTrustExternalId", "givenName", "sn", "middleName",
+			"oxTrusthonorificPrefix", "oxTrusthonorificSuffix", "displayName", "nickname", "oxTrustProfileURL", "oxTrustEmail",
+			"oxTrustAddresses", "oxTrustPhoneValue", "oxTrustImsValue", "oxTrustPhotos", "oxTrustUserType", "oxTrustTitle", "locale",
+			"preferredLanguage", "timezone", "oxTrustActive", "oxTrustRole", "oxTrustEntitlements", "oxTrustx509Certificate",
+			"oxTrustMetaVersion", "oxTrustMetaLocation", "oxTrustMetaCreated", "oxTrustMetaLastModified" };
+
+	@Param({ "80" })
+	private int attributesCount;
+
+	private List<List<GluuCustomAttribute>> personsAttributes;
+
+	@Setup
+	public void setup() {
+		this.personsAttributes = new ArrayList<List<GluuCustomAttribute>>(PERSONS_COUNT);
+		for (int i = 0; i < PERSONS_COUNT; i++) {
+			List<GluuCustomAttribute> customAttributes = new ArrayList<GluuCustomAttribute>(attributesCount);
+
+			// Every second conversion attribute is set. Others are custom attributes
+			for (int j = 0; j < CONVERSION_ATTRIBUTES.length; j += 2) {
+				customAttributes.add(new GluuCustomAttribute(CONVERSION_ATTRIBUTES[j], "value" + i));
+			}
+			for (int j = customAttributes.size(); j < attributesCount; j++) {
+				customAttributes.add(new GluuCustomAttribute("customAttribute" + j, "value" + i));
+			}
+
+			personsAttributes.add(customAttributes);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PERSONS_COUNT)
+	public int indexed() {
+		int result = 0;
+		for (List<GluuCustomAttribute> customAttributes : personsAttributes) {
+			// Each user is converted once, so index is built for every person
+			GluuCustomPerson person = new GluuCustomPerson();
+			person.setCustomAttributes(new ArrayList<GluuCustomAttribute>(customAttributes));
+
+			for (String attributeName : CONVERSION_ATTRIBUTES) {
+				String value = person.getAttribute(attributeName);
+				if (value != null) {
+					result += value.length();
+				}
+			}
+		}
+
+		return result;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PERSONS_COUNT)
+	public int linear() {
+		int result = 0;
+		for (List<GluuCustomAttribute> customAttributes : personsAttributes) {
+			List<GluuCustomAttribute> attributes = new ArrayList<GluuCustomAttribute>(customAttributes);
+
+			for (String attributeName : CONVERSION_ATTRIBUTES) {
+				if (getAttribute(attributes, attributeName) != null) {
+					result += getAttribute(attributes, attributeName).length();
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static String getAttribute(List<GluuCustomAttribute> customAttributes, String attributeName) {
+		String value = null;
+		for (GluuCustomAttribute attribute : customAttributes) {
+			if (attribute.getName().equalsIgnoreCase(attributeName)) {
+				value = attribute.getValue();
+				break;
+			}
+		}
+		return value;
+	}
+
+}
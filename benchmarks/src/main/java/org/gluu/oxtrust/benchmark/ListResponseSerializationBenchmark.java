@@ -0,0 +1,147 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.model.scim2.Constants;
+import org.gluu.oxtrust.model.scim2.Email;
+import org.gluu.oxtrust.model.scim2.GroupRef;
+import org.gluu.oxtrust.model.scim2.ListResponse;
+import org.gluu.oxtrust.model.scim2.Meta;
+import org.gluu.oxtrust.model.scim2.Name;
+import org.gluu.oxtrust.model.scim2.User;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SCIM 2.0 users ListResponse serialization with shared list response mapper.
+ * Empty attributes parameter means that all attributes are returned
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ListResponseSerializationBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int resourcesCount;
+
+	@Param({ "", "userName,emails.value,meta.lastModified" })
+	private String attributes;
+
+	private ListResponse listResponse;
+	private ObjectMapper mapper;
+
+	@Setup
+	public void setup() {
+		List<String> schemas = new ArrayList<String>();
+		schemas.add(Constants.LIST_RESPONSE_SCHEMA_ID);
+
+		this.listResponse = new ListResponse();
+		listResponse.setSchemas(schemas);
+		listResponse.setTotalResults(resourcesCount);
+		listResponse.setItemsPerPage(resourcesCount);
+		listResponse.setStartIndex(1);
+
+		for (int i = 0; i < resourcesCount; i++) {
+			listResponse.getResources().add(createUser(i));
+		}
+
+		this.mapper = ListResponseMappers.getListResponseMapper(attributes.isEmpty() ? null : attributes);
+	}
+
+	@Benchmark
+	public long serialize() throws IOException {
+		CountingOutputStream output = new CountingOutputStream();
+		mapper.writeValue(output, listResponse);
+
+		return output.count;
+	}
+
+	private User createUser(int index) {
+		User user = new User();
+		user.setId("@!1111!0000!" + index);
+		user.setUserName("user" + index);
+		user.setDisplayName("User " + index);
+
+		Name name = new Name();
+		name.setGivenName("Given" + index);
+		name.setFamilyName("Family" + index);
+		name.setFormatted("Given" + index + " Family" + index);
+		user.setName(name);
+
+		List<Email> emails = new ArrayList<Email>();
+		for (int i = 0; i < 2; i++) {
+			Email email = new Email();
+			email.setValue("user" + index + "." + i + "@example.com");
+			email.setType(Email.Type.WORK);
+			email.setPrimary(i == 0);
+			emails.add(email);
+		}
+		user.setEmails(emails);
+
+		List<GroupRef> groups = new ArrayList<GroupRef>();
+		for (int i = 0; i < 3; i++) {
+			GroupRef group = new GroupRef();
+			group.setValue("@!1111!0003!" + i);
+			group.setDisplay("Group " + i);
+			group.setReference("https://idp.example.com/identity/seam/resource/restv1/scim/v2/Groups/@!1111!0003!" + i);
+			groups.add(group);
+		}
+		user.setGroups(groups);
+
+		Meta meta = new Meta();
+		meta.setCreated(new Date(1475000000000L + index));
+		meta.setLastModified(new Date(1476000000000L + index));
+		meta.setLocation("https://idp.example.com/identity/seam/resource/restv1/scim/v2/Users/@!1111!0000!" + index);
+		meta.setResourceType("User");
+		user.setMeta(meta);
+
+		user.setActive(true);
+
+		return user;
+	}
+
+	/*
+	 * Response body is not kept, only its size
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
@@ -18,7 +18,9 @@ import java.util.Set;
 
 import org.gluu.oxtrust.config.OxTrustConfiguration;
 import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.ldap.cache.model.SourceServerLoadStatistics;
 import org.gluu.oxtrust.ldap.cache.service.CacheRefreshService;
+import org.gluu.oxtrust.ldap.cache.service.CacheRefreshTimer;
 import org.gluu.oxtrust.ldap.cache.service.CacheRefreshUpdateMethod;
 import org.gluu.oxtrust.ldap.service.ApplianceService;
 import org.gluu.oxtrust.ldap.service.AttributeService;
@@ -92,6 +94,9 @@ public class ConfigureCacheRefreshAction implements SimplePropertiesListModel, S
 	@In
 	private CacheRefreshService cacheRefreshService;
 
+	@In
+	private CacheRefreshTimer cacheRefreshTimer;
+
 	@In
 	private JsonConfigurationService jsonConfigurationService;
 
@@ -359,6 +364,10 @@ public class ConfigureCacheRefreshAction implements SimplePropertiesListModel, S
 	public GluuAppliance getAppliance() {
 		return appliance;
 	}
+
+	public List<SourceServerLoadStatistics> getLastSourceServerLoadStatistics() {
+		return cacheRefreshTimer.getLastSourceServerLoadStatistics();
+	}
 	
 	private GluuLdapConfiguration fixLdapConfiguration(GluuLdapConfiguration ldapConfig) {
 		ldapConfig.updateStringsLists();
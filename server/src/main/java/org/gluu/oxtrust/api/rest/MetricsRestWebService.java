@@ -0,0 +1,148 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.api.rest;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshRunMetrics;
+import org.gluu.oxtrust.model.EntityIdMonitoringRunMetrics;
+import org.gluu.oxtrust.model.MetadataValidationMetrics;
+import org.gluu.oxtrust.service.MetricService;
+import org.gluu.oxtrust.service.UmaAuthenticationService;
+import org.gluu.oxtrust.service.scim2.ScimPhaseMetrics;
+import org.jboss.seam.annotations.In;
+import org.jboss.seam.annotations.Logger;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.log.Log;
+import org.xdi.config.oxtrust.ApplicationConfiguration;
+import org.xdi.util.Pair;
+
+/**
+ * Provides Cache Refresh, SCIM, entityId monitoring and metadata validation
+ * metrics in JSON format. Requests should be authorized with UMA RPT token
+ */
+@Name("metricsRestWebService")
+@Path("/metrics")
+public class MetricsRestWebService {
+
+	@Logger
+	private Log log;
+
+	@In(value = "#{oxTrustConfiguration.applicationConfiguration}")
+	private ApplicationConfiguration applicationConfiguration;
+
+	@In
+	private UmaAuthenticationService umaAuthenticationService;
+
+	@In
+	private MetricService metricService;
+
+	@GET
+	@Path("/cacheRefresh")
+	@Produces({ MediaType.APPLICATION_JSON })
+	public Response getCacheRefreshRunMetrics(@HeaderParam("Authorization") String authorization) {
+		Response authorizationResponse = processAuthorization(authorization);
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		List<CacheRefreshRunMetrics> runMetrics = metricService.getCacheRefreshRunMetrics();
+
+		return Response.status(Response.Status.OK).entity(runMetrics).build();
+	}
+
+	@GET
+	@Path("/cacheRefresh/last")
+	@Produces({ MediaType.APPLICATION_JSON })
+	public Response getLastCacheRefreshRunMetrics(@HeaderParam("Authorization") String authorization) {
+		Response authorizationResponse = processAuthorization(authorization);
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		CacheRefreshRunMetrics runMetrics = metricService.getLastCacheRefreshRunMetrics();
+
+		return buildResponse(runMetrics);
+	}
+
+	@GET
+	@Path("/scim")
+	@Produces({ MediaType.APPLICATION_JSON })
+	public Response getScimRequestMetrics(@HeaderParam("Authorization") String authorization) {
+		Response authorizationResponse = processAuthorization(authorization);
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		List<ScimPhaseMetrics> requestMetrics = metricService.getScimRequestMetrics();
+
+		return Response.status(Response.Status.OK).entity(requestMetrics).build();
+	}
+
+	@GET
+	@Path("/entityIdMonitoring")
+	@Produces({ MediaType.APPLICATION_JSON })
+	public Response getEntityIdMonitoringRunMetrics(@HeaderParam("Authorization") String authorization) {
+		Response authorizationResponse = processAuthorization(authorization);
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		EntityIdMonitoringRunMetrics runMetrics = metricService.getEntityIdMonitoringRunMetrics();
+
+		return buildResponse(runMetrics);
+	}
+
+	@GET
+	@Path("/metadataValidation")
+	@Produces({ MediaType.APPLICATION_JSON })
+	public Response getMetadataValidationMetrics(@HeaderParam("Authorization") String authorization) {
+		Response authorizationResponse = processAuthorization(authorization);
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		MetadataValidationMetrics metrics = metricService.getMetadataValidationMetrics();
+
+		return buildResponse(metrics);
+	}
+
+	private Response buildResponse(Object metrics) {
+		if (metrics == null) {
+			return Response.status(Response.Status.NO_CONTENT).build();
+		}
+
+		return Response.status(Response.Status.OK).entity(metrics).build();
+	}
+
+	/*
+	 * Returns null if request is authorized
+	 */
+	private Response processAuthorization(String authorization) {
+		if (!umaAuthenticationService.isEnabledUmaAuthentication()) {
+			log.debug("UMA authentication is disabled");
+			return Response.status(Response.Status.FORBIDDEN).build();
+		}
+
+		Pair<Boolean, Response> rptTokenValidationResult = umaAuthenticationService.validateRptToken(authorization, applicationConfiguration.getUmaResourceId(),
+				applicationConfiguration.getUmaScope());
+		if (!rptTokenValidationResult.getFirst()) {
+			return Response.status(Response.Status.FORBIDDEN).build();
+		}
+
+		// Permission ticket response for RPT without required permissions
+		return rptTokenValidationResult.getSecond();
+	}
+
+}
@@ -11,6 +11,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshTuningConfiguration;
+import org.gluu.oxtrust.ldap.cache.service.CacheRefreshDigestMethod;
+import org.gluu.oxtrust.ldap.cache.service.SourceServerWatermarks;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.gluu.site.ldap.persistence.exception.LdapMappingException;
 import org.jboss.seam.Component;
@@ -90,6 +93,7 @@ public class OxTrustConfiguration {
 	private FileConfiguration ldapCentralConfiguration;
 	private ApplicationConfiguration applicationConfiguration;
 	private CacheRefreshConfiguration cacheRefreshConfiguration;
+	private CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration;
 	private String cryptoConfigurationSalt;
 	private ImportPersonConfig  importPersonConfig;	////issue 102  : changed by shekhar
 
@@ -98,6 +102,7 @@ public class OxTrustConfiguration {
 	private String prevLdapFileName;
     private long ldapFileLastModifiedTime = -1;
     private long ldapCentralFileLastModifiedTime = -1;
+    private long cacheRefreshFileLastModifiedTime = -1;
 
     private long loadedRevision = -1;
     private boolean loadedFromLdap = true;
@@ -118,6 +123,7 @@ public class OxTrustConfiguration {
 	    	this.saltFilePath = confDir + SALT_FILE_NAME;
 	    	
 	    	loadCryptoConfigurationSalt();
+	    	loadCacheRefreshTuningConfiguration();
     	} finally {
 	    	this.isActive.set(false);
 	    }
@@ -184,6 +190,18 @@ public class OxTrustConfiguration {
             Events.instance().raiseAsynchronousEvent(LDAP_CENTRAL_CONFIGUARION_RELOAD_EVENT_TYPE);
         }
 
+        // Reload Cache Refresh tuning configuration if needed
+        File cacheRefreshFile = new File(cacheRefreshFilePath);
+        if (cacheRefreshFile.exists()) {
+            final long lastModified = cacheRefreshFile.lastModified();
+            if (lastModified > cacheRefreshFileLastModifiedTime) { // reload configuration only if it was modified
+            	loadCacheRefreshTuningConfiguration();
+            }
+        } else if (this.cacheRefreshFileLastModifiedTime != -1) {
+        	// Allow to remove not mandatory configuration file
+        	loadCacheRefreshTuningConfiguration();
+        }
+
     	if (!loadedFromLdap) {
     		return;
     	}
@@ -334,6 +352,80 @@ public class OxTrustConfiguration {
 		return null;
 	}
 
+	private void loadCacheRefreshTuningConfiguration() {
+		CacheRefreshTuningConfiguration tuningConfiguration = new CacheRefreshTuningConfiguration();
+		this.cacheRefreshFileLastModifiedTime = -1;
+
+		FileConfiguration cacheRefreshFileConfiguration = createFileConfiguration(cacheRefreshFilePath, false);
+		if (cacheRefreshFileConfiguration != null) {
+			tuningConfiguration.setSourceServerThreadsCount(getPositiveInteger(cacheRefreshFileConfiguration, "sourceServerThreadsCount",
+					tuningConfiguration.getSourceServerThreadsCount()));
+			tuningConfiguration.setSourcePrefixThreadsCount(getPositiveInteger(cacheRefreshFileConfiguration, "sourcePrefixThreadsCount",
+					tuningConfiguration.getSourcePrefixThreadsCount()));
+			tuningConfiguration.setSourceStreamingEnabled(StringHelper.toBoolean(cacheRefreshFileConfiguration.getString("sourceStreamingEnabled", null),
+					tuningConfiguration.isSourceStreamingEnabled()));
+			tuningConfiguration.setSourcePageSize(getPositiveInteger(cacheRefreshFileConfiguration, "sourcePageSize",
+					tuningConfiguration.getSourcePageSize()));
+
+			String digestMethodValue = cacheRefreshFileConfiguration.getString("digestMethod", null);
+			if (StringHelper.isNotEmpty(digestMethodValue)) {
+				CacheRefreshDigestMethod digestMethod = CacheRefreshDigestMethod.getByValue(digestMethodValue);
+				if (digestMethod == null) {
+					log.warn("Ignoring invalid value '{0}' of property 'digestMethod' in {1}", digestMethodValue, cacheRefreshFileConfiguration.getFileName());
+				} else {
+					tuningConfiguration.setDigestMethod(digestMethod);
+				}
+			}
+
+			tuningConfiguration.setTargetThreadsCount(getPositiveInteger(cacheRefreshFileConfiguration, "targetThreadsCount",
+					tuningConfiguration.getTargetThreadsCount()));
+			tuningConfiguration.setTargetBatchSize(getPositiveInteger(cacheRefreshFileConfiguration, "targetBatchSize",
+					tuningConfiguration.getTargetBatchSize()));
+			tuningConfiguration.setTargetMaxInFlightOperations(getPositiveInteger(cacheRefreshFileConfiguration, "targetMaxInFlightOperations",
+					tuningConfiguration.getTargetMaxInFlightOperations()));
+
+			tuningConfiguration.setInumThreadsCount(getPositiveInteger(cacheRefreshFileConfiguration, "inumThreadsCount",
+					tuningConfiguration.getInumThreadsCount()));
+			tuningConfiguration.setInumBatchSize(getPositiveInteger(cacheRefreshFileConfiguration, "inumBatchSize",
+					tuningConfiguration.getInumBatchSize()));
+
+			tuningConfiguration.setIncrementalEnabled(StringHelper.toBoolean(cacheRefreshFileConfiguration.getString("incrementalEnabled", null),
+					tuningConfiguration.isIncrementalEnabled()));
+			String incrementalWatermarkAttribute = cacheRefreshFileConfiguration.getString("incrementalWatermarkAttribute", null);
+			if (StringHelper.isNotEmpty(incrementalWatermarkAttribute)) {
+				if (StringHelper.equalsIgnoreCase(SourceServerWatermarks.AUTO_ATTRIBUTE, incrementalWatermarkAttribute)
+						|| StringHelper.equalsIgnoreCase(SourceServerWatermarks.MODIFY_TIMESTAMP_ATTRIBUTE, incrementalWatermarkAttribute)
+						|| StringHelper.equalsIgnoreCase(SourceServerWatermarks.USN_CHANGED_ATTRIBUTE, incrementalWatermarkAttribute)) {
+					tuningConfiguration.setIncrementalWatermarkAttribute(incrementalWatermarkAttribute);
+				} else {
+					log.warn("Ignoring invalid value '{0}' of property 'incrementalWatermarkAttribute' in {1}", incrementalWatermarkAttribute,
+							cacheRefreshFileConfiguration.getFileName());
+				}
+			}
+			tuningConfiguration.setIncrementalTimeOverlap(getPositiveInteger(cacheRefreshFileConfiguration, "incrementalTimeOverlap",
+					tuningConfiguration.getIncrementalTimeOverlap()));
+			tuningConfiguration.setFullReconciliationInterval(getPositiveInteger(cacheRefreshFileConfiguration, "fullReconciliationInterval",
+					tuningConfiguration.getFullReconciliationInterval()));
+
+			tuningConfiguration.setMetricsHistorySize(getPositiveInteger(cacheRefreshFileConfiguration, "metricsHistorySize",
+					tuningConfiguration.getMetricsHistorySize()));
+
+			this.cacheRefreshFileLastModifiedTime = new File(cacheRefreshFilePath).lastModified();
+		}
+
+		this.cacheRefreshTuningConfiguration = tuningConfiguration;
+	}
+
+	private int getPositiveInteger(FileConfiguration fileConfiguration, String key, int defaultValue) {
+		int value = StringHelper.toInteger(fileConfiguration.getString(key, null), defaultValue);
+		if (value < 1) {
+			log.warn("Ignoring invalid value '{0}' of property '{1}' in {2}", value, key, fileConfiguration.getFileName());
+			return defaultValue;
+		}
+
+		return value;
+	}
+
     public void loadCryptoConfigurationSalt() {
         try {
             FileConfiguration cryptoConfiguration = createFileConfiguration(saltFilePath, true);
@@ -361,6 +453,10 @@ public class OxTrustConfiguration {
 		return cacheRefreshConfiguration;
 	}
 
+	public CacheRefreshTuningConfiguration getCacheRefreshTuningConfiguration() {
+		return cacheRefreshTuningConfiguration;
+	}
+
 	public String getCryptoConfigurationSalt() {
 		return cryptoConfigurationSalt;
 	}
@@ -8,38 +8,116 @@ package org.gluu.oxtrust.ldap.cache.model;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Comparator;
 
-import org.xdi.util.ArrayHelper;
+import org.xdi.util.StringHelper;
 
 /**
  * Compound key with String[] array
  * 
+ * Values are compared ignoring order and case. Normalized copies of values
+ * (lower case, sorted) and 64-bit fingerprint are calculated once in
+ * constructor, so hashCode and equals don't allocate
+ * 
  * @author Yuriy Movchan Date: 07.21.2011
  */
 public class CacheCompoundKey implements Serializable {
 
-	private static final long serialVersionUID = -3366537601347036591L;
+	private static final long serialVersionUID = -3366537601347036592L;
+
+	private static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_MULTIPLIER = 0xc6a4a7935bd1e995L;
+
+	private static final Comparator<String> NULLS_FIRST_COMPARATOR = new Comparator<String>() {
+		public int compare(String value1, String value2) {
+			if (value1 == null) {
+				return (value2 == null) ? 0 : -1;
+			}
+			if (value2 == null) {
+				return 1;
+			}
+
+			return value1.compareTo(value2);
+		}
+	};
+
+	private final String[] primaryKeyValues;
+	private final String[] secondaryKeyValues;
+	private final String[] tertiaryKeyValues;
 
-	private String[] primaryKeyValues;
-	private String[] secondaryKeyValues;
-	private String[] tertiaryKeyValues;
+	private final String[] normalizedPrimaryKeyValues;
+	private final String[] normalizedSecondaryKeyValues;
+	private final String[] normalizedTertiaryKeyValues;
+
+	private final long fingerprint;
 
 	public CacheCompoundKey(String[] primaryKeyValues, String[] secondaryKeyValues, String[] tertiaryKeyValues) {
 		this.primaryKeyValues = primaryKeyValues;
 		this.secondaryKeyValues = secondaryKeyValues;
 		this.tertiaryKeyValues = tertiaryKeyValues;
+
+		this.normalizedPrimaryKeyValues = normalize(primaryKeyValues);
+		this.normalizedSecondaryKeyValues = normalize(secondaryKeyValues);
+		this.normalizedTertiaryKeyValues = normalize(tertiaryKeyValues);
+
+		long hash = FINGERPRINT_SEED;
+		hash = fingerprint(hash, normalizedPrimaryKeyValues);
+		hash = fingerprint(hash, normalizedSecondaryKeyValues);
+		hash = fingerprint(hash, normalizedTertiaryKeyValues);
+		this.fingerprint = mix(hash);
 	}
 
 	public CacheCompoundKey(String[][] keyValues) {
-		if (keyValues.length > 0) {
-			primaryKeyValues = keyValues[0];
+		this((keyValues.length > 0) ? keyValues[0] : null, (keyValues.length > 1) ? keyValues[1] : null, (keyValues.length > 2) ? keyValues[2] : null);
+	}
+
+	private static String[] normalize(String[] values) {
+		if (values == null) {
+			return null;
 		}
-		if (keyValues.length > 1) {
-			secondaryKeyValues = keyValues[1];
+
+		String[] result = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = StringHelper.toLowerCase(values[i]);
 		}
-		if (keyValues.length > 2) {
-			tertiaryKeyValues = keyValues[2];
+
+		if (result.length > 1) {
+			Arrays.sort(result, NULLS_FIRST_COMPARATOR);
 		}
+
+		return result;
+	}
+
+	private static long fingerprint(long hash, String[] values) {
+		if (values == null) {
+			return (hash ^ -1L) * FINGERPRINT_MULTIPLIER;
+		}
+
+		hash = (hash ^ values.length) * FINGERPRINT_MULTIPLIER;
+		for (String value : values) {
+			if (value == null) {
+				hash = (hash ^ -2L) * FINGERPRINT_MULTIPLIER;
+				continue;
+			}
+
+			int length = value.length();
+			hash = (hash ^ length) * FINGERPRINT_MULTIPLIER;
+			for (int i = 0; i < length; i++) {
+				hash = (hash ^ value.charAt(i)) * FINGERPRINT_MULTIPLIER;
+			}
+		}
+
+		return hash;
+	}
+
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
 	}
 
 	public String[] getPrimaryKeyValues() {
@@ -54,14 +132,17 @@ public class CacheCompoundKey implements Serializable {
 		return tertiaryKeyValues;
 	}
 
+	/**
+	 * 64-bit fingerprint of normalized values. Keys with different fingerprints
+	 * are never equal
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + Arrays.hashCode(primaryKeyValues);
-		result = prime * result + Arrays.hashCode(secondaryKeyValues);
-		result = prime * result + Arrays.hashCode(tertiaryKeyValues);
-		return result;
+		return (int) (fingerprint ^ (fingerprint >>> 32));
 	}
 
 	@Override
@@ -73,11 +154,13 @@ public class CacheCompoundKey implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		CacheCompoundKey other = (CacheCompoundKey) obj;
-		if (!ArrayHelper.equalsIgnoreOrder(primaryKeyValues, other.primaryKeyValues))
+		if (fingerprint != other.fingerprint)
+			return false;
+		if (!Arrays.equals(normalizedPrimaryKeyValues, other.normalizedPrimaryKeyValues))
 			return false;
-		if (!ArrayHelper.equalsIgnoreOrder(secondaryKeyValues, other.secondaryKeyValues))
+		if (!Arrays.equals(normalizedSecondaryKeyValues, other.normalizedSecondaryKeyValues))
 			return false;
-		if (!ArrayHelper.equalsIgnoreOrder(tertiaryKeyValues, other.tertiaryKeyValues))
+		if (!Arrays.equals(normalizedTertiaryKeyValues, other.normalizedTertiaryKeyValues))
 			return false;
 		return true;
 	}
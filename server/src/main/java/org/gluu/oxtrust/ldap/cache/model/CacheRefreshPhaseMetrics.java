@@ -0,0 +1,56 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+
+/**
+ * Duration and count of processed entries of one Cache Refresh phase
+ */
+public class CacheRefreshPhaseMetrics implements Serializable {
+
+	private static final long serialVersionUID = -2810574212479620712L;
+
+	private String name;
+	private long duration;
+	private long entryCount;
+
+	public CacheRefreshPhaseMetrics(String name, long duration, long entryCount) {
+		this.name = name;
+		this.duration = duration;
+		this.entryCount = entryCount;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	public long getEntriesPerSecond() {
+		if (duration <= 0) {
+			return entryCount;
+		}
+
+		return entryCount * 1000 / duration;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CacheRefreshPhaseMetrics [name=").append(name).append(", duration=").append(duration).append(", entryCount=")
+				.append(entryCount).append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics of one Cache Refresh run: per phase timings and counts of processed
+ * entries and LDAP operations
+ */
+public class CacheRefreshRunMetrics implements Serializable {
+
+	private static final long serialVersionUID = 6069841939129402384L;
+
+	private long startTime;
+	private long duration;
+	private boolean incremental;
+	private boolean success;
+
+	private List<CacheRefreshPhaseMetrics> phases;
+	private Map<String, Long> counters;
+
+	public CacheRefreshRunMetrics(long startTime, long duration, boolean incremental, boolean success, List<CacheRefreshPhaseMetrics> phases,
+			Map<String, Long> counters) {
+		this.startTime = startTime;
+		this.duration = duration;
+		this.incremental = incremental;
+		this.success = success;
+		this.phases = phases;
+		this.counters = counters;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public List<CacheRefreshPhaseMetrics> getPhases() {
+		return phases;
+	}
+
+	public Map<String, Long> getCounters() {
+		return counters;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CacheRefreshRunMetrics [startTime=").append(startTime).append(", duration=").append(duration).append(", incremental=")
+				.append(incremental).append(", success=").append(success).append(", phases=").append(phases).append(", counters=")
+				.append(counters).append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+
+import org.gluu.oxtrust.ldap.cache.service.CacheRefreshDigestMethod;
+
+/**
+ * Cache Refresh tuning properties loaded from optional oxTrustCacheRefresh.properties
+ * file. Defaults keep behaviour of previous versions
+ */
+public class CacheRefreshTuningConfiguration implements Serializable {
+
+	private static final long serialVersionUID = 6912503176329488045L;
+
+	private int sourceServerThreadsCount = 1;
+	private int sourcePrefixThreadsCount = 1;
+
+	private boolean sourceStreamingEnabled;
+	private int sourcePageSize = 500;
+
+	private CacheRefreshDigestMethod digestMethod = CacheRefreshDigestMethod.LEGACY;
+
+	private int targetThreadsCount = 1;
+	private int targetBatchSize = 100;
+	private int targetMaxInFlightOperations = 100;
+
+	private int inumThreadsCount = 1;
+	private int inumBatchSize = 100;
+
+	private boolean incrementalEnabled;
+	private String incrementalWatermarkAttribute = "auto";
+	private int incrementalTimeOverlap = 300;
+	private int fullReconciliationInterval = 1440;
+
+	private int metricsHistorySize = 20;
+
+	public int getSourceServerThreadsCount() {
+		return sourceServerThreadsCount;
+	}
+
+	public void setSourceServerThreadsCount(int sourceServerThreadsCount) {
+		this.sourceServerThreadsCount = sourceServerThreadsCount;
+	}
+
+	public int getSourcePrefixThreadsCount() {
+		return sourcePrefixThreadsCount;
+	}
+
+	public void setSourcePrefixThreadsCount(int sourcePrefixThreadsCount) {
+		this.sourcePrefixThreadsCount = sourcePrefixThreadsCount;
+	}
+
+	public boolean isSourceStreamingEnabled() {
+		return sourceStreamingEnabled;
+	}
+
+	public void setSourceStreamingEnabled(boolean sourceStreamingEnabled) {
+		this.sourceStreamingEnabled = sourceStreamingEnabled;
+	}
+
+	public int getSourcePageSize() {
+		return sourcePageSize;
+	}
+
+	public void setSourcePageSize(int sourcePageSize) {
+		this.sourcePageSize = sourcePageSize;
+	}
+
+	/**
+	 * Snapshots of previous versions store legacy digests. Switching method makes
+	 * next run update all entries once
+	 */
+	public CacheRefreshDigestMethod getDigestMethod() {
+		return digestMethod;
+	}
+
+	public void setDigestMethod(CacheRefreshDigestMethod digestMethod) {
+		this.digestMethod = digestMethod;
+	}
+
+	public int getTargetThreadsCount() {
+		return targetThreadsCount;
+	}
+
+	public void setTargetThreadsCount(int targetThreadsCount) {
+		this.targetThreadsCount = targetThreadsCount;
+	}
+
+	public int getTargetBatchSize() {
+		return targetBatchSize;
+	}
+
+	public void setTargetBatchSize(int targetBatchSize) {
+		this.targetBatchSize = targetBatchSize;
+	}
+
+	public int getTargetMaxInFlightOperations() {
+		return targetMaxInFlightOperations;
+	}
+
+	public void setTargetMaxInFlightOperations(int targetMaxInFlightOperations) {
+		this.targetMaxInFlightOperations = targetMaxInFlightOperations;
+	}
+
+	public int getInumThreadsCount() {
+		return inumThreadsCount;
+	}
+
+	public void setInumThreadsCount(int inumThreadsCount) {
+		this.inumThreadsCount = inumThreadsCount;
+	}
+
+	public int getInumBatchSize() {
+		return inumBatchSize;
+	}
+
+	public void setInumBatchSize(int inumBatchSize) {
+		this.inumBatchSize = inumBatchSize;
+	}
+
+	public boolean isIncrementalEnabled() {
+		return incrementalEnabled;
+	}
+
+	public void setIncrementalEnabled(boolean incrementalEnabled) {
+		this.incrementalEnabled = incrementalEnabled;
+	}
+
+	public String getIncrementalWatermarkAttribute() {
+		return incrementalWatermarkAttribute;
+	}
+
+	public void setIncrementalWatermarkAttribute(String incrementalWatermarkAttribute) {
+		this.incrementalWatermarkAttribute = incrementalWatermarkAttribute;
+	}
+
+	public int getIncrementalTimeOverlap() {
+		return incrementalTimeOverlap;
+	}
+
+	public void setIncrementalTimeOverlap(int incrementalTimeOverlap) {
+		this.incrementalTimeOverlap = incrementalTimeOverlap;
+	}
+
+	public int getFullReconciliationInterval() {
+		return fullReconciliationInterval;
+	}
+
+	public void setFullReconciliationInterval(int fullReconciliationInterval) {
+		this.fullReconciliationInterval = fullReconciliationInterval;
+	}
+
+	public int getMetricsHistorySize() {
+		return metricsHistorySize;
+	}
+
+	public void setMetricsHistorySize(int metricsHistorySize) {
+		this.metricsHistorySize = metricsHistorySize;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CacheRefreshTuningConfiguration [sourceServerThreadsCount=").append(sourceServerThreadsCount)
+				.append(", sourcePrefixThreadsCount=").append(sourcePrefixThreadsCount).append(", sourceStreamingEnabled=").append(sourceStreamingEnabled)
+				.append(", sourcePageSize=").append(sourcePageSize).append(", digestMethod=").append(digestMethod)
+				.append(", targetThreadsCount=").append(targetThreadsCount).append(", targetBatchSize=").append(targetBatchSize)
+				.append(", targetMaxInFlightOperations=").append(targetMaxInFlightOperations)
+				.append(", inumThreadsCount=").append(inumThreadsCount).append(", inumBatchSize=").append(inumBatchSize)
+				.append(", incrementalEnabled=").append(incrementalEnabled).append(", incrementalWatermarkAttribute=").append(incrementalWatermarkAttribute)
+				.append(", incrementalTimeOverlap=").append(incrementalTimeOverlap).append(", fullReconciliationInterval=").append(fullReconciliationInterval)
+				.append(", metricsHistorySize=").append(metricsHistorySize).append("]");
+		return builder.toString();
+	}
+
+}
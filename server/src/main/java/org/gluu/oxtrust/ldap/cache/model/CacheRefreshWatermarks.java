@@ -0,0 +1,54 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * State of incremental Cache Refresh: time of last full reconciliation and
+ * high-water marks of source servers
+ */
+public class CacheRefreshWatermarks implements Serializable {
+
+	private static final long serialVersionUID = -4263151873542093524L;
+
+	private long lastFullReconciliationTime;
+	private String configurationKey;
+	private Map<String, SourceServerWatermark> sourceServerWatermarks;
+
+	public CacheRefreshWatermarks(long lastFullReconciliationTime, String configurationKey, Map<String, SourceServerWatermark> sourceServerWatermarks) {
+		this.lastFullReconciliationTime = lastFullReconciliationTime;
+		this.configurationKey = configurationKey;
+		this.sourceServerWatermarks = sourceServerWatermarks;
+	}
+
+	public long getLastFullReconciliationTime() {
+		return lastFullReconciliationTime;
+	}
+
+	/**
+	 * Identifies source servers filter and attributes which were used to
+	 * calculate snapshot
+	 */
+	public String getConfigurationKey() {
+		return configurationKey;
+	}
+
+	public Map<String, SourceServerWatermark> getSourceServerWatermarks() {
+		return sourceServerWatermarks;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CacheRefreshWatermarks [lastFullReconciliationTime=").append(lastFullReconciliationTime).append(", configurationKey=")
+				.append(configurationKey).append(", sourceServerWatermarks=").append(sourceServerWatermarks).append("]");
+		return builder.toString();
+	}
+
+}
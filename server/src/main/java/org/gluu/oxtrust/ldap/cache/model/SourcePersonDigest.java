@@ -0,0 +1,49 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+
+/**
+ * Minimal information about source server entry which allows to detect changes
+ * without keeping whole entry in memory
+ */
+public class SourcePersonDigest implements Serializable {
+
+	private static final long serialVersionUID = -1795542466187426345L;
+
+	private String dn;
+	private String sourceServerName;
+	private long digest;
+
+	public SourcePersonDigest(String dn, String sourceServerName, long digest) {
+		this.dn = dn;
+		this.sourceServerName = sourceServerName;
+		this.digest = digest;
+	}
+
+	public String getDn() {
+		return dn;
+	}
+
+	public String getSourceServerName() {
+		return sourceServerName;
+	}
+
+	public long getDigest() {
+		return digest;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("SourcePersonDigest [dn=").append(dn).append(", sourceServerName=").append(sourceServerName).append(", digest=")
+				.append(digest).append("]");
+		return builder.toString();
+	}
+
+}
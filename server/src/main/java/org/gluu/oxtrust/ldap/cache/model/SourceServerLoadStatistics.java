@@ -0,0 +1,54 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+
+/**
+ * Statistics of loading entries from one source server
+ */
+public class SourceServerLoadStatistics implements Serializable {
+
+	private static final long serialVersionUID = 4290745173268432931L;
+
+	private String sourceServerName;
+	private int searchCount;
+	private int entryCount;
+	private long duration;
+
+	public SourceServerLoadStatistics(String sourceServerName, int searchCount, int entryCount, long duration) {
+		this.sourceServerName = sourceServerName;
+		this.searchCount = searchCount;
+		this.entryCount = entryCount;
+		this.duration = duration;
+	}
+
+	public String getSourceServerName() {
+		return sourceServerName;
+	}
+
+	public int getSearchCount() {
+		return searchCount;
+	}
+
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("SourceServerLoadStatistics [sourceServerName=").append(sourceServerName).append(", searchCount=").append(searchCount)
+				.append(", entryCount=").append(entryCount).append(", duration=").append(duration).append("]");
+		return builder.toString();
+	}
+
+}
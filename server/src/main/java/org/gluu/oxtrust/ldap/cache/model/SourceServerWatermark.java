@@ -0,0 +1,49 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.model;
+
+import java.io.Serializable;
+
+/**
+ * High-water mark of source server. Entries with watermark attribute value
+ * greater or equal to it were changed after last run
+ */
+public class SourceServerWatermark implements Serializable {
+
+	private static final long serialVersionUID = 6107524413972095391L;
+
+	private String sourceServerName;
+	private String attribute;
+	private String value;
+
+	public SourceServerWatermark(String sourceServerName, String attribute, String value) {
+		this.sourceServerName = sourceServerName;
+		this.attribute = attribute;
+		this.value = value;
+	}
+
+	public String getSourceServerName() {
+		return sourceServerName;
+	}
+
+	public String getAttribute() {
+		return attribute;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("SourceServerWatermark [sourceServerName=").append(sourceServerName).append(", attribute=").append(attribute)
+				.append(", value=").append(value).append("]");
+		return builder.toString();
+	}
+
+}
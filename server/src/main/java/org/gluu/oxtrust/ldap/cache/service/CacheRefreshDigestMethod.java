@@ -0,0 +1,66 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Methods to calculate source entry digest which is used to detect changes
+ */
+public enum CacheRefreshDigestMethod {
+
+	LEGACY("legacy", 1, "32-bit LdapEntryManager hash code"), MURMUR64("murmur64", 2, "64-bit MurmurHash64A of sorted attributes");
+
+	private String value;
+	private int id;
+	private String displayName;
+
+	private static Map<String, CacheRefreshDigestMethod> mapByValues = new HashMap<String, CacheRefreshDigestMethod>();
+	private static Map<Integer, CacheRefreshDigestMethod> mapByIds = new HashMap<Integer, CacheRefreshDigestMethod>();
+	static {
+		for (CacheRefreshDigestMethod enumType : values()) {
+			mapByValues.put(enumType.getValue(), enumType);
+			mapByIds.put(enumType.getId(), enumType);
+		}
+	}
+
+	private CacheRefreshDigestMethod(String value, int id, String displayName) {
+		this.value = value;
+		this.id = id;
+		this.displayName = displayName;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Identifier which is stored in snapshot files
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	public static CacheRefreshDigestMethod getByValue(String value) {
+		return mapByValues.get(value);
+	}
+
+	public static CacheRefreshDigestMethod getById(int id) {
+		return mapByIds.get(id);
+	}
+
+	@Override
+	public String toString() {
+		return value;
+	}
+
+}
@@ -0,0 +1,460 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+import org.gluu.oxtrust.ldap.cache.model.CacheCompoundKey;
+import org.gluu.oxtrust.ldap.cache.model.GluuInumMap;
+import org.xdi.ldap.model.GluuStatus;
+
+/**
+ * Persistent store of compound key to inum mappings. Mappings are kept in
+ * memory and indexed by key and by inum. Changes are appended to log file and
+ * forced to disk before methods return. Log is compacted when it contains
+ * too many superseded records
+ *
+ * File layout:
+ * <pre>
+ * int magic, int version
+ * records: int payloadLength, int crc32(payload), byte[payloadLength] payload
+ * </pre>
+ *
+ * Torn or corrupted tail which is left after crash is truncated on open
+ */
+public class CacheRefreshInumMapStore {
+
+	public static final int MAGIC = 0x4F58494D;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 2 * 4;
+	private static final int RECORD_HEADER_SIZE = 2 * 4;
+	private static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+	private static final byte RECORD_ADD = 1;
+	private static final byte RECORD_REMOVE = 2;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+
+	private final HashMap<String, GluuInumMap> inumInumMap;
+	private final HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap;
+	private long recordsCount;
+	private long truncatedBytes;
+
+	private CacheRefreshInumMapStore(File file) {
+		this.file = file;
+		this.inumInumMap = new HashMap<String, GluuInumMap>();
+		this.primaryKeyAttrValueInumMap = new HashMap<CacheCompoundKey, GluuInumMap>();
+	}
+
+	public static CacheRefreshInumMapStore open(File file) throws IOException {
+		CacheRefreshInumMapStore store = new CacheRefreshInumMapStore(file);
+		store.load();
+
+		return store;
+	}
+
+	private void load() throws IOException {
+		long validLength = 0;
+		if (file.exists() && (file.length() >= HEADER_SIZE)) {
+			validLength = readLog();
+		}
+
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = randomAccessFile.getChannel();
+
+		if (validLength == 0) {
+			// New or unusable file
+			clear();
+			return;
+		}
+
+		long fileLength = channel.size();
+		if (validLength < fileLength) {
+			this.truncatedBytes = fileLength - validLength;
+			channel.truncate(validLength);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Returns length of valid part of log
+	 */
+	private long readLog() throws IOException {
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			if ((dis.readInt() != MAGIC) || (dis.readInt() != VERSION)) {
+				return 0;
+			}
+
+			long position = HEADER_SIZE;
+			CRC32 crc = new CRC32();
+			while (true) {
+				int payloadLength;
+				int payloadCrc;
+				byte[] payload;
+				try {
+					payloadLength = dis.readInt();
+					payloadCrc = dis.readInt();
+					if ((payloadLength <= 0) || (payloadLength > MAX_PAYLOAD_LENGTH)) {
+						return position;
+					}
+
+					payload = new byte[payloadLength];
+					dis.readFully(payload);
+				} catch (EOFException ex) {
+					return position;
+				}
+
+				crc.reset();
+				crc.update(payload, 0, payloadLength);
+				if ((int) crc.getValue() != payloadCrc) {
+					return position;
+				}
+
+				try {
+					applyRecord(payload);
+				} catch (IOException ex) {
+					return position;
+				}
+
+				position += RECORD_HEADER_SIZE + payloadLength;
+				recordsCount++;
+			}
+		} finally {
+			IOUtils.closeQuietly(dis);
+		}
+	}
+
+	private void applyRecord(byte[] payload) throws IOException {
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+		byte type = dis.readByte();
+		if (type == RECORD_ADD) {
+			GluuInumMap inumMap = new GluuInumMap();
+			inumMap.setDn(readString(dis));
+			inumMap.setInum(readString(dis));
+			inumMap.setPrimaryKeyAttrName(readString(dis));
+			inumMap.setPrimaryKeyValues(readStrings(dis));
+			inumMap.setSecondaryKeyAttrName(readString(dis));
+			inumMap.setSecondaryKeyValues(readStrings(dis));
+			inumMap.setTertiaryKeyAttrName(readString(dis));
+			inumMap.setTertiaryKeyValues(readStrings(dis));
+			inumMap.setStatus(GluuStatus.getByValue(readString(dis)));
+
+			put(inumMap);
+		} else if (type == RECORD_REMOVE) {
+			delete(readString(dis));
+		} else {
+			throw new IOException(String.format("Unknown record type: %d", type));
+		}
+	}
+
+	private void put(GluuInumMap inumMap) {
+		GluuInumMap prevInumMap = inumInumMap.put(inumMap.getInum(), inumMap);
+		if (prevInumMap != null) {
+			primaryKeyAttrValueInumMap.remove(getCacheCompoundKey(prevInumMap));
+		}
+		primaryKeyAttrValueInumMap.put(getCacheCompoundKey(inumMap), inumMap);
+	}
+
+	private void delete(String inum) {
+		GluuInumMap inumMap = inumInumMap.remove(inum);
+		if (inumMap != null) {
+			primaryKeyAttrValueInumMap.remove(getCacheCompoundKey(inumMap));
+		}
+	}
+
+	private CacheCompoundKey getCacheCompoundKey(GluuInumMap inumMap) {
+		return new CacheCompoundKey(inumMap.getPrimaryKeyValues(), inumMap.getSecondaryKeyValues(), inumMap.getTertiaryKeyValues());
+	}
+
+	public int size() {
+		return inumInumMap.size();
+	}
+
+	public boolean isEmpty() {
+		return inumInumMap.isEmpty();
+	}
+
+	/**
+	 * Count of bytes which were dropped during recovery
+	 */
+	public long getTruncatedBytes() {
+		return truncatedBytes;
+	}
+
+	public GluuInumMap getByKey(CacheCompoundKey cacheCompoundKey) {
+		return primaryKeyAttrValueInumMap.get(cacheCompoundKey);
+	}
+
+	public GluuInumMap getByInum(String inum) {
+		return inumInumMap.get(inum);
+	}
+
+	/**
+	 * Returns read only view of key to inum map index
+	 */
+	public Map<CacheCompoundKey, GluuInumMap> getPrimaryKeyAttrValueInumMap() {
+		return Collections.unmodifiableMap(primaryKeyAttrValueInumMap);
+	}
+
+	/**
+	 * Returns read only view of inum to inum map index
+	 */
+	public Map<String, GluuInumMap> getInumInumMap() {
+		return Collections.unmodifiableMap(inumInumMap);
+	}
+
+	public void add(Collection<GluuInumMap> inumMaps) throws IOException {
+		if (inumMaps.isEmpty()) {
+			return;
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for (GluuInumMap inumMap : inumMaps) {
+			writeRecord(bos, createAddRecord(inumMap));
+		}
+		append(bos.toByteArray());
+
+		for (GluuInumMap inumMap : inumMaps) {
+			put(inumMap);
+		}
+		recordsCount += inumMaps.size();
+	}
+
+	public void remove(Collection<String> inums) throws IOException {
+		if (inums.isEmpty()) {
+			return;
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for (String inum : inums) {
+			writeRecord(bos, createRemoveRecord(inum));
+		}
+		append(bos.toByteArray());
+
+		for (String inum : inums) {
+			delete(inum);
+		}
+		recordsCount += inums.size();
+	}
+
+	/**
+	 * Replaces all mappings
+	 */
+	public void reset(Collection<GluuInumMap> inumMaps) throws IOException {
+		inumInumMap.clear();
+		primaryKeyAttrValueInumMap.clear();
+		for (GluuInumMap inumMap : inumMaps) {
+			put(inumMap);
+		}
+
+		compact();
+	}
+
+	/**
+	 * Rewrites log when count of superseded records exceeds count of live
+	 * mappings
+	 */
+	public boolean compactIfNeeded() throws IOException {
+		if (recordsCount - inumInumMap.size() <= Math.max(1000, inumInumMap.size())) {
+			return false;
+		}
+
+		compact();
+
+		return true;
+	}
+
+	private void clear() throws IOException {
+		inumInumMap.clear();
+		primaryKeyAttrValueInumMap.clear();
+		compact();
+	}
+
+	private void compact() throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+		DataOutputStream dos = null;
+		RandomAccessFile tempRandomAccessFile = new RandomAccessFile(tempFile, "rw");
+		try {
+			tempRandomAccessFile.setLength(0);
+			FileChannel tempChannel = tempRandomAccessFile.getChannel();
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(64 * 1024);
+			dos = new DataOutputStream(bos);
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.flush();
+
+			for (GluuInumMap inumMap : inumInumMap.values()) {
+				writeRecord(bos, createAddRecord(inumMap));
+				if (bos.size() >= 64 * 1024) {
+					writeFully(tempChannel, bos.toByteArray(), tempChannel.size());
+					bos.reset();
+				}
+			}
+			writeFully(tempChannel, bos.toByteArray(), tempChannel.size());
+			tempChannel.force(true);
+		} finally {
+			IOUtils.closeQuietly(dos);
+			IOUtils.closeQuietly(tempRandomAccessFile);
+		}
+
+		closeFile();
+		if (!tempFile.renameTo(file)) {
+			// Rename can't replace existing file on some platforms
+			if (!file.delete() || !tempFile.renameTo(file)) {
+				throw new IOException(String.format("Failed to rename file '%s' to '%s'", tempFile.getAbsolutePath(), file.getAbsolutePath()));
+			}
+		}
+
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = randomAccessFile.getChannel();
+		this.recordsCount = inumInumMap.size();
+	}
+
+	public void close() {
+		closeFile();
+	}
+
+	private void closeFile() {
+		IOUtils.closeQuietly(randomAccessFile);
+		this.randomAccessFile = null;
+		this.channel = null;
+	}
+
+	private void append(byte[] bytes) throws IOException {
+		writeFully(channel, bytes, channel.size());
+		channel.force(false);
+	}
+
+	private void writeFully(FileChannel fileChannel, byte[] bytes, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			position += fileChannel.write(buffer, position);
+		}
+	}
+
+	private void writeRecord(ByteArrayOutputStream bos, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+
+		DataOutputStream dos = new DataOutputStream(bos);
+		dos.writeInt(payload.length);
+		dos.writeInt((int) crc.getValue());
+		dos.write(payload);
+		dos.flush();
+	}
+
+	private byte[] createAddRecord(GluuInumMap inumMap) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+		DataOutputStream dos = new DataOutputStream(bos);
+		dos.writeByte(RECORD_ADD);
+		writeString(dos, inumMap.getDn());
+		writeString(dos, inumMap.getInum());
+		writeString(dos, inumMap.getPrimaryKeyAttrName());
+		writeStrings(dos, inumMap.getPrimaryKeyValues());
+		writeString(dos, inumMap.getSecondaryKeyAttrName());
+		writeStrings(dos, inumMap.getSecondaryKeyValues());
+		writeString(dos, inumMap.getTertiaryKeyAttrName());
+		writeStrings(dos, inumMap.getTertiaryKeyValues());
+		writeString(dos, inumMap.getStatus() == null ? null : inumMap.getStatus().getValue());
+		dos.flush();
+
+		return bos.toByteArray();
+	}
+
+	private byte[] createRemoveRecord(String inum) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+		DataOutputStream dos = new DataOutputStream(bos);
+		dos.writeByte(RECORD_REMOVE);
+		writeString(dos, inum);
+		dos.flush();
+
+		return bos.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream dos, String value) throws IOException {
+		if (value == null) {
+			dos.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(UTF_8);
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+	}
+
+	private static void writeStrings(DataOutputStream dos, String[] values) throws IOException {
+		if (values == null) {
+			dos.writeInt(-1);
+			return;
+		}
+
+		dos.writeInt(values.length);
+		for (String value : values) {
+			writeString(dos, value);
+		}
+	}
+
+	private static String readString(DataInputStream dis) throws IOException {
+		int length = dis.readInt();
+		if (length == -1) {
+			return null;
+		}
+
+		if ((length < 0) || (length > dis.available())) {
+			throw new IOException("Invalid string length");
+		}
+
+		byte[] bytes = new byte[length];
+		dis.readFully(bytes);
+
+		return new String(bytes, UTF_8);
+	}
+
+	private static String[] readStrings(DataInputStream dis) throws IOException {
+		int count = dis.readInt();
+		if (count == -1) {
+			return null;
+		}
+
+		if ((count < 0) || (count > dis.available())) {
+			throw new IOException("Invalid values count");
+		}
+
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = readString(dis);
+		}
+
+		return values;
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshPhaseMetrics;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshRunMetrics;
+
+/**
+ * Collects metrics of one Cache Refresh run. It should be used from thread
+ * which executes run only
+ */
+public class CacheRefreshMetricsCollector {
+
+	public static final String PHASE_SOURCE_LOAD = "sourceLoad";
+	public static final String PHASE_INUM_ALLOCATION = "inumAllocation";
+	public static final String PHASE_DIGEST = "digest";
+	public static final String PHASE_CHANGE_DETECTION = "changeDetection";
+	public static final String PHASE_TARGET_UPDATE = "targetUpdate";
+	public static final String PHASE_REMOVAL = "removal";
+
+	public static final String COUNTER_SOURCE_ENTRIES = "sourceEntries";
+	public static final String COUNTER_CHANGED_ENTRIES = "changedEntries";
+	public static final String COUNTER_ADDED_INUM_ENTRIES = "addedInumEntries";
+	public static final String COUNTER_UPDATED_ENTRIES = "updatedEntries";
+	public static final String COUNTER_FAILED_ENTRIES = "failedEntries";
+	public static final String COUNTER_REMOVED_ENTRIES = "removedEntries";
+	public static final String COUNTER_LDAP_SEARCHES = "ldapSearches";
+	public static final String COUNTER_LDAP_ADDS = "ldapAdds";
+	public static final String COUNTER_LDAP_MODIFIES = "ldapModifies";
+	public static final String COUNTER_LDAP_DELETES = "ldapDeletes";
+
+	private final long startTime;
+	private boolean incremental;
+
+	private final List<CacheRefreshPhaseMetrics> phases;
+	private final Map<String, Long> counters;
+
+	private String currentPhase;
+	private long currentPhaseStartTime;
+
+	public CacheRefreshMetricsCollector() {
+		this.startTime = System.currentTimeMillis();
+		this.phases = new ArrayList<CacheRefreshPhaseMetrics>();
+		this.counters = new LinkedHashMap<String, Long>();
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public void startPhase(String phase) {
+		this.currentPhase = phase;
+		this.currentPhaseStartTime = System.currentTimeMillis();
+	}
+
+	public void endPhase(long entryCount) {
+		if (currentPhase == null) {
+			return;
+		}
+
+		phases.add(new CacheRefreshPhaseMetrics(currentPhase, System.currentTimeMillis() - currentPhaseStartTime, entryCount));
+		this.currentPhase = null;
+	}
+
+	public void incrementCounter(String counter, long delta) {
+		Long value = counters.get(counter);
+		counters.put(counter, (value == null) ? delta : value + delta);
+	}
+
+	public CacheRefreshRunMetrics finish(boolean success) {
+		// Phase which was interrupted by error
+		endPhase(0);
+
+		return new CacheRefreshRunMetrics(startTime, System.currentTimeMillis() - startTime, incremental, success,
+				Collections.unmodifiableList(new ArrayList<CacheRefreshPhaseMetrics>(phases)),
+				Collections.unmodifiableMap(new LinkedHashMap<String, Long>(counters)));
+	}
+
+}
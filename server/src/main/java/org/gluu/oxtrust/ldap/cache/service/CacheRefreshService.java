@@ -10,6 +10,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -17,6 +18,7 @@ import java.util.Set;
 
 import org.gluu.oxtrust.ldap.cache.model.GluuInumMap;
 import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.InumService;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
@@ -47,12 +49,17 @@ public class CacheRefreshService implements Serializable {
 
 	private static final long serialVersionUID = -2225880517520443390L;
 
+	private static final int MAX_INUM_GENERATION_ATTEMPTS = 10;
+
 	@Logger
 	private Log log;
 
 	@In
 	private InumService inumService;
 
+	@In
+	private IPersonService personService;
+
 	public Filter createFilter(String customLdapFilter) {
 		if (StringHelper.isEmpty(customLdapFilter)) {
 			return null;
@@ -114,39 +121,82 @@ public class CacheRefreshService implements Serializable {
 		return Filter.createPresenceFilter(OxTrustConstants.objectClass);
 	}
 
-	public void addInumMap(LdapEntryManager ldapEntryManager, GluuInumMap inumMap) {
-		ldapEntryManager.persist(inumMap);
-	}
+	/**
+	 * Generates block of unique inums for new inum map entries. Uniqueness of
+	 * each block is checked by one search in inum server and one search in
+	 * people branch instead of search per inum. Unique inums are registered in
+	 * inum DB with one connection
+	 */
+	public List<String> generateInumsForNewInumMaps(String inumbBaseDn, LdapEntryManager ldapEntryManager, int count) {
+		Set<String> result = new LinkedHashSet<String>(count);
+
+		for (int attempt = 0; (result.size() < count) && (attempt < MAX_INUM_GENERATION_ATTEMPTS); attempt++) {
+			Set<String> candidateInums = new LinkedHashSet<String>();
+			while (result.size() + candidateInums.size() < count) {
+				String inum = inumService.generateInums(OxTrustConstants.INUM_TYPE_PEOPLE_SLUG, false);
+				if (StringHelper.isEmpty(inum)) {
+					log.error("Failed to generate inum for new inum map entry");
+					return new ArrayList<String>(result);
+				}
+
+				if (!result.contains(inum)) {
+					candidateInums.add(inum);
+				}
+			}
+
+			Set<String> existingInums = findExistingInums(inumbBaseDn, ldapEntryManager, candidateInums);
+			if (existingInums == null) {
+				break;
+			}
+
+			candidateInums.removeAll(existingInums);
+			if (candidateInums.isEmpty()) {
+				continue;
+			}
 
-	public boolean containsInumMap(LdapEntryManager ldapEntryManager, GluuInumMap inumMap) {
-		return ldapEntryManager.contains(inumMap);
+			// Register inums like generateInums() does. Inums registered by others are generated again
+			result.addAll(inumService.registerInums(candidateInums, OxTrustConstants.INUM_TYPE_PEOPLE_SLUG));
+		}
+
+		if (result.size() < count) {
+			log.error("Generated '{0}' unique inums instead of '{1}'", result.size(), count);
+		}
+
+		return new ArrayList<String>(result);
 	}
 
-	public String generateInumForNewInumMap(String inumbBaseDn, LdapEntryManager ldapEntryManager) {
-		String newInum = generateInumForNewInumMapImpl();
-		String newDn = getDnForInum(inumbBaseDn, newInum);
+	private Set<String> findExistingInums(String inumbBaseDn, LdapEntryManager ldapEntryManager, Set<String> inums) {
+		List<Filter> inumFilters = new ArrayList<Filter>(inums.size());
+		for (String inum : inums) {
+			inumFilters.add(Filter.createEqualityFilter(OxTrustConstants.inum, inum));
+		}
+		Filter filter = Filter.createORFilter(inumFilters);
 
-		GluuInumMap inumMap = new GluuInumMap();
-		inumMap.setDn(newDn);
+		Set<String> result = new HashSet<String>();
+		try {
+			List<GluuInumMap> existingInumMaps = ldapEntryManager.findEntries(inumbBaseDn, GluuInumMap.class, new String[] { OxTrustConstants.inum },
+					filter);
+			for (GluuInumMap existingInumMap : existingInumMaps) {
+				result.add(existingInumMap.getInum());
+			}
 
-		while (containsInumMap(ldapEntryManager, inumMap)) {
-			newInum = generateInumForNewInumMapImpl();
-			newDn = getDnForInum(inumbBaseDn, newInum);
-			inumMap.setDn(newDn);
+			List<GluuCustomPerson> existingPersons = personService.findPersonsByInums(new ArrayList<String>(inums),
+					new String[] { OxTrustConstants.inum });
+			for (GluuCustomPerson existingPerson : existingPersons) {
+				result.add(existingPerson.getInum());
+			}
+		} catch (Exception ex) {
+			log.error("Failed to check if inums are unique", ex);
+			return null;
 		}
 
-		return newInum;
+		return result;
 	}
 
 	public String getDnForInum(String baseDn, String inum) {
 		return String.format("inum=%s,%s", inum, baseDn);
 	}
 
-	private String generateInumForNewInumMapImpl() {
-		String inum = inumService.generateInums(OxTrustConstants.INUM_TYPE_PEOPLE_SLUG);
-		return inum;
-	}
-
 	public void setTargetEntryAttributes(GluuSimplePerson sourcePerson, Map<String, String> targetServerAttributesMapping,
 			GluuCustomPerson targetPerson) {
 		// Collect all attributes to single map
@@ -0,0 +1,204 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Read only memory mapped snapshot of inums with entry digests. Inums are
+ * sorted to allow comparing snapshots without loading them into heap
+ *
+ * File layout (version 2):
+ * <pre>
+ * int magic, int version, int digestMethod, int count, int dataLength
+ * long[count] digests
+ * int[count + 1] offsets of inums in data block
+ * byte[dataLength] UTF-8 encoded inums
+ * </pre>
+ *
+ * Version 1 files have no digestMethod field and store int hash codes
+ * calculated by legacy method
+ */
+public class CacheRefreshSnapshot {
+
+	public static final int MAGIC = 0x4F58534E;
+	public static final int VERSION = 2;
+	public static final int VERSION_1 = 1;
+
+	private static final int HEADER_SIZE_V1 = 4 * 4;
+	private static final int HEADER_SIZE = 5 * 4;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final int version;
+	private final int digestMethod;
+	private final int count;
+	private final int digestsPosition;
+	private final int offsetsPosition;
+	private final int dataPosition;
+
+	private CacheRefreshSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.limit() < HEADER_SIZE_V1) {
+			throw new IOException("Snapshot file is too short");
+		}
+
+		int magic = buffer.getInt(0);
+		if (magic != MAGIC) {
+			throw new IOException("Invalid snapshot file header");
+		}
+
+		this.version = buffer.getInt(4);
+		int dataLength;
+		if (version == VERSION_1) {
+			this.digestMethod = CacheRefreshDigestMethod.LEGACY.getId();
+			this.count = buffer.getInt(8);
+			dataLength = buffer.getInt(12);
+
+			this.digestsPosition = HEADER_SIZE_V1;
+			this.offsetsPosition = digestsPosition + 4 * count;
+		} else if ((version == VERSION) && (buffer.limit() >= HEADER_SIZE)) {
+			this.digestMethod = buffer.getInt(8);
+			this.count = buffer.getInt(12);
+			dataLength = buffer.getInt(16);
+
+			this.digestsPosition = HEADER_SIZE;
+			this.offsetsPosition = digestsPosition + 8 * count;
+		} else {
+			throw new IOException(String.format("Unsupported snapshot file version: %d", version));
+		}
+
+		this.dataPosition = offsetsPosition + 4 * (count + 1);
+
+		if ((count < 0) || (dataLength < 0) || (dataPosition + dataLength != buffer.limit())) {
+			throw new IOException("Snapshot file is corrupted");
+		}
+	}
+
+	public static CacheRefreshSnapshot open(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			return new CacheRefreshSnapshot(buffer);
+		} finally {
+			// Mapping stays valid after closing channel
+			IOUtils.closeQuietly(randomAccessFile);
+		}
+	}
+
+	public static void write(File file, CacheRefreshDigestMethod digestMethod, Map<String, Long> inumWithEntryDigestMap) throws IOException {
+		String[] inums = inumWithEntryDigestMap.keySet().toArray(new String[inumWithEntryDigestMap.size()]);
+		Arrays.sort(inums);
+
+		int count = inums.length;
+		byte[][] inumsBytes = new byte[count][];
+		int dataLength = 0;
+		for (int i = 0; i < count; i++) {
+			inumsBytes[i] = inums[i].getBytes(UTF_8);
+			dataLength += inumsBytes[i].length;
+		}
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(digestMethod.getId());
+			dos.writeInt(count);
+			dos.writeInt(dataLength);
+
+			for (int i = 0; i < count; i++) {
+				dos.writeLong(inumWithEntryDigestMap.get(inums[i]));
+			}
+
+			int offset = 0;
+			for (int i = 0; i < count; i++) {
+				dos.writeInt(offset);
+				offset += inumsBytes[i].length;
+			}
+			dos.writeInt(offset);
+
+			for (int i = 0; i < count; i++) {
+				dos.write(inumsBytes[i]);
+			}
+			dos.flush();
+		} finally {
+			IOUtils.closeQuietly(dos);
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public CacheRefreshDigestMethod getDigestMethod() {
+		return CacheRefreshDigestMethod.getById(digestMethod);
+	}
+
+	public long getDigest(int index) {
+		if (version == VERSION_1) {
+			return buffer.getInt(digestsPosition + 4 * index);
+		}
+
+		return buffer.getLong(digestsPosition + 8 * index);
+	}
+
+	public String getInum(int index) {
+		int start = getOffset(index);
+		int length = getOffset(index + 1) - start;
+
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(dataPosition + start + i);
+		}
+
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Compares inums without decoding them. Order is the same as order of sorted
+	 * inum strings because inums contain only ASCII characters
+	 */
+	public int compareInum(int index, CacheRefreshSnapshot other, int otherIndex) {
+		int start = dataPosition + getOffset(index);
+		int length = getOffset(index + 1) - getOffset(index);
+
+		int otherStart = other.dataPosition + other.getOffset(otherIndex);
+		int otherLength = other.getOffset(otherIndex + 1) - other.getOffset(otherIndex);
+
+		int minLength = Math.min(length, otherLength);
+		for (int i = 0; i < minLength; i++) {
+			int b1 = buffer.get(start + i) & 0xFF;
+			int b2 = other.buffer.get(otherStart + i) & 0xFF;
+			if (b1 != b2) {
+				return b1 - b2;
+			}
+		}
+
+		return length - otherLength;
+	}
+
+	private int getOffset(int index) {
+		return buffer.getInt(offsetsPosition + 4 * index);
+	}
+
+}
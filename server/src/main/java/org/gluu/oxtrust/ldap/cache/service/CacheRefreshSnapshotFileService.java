@@ -9,24 +9,31 @@ package org.gluu.oxtrust.ldap.cache.service;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshWatermarks;
+import org.gluu.oxtrust.ldap.cache.model.SourceServerWatermark;
 import org.jboss.seam.ScopeType;
 import org.jboss.seam.annotations.AutoCreate;
 import org.jboss.seam.annotations.Logger;
@@ -36,6 +43,7 @@ import org.jboss.seam.annotations.Startup;
 import org.jboss.seam.log.Log;
 import org.xdi.config.oxtrust.CacheRefreshConfiguration;
 import org.xdi.util.ArrayHelper;
+import org.xdi.util.StringHelper;
 
 /**
  * Helper service to work with snapshots
@@ -51,9 +59,23 @@ public class CacheRefreshSnapshotFileService {
 	@Logger
 	private Log log;
 
-	private static final String SNAPSHOT_FILE_NAME_PATTERN = "inum-snapshot-%s.txt";
+	private static final String SNAPSHOT_FILE_NAME_SUFFIX = ".dat";
+	private static final String SNAPSHOT_FILE_NAME_PATTERN = "inum-snapshot-%s" + SNAPSHOT_FILE_NAME_SUFFIX;
+	private static final String TEXT_SNAPSHOT_FILE_NAME_SUFFIX = ".txt";
+	private static final String TEXT_SNAPSHOT_FILE_NAME_PATTERN = "inum-snapshot-%s" + TEXT_SNAPSHOT_FILE_NAME_SUFFIX;
+	private static final String TEMP_SNAPSHOT_FILE_NAME = "inum-snapshot-current.tmp";
 	private static final String PROBLEM_LIST_FILE_NAME = "problem-inum-list.txt";
 	private static final String SNAPSHOT_FILE_NAME_DATE_PATTERN = "yyyy-MM-dd-HH-mm";
+	private static final String INUM_MAP_STORE_FILE_NAME = "inum-map-store.log";
+	private static final String INUM_MAP_STORE_STAMP_FILE_NAME = "inum-map-store.stamp";
+	private static final String WATERMARKS_FILE_NAME = "source-watermarks.properties";
+	private static final String TEMP_WATERMARKS_FILE_NAME = "source-watermarks.tmp";
+
+	private static final String WATERMARKS_LAST_FULL_RECONCILIATION_TIME = "lastFullReconciliationTime";
+	private static final String WATERMARKS_CONFIGURATION_KEY = "configurationKey";
+	private static final String WATERMARKS_SOURCE_SERVERS = "sourceServers";
+	private static final String WATERMARKS_SOURCE_SERVER_ATTRIBUTE_PATTERN = "sourceServer.%d.attribute";
+	private static final String WATERMARKS_SOURCE_SERVER_VALUE_PATTERN = "sourceServer.%d.value";
 
 	public boolean prepareSnapshotsFolder(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		String snapshotFolder = cacheRefreshConfiguration.getSnapshotFolder();
@@ -71,7 +93,24 @@ public class CacheRefreshSnapshotFileService {
 		return true;
 	}
 
-	public boolean createSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, Map<String, Integer> inumWithEntryHashCodeMap) {
+	public CacheRefreshSnapshot createTempSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, CacheRefreshDigestMethod digestMethod,
+			Map<String, Long> inumWithEntryDigestMap) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return null;
+		}
+
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + TEMP_SNAPSHOT_FILE_NAME);
+		try {
+			CacheRefreshSnapshot.write(file, digestMethod, inumWithEntryDigestMap);
+
+			return CacheRefreshSnapshot.open(file);
+		} catch (IOException ex) {
+			log.error("Failed to create snapshot file '{0}'", ex, file.getAbsolutePath());
+			return null;
+		}
+	}
+
+	public boolean createSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
 			return false;
 		}
@@ -79,31 +118,22 @@ public class CacheRefreshSnapshotFileService {
 		DateFormat fileNameDateFormat = new SimpleDateFormat(SNAPSHOT_FILE_NAME_DATE_PATTERN);
 		String snapshotFileName = String.format(SNAPSHOT_FILE_NAME_PATTERN, fileNameDateFormat.format(new Date()));
 
+		File tempFile = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + TEMP_SNAPSHOT_FILE_NAME);
 		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + snapshotFileName);
-		BufferedWriter bos;
-		try {
-			bos = new BufferedWriter(new FileWriter(file));
-		} catch (IOException ex) {
-			log.error("Failed to create snapshot file '{0}'", ex, file.getAbsolutePath());
+		if (file.exists() && !file.delete()) {
+			log.error("Failed to remove snaphost file '{0}'", file.getAbsolutePath());
 			return false;
 		}
 
-		try {
-			for (Entry<String, Integer> entry : inumWithEntryHashCodeMap.entrySet()) {
-				bos.write(String.format("%s:%d\n", entry.getKey(), entry.getValue()));
-			}
-			bos.flush();
-		} catch (IOException ex) {
-			log.error("Failed to create snapshot file '{0}'", ex, file.getAbsolutePath());
+		if (!tempFile.renameTo(file)) {
+			log.error("Failed to rename snapshot file '{0}' to '{1}'", tempFile.getAbsolutePath(), file.getAbsolutePath());
 			return false;
-		} finally {
-			IOUtils.closeQuietly(bos);
 		}
 
 		return true;
 	}
 
-	public Map<String, Integer> readSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, String snapshotFileName) {
+	public CacheRefreshSnapshot readSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, String snapshotFileName) {
 		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
 			return null;
 		}
@@ -113,6 +143,48 @@ public class CacheRefreshSnapshotFileService {
 			return null;
 		}
 
+		if (snapshotFileName.endsWith(TEXT_SNAPSHOT_FILE_NAME_SUFFIX)) {
+			file = convertTextSnapshot(cacheRefreshConfiguration, file);
+			if (file == null) {
+				return null;
+			}
+		}
+
+		try {
+			return CacheRefreshSnapshot.open(file);
+		} catch (IOException ex) {
+			log.error("Failed to load snapshot file '{0}'", ex, file.getAbsolutePath());
+			return null;
+		}
+	}
+
+	private File convertTextSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration, File textFile) {
+		Map<String, Long> inumWithEntryHashCodeMap = readTextSnapshot(textFile);
+		if (inumWithEntryHashCodeMap == null) {
+			return null;
+		}
+
+		String textFileName = textFile.getName();
+		String snapshotFileName = textFileName.substring(0, textFileName.length() - TEXT_SNAPSHOT_FILE_NAME_SUFFIX.length()) + SNAPSHOT_FILE_NAME_SUFFIX;
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + snapshotFileName);
+		try {
+			// Text snapshots contain hash codes calculated by legacy method
+			CacheRefreshSnapshot.write(file, CacheRefreshDigestMethod.LEGACY, inumWithEntryHashCodeMap);
+		} catch (IOException ex) {
+			log.error("Failed to convert snapshot file '{0}'", ex, textFile.getAbsolutePath());
+			return null;
+		}
+
+		if (!textFile.delete()) {
+			log.error("Failed to remove snaphost file '{0}'", textFile.getAbsolutePath());
+		}
+		log.info("Converted text snapshot file '{0}' with '{1}' entries to '{2}'", textFile.getAbsolutePath(), inumWithEntryHashCodeMap.size(),
+				file.getAbsolutePath());
+
+		return file;
+	}
+
+	private Map<String, Long> readTextSnapshot(File file) {
 		BufferedReader bis;
 		try {
 			bis = new BufferedReader(new FileReader(file));
@@ -121,20 +193,21 @@ public class CacheRefreshSnapshotFileService {
 			return null;
 		}
 
-		Map<String, Integer> result = new HashMap<String, Integer>();
+		Map<String, Long> result = new HashMap<String, Long>();
 		try {
 			String line;
 			while ((line = bis.readLine()) != null) {
-				String[] lineValues = line.split(":");
-				if (lineValues.length != 2) {
+				int index = line.lastIndexOf(':');
+				if ((index == -1) || (line.indexOf(':') != index)) {
 					log.error("Failed to parse line: {0}", line);
 					return null;
 				}
 
+				String hashCode = line.substring(index + 1);
 				try {
-					result.put(lineValues[0], Integer.valueOf(lineValues[1]));
+					result.put(line.substring(0, index), Long.valueOf(Integer.parseInt(hashCode)));
 				} catch (RuntimeException ex) {
-					log.error("Failed to parse '%s' to integer", ex, lineValues[1]);
+					log.error("Failed to parse '%s' to integer", ex, hashCode);
 					return null;
 				}
 			}
@@ -148,7 +221,7 @@ public class CacheRefreshSnapshotFileService {
 		return result;
 	}
 
-	public Map<String, Integer> readLastSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration) {
+	public CacheRefreshSnapshot readLastSnapshot(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
 			return null;
 		}
@@ -163,7 +236,8 @@ public class CacheRefreshSnapshotFileService {
 
 	private String[] getSnapshotsList(CacheRefreshConfiguration cacheRefreshConfiguration) {
 		File file = new File(cacheRefreshConfiguration.getSnapshotFolder());
-		String[] files = file.list(new WildcardFileFilter(String.format(SNAPSHOT_FILE_NAME_PATTERN, "*")));
+		String[] files = file.list(new WildcardFileFilter(new String[] {
+				String.format(SNAPSHOT_FILE_NAME_PATTERN, "*"), String.format(TEXT_SNAPSHOT_FILE_NAME_PATTERN, "*") }));
 		Arrays.sort(files);
 
 		return files;
@@ -252,4 +326,149 @@ public class CacheRefreshSnapshotFileService {
 		return true;
 	}
 
+	public CacheRefreshWatermarks readWatermarks(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return null;
+		}
+
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + WATERMARKS_FILE_NAME);
+		if (!file.exists()) {
+			return null;
+		}
+
+		Properties properties = new Properties();
+		InputStream is = null;
+		try {
+			is = new FileInputStream(file);
+			properties.load(is);
+		} catch (IOException ex) {
+			log.error("Failed to load watermarks from file '{0}'", ex, file.getAbsolutePath());
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		long lastFullReconciliationTime;
+		int sourceServersCount;
+		try {
+			lastFullReconciliationTime = Long.parseLong(properties.getProperty(WATERMARKS_LAST_FULL_RECONCILIATION_TIME));
+			sourceServersCount = Integer.parseInt(properties.getProperty(WATERMARKS_SOURCE_SERVERS + ".count"));
+		} catch (RuntimeException ex) {
+			log.error("Failed to parse watermarks file '{0}'", ex, file.getAbsolutePath());
+			return null;
+		}
+
+		Map<String, SourceServerWatermark> sourceServerWatermarks = new LinkedHashMap<String, SourceServerWatermark>();
+		for (int i = 0; i < sourceServersCount; i++) {
+			String sourceServerName = properties.getProperty(String.format("%s.%d", WATERMARKS_SOURCE_SERVERS, i));
+			String attribute = properties.getProperty(String.format(WATERMARKS_SOURCE_SERVER_ATTRIBUTE_PATTERN, i));
+			String value = properties.getProperty(String.format(WATERMARKS_SOURCE_SERVER_VALUE_PATTERN, i));
+			if (StringHelper.isEmpty(sourceServerName) || StringHelper.isEmpty(attribute) || StringHelper.isEmpty(value)) {
+				log.error("Watermarks file '{0}' is corrupted", file.getAbsolutePath());
+				return null;
+			}
+
+			sourceServerWatermarks.put(sourceServerName, new SourceServerWatermark(sourceServerName, attribute, value));
+		}
+
+		return new CacheRefreshWatermarks(lastFullReconciliationTime, properties.getProperty(WATERMARKS_CONFIGURATION_KEY), sourceServerWatermarks);
+	}
+
+	public boolean writeWatermarks(CacheRefreshConfiguration cacheRefreshConfiguration, CacheRefreshWatermarks watermarks) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return false;
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty(WATERMARKS_LAST_FULL_RECONCILIATION_TIME, Long.toString(watermarks.getLastFullReconciliationTime()));
+		if (watermarks.getConfigurationKey() != null) {
+			properties.setProperty(WATERMARKS_CONFIGURATION_KEY, watermarks.getConfigurationKey());
+		}
+
+		int i = 0;
+		for (SourceServerWatermark sourceServerWatermark : watermarks.getSourceServerWatermarks().values()) {
+			properties.setProperty(String.format("%s.%d", WATERMARKS_SOURCE_SERVERS, i), sourceServerWatermark.getSourceServerName());
+			properties.setProperty(String.format(WATERMARKS_SOURCE_SERVER_ATTRIBUTE_PATTERN, i), sourceServerWatermark.getAttribute());
+			properties.setProperty(String.format(WATERMARKS_SOURCE_SERVER_VALUE_PATTERN, i), sourceServerWatermark.getValue());
+			i++;
+		}
+		properties.setProperty(WATERMARKS_SOURCE_SERVERS + ".count", Integer.toString(i));
+
+		// Write to temporary file first to not lose previous watermarks on failure
+		File tempFile = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + TEMP_WATERMARKS_FILE_NAME);
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + WATERMARKS_FILE_NAME);
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(tempFile);
+			properties.store(os, "Cache Refresh source servers watermarks");
+			os.flush();
+		} catch (IOException ex) {
+			log.error("Failed to write watermarks to file '{0}'", ex, tempFile.getAbsolutePath());
+			return false;
+		} finally {
+			IOUtils.closeQuietly(os);
+		}
+
+		if (file.exists() && !file.delete()) {
+			log.error("Failed to remove watermarks file '{0}'", file.getAbsolutePath());
+			return false;
+		}
+
+		if (!tempFile.renameTo(file)) {
+			log.error("Failed to rename watermarks file '{0}' to '{1}'", tempFile.getAbsolutePath(), file.getAbsolutePath());
+			return false;
+		}
+
+		return true;
+	}
+
+	public File getInumMapStoreFile(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		return new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + INUM_MAP_STORE_FILE_NAME);
+	}
+
+	public boolean removeInumMapStore(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		File file = getInumMapStoreFile(cacheRefreshConfiguration);
+		if (file.exists() && !file.delete()) {
+			log.error("Failed to remove inum map store file '{0}'", file.getAbsolutePath());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stamp is last update time of Cache Refresh which was written to appliance
+	 * by this server. It allows to detect if inum entries were added by another
+	 * server
+	 */
+	public String readInumMapStoreStamp(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + INUM_MAP_STORE_STAMP_FILE_NAME);
+		if (!file.exists()) {
+			return null;
+		}
+
+		try {
+			return FileUtils.readFileToString(file, "UTF-8").trim();
+		} catch (IOException ex) {
+			log.error("Failed to read inum map store stamp from file '{0}'", ex, file.getAbsolutePath());
+			return null;
+		}
+	}
+
+	public boolean writeInumMapStoreStamp(CacheRefreshConfiguration cacheRefreshConfiguration, String stamp) {
+		if (!prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return false;
+		}
+
+		File file = new File(cacheRefreshConfiguration.getSnapshotFolder() + File.separator + INUM_MAP_STORE_STAMP_FILE_NAME);
+		try {
+			FileUtils.writeStringToFile(file, stamp, "UTF-8");
+		} catch (IOException ex) {
+			log.error("Failed to write inum map store stamp to file '{0}'", ex, file.getAbsolutePath());
+			return false;
+		}
+
+		return true;
+	}
+
 }
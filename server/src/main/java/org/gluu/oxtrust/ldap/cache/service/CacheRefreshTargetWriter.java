@@ -0,0 +1,128 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.jboss.seam.log.Log;
+
+/**
+ * Writes prepared target entries in worker threads. Count of submitted but not
+ * finished LDAP operations is limited. Caller blocks in submit methods until
+ * one of the running operations finishes
+ *
+ * Workers use only LdapEntryManager and don't call Seam components
+ */
+public class CacheRefreshTargetWriter {
+
+	private final LdapEntryManager ldapEntryManager;
+	private final Log log;
+
+	private final ExecutorService executorService;
+	private final Semaphore inFlightOperations;
+
+	private final ConcurrentLinkedQueue<String> updatedInums;
+	private final AtomicInteger addedCount;
+	private final AtomicInteger modifiedCount;
+	private final AtomicInteger failedCount;
+
+	public CacheRefreshTargetWriter(LdapEntryManager ldapEntryManager, Log log, int threadsCount, int maxInFlightOperations) {
+		this.ldapEntryManager = ldapEntryManager;
+		this.log = log;
+
+		this.executorService = Executors.newFixedThreadPool(threadsCount);
+		this.inFlightOperations = new Semaphore(maxInFlightOperations);
+
+		this.updatedInums = new ConcurrentLinkedQueue<String>();
+		this.addedCount = new AtomicInteger();
+		this.modifiedCount = new AtomicInteger();
+		this.failedCount = new AtomicInteger();
+	}
+
+	public void addPerson(String inum, GluuCustomPerson person) throws InterruptedException {
+		submit(inum, person, false);
+	}
+
+	public void updatePerson(String inum, GluuCustomPerson person) throws InterruptedException {
+		submit(inum, person, true);
+	}
+
+	private void submit(final String inum, final GluuCustomPerson person, final boolean updatePerson) throws InterruptedException {
+		inFlightOperations.acquire();
+		try {
+			executorService.execute(new Runnable() {
+				public void run() {
+					try {
+						write(inum, person, updatePerson);
+					} finally {
+						inFlightOperations.release();
+					}
+				}
+			});
+		} catch (RuntimeException ex) {
+			inFlightOperations.release();
+			throw ex;
+		}
+	}
+
+	private void write(String inum, GluuCustomPerson person, boolean updatePerson) {
+		try {
+			if (updatePerson) {
+				ldapEntryManager.merge(person);
+				modifiedCount.incrementAndGet();
+				log.debug("Updated person '{0}'", inum);
+			} else {
+				ldapEntryManager.persist(person);
+				addedCount.incrementAndGet();
+				log.debug("Added new person '{0}'", inum);
+			}
+			updatedInums.add(inum);
+		} catch (Exception ex) {
+			failedCount.incrementAndGet();
+			log.error("Failed to '{0}' person '{1}'", ex, updatePerson ? "update" : "add", inum);
+		}
+	}
+
+	/**
+	 * Waits for all submitted operations and returns inums of successfully
+	 * written entries
+	 */
+	public List<String> finish() throws InterruptedException {
+		executorService.shutdown();
+		while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+			log.debug("Waiting for target server write operations");
+		}
+
+		return new ArrayList<String>(updatedInums);
+	}
+
+	public void shutdown() {
+		executorService.shutdownNow();
+	}
+
+	public int getAddedCount() {
+		return addedCount.get();
+	}
+
+	public int getModifiedCount() {
+		return modifiedCount.get();
+	}
+
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+
+}
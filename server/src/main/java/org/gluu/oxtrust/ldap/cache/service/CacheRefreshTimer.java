@@ -6,34 +6,52 @@
 
 package org.gluu.oxtrust.ldap.cache.service;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.beanutils.BeanUtilsBean2;
 import org.apache.commons.io.FilenameUtils;
 import org.gluu.oxtrust.config.OxTrustConfiguration;
 import org.gluu.oxtrust.ldap.cache.model.CacheCompoundKey;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshRunMetrics;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshWatermarks;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshTuningConfiguration;
 import org.gluu.oxtrust.ldap.cache.model.GluuInumMap;
 import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.ldap.cache.model.SourcePersonDigest;
+import org.gluu.oxtrust.ldap.cache.model.SourceServerLoadStatistics;
+import org.gluu.oxtrust.ldap.cache.model.SourceServerWatermark;
 import org.gluu.oxtrust.ldap.service.ApplianceService;
 import org.gluu.oxtrust.ldap.service.AttributeService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
 import org.gluu.oxtrust.ldap.service.InumService;
+import org.gluu.oxtrust.ldap.service.LdapPagedSearch;
 import org.gluu.oxtrust.model.GluuAppliance;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
@@ -42,6 +60,7 @@ import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.oxtrust.util.PropertyUtil;
 import org.gluu.site.ldap.LDAPConnectionProvider;
 import org.gluu.site.ldap.OperationsFacade;
+import org.gluu.site.ldap.persistence.AttributeData;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
 import org.gluu.site.ldap.persistence.exception.EntryPersistenceException;
 import org.gluu.site.ldap.persistence.exception.LdapMappingException;
@@ -72,6 +91,9 @@ import org.xdi.util.StringHelper;
 import org.xdi.util.security.PropertiesDecrypter;
 
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
 
 /**
  * Check periodically if source servers contains updates and trigger target
@@ -133,13 +155,18 @@ public class CacheRefreshTimer {
 	private AtomicBoolean isActive;
 	private long lastFinishedTime;
 
+	private volatile List<SourceServerLoadStatistics> lastSourceServerLoadStatistics = new ArrayList<SourceServerLoadStatistics>(0);
+
+	private CacheRefreshMetricsCollector metricsCollector;
+	private final LinkedList<CacheRefreshRunMetrics> runMetricsHistory = new LinkedList<CacheRefreshRunMetrics>();
+
 	@Observer("org.jboss.seam.postInitialization")
 	public void init() {
 		log.info("Initializing CacheRefreshTimer...");
 		this.isActive = new AtomicBoolean(false);
 		this.lastFinishedTime = System.currentTimeMillis();
 		
-		// Clean up previous Inum cache
+		// Clean up Inum cache of previous versions. Inum entries are kept in inum map store now
 		CacheRefreshConfiguration cacheRefreshConfiguration = oxTrustConfiguration.getCacheRefreshConfiguration();
 		if (cacheRefreshConfiguration != null) {
 			String snapshotFolder = cacheRefreshConfiguration.getSnapshotFolder();
@@ -175,12 +202,18 @@ public class CacheRefreshTimer {
 				return;
 			}
 
-			processImpl(cacheRefreshConfiguration, currentAppliance);
-			updateApplianceStatus(currentAppliance, System.currentTimeMillis());
+			this.metricsCollector = new CacheRefreshMetricsCollector();
+			boolean result = processImpl(cacheRefreshConfiguration, currentAppliance);
+			String lastUpdate = updateApplianceStatus(currentAppliance, System.currentTimeMillis());
+
+			// Allows to detect if another server will update inum entries
+			cacheRefreshSnapshotFileService.writeInumMapStoreStamp(cacheRefreshConfiguration, lastUpdate);
 
 			this.lastFinishedTime = System.currentTimeMillis();
+			finishRunMetrics(result);
 		} catch (Throwable ex) {
 			log.error("Exception happened while executing cache refresh synchronization", ex);
+			finishRunMetrics(false);
 		} finally {
 			log.debug("Allowing to run new process exclusively");
 			this.isActive.set(false);
@@ -240,7 +273,25 @@ public class CacheRefreshTimer {
 		return timeDiffrence >= poolingInterval;
 	}
 
-	private void processImpl(CacheRefreshConfiguration cacheRefreshConfiguration, GluuAppliance currentAppliance) {
+	private void finishRunMetrics(boolean success) {
+		if (this.metricsCollector == null) {
+			return;
+		}
+
+		CacheRefreshRunMetrics runMetrics = this.metricsCollector.finish(success);
+		this.metricsCollector = null;
+		log.info("Cache refresh run metrics: {0}", runMetrics);
+
+		int historySize = oxTrustConfiguration.getCacheRefreshTuningConfiguration().getMetricsHistorySize();
+		synchronized (runMetricsHistory) {
+			runMetricsHistory.addFirst(runMetrics);
+			while (runMetricsHistory.size() > historySize) {
+				runMetricsHistory.removeLast();
+			}
+		}
+	}
+
+	private boolean processImpl(CacheRefreshConfiguration cacheRefreshConfiguration, GluuAppliance currentAppliance) {
 		CacheRefreshUpdateMethod updateMethod = getUpdateMethod(cacheRefreshConfiguration);
 
 		// Prepare and check connections to LDAP servers
@@ -266,8 +317,9 @@ public class CacheRefreshTimer {
 		try {
 			if ((sourceServerConnections == null) || (inumDbServerConnection == null) || (isVdsUpdate && (targetServerConnection == null))) {
 				log.error("Skipping cache refresh due to invalid server configuration");
+				return false;
 			} else {
-				detectChangedEntries(cacheRefreshConfiguration, currentAppliance, sourceServerConnections, inumDbServerConnection, targetServerConnection,
+				return detectChangedEntries(cacheRefreshConfiguration, currentAppliance, sourceServerConnections, inumDbServerConnection, targetServerConnection,
 						updateMethod);
 			}
 		} finally {
@@ -290,65 +342,97 @@ public class CacheRefreshTimer {
 				// Nothing can be done
 			}
 		}
-
-		return;
 	}
 
-	@SuppressWarnings("unchecked")
 	private boolean detectChangedEntries(CacheRefreshConfiguration cacheRefreshConfiguration, GluuAppliance currentAppliance, LdapServerConnection[] sourceServerConnections,
 			LdapServerConnection inumDbServerConnection, LdapServerConnection targetServerConnection, CacheRefreshUpdateMethod updateMethod) {
+		// Load all inum entries
+		CacheRefreshInumMapStore inumMapStore = openInumMapStore(cacheRefreshConfiguration, currentAppliance, inumDbServerConnection);
+		if (inumMapStore == null) {
+			return false;
+		}
+
+		try {
+			return detectChangedEntries(cacheRefreshConfiguration, currentAppliance, sourceServerConnections, inumDbServerConnection, targetServerConnection,
+					updateMethod, inumMapStore);
+		} catch (IOException ex) {
+			log.error("Failed to update inum map store. It will be reloaded from inum server", ex);
+			inumMapStore.close();
+			cacheRefreshSnapshotFileService.removeInumMapStore(cacheRefreshConfiguration);
+			return false;
+		} finally {
+			inumMapStore.close();
+		}
+	}
+
+	private boolean detectChangedEntries(CacheRefreshConfiguration cacheRefreshConfiguration, GluuAppliance currentAppliance, LdapServerConnection[] sourceServerConnections,
+			LdapServerConnection inumDbServerConnection, LdapServerConnection targetServerConnection, CacheRefreshUpdateMethod updateMethod,
+			CacheRefreshInumMapStore inumMapStore) throws IOException {
 		boolean isVDSMode = CacheRefreshUpdateMethod.VDS.equals(updateMethod);
+		boolean isStreamingMode = oxTrustConfiguration.getCacheRefreshTuningConfiguration().isSourceStreamingEnabled();
+		EntryDigester entryDigester = createEntryDigester(oxTrustConfiguration.getCacheRefreshTuningConfiguration().getDigestMethod());
+
+		// Capture source servers watermarks before loading entries. Entries changed during this run will be loaded again by next run
+		long runStartTime = System.currentTimeMillis();
+		Map<String, SourceServerWatermark> currentSourceServerWatermarks = null;
+		if (isIncrementalModeEnabled(isVDSMode)) {
+			currentSourceServerWatermarks = getSourceServerWatermarks(sourceServerConnections);
+			CacheRefreshWatermarks watermarks = cacheRefreshSnapshotFileService.readWatermarks(cacheRefreshConfiguration);
+			if ((currentSourceServerWatermarks != null)
+					&& isIncrementalRun(cacheRefreshConfiguration, watermarks, currentSourceServerWatermarks, runStartTime)) {
+				CacheRefreshSnapshot prevInumSnapshot = cacheRefreshSnapshotFileService.readLastSnapshot(cacheRefreshConfiguration);
+				if ((prevInumSnapshot != null) && (prevInumSnapshot.getDigestMethod() == entryDigester.getDigestMethod())) {
+					return detectChangedEntriesIncrementally(cacheRefreshConfiguration, currentAppliance, sourceServerConnections, inumDbServerConnection,
+							inumMapStore, entryDigester, prevInumSnapshot, watermarks, currentSourceServerWatermarks);
+				}
+				log.info("There is no snapshot which can be used by incremental run. Starting full reconciliation");
+			}
+		}
 
 		// Load all entries from Source servers
 		log.info("Attempting to load entries from source server");
-		List<GluuSimplePerson> sourcePersons;
-		
-		if (cacheRefreshConfiguration.isUseSearchLimit()) {
-			sourcePersons = loadSourceServerEntries(cacheRefreshConfiguration, sourceServerConnections);
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_SOURCE_LOAD);
+		Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap = null;
+		Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigestCacheCompoundKeyMap = null;
+		Set<CacheCompoundKey> sourceCacheCompoundKeys;
+
+		if (isStreamingMode) {
+			// Keep only key, DN and hash code of source entries
+			sourcePersonDigestCacheCompoundKeyMap = loadSourceServerDigests(cacheRefreshConfiguration, sourceServerConnections, entryDigester);
+			sourceCacheCompoundKeys = sourcePersonDigestCacheCompoundKeyMap.keySet();
 		} else {
-			sourcePersons = loadSourceServerEntriesWithoutLimits(cacheRefreshConfiguration, sourceServerConnections);
-		}
-
-		log.info("Found '{0}' entries in source server", sourcePersons.size());
-
-		Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap = getSourcePersonCompoundKeyMap(cacheRefreshConfiguration, sourcePersons);
-		log.info("Found '{0}' unique entries in source server", sourcePersonCacheCompoundKeyMap.size());
-
-		// Load all inum entries
-		List<GluuInumMap> inumMaps = null;
-
-		// Load all inum entries from local disk cache
-		String inumCachePath = getInumCachePath(cacheRefreshConfiguration);
-		Object loadedObject = objectSerializationService.loadObject(inumCachePath);
-		if (loadedObject != null) {
-			try {
-				inumMaps = (List<GluuInumMap>) loadedObject;
-				log.debug("Found '{0}' entries in inum objects disk cache", inumMaps.size());
-			} catch (Exception ex) {
-				log.error("Failed to convert to GluuInumMap list", ex);
-				objectSerializationService.cleanup(inumCachePath);
+			List<GluuSimplePerson> sourcePersons;
+			if (cacheRefreshConfiguration.isUseSearchLimit()) {
+				sourcePersons = loadSourceServerEntries(cacheRefreshConfiguration, sourceServerConnections);
+			} else {
+				sourcePersons = loadSourceServerEntriesWithoutLimits(cacheRefreshConfiguration, sourceServerConnections);
 			}
-		}
 
-		if (inumMaps == null) {
-			// Load all inum entries from LDAP
-			inumMaps = loadInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection);
-			log.info("Found '{0}' entries in inum server", inumMaps.size());
-		}
+			log.info("Found '{0}' entries in source server", sourcePersons.size());
 
-		HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap = getPrimaryKeyAttrValueInumMap(inumMaps);
+			sourcePersonCacheCompoundKeyMap = getSourcePersonCompoundKeyMap(cacheRefreshConfiguration, sourcePersons);
+			sourceCacheCompoundKeys = sourcePersonCacheCompoundKeyMap.keySet();
+		}
+		log.info("Found '{0}' unique entries in source server", sourceCacheCompoundKeys.size());
+		endSourceLoadPhase(sourceCacheCompoundKeys.size());
 
 		// Go through Source entries and create new InumMap entries if needed
-		HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap = addNewInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection,
-				sourcePersonCacheCompoundKeyMap, primaryKeyAttrValueInumMap);
+		addNewInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection, sourceCacheCompoundKeys, inumMapStore);
 
-		HashMap<CacheCompoundKey, GluuInumMap> allPrimaryKeyAttrValueInumMap = getAllInumServerEntries(primaryKeyAttrValueInumMap,
-				addedPrimaryKeyAttrValueInumMap);
+		Map<CacheCompoundKey, GluuInumMap> allPrimaryKeyAttrValueInumMap = inumMapStore.getPrimaryKeyAttrValueInumMap();
 		log.debug("Count actual inum entries '{0}' after updating inum server", allPrimaryKeyAttrValueInumMap.size());
 
-		HashMap<String, Integer> currInumWithEntryHashCodeMap = getSourcePersonsHashCodesMap(inumDbServerConnection,
-				sourcePersonCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap);
-		log.debug("Count actual source entries '{0}' after calculating hash code", currInumWithEntryHashCodeMap.size());
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_DIGEST);
+		HashMap<String, Long> currInumWithEntryDigestMap;
+		if (isStreamingMode) {
+			currInumWithEntryDigestMap = getSourcePersonDigestsMap(sourcePersonDigestCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap);
+		} else {
+			currInumWithEntryDigestMap = getSourcePersonsDigestsMap(entryDigester, sourcePersonCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap);
+		}
+		log.debug("Count actual source entries '{0}' after calculating '{1}' digest", currInumWithEntryDigestMap.size(), entryDigester.getDigestMethod());
+		metricsCollector.endPhase(currInumWithEntryDigestMap.size());
+
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_CHANGE_DETECTION);
 
 		// Create snapshots cache folder if needed
 		boolean result = cacheRefreshSnapshotFileService.prepareSnapshotsFolder(cacheRefreshConfiguration);
@@ -356,11 +440,18 @@ public class CacheRefreshTimer {
 			return false;
 		}
 
-		// Load last snapshot into memory
-		Map<String, Integer> prevInumWithEntryHashCodeMap = cacheRefreshSnapshotFileService.readLastSnapshot(cacheRefreshConfiguration);
+		// Persist current snapshot into temporary file. It will be renamed after target server update
+		CacheRefreshSnapshot currInumSnapshot = cacheRefreshSnapshotFileService.createTempSnapshot(cacheRefreshConfiguration, entryDigester.getDigestMethod(),
+				currInumWithEntryDigestMap);
+		if (currInumSnapshot == null) {
+			return false;
+		}
+
+		// Map last snapshot into memory
+		CacheRefreshSnapshot prevInumSnapshot = cacheRefreshSnapshotFileService.readLastSnapshot(cacheRefreshConfiguration);
 
 		// Compare 2 snapshot and invoke update if needed
-		Set<String> changedInums = getChangedInums(currInumWithEntryHashCodeMap, prevInumWithEntryHashCodeMap, isVDSMode);
+		Set<String> changedInums = getChangedInums(currInumSnapshot, prevInumSnapshot, isVDSMode);
 		log.info("Found '{0}' changed entries", changedInums.size());
 
 		// Load problem list from disk and add to changedInums
@@ -371,20 +462,30 @@ public class CacheRefreshTimer {
 			changedInums.addAll(problemInums);
 		}
 
+		metricsCollector.endPhase(changedInums.size());
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_CHANGED_ENTRIES, changedInums.size());
+
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_TARGET_UPDATE);
 		List<String> updatedInums = null;
 		if (isVDSMode) {
 			// Update request to VDS to update entries on target server
 			updatedInums = updateTargetEntriesViaVDS(cacheRefreshConfiguration, targetServerConnection, changedInums);
 		} else {
+			if (isStreamingMode) {
+				// Load full entries only for changed inums
+				sourcePersonCacheCompoundKeyMap = loadChangedSourcePersons(cacheRefreshConfiguration, sourceServerConnections,
+						sourcePersonDigestCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap, changedInums);
+			}
 			updatedInums = updateTargetEntriesViaCopy(cacheRefreshConfiguration, sourcePersonCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap, changedInums);
 		}
 
 		log.info("Updated '{0}' entries", updatedInums.size());
 		changedInums.removeAll(updatedInums);
 		log.info("Failed to update '{0}' entries", changedInums.size());
+		endTargetUpdatePhase(updatedInums.size(), changedInums.size());
 
 		// Persist snapshot to cache folder
-		result = cacheRefreshSnapshotFileService.createSnapshot(cacheRefreshConfiguration, currInumWithEntryHashCodeMap);
+		result = cacheRefreshSnapshotFileService.createSnapshot(cacheRefreshConfiguration);
 		if (!result) {
 			return false;
 		}
@@ -397,13 +498,14 @@ public class CacheRefreshTimer {
 		cacheRefreshSnapshotFileService.writeProblemList(cacheRefreshConfiguration, changedInums);
 
 		// Prepare list of persons for removal
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_REMOVAL);
 		List<GluuSimplePerson> personsForRemoval = null;
 
 		boolean keepExternalPerson = cacheRefreshConfiguration.isKeepExternalPerson();
 		log.debug("Keep external persons: '{0}'", keepExternalPerson);
 		if (keepExternalPerson) {
 			// Determine entries which need to remove
-			personsForRemoval = getRemovedPersons(currInumWithEntryHashCodeMap, prevInumWithEntryHashCodeMap);
+			personsForRemoval = getRemovedPersons(currInumSnapshot, prevInumSnapshot);
 		} else {
 			// Process entries which don't exist in source server
 	
@@ -412,89 +514,362 @@ public class CacheRefreshTimer {
 			log.info("Found '{0}' entries in target server", targetPersons.size());
 	
 			// Detect entries which need to remove
-			personsForRemoval = processTargetPersons(targetPersons, currInumWithEntryHashCodeMap);
+			personsForRemoval = processTargetPersons(targetPersons, currInumWithEntryDigestMap);
 		}
 		log.debug("Count entries '{0}' for removal from target server", personsForRemoval.size());
 
 		// Remove entries from target server
-		HashMap<String, GluuInumMap> inumInumMap = getInumInumMap(inumMaps);
-		Pair<List<String>, List<String>> removeTargetEntriesResult = removeTargetEntries(inumDbServerConnection, ldapEntryManager, personsForRemoval, inumInumMap);
+		Pair<List<String>, List<String>> removeTargetEntriesResult = removeTargetEntries(inumDbServerConnection, ldapEntryManager, personsForRemoval,
+				inumMapStore.getInumInumMap());
 		List<String> removedPersonInums = removeTargetEntriesResult.getFirst();
 		List<String> removedGluuInumMaps = removeTargetEntriesResult.getSecond();
 		log.info("Removed '{0}' persons from target server", removedPersonInums.size());
+		metricsCollector.endPhase(removedPersonInums.size());
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_REMOVED_ENTRIES, removedPersonInums.size());
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_DELETES, removedPersonInums.size());
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_MODIFIES, removedGluuInumMaps.size());
 
-		// Prepare list of inum for serialization
-		ArrayList<GluuInumMap> currentInumMaps = applyChangesToInumMap(inumInumMap, addedPrimaryKeyAttrValueInumMap, removedGluuInumMaps);
-
-		// Strore all inum entries into local disk cache
-		objectSerializationService.saveObject(inumCachePath, currentInumMaps);
+		// Inum entries which were marked as removed aren't needed anymore
+		inumMapStore.remove(removedGluuInumMaps);
+		compactInumMapStore(inumMapStore);
 
 		currentAppliance.setVdsCacheRefreshLastUpdateCount(String.valueOf(updatedInums.size() + removedPersonInums.size()));
 
+		if (currentSourceServerWatermarks != null) {
+			cacheRefreshSnapshotFileService.writeWatermarks(cacheRefreshConfiguration, new CacheRefreshWatermarks(runStartTime,
+					getConfigurationKey(cacheRefreshConfiguration), currentSourceServerWatermarks));
+		}
+
 		return true;
 	}
 
-	private ArrayList<GluuInumMap> applyChangesToInumMap(HashMap<String, GluuInumMap> inumInumMap,
-			HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap, List<String> removedGluuInumMaps) {
-		log.info("There are '{0}' entries before updating inum list", inumInumMap.size());
-		for (String removedGluuInumMap : removedGluuInumMaps) {
-			inumInumMap.remove(removedGluuInumMap);
+	private boolean detectChangedEntriesIncrementally(CacheRefreshConfiguration cacheRefreshConfiguration, GluuAppliance currentAppliance,
+			LdapServerConnection[] sourceServerConnections, LdapServerConnection inumDbServerConnection, CacheRefreshInumMapStore inumMapStore,
+			EntryDigester entryDigester, CacheRefreshSnapshot prevInumSnapshot, CacheRefreshWatermarks watermarks,
+			Map<String, SourceServerWatermark> currentSourceServerWatermarks) throws IOException {
+		// Load entries which were changed after previous run
+		log.info("Attempting to load changed entries from source server");
+		metricsCollector.setIncremental(true);
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_SOURCE_LOAD);
+		List<GluuSimplePerson> sourcePersons = loadChangedSourceServerEntries(cacheRefreshConfiguration, sourceServerConnections,
+				watermarks.getSourceServerWatermarks());
+		log.info("Found '{0}' changed entries in source server", sourcePersons.size());
+
+		Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap = getSourcePersonCompoundKeyMap(cacheRefreshConfiguration, sourcePersons);
+		endSourceLoadPhase(sourcePersonCacheCompoundKeyMap.size());
+
+		// Create new InumMap entries for new source entries
+		addNewInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection, sourcePersonCacheCompoundKeyMap.keySet(), inumMapStore);
+
+		Map<CacheCompoundKey, GluuInumMap> allPrimaryKeyAttrValueInumMap = inumMapStore.getPrimaryKeyAttrValueInumMap();
+
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_DIGEST);
+		HashMap<String, Long> changedInumWithEntryDigestMap = getSourcePersonsDigestsMap(entryDigester, sourcePersonCacheCompoundKeyMap,
+				allPrimaryKeyAttrValueInumMap);
+		metricsCollector.endPhase(changedInumWithEntryDigestMap.size());
+
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_CHANGE_DETECTION);
+
+		// Apply digests of loaded entries to last snapshot. Entry is changed only if digest was changed
+		HashMap<String, Long> currInumWithEntryDigestMap = new HashMap<String, Long>(prevInumSnapshot.size() + changedInumWithEntryDigestMap.size());
+		for (int i = 0; i < prevInumSnapshot.size(); i++) {
+			currInumWithEntryDigestMap.put(prevInumSnapshot.getInum(i), prevInumSnapshot.getDigest(i));
+		}
+
+		Set<String> changedInums = new HashSet<String>();
+		for (Entry<String, Long> changedInumWithEntryDigestEntry : changedInumWithEntryDigestMap.entrySet()) {
+			String inum = changedInumWithEntryDigestEntry.getKey();
+			Long prevDigest = currInumWithEntryDigestMap.put(inum, changedInumWithEntryDigestEntry.getValue());
+			if ((prevDigest == null) || (prevDigest.longValue() != changedInumWithEntryDigestEntry.getValue().longValue())) {
+				changedInums.add(inum);
+			}
+		}
+		log.info("Found '{0}' changed entries", changedInums.size());
+
+		// Persist current snapshot into temporary file. It will be renamed after target server update
+		CacheRefreshSnapshot currInumSnapshot = cacheRefreshSnapshotFileService.createTempSnapshot(cacheRefreshConfiguration, entryDigester.getDigestMethod(),
+				currInumWithEntryDigestMap);
+		if (currInumSnapshot == null) {
+			return false;
+		}
+
+		// Load problem list from disk and add to changedInums
+		List<String> problemInums = cacheRefreshSnapshotFileService.readProblemList(cacheRefreshConfiguration);
+		if (problemInums != null) {
+			log.info("Loaded '{0}' problem entries from problem file", problemInums.size());
+			// Process inums from problem list too
+			changedInums.addAll(problemInums);
+		}
+
+		// Problem entries can be not loaded by incremental search
+		Set<String> notLoadedInums = new HashSet<String>(changedInums);
+		notLoadedInums.removeAll(changedInumWithEntryDigestMap.keySet());
+		if (notLoadedInums.size() > 0) {
+			sourcePersonCacheCompoundKeyMap.putAll(loadSourceServerEntriesByInums(cacheRefreshConfiguration, sourceServerConnections,
+					allPrimaryKeyAttrValueInumMap, notLoadedInums));
+		}
+
+		metricsCollector.endPhase(changedInums.size());
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_CHANGED_ENTRIES, changedInums.size());
+
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_TARGET_UPDATE);
+		List<String> updatedInums = updateTargetEntriesViaCopy(cacheRefreshConfiguration, sourcePersonCacheCompoundKeyMap, allPrimaryKeyAttrValueInumMap,
+				changedInums);
+
+		log.info("Updated '{0}' entries", updatedInums.size());
+		changedInums.removeAll(updatedInums);
+		log.info("Failed to update '{0}' entries", changedInums.size());
+		endTargetUpdatePhase(updatedInums.size(), changedInums.size());
+
+		// Persist snapshot to cache folder
+		boolean result = cacheRefreshSnapshotFileService.createSnapshot(cacheRefreshConfiguration);
+		if (!result) {
+			return false;
+		}
+
+		// Retain only specified number of snapshots
+		cacheRefreshSnapshotFileService.retainSnapshots(cacheRefreshConfiguration, cacheRefreshConfiguration.getSnapshotMaxCount());
+
+		// Save changedInums as problem list to disk
+		currentAppliance.setVdsCacheRefreshProblemCount(String.valueOf(changedInums.size()));
+		cacheRefreshSnapshotFileService.writeProblemList(cacheRefreshConfiguration, changedInums);
+
+		// Removed entries are detected by full reconciliation only
+		compactInumMapStore(inumMapStore);
+
+		currentAppliance.setVdsCacheRefreshLastUpdateCount(String.valueOf(updatedInums.size()));
+
+		cacheRefreshSnapshotFileService.writeWatermarks(cacheRefreshConfiguration, new CacheRefreshWatermarks(watermarks.getLastFullReconciliationTime(),
+				watermarks.getConfigurationKey(), currentSourceServerWatermarks));
+
+		return true;
+	}
+
+	private void endSourceLoadPhase(int sourceEntriesCount) {
+		metricsCollector.endPhase(sourceEntriesCount);
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_SOURCE_ENTRIES, sourceEntriesCount);
+
+		long searchCount = 0;
+		for (SourceServerLoadStatistics sourceServerLoadStatistics : lastSourceServerLoadStatistics) {
+			searchCount += sourceServerLoadStatistics.getSearchCount();
+		}
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_SEARCHES, searchCount);
+	}
+
+	private void endTargetUpdatePhase(int updatedEntriesCount, int failedEntriesCount) {
+		metricsCollector.endPhase(updatedEntriesCount);
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_UPDATED_ENTRIES, updatedEntriesCount);
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_FAILED_ENTRIES, failedEntriesCount);
+	}
+
+	private boolean isIncrementalModeEnabled(boolean isVDSMode) {
+		if (!oxTrustConfiguration.getCacheRefreshTuningConfiguration().isIncrementalEnabled()) {
+			return false;
+		}
+
+		if (isVDSMode) {
+			log.debug("Incremental mode isn't supported with VDS update method");
+			return false;
+		}
+
+		return true;
+	}
+
+	private boolean isIncrementalRun(CacheRefreshConfiguration cacheRefreshConfiguration, CacheRefreshWatermarks watermarks,
+			Map<String, SourceServerWatermark> currentSourceServerWatermarks, long runStartTime) {
+		if (watermarks == null) {
+			log.info("There are no source servers watermarks. Starting full reconciliation");
+			return false;
+		}
+
+		if (!StringHelper.equals(getConfigurationKey(cacheRefreshConfiguration), watermarks.getConfigurationKey())) {
+			log.info("Cache Refresh configuration was changed. Starting full reconciliation");
+			return false;
+		}
+
+		long fullReconciliationInterval = oxTrustConfiguration.getCacheRefreshTuningConfiguration().getFullReconciliationInterval() * 60 * 1000L;
+		if (runStartTime - watermarks.getLastFullReconciliationTime() >= fullReconciliationInterval) {
+			log.info("Starting scheduled full reconciliation");
+			return false;
+		}
+
+		for (SourceServerWatermark currentSourceServerWatermark : currentSourceServerWatermarks.values()) {
+			SourceServerWatermark sourceServerWatermark = watermarks.getSourceServerWatermarks().get(currentSourceServerWatermark.getSourceServerName());
+			if ((sourceServerWatermark == null)
+					|| !StringHelper.equalsIgnoreCase(sourceServerWatermark.getAttribute(), currentSourceServerWatermark.getAttribute())) {
+				log.info("There is no watermark for source server '{0}'. Starting full reconciliation",
+						currentSourceServerWatermark.getSourceServerName());
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private Map<String, SourceServerWatermark> getSourceServerWatermarks(LdapServerConnection[] sourceServerConnections) {
+		CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration = oxTrustConfiguration.getCacheRefreshTuningConfiguration();
+
+		Map<String, SourceServerWatermark> result = new LinkedHashMap<String, SourceServerWatermark>();
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			String sourceServerName = sourceServerConnection.getSourceServerName();
+			try {
+				SourceServerWatermark sourceServerWatermark = SourceServerWatermarks.getCurrentWatermark(sourceServerName,
+						sourceServerConnection.getConnectionPool(), cacheRefreshTuningConfiguration.getIncrementalWatermarkAttribute(),
+						cacheRefreshTuningConfiguration.getIncrementalTimeOverlap());
+				log.debug("Current watermark of source server '{0}': {1}", sourceServerName, sourceServerWatermark);
+				result.put(sourceServerName, sourceServerWatermark);
+			} catch (LDAPException ex) {
+				log.error("Failed to determine watermark of source server '{0}'", ex, sourceServerName);
+				return null;
+			}
+		}
+
+		return result;
+	}
+
+	private String getConfigurationKey(CacheRefreshConfiguration cacheRefreshConfiguration) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(cacheRefreshConfiguration.getKeyAttributes()).append(cacheRefreshConfiguration.getKeyObjectClasses())
+				.append(cacheRefreshConfiguration.getSourceAttributes()).append(cacheRefreshConfiguration.getCustomLdapFilter());
+		for (GluuLdapConfiguration sourceConfig : cacheRefreshConfiguration.getSourceConfigs()) {
+			builder.append(sourceConfig.getConfigId()).append(sourceConfig.getBaseDNsStringsList());
+		}
+
+		return Integer.toHexString(builder.toString().hashCode());
+	}
+
+	private CacheRefreshInumMapStore openInumMapStore(CacheRefreshConfiguration cacheRefreshConfiguration, GluuAppliance currentAppliance,
+			LdapServerConnection inumDbServerConnection) {
+		if (!cacheRefreshSnapshotFileService.prepareSnapshotsFolder(cacheRefreshConfiguration)) {
+			return null;
+		}
+
+		File inumMapStoreFile = cacheRefreshSnapshotFileService.getInumMapStoreFile(cacheRefreshConfiguration);
+
+		CacheRefreshInumMapStore inumMapStore;
+		try {
+			inumMapStore = CacheRefreshInumMapStore.open(inumMapStoreFile);
+			if (inumMapStore.getTruncatedBytes() > 0) {
+				log.warn("Dropped '{0}' bytes of incomplete records from inum map store '{1}'", inumMapStore.getTruncatedBytes(),
+						inumMapStoreFile.getAbsolutePath());
+			}
+		} catch (IOException ex) {
+			log.error("Failed to open inum map store '{0}'", ex, inumMapStoreFile.getAbsolutePath());
+			return null;
 		}
-		log.info("There are '{0}' entries after removal '{1}' entries", inumInumMap.size(), removedGluuInumMaps.size());
-		
-		ArrayList<GluuInumMap> currentInumMaps = new ArrayList<GluuInumMap>(inumInumMap.values());
-		currentInumMaps.addAll(addedPrimaryKeyAttrValueInumMap.values());
-		log.info("There are '{0}' entries after adding '{1}' entries", currentInumMaps.size(), addedPrimaryKeyAttrValueInumMap.size());
 
-		return currentInumMaps;
+		boolean reload = inumMapStore.isEmpty();
+		if (!reload) {
+			// Another server could add inum entries if it was Cache Refresh server after last run on this server
+			String stamp = cacheRefreshSnapshotFileService.readInumMapStoreStamp(cacheRefreshConfiguration);
+			if (!StringHelper.equals(stamp, currentAppliance.getVdsCacheRefreshLastUpdate())) {
+				log.info("Inum map store is outdated. Reloading inum entries from inum server");
+				reload = true;
+			} else {
+				log.debug("Found '{0}' entries in inum map store", inumMapStore.size());
+			}
+		}
+
+		if (reload) {
+			try {
+				// Load all inum entries from LDAP
+				List<GluuInumMap> inumMaps = loadInumServerEntries(cacheRefreshConfiguration, inumDbServerConnection);
+				log.info("Found '{0}' entries in inum server", inumMaps.size());
+
+				inumMapStore.reset(inumMaps);
+			} catch (IOException ex) {
+				log.error("Failed to write inum map store '{0}'", ex, inumMapStoreFile.getAbsolutePath());
+				inumMapStore.close();
+				return null;
+			} catch (RuntimeException ex) {
+				inumMapStore.close();
+				throw ex;
+			}
+		}
+
+		return inumMapStore;
+	}
+
+	private void compactInumMapStore(CacheRefreshInumMapStore inumMapStore) throws IOException {
+		if (inumMapStore.compactIfNeeded()) {
+			log.debug("Compacted inum map store with '{0}' entries", inumMapStore.size());
+		}
 	}
 
-	private Set<String> getChangedInums(HashMap<String, Integer> currInumWithEntryHashCodeMap,
-			Map<String, Integer> prevInumWithEntryHashCodeMap, boolean includeDeleted) {
+	private Set<String> getChangedInums(CacheRefreshSnapshot currInumSnapshot, CacheRefreshSnapshot prevInumSnapshot, boolean includeDeleted) {
 		// Find chaged inums
-		Set<String> changedInums = null;
-		// First time run
-		if (prevInumWithEntryHashCodeMap == null) {
-			changedInums = new HashSet<String>(currInumWithEntryHashCodeMap.keySet());
-		} else {
-			changedInums = new HashSet<String>();
+		Set<String> changedInums = new HashSet<String>();
 
-			// Add all inums which not exist in new snapshot
-			if (includeDeleted) {
-				for (String prevInumKey : prevInumWithEntryHashCodeMap.keySet()) {
-					if (!currInumWithEntryHashCodeMap.containsKey(prevInumKey)) {
-						changedInums.add(prevInumKey);
-					}
-				}
+		// First time run or digest method was changed
+		boolean digestMethodChanged = (prevInumSnapshot != null) && (prevInumSnapshot.getDigestMethod() != currInumSnapshot.getDigestMethod());
+		if (digestMethodChanged) {
+			log.info("Digest method was changed from '{0}' to '{1}'. All entries will be updated", prevInumSnapshot.getDigestMethod(),
+					currInumSnapshot.getDigestMethod());
+		}
+
+		if ((prevInumSnapshot == null) || digestMethodChanged) {
+			for (int i = 0; i < currInumSnapshot.size(); i++) {
+				changedInums.add(currInumSnapshot.getInum(i));
+			}
+
+			return changedInums;
+		}
+
+		// Both snapshots are sorted by inum. Walk through them at once
+		int currIndex = 0, prevIndex = 0;
+		int currSize = currInumSnapshot.size(), prevSize = prevInumSnapshot.size();
+		while ((currIndex < currSize) || (prevIndex < prevSize)) {
+			int compareResult;
+			if (currIndex >= currSize) {
+				compareResult = 1;
+			} else if (prevIndex >= prevSize) {
+				compareResult = -1;
+			} else {
+				compareResult = currInumSnapshot.compareInum(currIndex, prevInumSnapshot, prevIndex);
 			}
 
-			// Add all new inums and changed inums
-			for (Entry<String, Integer> currEntry : currInumWithEntryHashCodeMap.entrySet()) {
-				String currInumKey = currEntry.getKey();
-				Integer prevHashCode = prevInumWithEntryHashCodeMap.get(currInumKey);
-				if ((prevHashCode == null) || ((prevHashCode != null) && !(prevHashCode.equals(currEntry.getValue())))) {
-					changedInums.add(currInumKey);
+			if (compareResult < 0) {
+				// Add new inum
+				changedInums.add(currInumSnapshot.getInum(currIndex));
+				currIndex++;
+			} else if (compareResult > 0) {
+				// Add inum which not exist in new snapshot
+				if (includeDeleted) {
+					changedInums.add(prevInumSnapshot.getInum(prevIndex));
+				}
+				prevIndex++;
+			} else {
+				// Add changed inum
+				if (currInumSnapshot.getDigest(currIndex) != prevInumSnapshot.getDigest(prevIndex)) {
+					changedInums.add(currInumSnapshot.getInum(currIndex));
 				}
+				currIndex++;
+				prevIndex++;
 			}
 		}
+
 		return changedInums;
 	}
 
-	private List<GluuSimplePerson> getRemovedPersons(HashMap<String, Integer> currInumWithEntryHashCodeMap,
-			Map<String, Integer> prevInumWithEntryHashCodeMap) {
+	private List<GluuSimplePerson> getRemovedPersons(CacheRefreshSnapshot currInumSnapshot, CacheRefreshSnapshot prevInumSnapshot) {
 		// First time run
-		if (prevInumWithEntryHashCodeMap == null) {
+		if (prevInumSnapshot == null) {
 			return new ArrayList<GluuSimplePerson>(0);
 		}
-		
+
 		// Add all inums which not exist in new snapshot
 		Set<String> deletedInums = new HashSet<String>();
-		for (String prevInumKey : prevInumWithEntryHashCodeMap.keySet()) {
-			if (!currInumWithEntryHashCodeMap.containsKey(prevInumKey)) {
-				deletedInums.add(prevInumKey);
+		int currIndex = 0, currSize = currInumSnapshot.size();
+		for (int prevIndex = 0; prevIndex < prevInumSnapshot.size(); prevIndex++) {
+			while ((currIndex < currSize) && (currInumSnapshot.compareInum(currIndex, prevInumSnapshot, prevIndex) < 0)) {
+				currIndex++;
+			}
+
+			if ((currIndex >= currSize) || (currInumSnapshot.compareInum(currIndex, prevInumSnapshot, prevIndex) != 0)) {
+				deletedInums.add(prevInumSnapshot.getInum(prevIndex));
 			}
 		}
-		
+
 		List<GluuSimplePerson> deletedPersons = new ArrayList<GluuSimplePerson>(deletedInums.size());
 		for (String deletedInum : deletedInums) {
 			GluuSimplePerson person = new GluuSimplePerson();
@@ -526,12 +901,13 @@ public class CacheRefreshTimer {
 				log.error("Failed to update entry with inum '{0}' using baseDN {1}", ex, changedInum, baseDn);
 			}
 		}
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_SEARCHES, changedInums.size());
 
 		return result;
 	}
 
 	private List<String> updateTargetEntriesViaCopy(CacheRefreshConfiguration cacheRefreshConfiguration, Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap, Set<String> changedInums) {
+			Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap, Set<String> changedInums) {
 		HashMap<String, CacheCompoundKey> inumCacheCompoundKeyMap = getInumCacheCompoundKeyMap(primaryKeyAttrValueInumMap);
 		Map<String, String> targetServerAttributesMapping = getTargetServerAttributesMapping(cacheRefreshConfiguration);
 		String[] customObjectClasses = applicationConfiguration.getPersonObjectClassTypes();
@@ -542,20 +918,47 @@ public class CacheRefreshTimer {
 			return result;
 		}
 
-		for (String targetInum : changedInums) {
-			CacheCompoundKey compoundKey = inumCacheCompoundKeyMap.get(targetInum);
-			if (compoundKey == null) {
-				continue;
-			}
+		CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration = oxTrustConfiguration.getCacheRefreshTuningConfiguration();
+		int targetBatchSize = cacheRefreshTuningConfiguration.getTargetBatchSize();
+		log.debug("Updating target entries in batches of '{0}' entries using '{1}' threads and up to '{2}' in-flight operations", targetBatchSize,
+				cacheRefreshTuningConfiguration.getTargetThreadsCount(), cacheRefreshTuningConfiguration.getTargetMaxInFlightOperations());
 
-			GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyMap.get(compoundKey);
-			if (sourcePerson == null) {
-				continue;
+		CacheRefreshTargetWriter targetWriter = new CacheRefreshTargetWriter(ldapEntryManager, log, cacheRefreshTuningConfiguration.getTargetThreadsCount(),
+				cacheRefreshTuningConfiguration.getTargetMaxInFlightOperations());
+		try {
+			Set<String> addedUids = new HashSet<String>();
+			Map<String, GluuSimplePerson> batchSourcePersons = new LinkedHashMap<String, GluuSimplePerson>();
+			for (String targetInum : changedInums) {
+				CacheCompoundKey compoundKey = inumCacheCompoundKeyMap.get(targetInum);
+				if (compoundKey == null) {
+					continue;
+				}
+
+				GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyMap.get(compoundKey);
+				if (sourcePerson == null) {
+					continue;
+				}
+
+				batchSourcePersons.put(targetInum, sourcePerson);
+				if (batchSourcePersons.size() >= targetBatchSize) {
+					updateTargetEntriesBatchViaCopy(batchSourcePersons, customObjectClasses, targetServerAttributesMapping, addedUids, targetWriter);
+					batchSourcePersons.clear();
+				}
 			}
 
-			if (updateTargetEntryViaCopy(sourcePerson, targetInum, customObjectClasses, targetServerAttributesMapping)) {
-				result.add(targetInum);
+			if (batchSourcePersons.size() > 0) {
+				updateTargetEntriesBatchViaCopy(batchSourcePersons, customObjectClasses, targetServerAttributesMapping, addedUids, targetWriter);
 			}
+
+			result = targetWriter.finish();
+			log.debug("Failed to write '{0}' entries to target server", targetWriter.getFailedCount());
+			metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_ADDS, targetWriter.getAddedCount());
+			metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_MODIFIES, targetWriter.getModifiedCount());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			log.error("Interrupted while updating target entries", ex);
+		} finally {
+			targetWriter.shutdown();
 		}
 
 		return result;
@@ -625,57 +1028,98 @@ public class CacheRefreshTimer {
 		return false;
 	}
 
-	private boolean updateTargetEntryViaCopy(GluuSimplePerson sourcePerson, String targetInum, String[] targetCustomObjectClasses,
-			Map<String, String> targetServerAttributesMapping) {
-		String targetPersonDn = personService.getDnForPerson(targetInum);
-		GluuCustomPerson targetPerson = null;
-		boolean updatePerson;
-		if (personService.contains(targetPersonDn)) {
-			try {
-				targetPerson = personService.findPersonByDn(targetPersonDn);
-				log.debug("Found person by inum '{0}'", targetInum);
-			} catch (EntryPersistenceException ex) {
-				log.error("Failed to find person '{0}'", ex, targetInum);
-				return false;
+	/**
+	 * Prepares target entries for batch of inums and passes them to writer.
+	 * Existing entries and duplicate UIDs are checked by one search per batch
+	 */
+	private void updateTargetEntriesBatchViaCopy(Map<String, GluuSimplePerson> batchSourcePersons, String[] targetCustomObjectClasses,
+			Map<String, String> targetServerAttributesMapping, Set<String> addedUids, CacheRefreshTargetWriter targetWriter) throws InterruptedException {
+		List<String> batchInums = new ArrayList<String>(batchSourcePersons.keySet());
+
+		Map<String, GluuCustomPerson> existingTargetPersons = new HashMap<String, GluuCustomPerson>();
+		try {
+			List<GluuCustomPerson> targetPersons = personService.findPersonsByInums(batchInums, null);
+			metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_SEARCHES, 1);
+			for (GluuCustomPerson targetPerson : targetPersons) {
+				existingTargetPersons.put(StringHelper.toLowerCase(targetPerson.getInum()), targetPerson);
 			}
-			updatePerson = true;
-		} else {
-			targetPerson = new GluuCustomPerson();
-			targetPerson.setDn(targetPersonDn);
-			targetPerson.setInum(targetInum);
-			targetPerson.setStatus(GluuStatus.ACTIVE);
-			updatePerson = false;
+			log.debug("Found '{0}' existing persons from batch of '{1}' entries", existingTargetPersons.size(), batchInums.size());
+		} catch (Exception ex) {
+			log.error("Failed to find persons '{0}'", ex, batchInums);
+			return;
 		}
-		targetPerson.setCustomObjectClasses(targetCustomObjectClasses);
 
-		targetPerson.setSourceServerName(sourcePerson.getSourceServerName());
+		List<GluuCustomPerson> newTargetPersons = new ArrayList<GluuCustomPerson>();
+		for (Entry<String, GluuSimplePerson> batchSourcePersonEntry : batchSourcePersons.entrySet()) {
+			String targetInum = batchSourcePersonEntry.getKey();
+			GluuSimplePerson sourcePerson = batchSourcePersonEntry.getValue();
 
-		cacheRefreshService.setTargetEntryAttributes(sourcePerson, targetServerAttributesMapping, targetPerson);
+			GluuCustomPerson targetPerson = existingTargetPersons.get(StringHelper.toLowerCase(targetInum));
+			boolean updatePerson = targetPerson != null;
+			if (!updatePerson) {
+				targetPerson = new GluuCustomPerson();
+				targetPerson.setDn(personService.getDnForPerson(targetInum));
+				targetPerson.setInum(targetInum);
+				targetPerson.setStatus(GluuStatus.ACTIVE);
+			}
+			targetPerson.setCustomObjectClasses(targetCustomObjectClasses);
 
-		// Execute interceptor script
-		boolean executionResult = externalCacheRefreshService.executeExternalUpdateUserMethods(targetPerson);
-		if (!executionResult) {
-			log.error("Failed to execute Cache Refresh scripts for person '{0}'", targetInum);
-			return false;
-		}
+			targetPerson.setSourceServerName(sourcePerson.getSourceServerName());
+
+			cacheRefreshService.setTargetEntryAttributes(sourcePerson, targetServerAttributesMapping, targetPerson);
+
+			// Execute interceptor script
+			boolean executionResult = externalCacheRefreshService.executeExternalUpdateUserMethods(targetPerson);
+			if (!executionResult) {
+				log.error("Failed to execute Cache Refresh scripts for person '{0}'", targetInum);
+				continue;
+			}
 
-		try {
 			if (updatePerson) {
-				personService.updatePerson(targetPerson);
-				log.debug("Updated person '{0}'", targetInum);
+				targetWriter.updatePerson(targetInum, targetPerson);
 			} else {
-				personService.addPerson(targetPerson);
-				log.debug("Added new person '{0}'", targetInum);
+				newTargetPersons.add(targetPerson);
 			}
-		} catch (Exception ex) {
-			log.error("Failed to '{0}' person '{1}'", ex, updatePerson ? "update" : "add", targetInum);
-			return false;
 		}
 
-		return true;
+		if (newTargetPersons.size() == 0) {
+			return;
+		}
+
+		// Check UIDs of new persons
+		List<String> newUids = new ArrayList<String>(newTargetPersons.size());
+		for (GluuCustomPerson newTargetPerson : newTargetPersons) {
+			if (StringHelper.isNotEmpty(newTargetPerson.getUid())) {
+				newUids.add(newTargetPerson.getUid());
+			}
+		}
+
+		Set<String> existingUids = new HashSet<String>();
+		if (newUids.size() > 0) {
+			try {
+				List<GluuCustomPerson> uidPersons = personService.findPersonsByUids(newUids, new String[] { OxTrustConstants.uid });
+				metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_SEARCHES, 1);
+				for (GluuCustomPerson uidPerson : uidPersons) {
+					existingUids.add(StringHelper.toLowerCase(uidPerson.getUid()));
+				}
+			} catch (Exception ex) {
+				log.error("Failed to find persons by UIDs '{0}'", ex, newUids);
+				return;
+			}
+		}
+
+		for (GluuCustomPerson newTargetPerson : newTargetPersons) {
+			String uid = StringHelper.toLowerCase(newTargetPerson.getUid());
+			if (existingUids.contains(uid) || ((uid != null) && !addedUids.add(uid))) {
+				log.error("Failed to 'add' person '{0}'. Duplicate UID value: '{1}'", newTargetPerson.getInum(), newTargetPerson.getUid());
+				continue;
+			}
+
+			targetWriter.addPerson(newTargetPerson.getInum(), newTargetPerson);
+		}
 	}
 
-	private HashMap<String, CacheCompoundKey> getInumCacheCompoundKeyMap(HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
+	private HashMap<String, CacheCompoundKey> getInumCacheCompoundKeyMap(Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
 		HashMap<String, CacheCompoundKey> result = new HashMap<String, CacheCompoundKey>();
 
 		for (Entry<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMapEntry : primaryKeyAttrValueInumMap.entrySet()) {
@@ -686,7 +1130,7 @@ public class CacheRefreshTimer {
 	}
 
 	private Pair<List<String>, List<String>> removeTargetEntries(LdapServerConnection inumDbServerConnection, LdapEntryManager targetLdapEntryManager,
-			List<GluuSimplePerson> removedPersons, HashMap<String, GluuInumMap> inumInumMap) {
+			List<GluuSimplePerson> removedPersons, Map<String, GluuInumMap> inumInumMap) {
 
 		String runDate = ldapEntryManager.encodeGeneralizedTime(new Date(this.lastFinishedTime));
 
@@ -781,6 +1225,17 @@ public class CacheRefreshTimer {
 	}
 
 	private List<GluuSimplePerson> loadSourceServerEntriesWithoutLimits(CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections) {
+		return loadSourceServerEntries(cacheRefreshConfiguration, sourceServerConnections, new String[] { "" });
+	}
+
+	private List<GluuSimplePerson> loadSourceServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections) {
+		return loadSourceServerEntries(cacheRefreshConfiguration, sourceServerConnections, createTwoLettersArray());
+	}
+
+	private List<GluuSimplePerson> loadSourceServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections,
+			String[] keyAttributeStarts) {
+		CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration = oxTrustConfiguration.getCacheRefreshTuningConfiguration();
+
 		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
 		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
 		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
@@ -789,86 +1244,285 @@ public class CacheRefreshTimer {
 
 		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
 
-		Set<String> addedDns = new HashSet<String>();
+		// Prepare filters before starting workers. They shouldn't call Seam components
+		Filter[] filters = new Filter[keyAttributeStarts.length];
+		for (int i = 0; i < keyAttributeStarts.length; i++) {
+			filters[i] = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, keyAttributeStarts[i], customFilter);
+			if (log.isTraceEnabled()) {
+				log.trace("Using next filter to load entris from source server: {0}", filters[i]);
+			}
+		}
 
-		List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
-		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
-			String sourceServerName = sourceServerConnection.getSourceServerName();
+		int sourceServerThreadsCount = Math.min(cacheRefreshTuningConfiguration.getSourceServerThreadsCount(), sourceServerConnections.length);
+		int sourcePrefixThreadsCount = cacheRefreshTuningConfiguration.getSourcePrefixThreadsCount();
+		log.debug("Loading entries from '{0}' source servers using '{1}' server threads and '{2}' threads per server", sourceServerConnections.length,
+				sourceServerThreadsCount, sourcePrefixThreadsCount);
 
-			LdapEntryManager sourceLdapEntryManager = sourceServerConnection.getLdapEntryManager();
-			String[] baseDns = sourceServerConnection.getBaseDns();
-			Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, "", customFilter);
-			if (log.isTraceEnabled()) {
-				log.trace("Using next filter to load entris from source server: {0}", filter);
+		ExecutorService sourceServerExecutorService = Executors.newFixedThreadPool(Math.max(1, sourceServerThreadsCount));
+		try {
+			List<Future<Collection<GluuSimplePerson>>> sourceServerFutures = new ArrayList<Future<Collection<GluuSimplePerson>>>(sourceServerConnections.length);
+			List<SourceServerLoadStatistics> sourceServerLoadStatistics = Collections.synchronizedList(new ArrayList<SourceServerLoadStatistics>());
+			for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+				SourceServerLoadTask sourceServerLoadTask = new SourceServerLoadTask(sourceServerConnection, filters, returnAttributes,
+						cacheRefreshConfiguration.getLdapSearchSizeLimit(), sourcePrefixThreadsCount, sourceServerLoadStatistics);
+				sourceServerFutures.add(sourceServerExecutorService.submit(sourceServerLoadTask));
 			}
 
-			for (String baseDn : baseDns) {
-				List<GluuSimplePerson> currentSourcePersons = sourceLdapEntryManager.findEntries(baseDn, GluuSimplePerson.class,
-						filter, returnAttributes, cacheRefreshConfiguration.getLdapSearchSizeLimit());
-
-				// Add to result and ignore root entry if needed
-				for (GluuSimplePerson currentSourcePerson : currentSourcePersons) {
-					currentSourcePerson.setSourceServerName(sourceServerName);
-					// if (!StringHelper.equalsIgnoreCase(baseDn,
-					// currentSourcePerson.getDn())) {
-					String currentSourcePersonDn = currentSourcePerson.getDn().toLowerCase();
-					if (!addedDns.contains(currentSourcePersonDn)) {
+			// Merge results in source servers order. Entry from first source server wins if DN is the same
+			Set<String> addedDns = new HashSet<String>();
+			List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
+			for (Future<Collection<GluuSimplePerson>> sourceServerFuture : sourceServerFutures) {
+				for (GluuSimplePerson currentSourcePerson : getLoadTaskResult(sourceServerFuture)) {
+					if (addedDns.add(currentSourcePerson.getDn().toLowerCase())) {
 						sourcePersons.add(currentSourcePerson);
-						addedDns.add(currentSourcePersonDn);
 					}
-					// }
 				}
 			}
+
+			this.lastSourceServerLoadStatistics = new ArrayList<SourceServerLoadStatistics>(sourceServerLoadStatistics);
+
+			return sourcePersons;
+		} finally {
+			sourceServerExecutorService.shutdownNow();
 		}
+	}
 
-		return sourcePersons;
+	private <T> T getLoadTaskResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading entries from source server", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+
+			throw new IllegalStateException("Failed to load entries from source server", cause);
+		}
 	}
 
-	private List<GluuSimplePerson> loadSourceServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection[] sourceServerConnections) {
+	private Map<CacheCompoundKey, SourcePersonDigest> loadSourceServerDigests(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, EntryDigester entryDigester) {
+		CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration = oxTrustConfiguration.getCacheRefreshTuningConfiguration();
+
 		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
 		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
 		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
 		String[] keyObjectClasses = getCompoundKeyObjectClasses(cacheRefreshConfiguration);
 		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
 
-		String[] twoLettersArray = createTwoLettersArray();
 		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
+		List<String> binaryAttributes = ldapEntryManager.getLdapOperationService().getConnectionProvider().getBinaryAttributes();
 
-		Set<String> addedDns = new HashSet<String>();
+		// Paged search doesn't need to split request by key attribute prefixes
+		Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, "", customFilter);
+		if (log.isTraceEnabled()) {
+			log.trace("Using next filter to load entris from source server: {0}", filter);
+		}
+
+		int sourceServerThreadsCount = Math.min(cacheRefreshTuningConfiguration.getSourceServerThreadsCount(), sourceServerConnections.length);
+		int sourcePrefixThreadsCount = cacheRefreshTuningConfiguration.getSourcePrefixThreadsCount();
+		int sourcePageSize = cacheRefreshTuningConfiguration.getSourcePageSize();
+		log.debug("Streaming entries from '{0}' source servers using '{1}' server threads and page size '{2}'", sourceServerConnections.length,
+				sourceServerThreadsCount, sourcePageSize);
+
+		Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigests = new LinkedHashMap<CacheCompoundKey, SourcePersonDigest>();
+		Set<CacheCompoundKey> duplicateKeys = Collections.newSetFromMap(new ConcurrentHashMap<CacheCompoundKey, Boolean>());
+
+		ExecutorService sourceServerExecutorService = Executors.newFixedThreadPool(Math.max(1, sourceServerThreadsCount));
+		try {
+			List<Future<Map<CacheCompoundKey, SourcePersonDigest>>> sourceServerFutures = new ArrayList<Future<Map<CacheCompoundKey, SourcePersonDigest>>>(
+					sourceServerConnections.length);
+			List<SourceServerLoadStatistics> sourceServerLoadStatistics = Collections.synchronizedList(new ArrayList<SourceServerLoadStatistics>());
+			for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+				SourceServerDigestTask sourceServerDigestTask = new SourceServerDigestTask(sourceServerConnection, filter, returnAttributes,
+						keyAttributesWithoutValues, binaryAttributes, entryDigester, sourcePageSize, sourcePrefixThreadsCount, duplicateKeys,
+						sourceServerLoadStatistics);
+				sourceServerFutures.add(sourceServerExecutorService.submit(sourceServerDigestTask));
+			}
+
+			// Merge results in source servers order. Entry from first source server is kept if DN is the same
+			for (Future<Map<CacheCompoundKey, SourcePersonDigest>> sourceServerFuture : sourceServerFutures) {
+				addSourcePersonDigests(sourcePersonDigests, duplicateKeys, getLoadTaskResult(sourceServerFuture));
+			}
+			log.info("Found '{0}' entries in source server", sourcePersonDigests.size());
+
+			this.lastSourceServerLoadStatistics = new ArrayList<SourceServerLoadStatistics>(sourceServerLoadStatistics);
+		} finally {
+			sourceServerExecutorService.shutdownNow();
+		}
+
+		for (CacheCompoundKey duplicateKey : duplicateKeys) {
+			log.error("Non-deterministic primary key. Skipping user with key: {0}", duplicateKey);
+			sourcePersonDigests.remove(duplicateKey);
+		}
+
+		return sourcePersonDigests;
+	}
 
-		List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
+	private Map<CacheCompoundKey, GluuSimplePerson> loadChangedSourcePersons(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigestCacheCompoundKeyMap,
+			Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap, Set<String> changedInums) {
+		Map<String, LdapServerConnection> sourceServerConnectionsMap = new HashMap<String, LdapServerConnection>();
 		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
-			String sourceServerName = sourceServerConnection.getSourceServerName();
+			sourceServerConnectionsMap.put(sourceServerConnection.getSourceServerName(), sourceServerConnection);
+		}
+
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
+		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
+		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
+
+		HashMap<String, CacheCompoundKey> inumCacheCompoundKeyMap = getInumCacheCompoundKeyMap(primaryKeyAttrValueInumMap);
+
+		Map<CacheCompoundKey, GluuSimplePerson> result = new HashMap<CacheCompoundKey, GluuSimplePerson>();
+		for (String changedInum : changedInums) {
+			CacheCompoundKey cacheCompoundKey = inumCacheCompoundKeyMap.get(changedInum);
+			if (cacheCompoundKey == null) {
+				continue;
+			}
+
+			SourcePersonDigest sourcePersonDigest = sourcePersonDigestCacheCompoundKeyMap.get(cacheCompoundKey);
+			if (sourcePersonDigest == null) {
+				continue;
+			}
+
+			LdapServerConnection sourceServerConnection = sourceServerConnectionsMap.get(sourcePersonDigest.getSourceServerName());
+			try {
+				GluuSimplePerson sourcePerson = sourceServerConnection.getLdapEntryManager().find(GluuSimplePerson.class, sourcePersonDigest.getDn(),
+						returnAttributes);
+				sourcePerson.setSourceServerName(sourcePersonDigest.getSourceServerName());
+				result.put(cacheCompoundKey, sourcePerson);
+			} catch (EntryPersistenceException ex) {
+				log.error("Failed to load entry '{0}' from source server '{1}'", ex, sourcePersonDigest.getDn(), sourcePersonDigest.getSourceServerName());
+			}
+		}
+		log.info("Loaded '{0}' changed entries from source server", result.size());
+
+		return result;
+	}
 
-			LdapEntryManager sourceLdapEntryManager = sourceServerConnection.getLdapEntryManager();
+	private List<GluuSimplePerson> loadChangedSourceServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, Map<String, SourceServerWatermark> sourceServerWatermarks) {
+		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
+		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
+		String[] keyObjectClasses = getCompoundKeyObjectClasses(cacheRefreshConfiguration);
+		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
+
+		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
+		final List<String> binaryAttributes = ldapEntryManager.getLdapOperationService().getConnectionProvider().getBinaryAttributes();
+		int sourcePageSize = oxTrustConfiguration.getCacheRefreshTuningConfiguration().getSourcePageSize();
+
+		Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, "", customFilter);
+
+		// Merge results in source servers order. Entry from first source server wins if DN is the same
+		Set<String> addedDns = new HashSet<String>();
+		List<GluuSimplePerson> result = new ArrayList<GluuSimplePerson>();
+		List<SourceServerLoadStatistics> sourceServerLoadStatistics = new ArrayList<SourceServerLoadStatistics>(sourceServerConnections.length);
+		for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+			long startTime = System.currentTimeMillis();
+
+			final String sourceServerName = sourceServerConnection.getSourceServerName();
+			final LdapEntryManager sourceLdapEntryManager = sourceServerConnection.getLdapEntryManager();
 			String[] baseDns = sourceServerConnection.getBaseDns();
-			for (String keyAttributeStart : twoLettersArray) {
-				Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, keyAttributeStart, customFilter);
-				if (log.isDebugEnabled()) {
-					log.trace("Using next filter to load entris from source server: {0}", filter);
+
+			SourceServerWatermark sourceServerWatermark = sourceServerWatermarks.get(sourceServerName);
+			Filter changesFilter = Filter.createANDFilter(filter, SourceServerWatermarks.createFilter(sourceServerWatermark));
+			if (log.isTraceEnabled()) {
+				log.trace("Using next filter to load changed entris from source server '{0}': {1}", sourceServerName, changesFilter);
+			}
+
+			final List<GluuSimplePerson> sourcePersons = new ArrayList<GluuSimplePerson>();
+			LdapPagedSearch ldapPagedSearch = new LdapPagedSearch(sourceServerConnection.getConnectionPool(), sourcePageSize);
+			LdapPagedSearch.EntryHandler entryHandler = new LdapPagedSearch.EntryHandler() {
+				public void handle(SearchResultEntry entry) {
+					GluuSimplePerson sourcePerson = toSimplePerson(sourceLdapEntryManager, entry, binaryAttributes);
+					sourcePerson.setSourceServerName(sourceServerName);
+					sourcePersons.add(sourcePerson);
+				}
+			};
+
+			for (String baseDn : baseDns) {
+				try {
+					ldapPagedSearch.search(baseDn, changesFilter, returnAttributes, entryHandler);
+				} catch (LDAPException ex) {
+					throw new EntryPersistenceException(String.format("Failed to load changed entries from source server '%s' with baseDN: %s",
+							sourceServerName, baseDn), ex);
+				}
+			}
+
+			for (GluuSimplePerson sourcePerson : sourcePersons) {
+				if (addedDns.add(sourcePerson.getDn().toLowerCase())) {
+					result.add(sourcePerson);
 				}
+			}
 
-				for (String baseDn : baseDns) {
-					List<GluuSimplePerson> currentSourcePersons = sourceLdapEntryManager.findEntries(baseDn, GluuSimplePerson.class,
-							filter, returnAttributes, cacheRefreshConfiguration.getLdapSearchSizeLimit());
+			long duration = System.currentTimeMillis() - startTime;
+			log.info("Loaded '{0}' changed entries from source server '{1}' in '{2}' ms", sourcePersons.size(), sourceServerName, duration);
+			sourceServerLoadStatistics.add(new SourceServerLoadStatistics(sourceServerName, baseDns.length, sourcePersons.size(), duration));
+		}
 
-					// Add to result and ignore root entry if needed
-					for (GluuSimplePerson currentSourcePerson : currentSourcePersons) {
-						currentSourcePerson.setSourceServerName(sourceServerName);
-						// if (!StringHelper.equalsIgnoreCase(baseDn,
-						// currentSourcePerson.getDn())) {
-						String currentSourcePersonDn = currentSourcePerson.getDn().toLowerCase();
-						if (!addedDns.contains(currentSourcePersonDn)) {
-							sourcePersons.add(currentSourcePerson);
-							addedDns.add(currentSourcePersonDn);
-						}
-						// }
+		this.lastSourceServerLoadStatistics = sourceServerLoadStatistics;
+
+		return result;
+	}
+
+	/**
+	 * Loads source entries by key attributes values of inums
+	 */
+	private Map<CacheCompoundKey, GluuSimplePerson> loadSourceServerEntriesByInums(CacheRefreshConfiguration cacheRefreshConfiguration,
+			LdapServerConnection[] sourceServerConnections, Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap, Set<String> inums) {
+		Filter customFilter = cacheRefreshService.createFilter(cacheRefreshConfiguration.getCustomLdapFilter());
+		String[] keyAttributes = getCompoundKeyAttributes(cacheRefreshConfiguration);
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
+		String[] keyObjectClasses = getCompoundKeyObjectClasses(cacheRefreshConfiguration);
+		String[] sourceAttributes = getSourceAttributes(cacheRefreshConfiguration);
+
+		String[] returnAttributes = ArrayHelper.arrayMerge(keyAttributesWithoutValues, sourceAttributes);
+		Filter filter = cacheRefreshService.createFilter(keyAttributes, keyObjectClasses, "", customFilter);
+
+		HashMap<String, CacheCompoundKey> inumCacheCompoundKeyMap = getInumCacheCompoundKeyMap(primaryKeyAttrValueInumMap);
+
+		Map<CacheCompoundKey, GluuSimplePerson> result = new HashMap<CacheCompoundKey, GluuSimplePerson>();
+		for (String inum : inums) {
+			CacheCompoundKey cacheCompoundKey = inumCacheCompoundKeyMap.get(inum);
+			if (cacheCompoundKey == null) {
+				continue;
+			}
+
+			String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, cacheCompoundKey);
+			List<Filter> keyFilters = new ArrayList<Filter>();
+			keyFilters.add(filter);
+			for (int i = 0; i < keyAttributesWithoutValues.length; i++) {
+				if ((keyAttributesValues[i] != null) && (keyAttributesValues[i].length > 0)) {
+					keyFilters.add(Filter.createEqualityFilter(keyAttributesWithoutValues[i], keyAttributesValues[i][0]));
+				}
+			}
+			Filter keyFilter = Filter.createANDFilter(keyFilters);
+
+			for (LdapServerConnection sourceServerConnection : sourceServerConnections) {
+				GluuSimplePerson sourcePerson = null;
+				for (String baseDn : sourceServerConnection.getBaseDns()) {
+					List<GluuSimplePerson> sourcePersons = sourceServerConnection.getLdapEntryManager().findEntries(baseDn, GluuSimplePerson.class,
+							keyFilter, returnAttributes, 2);
+					if (sourcePersons.size() > 0) {
+						sourcePerson = sourcePersons.get(0);
+						break;
 					}
 				}
+
+				if (sourcePerson != null) {
+					sourcePerson.setSourceServerName(sourceServerConnection.getSourceServerName());
+					result.put(cacheCompoundKey, sourcePerson);
+					break;
+				}
 			}
 		}
+		log.debug("Loaded '{0}' entries from source server by inums", result.size());
 
-		return sourcePersons;
+		return result;
 	}
 
 	private List<GluuSimplePerson> loadTargetServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration, LdapEntryManager targetLdapEntryManager) {
@@ -878,9 +1532,7 @@ public class CacheRefreshTimer {
 				TARGET_PERSON_RETURN_ATTRIBUTES, cacheRefreshConfiguration.getLdapSearchSizeLimit());
 	}
 
-	private GluuInumMap addGluuInumMap(String inumbBaseDn, LdapEntryManager inumDbLdapEntryManager, String[] primaryKeyAttrName,
-			String[][] primaryKeyValues) {
-		String inum = cacheRefreshService.generateInumForNewInumMap(inumbBaseDn, inumDbLdapEntryManager);
+	private GluuInumMap createGluuInumMap(String inumbBaseDn, String inum, String[] primaryKeyAttrName, String[][] primaryKeyValues) {
 		String inumDn = cacheRefreshService.getDnForInum(inumbBaseDn, inum);
 
 		GluuInumMap inumMap = new GluuInumMap();
@@ -897,59 +1549,120 @@ public class CacheRefreshTimer {
 			inumMap.setTertiaryKeyValues(primaryKeyValues[2]);
 		}
 		inumMap.setStatus(GluuStatus.ACTIVE);
-		cacheRefreshService.addInumMap(inumDbLdapEntryManager, inumMap);
 
 		return inumMap;
 	}
 
-	private HashMap<CacheCompoundKey, GluuInumMap> addNewInumServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection inumDbServerConnection,
-			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
+	private int addNewInumServerEntries(CacheRefreshConfiguration cacheRefreshConfiguration, LdapServerConnection inumDbServerConnection,
+			Set<CacheCompoundKey> sourceCacheCompoundKeys, CacheRefreshInumMapStore inumMapStore) throws IOException {
+		Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap = inumMapStore.getPrimaryKeyAttrValueInumMap();
+
+		List<CacheCompoundKey> newCacheCompoundKeys = new ArrayList<CacheCompoundKey>();
+		for (CacheCompoundKey cacheCompoundKey : sourceCacheCompoundKeys) {
+			if (log.isTraceEnabled()) {
+				log.trace("Checking source entry with key: '{0}'", cacheCompoundKey);
+			}
+
+			if (primaryKeyAttrValueInumMap.containsKey(cacheCompoundKey)) {
+				log.trace("Inum entry for key: '{0}' exist", cacheCompoundKey);
+			} else {
+				newCacheCompoundKeys.add(cacheCompoundKey);
+			}
+		}
+
+		if (newCacheCompoundKeys.isEmpty()) {
+			return 0;
+		}
+
+		metricsCollector.startPhase(CacheRefreshMetricsCollector.PHASE_INUM_ALLOCATION);
+
+		CacheRefreshTuningConfiguration cacheRefreshTuningConfiguration = oxTrustConfiguration.getCacheRefreshTuningConfiguration();
+		int inumBatchSize = cacheRefreshTuningConfiguration.getInumBatchSize();
+		int inumThreadsCount = cacheRefreshTuningConfiguration.getInumThreadsCount();
+		log.info("Adding '{0}' new inum entries in batches of '{1}' entries using '{2}' threads", newCacheCompoundKeys.size(), inumBatchSize,
+				inumThreadsCount);
+
 		LdapEntryManager inumDbLdapEntryManager = inumDbServerConnection.getLdapEntryManager();
 		String inumbaseDn = inumDbServerConnection.getBaseDns()[0];
+		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
 
-		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+		int addedCount = 0;
+		ExecutorService inumExecutorService = Executors.newFixedThreadPool(inumThreadsCount);
+		try {
+			for (int batchStart = 0; batchStart < newCacheCompoundKeys.size(); batchStart += inumBatchSize) {
+				List<CacheCompoundKey> batchCacheCompoundKeys = newCacheCompoundKeys.subList(batchStart,
+						Math.min(batchStart + inumBatchSize, newCacheCompoundKeys.size()));
 
-		String[] keyAttributesWithoutValues = getCompoundKeyAttributesWithoutValues(cacheRefreshConfiguration);
-		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap.entrySet()) {
-			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
-			GluuSimplePerson sourcePerson = sourcePersonCacheCompoundKeyEntry.getValue();
+				// Reserve block of unique inums
+				List<String> inums = cacheRefreshService.generateInumsForNewInumMaps(inumbaseDn, inumDbLdapEntryManager, batchCacheCompoundKeys.size());
 
-			if (log.isTraceEnabled()) {
-				log.trace("Checking source entry with key: '{0}', and DN: {1}", cacheCompoundKey, sourcePerson.getDn());
-			}
+				List<GluuInumMap> batchInumMaps = new ArrayList<GluuInumMap>(inums.size());
+				for (int i = 0; i < inums.size(); i++) {
+					String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, batchCacheCompoundKeys.get(i));
+					batchInumMaps.add(createGluuInumMap(inumbaseDn, inums.get(i), keyAttributesWithoutValues, keyAttributesValues));
+				}
 
-			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(cacheCompoundKey);
-			if (currentInumMap == null) {
-				String[][] keyAttributesValues = getKeyAttributesValues(keyAttributesWithoutValues, sourcePerson);
-				currentInumMap = addGluuInumMap(inumbaseDn, inumDbLdapEntryManager, keyAttributesWithoutValues, keyAttributesValues);
-				result.put(cacheCompoundKey, currentInumMap);
-				log.debug("Added new inum entry for DN: {0}", sourcePerson.getDn());
-			} else {
-				log.trace("Inum entry for DN: '{0}' exist", sourcePerson.getDn());
+				List<GluuInumMap> addedInumMaps = addInumMaps(inumExecutorService, inumDbLdapEntryManager, batchInumMaps);
+
+				// Store new entries immediately to not lose them if next batch fails
+				inumMapStore.add(addedInumMaps);
+				addedCount += addedInumMaps.size();
+
+				log.info("Added '{0}' of '{1}' new inum entries", addedCount, newCacheCompoundKeys.size());
 			}
+		} finally {
+			inumExecutorService.shutdownNow();
 		}
 
-		return result;
+		metricsCollector.endPhase(addedCount);
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_ADDED_INUM_ENTRIES, addedCount);
+		metricsCollector.incrementCounter(CacheRefreshMetricsCollector.COUNTER_LDAP_ADDS, addedCount);
+
+		return addedCount;
 	}
 
-	private HashMap<CacheCompoundKey, GluuInumMap> getAllInumServerEntries(
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap,
-			HashMap<CacheCompoundKey, GluuInumMap> addedPrimaryKeyAttrValueInumMap) {
-		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+	private List<GluuInumMap> addInumMaps(ExecutorService inumExecutorService, final LdapEntryManager inumDbLdapEntryManager, List<GluuInumMap> inumMaps) {
+		List<Future<Boolean>> inumMapFutures = new ArrayList<Future<Boolean>>(inumMaps.size());
+		for (final GluuInumMap inumMap : inumMaps) {
+			inumMapFutures.add(inumExecutorService.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					try {
+						inumDbLdapEntryManager.persist(inumMap);
+						log.debug("Added new inum entry '{0}'", inumMap.getInum());
+						return true;
+					} catch (Exception ex) {
+						log.error("Failed to add inum entry '{0}'", ex, inumMap.getInum());
+						return false;
+					}
+				}
+			}));
+		}
 
-		result.putAll(primaryKeyAttrValueInumMap);
-		result.putAll(addedPrimaryKeyAttrValueInumMap);
+		List<GluuInumMap> result = new ArrayList<GluuInumMap>(inumMaps.size());
+		for (int i = 0; i < inumMaps.size(); i++) {
+			if (getAddInumMapTaskResult(inumMapFutures.get(i))) {
+				result.add(inumMaps.get(i));
+			}
+		}
 
 		return result;
 	}
 
-	private HashMap<String, Integer> getSourcePersonsHashCodesMap(LdapServerConnection inumDbServerConnection,
-			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
-			HashMap<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
-		LdapEntryManager inumDbLdapEntryManager = inumDbServerConnection.getLdapEntryManager();
+	private boolean getAddInumMapTaskResult(Future<Boolean> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while adding inum entries", ex);
+		} catch (ExecutionException ex) {
+			throw new IllegalStateException("Failed to add inum entry", ex.getCause());
+		}
+	}
 
-		HashMap<String, Integer> result = new HashMap<String, Integer>();
+	private HashMap<String, Long> getSourcePersonsDigestsMap(EntryDigester entryDigester,
+			Map<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyMap,
+			Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
+		HashMap<String, Long> result = new HashMap<String, Long>();
 
 		for (Entry<CacheCompoundKey, GluuSimplePerson> sourcePersonCacheCompoundKeyEntry : sourcePersonCacheCompoundKeyMap.entrySet()) {
 			CacheCompoundKey cacheCompoundKey = sourcePersonCacheCompoundKeyEntry.getKey();
@@ -957,44 +1670,35 @@ public class CacheRefreshTimer {
 
 			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(cacheCompoundKey);
 
-			result.put(currentInumMap.getInum(), inumDbLdapEntryManager.getHashCode(sourcePerson));
+			result.put(currentInumMap.getInum(), entryDigester.digest(sourcePerson));
 		}
 
 		return result;
 	}
 
-	private List<GluuSimplePerson> processTargetPersons(List<GluuSimplePerson> targetPersons,
-			HashMap<String, Integer> currInumWithEntryHashCodeMap) {
-		List<GluuSimplePerson> result = new ArrayList<GluuSimplePerson>();
-
-		for (GluuSimplePerson targetPerson : targetPersons) {
-			String personInum = targetPerson.getAttribute(OxTrustConstants.inum);
-			if (!currInumWithEntryHashCodeMap.containsKey(personInum)) {
-				log.debug("Person with such DN: '{0}' isn't present on source server", targetPerson.getDn());
-				result.add(targetPerson);
-			}
-		}
-
-		return result;
-	}
+	private HashMap<String, Long> getSourcePersonDigestsMap(Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigestCacheCompoundKeyMap,
+			Map<CacheCompoundKey, GluuInumMap> primaryKeyAttrValueInumMap) {
+		HashMap<String, Long> result = new HashMap<String, Long>();
 
-	private HashMap<CacheCompoundKey, GluuInumMap> getPrimaryKeyAttrValueInumMap(List<GluuInumMap> inumMaps) {
-		HashMap<CacheCompoundKey, GluuInumMap> result = new HashMap<CacheCompoundKey, GluuInumMap>();
+		for (Entry<CacheCompoundKey, SourcePersonDigest> sourcePersonDigestCacheCompoundKeyEntry : sourcePersonDigestCacheCompoundKeyMap.entrySet()) {
+			GluuInumMap currentInumMap = primaryKeyAttrValueInumMap.get(sourcePersonDigestCacheCompoundKeyEntry.getKey());
 
-		for (GluuInumMap inumMap : inumMaps) {
-			result.put(
-					new CacheCompoundKey(inumMap.getPrimaryKeyValues(), inumMap.getSecondaryKeyValues(), inumMap.getTertiaryKeyValues()),
-					inumMap);
+			result.put(currentInumMap.getInum(), sourcePersonDigestCacheCompoundKeyEntry.getValue().getDigest());
 		}
 
 		return result;
 	}
 
-	private HashMap<String, GluuInumMap> getInumInumMap(List<GluuInumMap> inumMaps) {
-		HashMap<String, GluuInumMap> result = new HashMap<String, GluuInumMap>();
+	private List<GluuSimplePerson> processTargetPersons(List<GluuSimplePerson> targetPersons,
+			HashMap<String, Long> currInumWithEntryDigestMap) {
+		List<GluuSimplePerson> result = new ArrayList<GluuSimplePerson>();
 
-		for (GluuInumMap inumMap : inumMaps) {
-			result.put(inumMap.getInum(), inumMap);
+		for (GluuSimplePerson targetPerson : targetPersons) {
+			String personInum = targetPerson.getAttribute(OxTrustConstants.inum);
+			if (!currInumWithEntryDigestMap.containsKey(personInum)) {
+				log.debug("Person with such DN: '{0}' isn't present on source server", targetPerson.getDn());
+				result.add(targetPerson);
+			}
 		}
 
 		return result;
@@ -1090,14 +1794,47 @@ public class CacheRefreshTimer {
 		return result;
 	}
 
-	private void updateApplianceStatus(GluuAppliance currentAppliance, long lastRun) {
+	private EntryDigester createEntryDigester(CacheRefreshDigestMethod digestMethod) {
+		if (CacheRefreshDigestMethod.LEGACY.equals(digestMethod)) {
+			return new LegacyEntryDigester(ldapEntryManager);
+		}
+
+		return new Murmur64EntryDigester();
+	}
+
+	private String[][] getKeyAttributesValues(String[] attrs, CacheCompoundKey cacheCompoundKey) {
+		String[][] keyValues = new String[][] { cacheCompoundKey.getPrimaryKeyValues(), cacheCompoundKey.getSecondaryKeyValues(),
+				cacheCompoundKey.getTertiaryKeyValues() };
+
+		String[][] result = new String[attrs.length][];
+		for (int i = 0; i < attrs.length; i++) {
+			result[i] = keyValues[i];
+		}
+
+		return result;
+	}
+
+	private String updateApplianceStatus(GluuAppliance currentAppliance, long lastRun) {
 		GluuAppliance appliance = applianceService.getAppliance();
 
-		appliance.setVdsCacheRefreshLastUpdate(toIntString(lastRun / 1000));
+		String lastUpdate = toIntString(lastRun / 1000);
+		appliance.setVdsCacheRefreshLastUpdate(lastUpdate);
 		appliance.setVdsCacheRefreshLastUpdateCount(currentAppliance.getVdsCacheRefreshLastUpdateCount());
 		appliance.setVdsCacheRefreshProblemCount(currentAppliance.getVdsCacheRefreshProblemCount());
 
 		ApplianceService.instance().updateAppliance(appliance);
+
+		return lastUpdate;
+	}
+
+	public List<SourceServerLoadStatistics> getLastSourceServerLoadStatistics() {
+		return lastSourceServerLoadStatistics;
+	}
+
+	public List<CacheRefreshRunMetrics> getRunMetricsHistory() {
+		synchronized (runMetricsHistory) {
+			return new ArrayList<CacheRefreshRunMetrics>(runMetricsHistory);
+		}
 	}
 
 	private String toIntString(Number number) {
@@ -1144,6 +1881,206 @@ public class CacheRefreshTimer {
 			return baseDns;
 		}
 
+		public final LDAPConnectionPool getConnectionPool() {
+			if (connectionProvider == null) {
+				return ldapEntryManager.getLdapOperationService().getConnectionProvider().getConnectionPool();
+			}
+
+			return connectionProvider.getConnectionPool();
+		}
+
+	}
+
+	private class SourceServerDigestTask implements Callable<Map<CacheCompoundKey, SourcePersonDigest>> {
+		private LdapServerConnection sourceServerConnection;
+		private Filter filter;
+		private String[] returnAttributes;
+		private String[] keyAttributesWithoutValues;
+		private List<String> binaryAttributes;
+		private EntryDigester entryDigester;
+		private int pageSize;
+		private int threadsCount;
+		private Set<CacheCompoundKey> duplicateKeys;
+		private List<SourceServerLoadStatistics> sourceServerLoadStatistics;
+
+		protected SourceServerDigestTask(LdapServerConnection sourceServerConnection, Filter filter, String[] returnAttributes,
+				String[] keyAttributesWithoutValues, List<String> binaryAttributes, EntryDigester entryDigester, int pageSize, int threadsCount,
+				Set<CacheCompoundKey> duplicateKeys, List<SourceServerLoadStatistics> sourceServerLoadStatistics) {
+			this.sourceServerConnection = sourceServerConnection;
+			this.filter = filter;
+			this.returnAttributes = returnAttributes;
+			this.keyAttributesWithoutValues = keyAttributesWithoutValues;
+			this.binaryAttributes = binaryAttributes;
+			this.entryDigester = entryDigester;
+			this.pageSize = pageSize;
+			this.threadsCount = threadsCount;
+			this.duplicateKeys = duplicateKeys;
+			this.sourceServerLoadStatistics = sourceServerLoadStatistics;
+		}
+
+		public Map<CacheCompoundKey, SourcePersonDigest> call() {
+			long startTime = System.currentTimeMillis();
+
+			final String sourceServerName = sourceServerConnection.getSourceServerName();
+			final LdapEntryManager sourceLdapEntryManager = sourceServerConnection.getLdapEntryManager();
+			final LdapPagedSearch ldapPagedSearch = new LdapPagedSearch(sourceServerConnection.getConnectionPool(), pageSize);
+			String[] baseDns = sourceServerConnection.getBaseDns();
+
+			int count = 0;
+			Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigests = new LinkedHashMap<CacheCompoundKey, SourcePersonDigest>();
+			ExecutorService baseDnExecutorService = Executors.newFixedThreadPool(threadsCount);
+			try {
+				List<Future<Map<CacheCompoundKey, SourcePersonDigest>>> baseDnFutures = new ArrayList<Future<Map<CacheCompoundKey, SourcePersonDigest>>>(
+						baseDns.length);
+				for (final String baseDn : baseDns) {
+					baseDnFutures.add(baseDnExecutorService.submit(new Callable<Map<CacheCompoundKey, SourcePersonDigest>>() {
+						public Map<CacheCompoundKey, SourcePersonDigest> call() {
+							// Each search collects digests in order of returned entries
+							final Map<CacheCompoundKey, SourcePersonDigest> baseDnSourcePersonDigests = new LinkedHashMap<CacheCompoundKey, SourcePersonDigest>();
+							LdapPagedSearch.EntryHandler entryHandler = new LdapPagedSearch.EntryHandler() {
+								public void handle(SearchResultEntry entry) {
+									GluuSimplePerson sourcePerson = toSimplePerson(sourceLdapEntryManager, entry, binaryAttributes);
+									CacheCompoundKey cacheCompoundKey = new CacheCompoundKey(getKeyAttributesValues(keyAttributesWithoutValues, sourcePerson));
+
+									SourcePersonDigest sourcePersonDigest = new SourcePersonDigest(sourcePerson.getDn(), sourceServerName,
+											entryDigester.digest(sourcePerson));
+									addSourcePersonDigest(baseDnSourcePersonDigests, duplicateKeys, cacheCompoundKey, sourcePersonDigest);
+								}
+							};
+
+							try {
+								ldapPagedSearch.search(baseDn, filter, returnAttributes, entryHandler);
+							} catch (LDAPException ex) {
+								throw new EntryPersistenceException(String.format("Failed to load entries from source server '%s' with baseDN: %s",
+										sourceServerName, baseDn), ex);
+							}
+
+							return baseDnSourcePersonDigests;
+						}
+					}));
+				}
+
+				// Merge results in base DNs order
+				for (Future<Map<CacheCompoundKey, SourcePersonDigest>> baseDnFuture : baseDnFutures) {
+					Map<CacheCompoundKey, SourcePersonDigest> baseDnSourcePersonDigests = getLoadTaskResult(baseDnFuture);
+					count += baseDnSourcePersonDigests.size();
+					addSourcePersonDigests(sourcePersonDigests, duplicateKeys, baseDnSourcePersonDigests);
+				}
+			} finally {
+				baseDnExecutorService.shutdownNow();
+			}
+
+			long duration = System.currentTimeMillis() - startTime;
+			log.info("Streamed '{0}' entries from source server '{1}' in '{2}' ms using '{3}' searches", count, sourceServerName, duration,
+					baseDns.length);
+			sourceServerLoadStatistics.add(new SourceServerLoadStatistics(sourceServerName, baseDns.length, count, duration));
+
+			return sourcePersonDigests;
+		}
+
+	}
+
+	private void addSourcePersonDigests(Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigests, Set<CacheCompoundKey> duplicateKeys,
+			Map<CacheCompoundKey, SourcePersonDigest> addSourcePersonDigests) {
+		for (Entry<CacheCompoundKey, SourcePersonDigest> addSourcePersonDigestEntry : addSourcePersonDigests.entrySet()) {
+			addSourcePersonDigest(sourcePersonDigests, duplicateKeys, addSourcePersonDigestEntry.getKey(), addSourcePersonDigestEntry.getValue());
+		}
+	}
+
+	private void addSourcePersonDigest(Map<CacheCompoundKey, SourcePersonDigest> sourcePersonDigests, Set<CacheCompoundKey> duplicateKeys,
+			CacheCompoundKey cacheCompoundKey, SourcePersonDigest sourcePersonDigest) {
+		SourcePersonDigest prevSourcePersonDigest = sourcePersonDigests.get(cacheCompoundKey);
+		if (prevSourcePersonDigest == null) {
+			sourcePersonDigests.put(cacheCompoundKey, sourcePersonDigest);
+			return;
+		}
+
+		// The same entry can be returned few times. It's not a duplicate
+		if (!StringHelper.equalsIgnoreCase(prevSourcePersonDigest.getDn(), sourcePersonDigest.getDn())) {
+			duplicateKeys.add(cacheCompoundKey);
+		}
+	}
+
+	private GluuSimplePerson toSimplePerson(LdapEntryManager sourceLdapEntryManager, SearchResultEntry entry, List<String> binaryAttributes) {
+		Map<String, List<AttributeData>> entriesAttributes = Collections.singletonMap(entry.getDN(),
+				LdapPagedSearch.toAttributeDataList(entry, binaryAttributes));
+
+		List<GluuSimplePerson> sourcePersons;
+		try {
+			sourcePersons = sourceLdapEntryManager.createEntities(GluuSimplePerson.class, entriesAttributes);
+		} catch (Exception ex) {
+			throw new EntryPersistenceException(String.format("Failed to convert entry with DN: %s", entry.getDN()), ex);
+		}
+
+		GluuSimplePerson sourcePerson = sourcePersons.get(0);
+		sourcePerson.setDn(entry.getDN());
+
+		return sourcePerson;
+	}
+
+	private class SourceServerLoadTask implements Callable<Collection<GluuSimplePerson>> {
+		private LdapServerConnection sourceServerConnection;
+		private Filter[] filters;
+		private String[] returnAttributes;
+		private int searchLimit;
+		private int threadsCount;
+		private List<SourceServerLoadStatistics> sourceServerLoadStatistics;
+
+		protected SourceServerLoadTask(LdapServerConnection sourceServerConnection, Filter[] filters, String[] returnAttributes, int searchLimit,
+				int threadsCount, List<SourceServerLoadStatistics> sourceServerLoadStatistics) {
+			this.sourceServerConnection = sourceServerConnection;
+			this.filters = filters;
+			this.returnAttributes = returnAttributes;
+			this.searchLimit = searchLimit;
+			this.threadsCount = threadsCount;
+			this.sourceServerLoadStatistics = sourceServerLoadStatistics;
+		}
+
+		public Collection<GluuSimplePerson> call() {
+			long startTime = System.currentTimeMillis();
+
+			final String sourceServerName = sourceServerConnection.getSourceServerName();
+			final LdapEntryManager sourceLdapEntryManager = sourceServerConnection.getLdapEntryManager();
+			String[] baseDns = sourceServerConnection.getBaseDns();
+
+			// Entry can be returned by few searches if key attribute has few values
+			Map<String, GluuSimplePerson> sourcePersons = new LinkedHashMap<String, GluuSimplePerson>();
+
+			ExecutorService prefixExecutorService = Executors.newFixedThreadPool(threadsCount);
+			try {
+				List<Future<List<GluuSimplePerson>>> prefixFutures = new ArrayList<Future<List<GluuSimplePerson>>>(filters.length * baseDns.length);
+				for (final Filter filter : filters) {
+					for (final String baseDn : baseDns) {
+						prefixFutures.add(prefixExecutorService.submit(new Callable<List<GluuSimplePerson>>() {
+							public List<GluuSimplePerson> call() {
+								return sourceLdapEntryManager.findEntries(baseDn, GluuSimplePerson.class, filter, returnAttributes, searchLimit);
+							}
+						}));
+					}
+				}
+
+				// Merge results in searches order. It's the same as order of sequential load
+				for (Future<List<GluuSimplePerson>> prefixFuture : prefixFutures) {
+					for (GluuSimplePerson currentSourcePerson : getLoadTaskResult(prefixFuture)) {
+						String currentSourcePersonDn = currentSourcePerson.getDn().toLowerCase();
+						if (!sourcePersons.containsKey(currentSourcePersonDn)) {
+							currentSourcePerson.setSourceServerName(sourceServerName);
+							sourcePersons.put(currentSourcePersonDn, currentSourcePerson);
+						}
+					}
+				}
+			} finally {
+				prefixExecutorService.shutdownNow();
+			}
+
+			long duration = System.currentTimeMillis() - startTime;
+			log.info("Loaded '{0}' entries from source server '{1}' in '{2}' ms using '{3}' searches", sourcePersons.size(), sourceServerName,
+					duration, filters.length * baseDns.length);
+			sourceServerLoadStatistics.add(new SourceServerLoadStatistics(sourceServerName, filters.length * baseDns.length, sourcePersons.size(), duration));
+
+			return sourcePersons.values();
+		}
+
 	}
 
 	private CacheRefreshUpdateMethod getUpdateMethod(CacheRefreshConfiguration cacheRefreshConfiguration) {
@@ -1206,18 +2143,4 @@ public class CacheRefreshTimer {
 		return ldapConfiguration.getBaseDNsStringsList().toArray(new String[0]);
 	}
 
-	public static void main(String[] args) {
-		String LETTERS_FOR_SEARCH = "abcdefghijklmnopqrstuvwxyz1";
-		char[] characters = LETTERS_FOR_SEARCH.toCharArray();
-		int lettersCount = characters.length;
-
-		String[] result = new String[lettersCount * lettersCount];
-		for (int i = 0; i < lettersCount; i++) {
-			for (int j = 0; j < lettersCount; j++) {
-				result[i * lettersCount + j] = "" + characters[i] + characters[j];
-			}
-		}
-		System.out.println(result.length);
-	}
-
 }
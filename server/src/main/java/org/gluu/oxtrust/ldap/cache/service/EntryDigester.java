@@ -0,0 +1,20 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+
+/**
+ * Calculates digest of source entry. Implementations should be thread safe
+ */
+public interface EntryDigester {
+
+	CacheRefreshDigestMethod getDigestMethod();
+
+	long digest(GluuSimplePerson person);
+
+}
@@ -0,0 +1,32 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+
+/**
+ * Digester which uses 32-bit LdapEntryManager hash code. It's compatible with
+ * snapshots created by previous versions
+ */
+public class LegacyEntryDigester implements EntryDigester {
+
+	private final LdapEntryManager ldapEntryManager;
+
+	public LegacyEntryDigester(LdapEntryManager ldapEntryManager) {
+		this.ldapEntryManager = ldapEntryManager;
+	}
+
+	public CacheRefreshDigestMethod getDigestMethod() {
+		return CacheRefreshDigestMethod.LEGACY;
+	}
+
+	public long digest(GluuSimplePerson person) {
+		return ldapEntryManager.getHashCode(person);
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+
+/**
+ * Calculates 64-bit MurmurHash64A digest over canonical form of entry: attributes
+ * sorted by lower case name and values sorted inside each attribute. Strings
+ * are fed into hash char by char with length prefix, so no intermediate
+ * string is built
+ */
+public class Murmur64EntryDigester implements EntryDigester {
+
+	private static final long SEED = 0x5bd1e9955bd1e995L;
+
+	private static final Comparator<GluuCustomAttribute> ATTRIBUTE_NAME_COMPARATOR = new Comparator<GluuCustomAttribute>() {
+		public int compare(GluuCustomAttribute attribute1, GluuCustomAttribute attribute2) {
+			return String.CASE_INSENSITIVE_ORDER.compare(attribute1.getName(), attribute2.getName());
+		}
+	};
+
+	public CacheRefreshDigestMethod getDigestMethod() {
+		return CacheRefreshDigestMethod.MURMUR64;
+	}
+
+	public long digest(GluuSimplePerson person) {
+		List<GluuCustomAttribute> customAttributes = person.getCustomAttributes();
+		GluuCustomAttribute[] attributes = customAttributes.toArray(new GluuCustomAttribute[customAttributes.size()]);
+		if (attributes.length > 1) {
+			Arrays.sort(attributes, ATTRIBUTE_NAME_COMPARATOR);
+		}
+
+		Hasher hasher = new Hasher(SEED);
+		for (GluuCustomAttribute attribute : attributes) {
+			String[] values = attribute.getValues();
+			if (values == null) {
+				continue;
+			}
+
+			if (values.length > 1) {
+				values = values.clone();
+				Arrays.sort(values);
+			}
+
+			hasher.putLowerCaseString(attribute.getName());
+			hasher.putInt(values.length);
+			for (String value : values) {
+				hasher.putString(value);
+			}
+		}
+
+		return hasher.finish();
+	}
+
+	/**
+	 * Streaming variant of MurmurHash64A which accepts UTF-16 chars
+	 */
+	static final class Hasher {
+
+		private static final long M = 0xc6a4a7935bd1e995L;
+		private static final int R = 47;
+
+		private long h;
+		private long block;
+		private int blockChars;
+		private long length;
+
+		Hasher(long seed) {
+			this.h = seed;
+		}
+
+		void putChar(char c) {
+			block |= ((long) c) << (blockChars << 4);
+			length += 2;
+			if (++blockChars == 4) {
+				long k = block * M;
+				k ^= k >>> R;
+				k *= M;
+
+				h ^= k;
+				h *= M;
+
+				block = 0;
+				blockChars = 0;
+			}
+		}
+
+		void putInt(int value) {
+			putChar((char) (value >>> 16));
+			putChar((char) value);
+		}
+
+		void putString(String value) {
+			if (value == null) {
+				putInt(-1);
+				return;
+			}
+
+			int length = value.length();
+			putInt(length);
+			for (int i = 0; i < length; i++) {
+				putChar(value.charAt(i));
+			}
+		}
+
+		void putLowerCaseString(String value) {
+			if (value == null) {
+				putInt(-1);
+				return;
+			}
+
+			int length = value.length();
+			putInt(length);
+			for (int i = 0; i < length; i++) {
+				putChar(Character.toLowerCase(value.charAt(i)));
+			}
+		}
+
+		long finish() {
+			if (blockChars > 0) {
+				h ^= block;
+				h *= M;
+			}
+
+			h ^= length * M;
+
+			h ^= h >>> R;
+			h *= M;
+			h ^= h >>> R;
+
+			return h;
+		}
+
+	}
+
+}
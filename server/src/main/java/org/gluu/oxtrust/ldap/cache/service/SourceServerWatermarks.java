@@ -0,0 +1,67 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service;
+
+import java.util.Date;
+
+import org.gluu.oxtrust.ldap.cache.model.SourceServerWatermark;
+import org.xdi.util.StringHelper;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.util.StaticUtils;
+
+/**
+ * Helper to determine high-water marks of source servers
+ *
+ * Active Directory updates uSNChanged on every modification and exposes
+ * highest committed USN in root DSE. Other servers are tracked by
+ * modifyTimestamp. Current time minus overlap is used as watermark for them
+ * to tolerate clock skew between servers
+ */
+public final class SourceServerWatermarks {
+
+	public static final String AUTO_ATTRIBUTE = "auto";
+	public static final String MODIFY_TIMESTAMP_ATTRIBUTE = "modifyTimestamp";
+	public static final String USN_CHANGED_ATTRIBUTE = "uSNChanged";
+
+	private static final String HIGHEST_COMMITTED_USN_ATTRIBUTE = "highestCommittedUSN";
+
+	private SourceServerWatermarks() {
+	}
+
+	public static SourceServerWatermark getCurrentWatermark(String sourceServerName, LDAPConnectionPool connectionPool, String attribute,
+			int timeOverlap) throws LDAPException {
+		String highestCommittedUsn = null;
+		if (StringHelper.equalsIgnoreCase(AUTO_ATTRIBUTE, attribute) || StringHelper.equalsIgnoreCase(USN_CHANGED_ATTRIBUTE, attribute)) {
+			SearchResultEntry rootDse = connectionPool.getEntry("", HIGHEST_COMMITTED_USN_ATTRIBUTE);
+			if (rootDse != null) {
+				highestCommittedUsn = rootDse.getAttributeValue(HIGHEST_COMMITTED_USN_ATTRIBUTE);
+			}
+
+			if (StringHelper.isEmpty(highestCommittedUsn) && StringHelper.equalsIgnoreCase(USN_CHANGED_ATTRIBUTE, attribute)) {
+				throw new LDAPException(ResultCode.NO_SUCH_ATTRIBUTE, String.format(
+						"Source server '%s' doesn't provide %s", sourceServerName, HIGHEST_COMMITTED_USN_ATTRIBUTE));
+			}
+		}
+
+		if (StringHelper.isNotEmpty(highestCommittedUsn)) {
+			return new SourceServerWatermark(sourceServerName, USN_CHANGED_ATTRIBUTE, highestCommittedUsn);
+		}
+
+		Date date = new Date(System.currentTimeMillis() - timeOverlap * 1000L);
+		return new SourceServerWatermark(sourceServerName, MODIFY_TIMESTAMP_ATTRIBUTE, StaticUtils.encodeGeneralizedTime(date));
+	}
+
+	public static Filter createFilter(SourceServerWatermark watermark) {
+		return Filter.createGreaterOrEqualFilter(watermark.getAttribute(), watermark.getValue());
+	}
+
+}
@@ -6,19 +6,41 @@
 
 package org.gluu.oxtrust.ldap.service;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.IOUtils;
+import org.gluu.oxtrust.model.EntityIdMonitoringRunMetrics;
 import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.gluu.oxtrust.model.GluuValidationStatus;
+import org.gluu.oxtrust.service.WorkerExecutorService;
+import org.gluu.oxtrust.util.MetadataEntityIdReader;
 import org.gluu.oxtrust.util.OxTrustConstants;
-import org.gluu.oxtrust.util.Utils;
-import org.gluu.saml.metadata.SAMLMetadataParser;
 import org.jboss.seam.ScopeType;
 import org.jboss.seam.annotations.AutoCreate;
 import org.jboss.seam.annotations.In;
@@ -44,6 +66,8 @@ import org.xdi.util.StringHelper;
 @Name("entityIDMonitoringService")
 public class EntityIDMonitoringService {
 
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
 	private static final String ENTITY_ID_VANISHED_MESSAGE = "Invalidated because parent federation does not contain this entityId any more.";
 
 	@Logger
@@ -52,8 +76,15 @@ public class EntityIDMonitoringService {
 	@In(value = "#{oxTrustConfiguration.applicationConfiguration}")
 	private ApplicationConfiguration applicationConfiguration;
 
+	@In
+	private WorkerExecutorService workerExecutorService;
+
 	private boolean isActive;
 
+	private final ConcurrentMap<File, MetadataFileState> metadataFileStates = new ConcurrentHashMap<File, MetadataFileState>();
+
+	private volatile EntityIdMonitoringRunMetrics lastRunMetrics;
+
 	@Observer("org.jboss.seam.postInitialization")
 	public void init() {
 		// Schedule to run it every 120 seconds. First event will occur after 30
@@ -73,78 +104,51 @@ public class EntityIDMonitoringService {
 		log.trace("EVENT_METADATA_ENTITY_ID_UPDATE Starting");
 		try {
 			this.isActive = true;
+
+			EntityIdMonitoringRunMetrics runMetrics = new EntityIdMonitoringRunMetrics();
+			runMetrics.setStartDate(new Date());
+			long startTime = System.currentTimeMillis();
+
+			String idpMetadataFolder = applicationConfiguration.getShibboleth2IdpRootDir() + File.separator
+					+ Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator;
+
+			List<GluuSAMLTrustRelationship> trustRelationships = new ArrayList<GluuSAMLTrustRelationship>();
+			Set<File> metadataFiles = new HashSet<File>();
 			for (GluuSAMLTrustRelationship tr : TrustService.instance().getAllTrustRelationships()) {
-				log.trace("Evaluating TR " + tr.getDn());
+				log.trace("Evaluating TR {0}", tr.getDn());
 				boolean meatadataAvailable = tr.getSpMetaDataFN() != null && StringHelper.isNotEmpty(tr.getSpMetaDataFN());
-				log.trace("meatadataAvailable:" + meatadataAvailable);
-				boolean correctType = tr.getContainerFederation() == null;
-				log.trace("correctType:" + correctType);
+				log.trace("meatadataAvailable: {0}", meatadataAvailable);
+				// Avoid lookup of container federation if there is no reference to it
+				boolean correctType = (tr.getGluuContainerFederation() == null) || (tr.getContainerFederation() == null);
+				log.trace("correctType: {0}", correctType);
 				boolean isValidated = GluuValidationStatus.VALIDATION_SUCCESS.equals(tr.getValidationStatus());
-				log.trace("isValidated:" + isValidated);
+				log.trace("isValidated: {0}", isValidated);
 				if (meatadataAvailable && correctType && isValidated) {
-					String idpMetadataFolder = applicationConfiguration.getShibboleth2IdpRootDir() + File.separator
-							+ Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator;
-					File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
-					List<String> entityIds = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
-					
-					log.trace("entityIds from metadata: " + Utils.iterableToString(entityIds)); 
-					Set<String> entityIdSet = new TreeSet<String>();
-					
-					if(entityIds != null && ! entityIds.isEmpty()){
-						Set<String> duplicatesSet = new TreeSet<String>(); 
-						for (String entityId : entityIds) {
-							if (!entityIdSet.add(entityId)) {
-								duplicatesSet.add(entityId);
-							}
-						}
-					}
+					trustRelationships.add(tr);
+					metadataFiles.add(new File(idpMetadataFolder + tr.getSpMetaDataFN()));
+				}
+			}
+			runMetrics.setTrustRelationships(trustRelationships.size());
+			runMetrics.setMetadataFiles(metadataFiles.size());
 
-					log.trace("unique entityIds: " + Utils.iterableToString(entityIdSet));
-					Collection<String> disjunction = CollectionUtils.disjunction(entityIdSet, tr.getGluuEntityId());
-					log.trace("entityIds disjunction: " + Utils.iterableToString(disjunction));
-					
-					if(! disjunction.isEmpty()){
-						log.trace("entityIds disjunction is not empty. Somthing has changed. Processing further.");
-						tr.setGluuEntityId(entityIdSet);
-						if (tr.isFederation()) {
-							List<GluuSAMLTrustRelationship> parts = TrustService.instance().getDeconstructedTrustRelationships(tr);
-							for (GluuSAMLTrustRelationship part : parts) {
-								log.trace("Processing TR part: " + part.getDn()); 
-								boolean isActive = part.getStatus() != null && GluuStatus.ACTIVE.equals(part.getStatus());
-								log.trace("isActive:" + isActive);
-								boolean entityIdPresent = entityIdSet != null && entityIdSet.contains(part.getEntityId());
-								log.trace("entityIdPresent:" + entityIdPresent);
-								boolean previouslyDisabled = part.getValidationLog() != null
-										&& part.getValidationLog().contains(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
-								log.trace("previouslyDisabled:" + previouslyDisabled);
-								if (isActive && !entityIdPresent) {
-									log.trace("no entityId found for part : " + part.getDn());
-									part.setStatus(GluuStatus.INACTIVE);
-									List<String> log = new ArrayList<String>();
-									log.add(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
-									part.setValidationLog(log);
-									TrustService.instance().updateTrustRelationship(part);
-								}
-								if (entityIdPresent && previouslyDisabled) {
-									log.trace("entityId found for part : " + part.getDn());
-									part.setStatus(GluuStatus.ACTIVE);
-									List<String> log = part.getValidationLog();
-									List<String> updatedLog = new ArrayList<String>(log);
-									updatedLog.remove(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
-									if (updatedLog.isEmpty()) {
-										updatedLog = null;
-									}
-									part.setValidationLog(updatedLog);
-									TrustService.instance().updateTrustRelationship(part);
-								}
-							}
-						}
-						
-						TrustService.instance().updateTrustRelationship(tr);
-					}
+			Map<File, List<String>> metadataEntityIds = getEntityIds(metadataFiles, runMetrics);
+
+			int updatedTrustRelationships = 0;
+			for (GluuSAMLTrustRelationship tr : trustRelationships) {
+				List<String> entityIds = metadataEntityIds.get(new File(idpMetadataFolder + tr.getSpMetaDataFN()));
+				if (updateEntityIds(tr, entityIds)) {
+					updatedTrustRelationships++;
 				}
 			}
+			runMetrics.setUpdatedTrustRelationships(updatedTrustRelationships);
 
+			runMetrics.setDuration(System.currentTimeMillis() - startTime);
+			this.lastRunMetrics = runMetrics;
+			if ((runMetrics.getParsedFiles() > 0) || (runMetrics.getFailedFiles() > 0) || (updatedTrustRelationships > 0)) {
+				log.info("EntityId monitoring run finished: {0}", runMetrics);
+			} else {
+				log.debug("EntityId monitoring run finished: {0}", runMetrics);
+			}
 		} catch (Throwable ex) {
 			log.error("Exception happened while checking LDAP connections", ex);
 		} finally {
@@ -152,4 +156,208 @@ public class EntityIDMonitoringService {
 		}
 	}
 
+	/*
+	 * Get entityIds of metadata files. Only files with changed size or
+	 * modification time are read
+	 */
+	private Map<File, List<String>> getEntityIds(Set<File> metadataFiles, EntityIdMonitoringRunMetrics runMetrics) throws InterruptedException {
+		Map<File, List<String>> result = new HashMap<File, List<String>>();
+
+		List<File> changedFiles = new ArrayList<File>();
+		for (File metadataFile : metadataFiles) {
+			MetadataFileState fileState = metadataFileStates.get(metadataFile);
+			if ((fileState != null) && fileState.matches(metadataFile)) {
+				result.put(metadataFile, fileState.entityIds);
+			} else {
+				changedFiles.add(metadataFile);
+			}
+		}
+		runMetrics.setUnchangedFiles(result.size());
+
+		if (changedFiles.isEmpty()) {
+			return result;
+		}
+
+		final AtomicInteger touchedFiles = new AtomicInteger();
+		final AtomicInteger parsedFiles = new AtomicInteger();
+		final AtomicInteger failedFiles = new AtomicInteger();
+		final AtomicLong bytesScanned = new AtomicLong();
+
+		List<Future<MetadataFileState>> futures = new ArrayList<Future<MetadataFileState>>(changedFiles.size());
+		try {
+			for (final File metadataFile : changedFiles) {
+				final MetadataFileState previousFileState = metadataFileStates.get(metadataFile);
+				FutureTask<MetadataFileState> future = new FutureTask<MetadataFileState>(new Callable<MetadataFileState>() {
+					@Override
+					public MetadataFileState call() throws Exception {
+						return readMetadataFile(metadataFile, previousFileState, touchedFiles, parsedFiles, failedFiles, bytesScanned);
+					}
+				});
+				futures.add(future);
+				workerExecutorService.getExecutor().execute(future);
+			}
+
+			for (int i = 0; i < changedFiles.size(); i++) {
+				File metadataFile = changedFiles.get(i);
+				MetadataFileState fileState;
+				try {
+					fileState = futures.get(i).get();
+				} catch (ExecutionException ex) {
+					log.error("Failed to read metadata file '{0}'", ex.getCause(), metadataFile);
+					failedFiles.incrementAndGet();
+					fileState = null;
+				}
+
+				if (fileState == null) {
+					metadataFileStates.remove(metadataFile);
+					result.put(metadataFile, null);
+				} else {
+					metadataFileStates.put(metadataFile, fileState);
+					result.put(metadataFile, fileState.entityIds);
+				}
+			}
+		} finally {
+			for (Future<MetadataFileState> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		runMetrics.setTouchedFiles(touchedFiles.get());
+		runMetrics.setParsedFiles(parsedFiles.get());
+		runMetrics.setFailedFiles(failedFiles.get());
+		runMetrics.setBytesScanned(bytesScanned.get());
+
+		return result;
+	}
+
+	/*
+	 * File is read once. Digest is computed while file is parsed
+	 */
+	private MetadataFileState readMetadataFile(File metadataFile, MetadataFileState previousFileState, AtomicInteger touchedFiles,
+			AtomicInteger parsedFiles, AtomicInteger failedFiles, AtomicLong bytesScanned) {
+		long length = metadataFile.length();
+		long lastModified = metadataFile.lastModified();
+
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("Failed to create message digest", ex);
+		}
+
+		List<String> entityIds;
+		InputStream is = null;
+		try {
+			is = new DigestInputStream(new BufferedInputStream(new FileInputStream(metadataFile), 64 * 1024), messageDigest);
+			entityIds = MetadataEntityIdReader.readEntityIds(is);
+
+			// Parser may stop before end of file
+			byte[] buffer = new byte[4 * 1024];
+			while (is.read(buffer) != -1) {
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to read metadata file '{0}'", ex, metadataFile);
+			failedFiles.incrementAndGet();
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+		bytesScanned.addAndGet(length);
+		parsedFiles.incrementAndGet();
+
+		String digest = Hex.encodeHexString(messageDigest.digest());
+		if ((previousFileState != null) && digest.equals(previousFileState.digest)) {
+			touchedFiles.incrementAndGet();
+			return new MetadataFileState(length, lastModified, digest, previousFileState.entityIds);
+		}
+
+		return new MetadataFileState(length, lastModified, digest, Collections.unmodifiableList(entityIds));
+	}
+
+	/*
+	 * Update trust relationship and its federation parts if entityIds in metadata changed
+	 */
+	private boolean updateEntityIds(GluuSAMLTrustRelationship tr, List<String> entityIds) {
+		log.trace("entityIds from metadata: {0}", entityIds);
+		Set<String> entityIdSet = new TreeSet<String>();
+		if (entityIds != null) {
+			entityIdSet.addAll(entityIds);
+		}
+
+		log.trace("unique entityIds: {0}", entityIdSet);
+		Collection<String> disjunction = CollectionUtils.disjunction(entityIdSet, tr.getGluuEntityId());
+		log.trace("entityIds disjunction: {0}", disjunction);
+
+		if (disjunction.isEmpty()) {
+			return false;
+		}
+
+		log.trace("entityIds disjunction is not empty. Somthing has changed. Processing further.");
+		tr.setGluuEntityId(entityIdSet);
+		if (tr.isFederation()) {
+			List<GluuSAMLTrustRelationship> parts = TrustService.instance().getDeconstructedTrustRelationships(tr);
+			for (GluuSAMLTrustRelationship part : parts) {
+				log.trace("Processing TR part: {0}", part.getDn());
+				boolean isActive = part.getStatus() != null && GluuStatus.ACTIVE.equals(part.getStatus());
+				log.trace("isActive: {0}", isActive);
+				boolean entityIdPresent = entityIdSet.contains(part.getEntityId());
+				log.trace("entityIdPresent: {0}", entityIdPresent);
+				boolean previouslyDisabled = part.getValidationLog() != null
+						&& part.getValidationLog().contains(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
+				log.trace("previouslyDisabled: {0}", previouslyDisabled);
+				if (isActive && !entityIdPresent) {
+					log.trace("no entityId found for part : {0}", part.getDn());
+					part.setStatus(GluuStatus.INACTIVE);
+					List<String> log = new ArrayList<String>();
+					log.add(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
+					part.setValidationLog(log);
+					TrustService.instance().updateTrustRelationship(part);
+				}
+				if (entityIdPresent && previouslyDisabled) {
+					log.trace("entityId found for part : {0}", part.getDn());
+					part.setStatus(GluuStatus.ACTIVE);
+					List<String> log = part.getValidationLog();
+					List<String> updatedLog = new ArrayList<String>(log);
+					updatedLog.remove(ENTITY_ID_VANISHED_MESSAGE + " : " + part.getEntityId());
+					if (updatedLog.isEmpty()) {
+						updatedLog = null;
+					}
+					part.setValidationLog(updatedLog);
+					TrustService.instance().updateTrustRelationship(part);
+				}
+			}
+		}
+
+		TrustService.instance().updateTrustRelationship(tr);
+
+		return true;
+	}
+
+	/**
+	 * Returns statistics of last finished run
+	 */
+	public EntityIdMonitoringRunMetrics getLastRunMetrics() {
+		return lastRunMetrics;
+	}
+
+	private static class MetadataFileState {
+
+		private final long length;
+		private final long lastModified;
+		private final String digest;
+		private final List<String> entityIds;
+
+		public MetadataFileState(long length, long lastModified, String digest, List<String> entityIds) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.digest = digest;
+			this.entityIds = entityIds;
+		}
+
+		public boolean matches(File file) {
+			return (file.length() == length) && (file.lastModified() == lastModified);
+		}
+
+	}
+
 }
@@ -8,9 +8,12 @@ package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
-import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuGroupVisibility;
 import org.gluu.oxtrust.util.OxTrustConstants;
@@ -26,10 +29,14 @@ import org.jboss.seam.annotations.Name;
 import org.jboss.seam.annotations.Scope;
 import org.jboss.seam.log.Log;
 import org.xdi.config.oxtrust.ApplicationConfiguration;
+import org.xdi.service.CacheService;
 import org.xdi.util.INumGenerator;
 import org.xdi.util.StringHelper;
 
+import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.RDN;
 
 /**
  * Provides operations with groups
@@ -46,9 +53,15 @@ public class GroupService implements Serializable, IGroupService {
      */
 	private static final long serialVersionUID = -9167587377957719152L;
 
+	private static final int GROUP_SUMMARIES_BATCH_SIZE = 100;
+	private static final String[] GROUP_SUMMARY_ATTRIBUTES = new String[] { OxTrustConstants.inum, OxTrustConstants.displayName };
+
 	@In
 	private LdapEntryManager ldapEntryManager;
 
+	@In
+	private CacheService cacheService;
+
 	@Logger
 	private Log log;
 
@@ -65,6 +78,7 @@ public class GroupService implements Serializable, IGroupService {
 		List<GluuGroup> groups= findGroups(displayNameGroup, 1);
 		if (groups == null || groups.size() == 0) {
 			ldapEntryManager.persist(group);
+			invalidateGroupSummaries();
 		} else {
 			throw new DuplicateEntryException("Duplicate displayName: " + group.getDisplayName());
 		}
@@ -76,6 +90,7 @@ public class GroupService implements Serializable, IGroupService {
 	@Override
 	public void updateGroup(GluuGroup group) throws Exception {
 		ldapEntryManager.merge(group);
+		invalidateGroupSummaries();
 
 	}
 
@@ -84,21 +99,13 @@ public class GroupService implements Serializable, IGroupService {
 	 */
 	@Override
 	public void removeGroup(GluuGroup group) {
+		// clear references in gluuPerson entries
 		if (group.getMembers() != null) {
-			List<String> memberDNs = group.getMembers();
-			for (String memberDN : memberDNs) {
-				GluuCustomPerson person = PersonService.instance().getPersonByDn(memberDN);
-				List<String> groupDNs = person.getMemberOf();
-				List<String> updatedGroupDNs = new ArrayList<String>();
-				updatedGroupDNs.addAll(groupDNs);
-				updatedGroupDNs.remove(group.getDn());
-				person.setMemberOf(updatedGroupDNs);
-				PersonService.instance().updatePerson(person);
-			}
+			MemberOfSyncService.instance().removeMemberOf(group.getDn(), group.getMembers());
 		}
 
 		ldapEntryManager.remove(group);
-		// clear references in gluuPerson entries
+		invalidateGroupSummaries();
 	}
 
 	/* (non-Javadoc)
@@ -251,6 +258,89 @@ public class GroupService implements Serializable, IGroupService {
 		return result;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.gluu.oxtrust.ldap.service.IGroupService#getGroupSummariesByDns(java.util.Collection)
+	 */
+	@Override
+	public Map<String, GluuGroup> getGroupSummariesByDns(Collection<String> groupDns) {
+		Map<String, GluuGroup> result = new HashMap<String, GluuGroup>();
+
+		String groupsBaseDn = getDnForGroup(null);
+
+		// Lower-cased inum -> group DN of groups which are not in cache
+		Map<String, String> notCachedGroupDns = new HashMap<String, String>();
+		List<String> notResolvedGroupDns = new ArrayList<String>();
+		for (String groupDn : new LinkedHashSet<String>(groupDns)) {
+			GluuGroup group = (GluuGroup) cacheService.get(OxTrustConstants.CACHE_GROUP_SUMMARY_NAME, getGroupSummaryCacheKey(groupDn));
+			if (group != null) {
+				result.put(groupDn, group);
+				continue;
+			}
+
+			String inum = getInumFromGroupDn(groupDn, groupsBaseDn);
+			if (inum == null) {
+				notResolvedGroupDns.add(groupDn);
+			} else {
+				notCachedGroupDns.put(StringHelper.toLowerCase(inum), groupDn);
+			}
+		}
+
+		List<String> inums = new ArrayList<String>(notCachedGroupDns.keySet());
+		for (int start = 0; start < inums.size(); start += GROUP_SUMMARIES_BATCH_SIZE) {
+			List<String> batchInums = inums.subList(start, Math.min(start + GROUP_SUMMARIES_BATCH_SIZE, inums.size()));
+
+			List<Filter> inumFilters = new ArrayList<Filter>(batchInums.size());
+			for (String inum : batchInums) {
+				inumFilters.add(Filter.createEqualityFilter(OxTrustConstants.inum, inum));
+			}
+
+			List<GluuGroup> groups = ldapEntryManager.findEntries(groupsBaseDn, GluuGroup.class, GROUP_SUMMARY_ATTRIBUTES,
+					Filter.createORFilter(inumFilters));
+			for (GluuGroup group : groups) {
+				String groupDn = notCachedGroupDns.remove(StringHelper.toLowerCase(group.getInum()));
+				if (groupDn != null) {
+					result.put(groupDn, group);
+					cacheService.put(OxTrustConstants.CACHE_GROUP_SUMMARY_NAME, getGroupSummaryCacheKey(groupDn), group);
+				}
+			}
+		}
+		notResolvedGroupDns.addAll(notCachedGroupDns.values());
+
+		// Fall back to lookup by DN. It fails in same way as getGroupByDn() if group doesn't exist
+		for (String groupDn : notResolvedGroupDns) {
+			GluuGroup group = ldapEntryManager.find(GluuGroup.class, groupDn, GROUP_SUMMARY_ATTRIBUTES);
+			result.put(groupDn, group);
+			cacheService.put(OxTrustConstants.CACHE_GROUP_SUMMARY_NAME, getGroupSummaryCacheKey(groupDn), group);
+		}
+
+		log.debug("Resolved '{0}' group summaries, '{1}' of them without cache", result.size(), inums.size() + notResolvedGroupDns.size());
+
+		return result;
+	}
+
+	private String getInumFromGroupDn(String groupDn, String groupsBaseDn) {
+		try {
+			DN dn = new DN(groupDn);
+			RDN rdn = dn.getRDN();
+			if ((rdn == null) || rdn.isMultiValued() || !rdn.hasAttribute(OxTrustConstants.inum) || !new DN(groupsBaseDn).equals(dn.getParent())) {
+				return null;
+			}
+
+			return rdn.getAttributeValues()[0];
+		} catch (LDAPException ex) {
+			log.debug("Failed to parse group DN '{0}'", groupDn);
+			return null;
+		}
+	}
+
+	private String getGroupSummaryCacheKey(String groupDn) {
+		return StringHelper.toLowerCase(groupDn);
+	}
+
+	private void invalidateGroupSummaries() {
+		cacheService.removeAll(OxTrustConstants.CACHE_GROUP_SUMMARY_NAME);
+	}
+
 	/**
 	 * Get GroupService instance
 	 * 
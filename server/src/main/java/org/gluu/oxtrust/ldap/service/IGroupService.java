@@ -5,7 +5,9 @@
  */
 package org.gluu.oxtrust.ldap.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuGroupVisibility;
@@ -125,6 +127,16 @@ public interface IGroupService {
 
 	public abstract GluuGroup getGroupByDn(String Dn);
 
+	/**
+	 * Get groups with inum and display name only. Groups are loaded in batches
+	 * and cached for a short time. Group modifications invalidate cache
+	 * 
+	 * @param groupDns
+	 *            Groups DNs
+	 * @return Map of group DN to group
+	 */
+	public abstract Map<String, GluuGroup> getGroupSummariesByDns(Collection<String> groupDns);
+
 	/**
 	 * Get Group by iname
 	 * 
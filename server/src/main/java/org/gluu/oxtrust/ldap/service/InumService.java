@@ -8,7 +8,10 @@ package org.gluu.oxtrust.ldap.service;
 
 import java.io.Serializable;
 import java.sql.Connection;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
@@ -275,6 +278,42 @@ public class InumService implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Registers inums which were generated without check in DB. All of them are
+	 * added with one connection. Returns registered inums. Inums which exist in
+	 * DB already are skipped. If DB fails inums are returned like generateInums()
+	 * returns inum in this case
+	 */
+	public Set<String> registerInums(Collection<String> inums, String type) {
+		Set<String> result = new LinkedHashSet<String>(inums.size());
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		try {
+			conn = DbConnectionUtil.getInstance().getConnection();
+			String query = "INSERT INTO inum (inum, type) VALUES (?, ?)";
+			pstmt = (PreparedStatement) conn.prepareStatement(query);
+			for (String inum : inums) {
+				pstmt.setString(1, inum);
+				pstmt.setString(2, type);
+				try {
+					pstmt.execute();
+					result.add(inum);
+				} catch (MySQLIntegrityConstraintViolationException ex) {
+					log.error("Duplicate Inum found: " + inum);
+				}
+			}
+		} catch (Exception ex) {
+			log.error("MySQL database error: " + ex.getMessage());
+			result.addAll(inums);
+		} finally {
+			DbConnectionUtil.getInstance().closeStatement(pstmt);
+			DbConnectionUtil.getInstance().closeConnection(conn);
+		}
+
+		return result;
+	}
+
 	/**
 	 * Add an Inum to the DB by object
 	 * 
@@ -0,0 +1,143 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gluu.site.ldap.persistence.AttributeData;
+import org.xdi.util.StringHelper;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.util.Base64;
+
+/**
+ * Executes LDAP search with simple paged results control and passes entries to
+ * handler as soon as they arrive. Only one entry is held in memory at a time
+ */
+public class LdapPagedSearch {
+
+	public interface EntryHandler {
+
+		void handle(SearchResultEntry entry);
+
+	}
+
+	private final LDAPConnectionPool connectionPool;
+	private final int pageSize;
+
+	public LdapPagedSearch(LDAPConnectionPool connectionPool, int pageSize) {
+		this.connectionPool = connectionPool;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Returns count of processed entries. All pages are requested via the same
+	 * connection because cookie is bound to connection
+	 */
+	public int search(String baseDn, Filter filter, String[] returnAttributes, final EntryHandler entryHandler) throws LDAPException {
+		final int[] count = new int[1];
+		SearchResultListener searchResultListener = new SearchResultListener() {
+
+			private static final long serialVersionUID = 5128719536271431462L;
+
+			public void searchEntryReturned(SearchResultEntry searchEntry) {
+				entryHandler.handle(searchEntry);
+				count[0]++;
+			}
+
+			public void searchReferenceReturned(SearchResultReference searchReference) {
+			}
+		};
+
+		SearchRequest searchRequest;
+		if (returnAttributes == null) {
+			searchRequest = new SearchRequest(searchResultListener, baseDn, SearchScope.SUB, filter);
+		} else {
+			searchRequest = new SearchRequest(searchResultListener, baseDn, SearchScope.SUB, filter, returnAttributes);
+		}
+
+		LDAPConnection connection = connectionPool.getConnection();
+		try {
+			ASN1OctetString cookie = null;
+			do {
+				searchRequest.setControls(new Control[] { new SimplePagedResultsControl(pageSize, cookie) });
+				SearchResult searchResult = connection.search(searchRequest);
+
+				cookie = null;
+				SimplePagedResultsControl responseControl = SimplePagedResultsControl.get(searchResult);
+				if ((responseControl != null) && responseControl.moreResultsToReturn()) {
+					cookie = responseControl.getCookie();
+				}
+			} while (cookie != null);
+
+			connectionPool.releaseConnection(connection);
+		} catch (LDAPException ex) {
+			connectionPool.releaseDefunctConnection(connection);
+			throw ex;
+		} catch (RuntimeException ex) {
+			connectionPool.releaseDefunctConnection(connection);
+			throw ex;
+		}
+
+		return count[0];
+	}
+
+	/**
+	 * Converts entry attributes into list which LdapEntryManager accepts. Values
+	 * of binary attributes are encoded to Base64 like LdapEntryManager does
+	 */
+	public static List<AttributeData> toAttributeDataList(SearchResultEntry entry, List<String> binaryAttributes) {
+		List<AttributeData> result = new ArrayList<AttributeData>();
+		for (Attribute attribute : entry.getAttributes()) {
+			String attributeName = attribute.getName();
+
+			String[] values;
+			if (isBinaryAttribute(binaryAttributes, attributeName)) {
+				byte[][] binaryValues = attribute.getValueByteArrays();
+				values = new String[binaryValues.length];
+				for (int i = 0; i < binaryValues.length; i++) {
+					values[i] = Base64.encode(binaryValues[i]);
+				}
+			} else {
+				values = attribute.getValues();
+			}
+
+			result.add(new AttributeData(attributeName, values));
+		}
+
+		return result;
+	}
+
+	private static boolean isBinaryAttribute(List<String> binaryAttributes, String attributeName) {
+		if (binaryAttributes == null) {
+			return false;
+		}
+
+		for (String binaryAttribute : binaryAttributes) {
+			if (StringHelper.equalsIgnoreCase(binaryAttribute, attributeName)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+
+/**
+ * Reads search results page by page with simple paged results control
+ *
+ * Paging cookie is bound to connection, so cursor keeps own connection until
+ * it's closed. Next page continues from server side position. Earlier entries
+ * are not read again. Cursor is not thread safe
+ */
+public class LdapPagedSearchCursor {
+
+	private final LDAPConnectionPool connectionPool;
+	private final SearchRequest searchRequest;
+	private final int pageSize;
+
+	private LDAPConnection connection;
+	private ASN1OctetString cookie;
+	private boolean hasMore;
+	private int returnedCount;
+
+	public LdapPagedSearchCursor(LDAPConnectionPool connectionPool, String baseDn, Filter filter, String[] returnAttributes, int pageSize)
+			throws LDAPException {
+		this.connectionPool = connectionPool;
+		this.pageSize = pageSize;
+
+		if (returnAttributes == null) {
+			this.searchRequest = new SearchRequest(baseDn, SearchScope.SUB, filter);
+		} else {
+			this.searchRequest = new SearchRequest(baseDn, SearchScope.SUB, filter, returnAttributes);
+		}
+
+		this.connection = connectionPool.getConnection();
+		this.hasMore = true;
+	}
+
+	/**
+	 * Returns next page of entries or empty list if there are no more entries
+	 */
+	public List<SearchResultEntry> nextPage() throws LDAPException {
+		if (!hasMore) {
+			return Collections.emptyList();
+		}
+
+		SearchResult searchResult;
+		try {
+			searchRequest.setControls(new Control[] { new SimplePagedResultsControl(pageSize, cookie) });
+			searchResult = connection.search(searchRequest);
+		} catch (LDAPException ex) {
+			abort();
+			throw ex;
+		} catch (RuntimeException ex) {
+			abort();
+			throw ex;
+		}
+
+		cookie = null;
+		SimplePagedResultsControl responseControl;
+		try {
+			responseControl = SimplePagedResultsControl.get(searchResult);
+		} catch (LDAPException ex) {
+			abort();
+			throw ex;
+		}
+		if ((responseControl != null) && responseControl.moreResultsToReturn()) {
+			cookie = responseControl.getCookie();
+		}
+
+		hasMore = cookie != null;
+		if (!hasMore) {
+			close();
+		}
+
+		List<SearchResultEntry> entries = searchResult.getSearchEntries();
+		returnedCount += entries.size();
+
+		return entries;
+	}
+
+	public boolean hasMore() {
+		return hasMore;
+	}
+
+	/**
+	 * Count of entries returned by all pages read so far
+	 */
+	public int getReturnedCount() {
+		return returnedCount;
+	}
+
+	/**
+	 * Returns connection to pool. Server releases paged search state with
+	 * connection reuse or by own timeout
+	 */
+	public void close() {
+		hasMore = false;
+		if (connection != null) {
+			if (cookie != null) {
+				// Connection has unfinished paged search. Don't give it to other users
+				connectionPool.releaseDefunctConnection(connection);
+			} else {
+				connectionPool.releaseConnection(connection);
+			}
+			connection = null;
+		}
+	}
+
+	private void abort() {
+		hasMore = false;
+		if (connection != null) {
+			connectionPool.releaseDefunctConnection(connection);
+			connection = null;
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import org.gluu.oxtrust.service.WorkerExecutorService;
+import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.gluu.site.ldap.persistence.exception.EntryPersistenceException;
+import org.jboss.seam.Component;
+import org.jboss.seam.ScopeType;
+import org.jboss.seam.annotations.AutoCreate;
+import org.jboss.seam.annotations.In;
+import org.jboss.seam.annotations.Logger;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.annotations.Scope;
+import org.jboss.seam.log.Log;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ResultCode;
+
+/**
+ * Keeps persons memberOf attribute in sync with group members
+ *
+ * Only persons added to or removed from group are updated. Each person gets
+ * single memberOf value modification without loading entry. Modifications are
+ * applied by batches in shared worker pool
+ */
+@Scope(ScopeType.STATELESS)
+@Name("memberOfSyncService")
+@AutoCreate
+public class MemberOfSyncService implements Serializable {
+
+	private static final long serialVersionUID = -3590379924387925218L;
+
+	private static final String MEMBER_OF_ATTRIBUTE = "memberOf";
+
+	private static final int BATCH_SIZE = 500;
+
+	@Logger
+	private Log log;
+
+	@In
+	private LdapEntryManager ldapEntryManager;
+
+	@In
+	private WorkerExecutorService workerExecutorService;
+
+	/**
+	 * Updates memberOf of persons which were added to or removed from group
+	 */
+	public MemberOfSyncStatistics syncMembers(String groupDn, Collection<String> oldMemberDns, Collection<String> newMemberDns) {
+		Map<String, String> oldMembers = normalizeDns(oldMemberDns);
+		Map<String, String> newMembers = normalizeDns(newMemberDns);
+
+		List<String> addedMemberDns = new ArrayList<String>();
+		for (Map.Entry<String, String> newMember : newMembers.entrySet()) {
+			if (!oldMembers.containsKey(newMember.getKey())) {
+				addedMemberDns.add(newMember.getValue());
+			}
+		}
+
+		List<String> removedMemberDns = new ArrayList<String>();
+		for (Map.Entry<String, String> oldMember : oldMembers.entrySet()) {
+			if (!newMembers.containsKey(oldMember.getKey())) {
+				removedMemberDns.add(oldMember.getValue());
+			}
+		}
+
+		MemberOfSyncStatistics statistics = new MemberOfSyncStatistics();
+		apply(groupDn, addedMemberDns, ModificationType.ADD, statistics);
+		apply(groupDn, removedMemberDns, ModificationType.DELETE, statistics);
+
+		return statistics;
+	}
+
+	/**
+	 * Adds group to memberOf of specified persons
+	 */
+	public MemberOfSyncStatistics addMemberOf(String groupDn, Collection<String> memberDns) {
+		MemberOfSyncStatistics statistics = new MemberOfSyncStatistics();
+		apply(groupDn, new ArrayList<String>(normalizeDns(memberDns).values()), ModificationType.ADD, statistics);
+
+		return statistics;
+	}
+
+	/**
+	 * Removes group from memberOf of specified persons
+	 */
+	public MemberOfSyncStatistics removeMemberOf(String groupDn, Collection<String> memberDns) {
+		MemberOfSyncStatistics statistics = new MemberOfSyncStatistics();
+		apply(groupDn, new ArrayList<String>(normalizeDns(memberDns).values()), ModificationType.DELETE, statistics);
+
+		return statistics;
+	}
+
+	private void apply(String groupDn, List<String> memberDns, ModificationType modificationType, MemberOfSyncStatistics statistics) {
+		if (memberDns.isEmpty()) {
+			return;
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		LDAPConnectionPool connectionPool = ldapEntryManager.getLdapOperationService().getConnectionProvider().getConnectionPool();
+		Modification modification = new Modification(modificationType, MEMBER_OF_ATTRIBUTE, groupDn);
+
+		int batchesCount = (memberDns.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+		List<Future<MemberOfSyncStatistics>> futures = new ArrayList<Future<MemberOfSyncStatistics>>(batchesCount);
+		try {
+			CompletionService<MemberOfSyncStatistics> completionService = new ExecutorCompletionService<MemberOfSyncStatistics>(
+					workerExecutorService.getExecutor());
+			for (int i = 0; i < memberDns.size(); i += BATCH_SIZE) {
+				List<String> batch = memberDns.subList(i, Math.min(i + BATCH_SIZE, memberDns.size()));
+				futures.add(completionService.submit(new MemberOfModifyTask(connectionPool, batch, modification)));
+			}
+
+			int processed = 0;
+			for (int i = 0; i < batchesCount; i++) {
+				MemberOfSyncStatistics batchStatistics;
+				try {
+					batchStatistics = completionService.take().get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new EntryPersistenceException(String.format("Interrupted memberOf update of group '%s'", groupDn), ex);
+				} catch (ExecutionException ex) {
+					throw new EntryPersistenceException(String.format("Failed to update memberOf of group '%s'", groupDn), ex.getCause());
+				}
+
+				statistics.add(batchStatistics);
+				processed += batchStatistics.getProcessed();
+				log.debug("Applied memberOf {0} of group '{1}' to {2} of {3} persons", modificationType, groupDn, processed, memberDns.size());
+			}
+		} finally {
+			for (Future<MemberOfSyncStatistics> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		log.info("Applied memberOf {0} of group '{1}' to {2} persons in {3} ms, modified: {4}, unchanged: {5}, failed: {6}", modificationType,
+				groupDn, memberDns.size(), System.currentTimeMillis() - startTime, statistics.getModified(), statistics.getUnchanged(),
+				statistics.getFailed());
+
+		if (statistics.getFailed() > 0) {
+			throw new EntryPersistenceException(String.format("Failed to update memberOf of %d persons of group '%s'", statistics.getFailed(), groupDn));
+		}
+	}
+
+	private Map<String, String> normalizeDns(Collection<String> dns) {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		if (dns == null) {
+			return result;
+		}
+
+		for (String dn : dns) {
+			String normalizedDn;
+			try {
+				normalizedDn = new DN(dn).toNormalizedString();
+			} catch (LDAPException ex) {
+				normalizedDn = dn.toLowerCase();
+			}
+
+			if (!result.containsKey(normalizedDn)) {
+				result.put(normalizedDn, dn);
+			}
+		}
+
+		return result;
+	}
+
+	private class MemberOfModifyTask implements Callable<MemberOfSyncStatistics> {
+
+		private final LDAPConnectionPool connectionPool;
+		private final List<String> memberDns;
+		private final Modification modification;
+
+		public MemberOfModifyTask(LDAPConnectionPool connectionPool, List<String> memberDns, Modification modification) {
+			this.connectionPool = connectionPool;
+			this.memberDns = memberDns;
+			this.modification = modification;
+		}
+
+		public MemberOfSyncStatistics call() {
+			MemberOfSyncStatistics statistics = new MemberOfSyncStatistics();
+			for (String memberDn : memberDns) {
+				try {
+					connectionPool.modify(memberDn, modification);
+					statistics.modified++;
+				} catch (LDAPException ex) {
+					ResultCode resultCode = ex.getResultCode();
+					if (ResultCode.ATTRIBUTE_OR_VALUE_EXISTS.equals(resultCode) || ResultCode.NO_SUCH_ATTRIBUTE.equals(resultCode)) {
+						// memberOf is already correct
+						statistics.unchanged++;
+					} else if (ResultCode.NO_SUCH_OBJECT.equals(resultCode) && ModificationType.DELETE.equals(modification.getModificationType())) {
+						// Person was removed already. There is nothing to clean up
+						log.debug("Skipped memberOf update of removed person '{0}'", memberDn);
+						statistics.unchanged++;
+					} else {
+						log.error("Failed to update memberOf of person '{0}'", ex, memberDn);
+						statistics.failed++;
+					}
+				}
+			}
+
+			return statistics;
+		}
+
+	}
+
+	public static class MemberOfSyncStatistics implements Serializable {
+
+		private static final long serialVersionUID = 4212650843711546513L;
+
+		private int modified;
+		private int unchanged;
+		private int failed;
+
+		public int getModified() {
+			return modified;
+		}
+
+		public int getUnchanged() {
+			return unchanged;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public int getProcessed() {
+			return modified + unchanged + failed;
+		}
+
+		private void add(MemberOfSyncStatistics statistics) {
+			this.modified += statistics.modified;
+			this.unchanged += statistics.unchanged;
+			this.failed += statistics.failed;
+		}
+
+	}
+
+	public static MemberOfSyncService instance() {
+		return (MemberOfSyncService) Component.getInstance(MemberOfSyncService.class);
+	}
+
+}
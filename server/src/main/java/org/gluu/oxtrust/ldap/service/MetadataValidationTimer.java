@@ -12,6 +12,7 @@ package org.gluu.oxtrust.ldap.service;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -20,12 +21,21 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.io.IOUtils;
 import org.gluu.oxtrust.action.UpdateTrustRelationshipAction;
 import org.gluu.oxtrust.config.OxTrustConfiguration;
 import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
 import org.gluu.oxtrust.model.GluuValidationStatus;
+import org.gluu.oxtrust.model.MetadataValidationMetrics;
+import org.gluu.oxtrust.service.WorkerExecutorService;
 import org.gluu.saml.metadata.SAMLMetadataParser;
 import org.jboss.seam.ScopeType;
 import org.jboss.seam.annotations.AutoCreate;
@@ -52,29 +62,44 @@ import org.xdi.xml.GluuErrorHandler;
 @Name("metadataValidationTimer")
 public class MetadataValidationTimer {
 
+	// Limit files count per run to keep run duration predictable
+	private static final int MAX_BATCH_SIZE = 200;
+
 	@Logger
 	Log log;
 
 	@In
 	private OxTrustConfiguration oxTrustConfiguration;
 
-	private static LinkedBlockingQueue<String> metadataUpdates = new LinkedBlockingQueue<String>();
+	@In
+	private WorkerExecutorService workerExecutorService;
+
+	private static LinkedBlockingQueue<QueuedMetadata> metadataUpdates = new LinkedBlockingQueue<QueuedMetadata>();
+
+	private final AtomicBoolean isActive = new AtomicBoolean();
+
+	private final AtomicLong validatedFiles = new AtomicLong();
+	private final AtomicLong failedFiles = new AtomicLong();
+	private final AtomicLong totalValidationTime = new AtomicLong();
+	private final AtomicLong maxValidationTime = new AtomicLong();
+
+	private volatile Date lastRunDate;
+	private volatile long lastRunDuration;
+	private volatile int lastBatchSize;
+	private volatile long lastBatchMaxQueueWaitTime;
 
 	public static void queue(String fileName) {
-		synchronized (metadataUpdates) {
-			metadataUpdates.add(fileName);
-		}
+		metadataUpdates.add(new QueuedMetadata(fileName));
 	}
 
 	public static boolean isQueued(String gluuSAMLspMetaDataFN) {
-		synchronized (metadataUpdates) {
-			for (String filename : metadataUpdates) {
-				if (filename.contains(gluuSAMLspMetaDataFN)) {
-					return true;
-				}
+		for (QueuedMetadata queuedMetadata : metadataUpdates) {
+			if (queuedMetadata.fileName.contains(gluuSAMLspMetaDataFN)) {
+				return true;
 			}
-			return false;
 		}
+
+		return false;
 	}
 
 	@Asynchronous
@@ -84,15 +109,24 @@ public class MetadataValidationTimer {
 	}
 
 	private void process(Date when, Long interval) {
-		log.debug("Starting metadata validation");
-		ApplicationConfiguration applicationConfiguration = oxTrustConfiguration.getApplicationConfiguration();
-		boolean result = validateMetadata(applicationConfiguration.getShibboleth2IdpRootDir() + File.separator
-				+ Shibboleth2ConfService.SHIB2_IDP_TEMPMETADATA_FOLDER + File.separator, applicationConfiguration
-				.getShibboleth2IdpRootDir() + File.separator + Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator);
-		log.debug("Metadata validation finished with result: '{0}'", result);
-		
-		if (result) {
-			regenerateConfigurationFiles();
+		if (!isActive.compareAndSet(false, true)) {
+			log.debug("Previous metadata validation is still in progress");
+			return;
+		}
+
+		try {
+			log.debug("Starting metadata validation");
+			ApplicationConfiguration applicationConfiguration = oxTrustConfiguration.getApplicationConfiguration();
+			boolean result = validateMetadata(applicationConfiguration.getShibboleth2IdpRootDir() + File.separator
+					+ Shibboleth2ConfService.SHIB2_IDP_TEMPMETADATA_FOLDER + File.separator, applicationConfiguration
+					.getShibboleth2IdpRootDir() + File.separator + Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator);
+			log.debug("Metadata validation finished with result: '{0}'", result);
+
+			if (result) {
+				regenerateConfigurationFiles();
+			}
+		} finally {
+			isActive.set(false);
 		}
 	}
 
@@ -110,137 +144,257 @@ public class MetadataValidationTimer {
 
 	}
 
-	/**
+	/*
+	 * Validate batch of queued metadata files in shared worker pool. Each task
+	 * writes trust relationship status before and after validation of its file,
+	 * so LDAP writes of different files run in parallel too
+	 * 
 	 * @param shib2IdpTempmetadataFolder
 	 * @param shib2IdpMetadataFolder
 	 */
 	private boolean validateMetadata(String shib2IdpTempmetadataFolder, String shib2IdpMetadataFolder) {
-		boolean result = false;
 		log.trace("Starting metadata validation process.");
-		ApplicationConfiguration applicationConfiguration = oxTrustConfiguration.getApplicationConfiguration();
+		final ApplicationConfiguration applicationConfiguration = oxTrustConfiguration.getApplicationConfiguration();
+
+		List<QueuedMetadata> batch = new ArrayList<QueuedMetadata>();
+		metadataUpdates.drainTo(batch, MAX_BATCH_SIZE);
+		if (batch.isEmpty()) {
+			return false;
+		}
+
+		Date startDate = new Date();
+		long maxQueueWaitTime = 0;
+
+		// Resolve trust relationships of queued files
+		final TrustService trustService = TrustService.instance();
+		Set<String> batchFileNames = new HashSet<String>();
+		List<MetadataValidationTask> tasks = new ArrayList<MetadataValidationTask>();
+		for (QueuedMetadata queuedMetadata : batch) {
+			String metadataFN = queuedMetadata.fileName;
+			if (StringHelper.isEmpty(metadataFN) || !batchFileNames.add(metadataFN)) {
+				continue;
+			}
 
-		String metadataFN = null;
-		synchronized (metadataUpdates) {
-			if (!metadataUpdates.isEmpty()) {
-				metadataFN = metadataUpdates.poll();
+			GluuSAMLTrustRelationship tr = trustService.getTrustByUnpunctuatedInum(
+					metadataFN.split("-" + Shibboleth2ConfService.SHIB2_IDP_SP_METADATA_FILE)[0]);
+			if (tr == null) {
+				metadataUpdates.add(queuedMetadata);
+				continue;
 			}
+			maxQueueWaitTime = Math.max(maxQueueWaitTime, startDate.getTime() - queuedMetadata.queuedTime);
+
+			tasks.add(new MetadataValidationTask(metadataFN, tr, new File(shib2IdpTempmetadataFolder + metadataFN), new File(
+					shib2IdpMetadataFolder + metadataFN.replaceAll(".{4}\\..{4}$", ""))));
 		}
 
-		synchronized (this) {
-			if (StringHelper.isNotEmpty(metadataFN)) {
-				File metadata = new File(shib2IdpTempmetadataFolder + metadataFN);
-				File target = new File(shib2IdpMetadataFolder + metadataFN.replaceAll(".{4}\\..{4}$", ""));
-				GluuSAMLTrustRelationship tr = TrustService.instance().getTrustByUnpunctuatedInum(
-						metadataFN.split("-" + Shibboleth2ConfService.SHIB2_IDP_SP_METADATA_FILE)[0]);
-				if (tr == null) {
-					metadataUpdates.add(metadataFN);
-					return false;
-				}
-				tr.setValidationStatus(GluuValidationStatus.VALIDATION);
-				TrustService.instance().updateTrustRelationship(tr);
+		if (tasks.isEmpty()) {
+			return false;
+		}
 
-				GluuErrorHandler handler = null;
-				List<String> validationLog = null;
-				try {
-					handler = Shibboleth2ConfService.validateMetadata(new FileInputStream(metadata));
-				} catch (Exception e) {
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
-					tr.setStatus(GluuStatus.INACTIVE);
-					validationLog = new ArrayList<String>();
-					validationLog.add(e.getMessage());
-					log.warn("Validation of " + tr.getInum() + " failed: " + e.getMessage() );
-					tr.setValidationLog(validationLog);
-					TrustService.instance().updateTrustRelationship(tr);
-
-					return false;
-				}
-				if (handler.isValid()) {
-					tr.setValidationLog(handler.getLog());
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_SUCCESS);
-					if (((!target.exists()) || target.delete()) && (!metadata.renameTo(target))) {
-						log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
-						tr.setStatus(GluuStatus.INACTIVE);
-					} else {
-						tr.setSpMetaDataFN(metadataFN.replaceAll(".{4}\\..{4}$", ""));
-					}
-					boolean federation = TrustService.instance().isFederation(tr);
-					tr.setFederation(federation);
-					String idpMetadataFolder = applicationConfiguration.getShibboleth2IdpRootDir() + File.separator
-							+ Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator;
-					File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
-					
-					
-					List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
-					Set<String> entityIdSet = new TreeSet<String>();
-					Set<String> duplicatesSet = new TreeSet<String>(); 
-					if(entityIdList != null && ! entityIdList.isEmpty()){
-
-						for (String entityId : entityIdList) {
-							if (!entityIdSet.add(entityId)) {
-								duplicatesSet.add(entityId);
-							}
-						}
-					}
+		boolean result = false;
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(tasks.size());
+		try {
+			for (final MetadataValidationTask task : tasks) {
+				FutureTask<Boolean> future = new FutureTask<Boolean>(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						GluuSAMLTrustRelationship tr = task.trustRelationship;
+						tr.setValidationStatus(GluuValidationStatus.VALIDATION);
+						trustService.updateTrustRelationship(tr);
 
-					
-					if(! duplicatesSet.isEmpty()){
-						validationLog = tr.getValidationLog();
-						if(validationLog != null){
-							validationLog = new LinkedList<String>(validationLog);
-						}else{
-							validationLog = new LinkedList<String>();
-						}
-						validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
-					}
-					tr.setValidationLog(validationLog);
-					tr.setGluuEntityId(entityIdSet);
-					tr.setStatus(GluuStatus.ACTIVE);
-
-					TrustService.instance().updateTrustRelationship(tr);
-					result = true;
-				}else if(applicationConfiguration.isIgnoreValidation()){
-					tr.setValidationLog(new ArrayList<String>(new HashSet<String>(handler.getLog())));
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
-					if( (( ! target.exists() ) ||  target.delete()) && ( ! metadata.renameTo(target) )){
-						log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
-						tr.setStatus(GluuStatus.INACTIVE);
-					}else{
-						tr.setSpMetaDataFN(metadataFN.replaceAll("....$", ""));
-					}
-					boolean federation = TrustService.instance().isFederation(tr);
-					tr.setFederation(federation);
-					String idpMetadataFolder = applicationConfiguration.getShibboleth2IdpRootDir() + File.separator + Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator;
-					File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
-					
-					List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
-					Set<String> duplicatesSet = new TreeSet<String>(); 
-					Set<String> entityIdSet = new TreeSet<String>();
-
-					for (String entityId : entityIdList) {
-						if (!entityIdSet.add(entityId)) {
-							duplicatesSet.add(entityId);
+						boolean validated;
+						try {
+							validated = validateMetadataFile(task, applicationConfiguration);
+						} catch (RuntimeException ex) {
+							log.error("Failed to validate metadata file '{0}'", ex, task.metadataFN);
+							failValidation(tr, ex);
+							validated = false;
 						}
+
+						trustService.updateTrustRelationship(tr);
+
+						return validated;
 					}
-					
-					tr.setGluuEntityId(entityIdSet);
-					tr.setStatus(GluuStatus.ACTIVE);	
-					validationLog = tr.getValidationLog();
-					if(! duplicatesSet.isEmpty()){
-						validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
-					}
-					TrustService.instance().updateTrustRelationship(tr);
-					result = true;
-				} else {
-					tr.setValidationLog(new ArrayList<String>(new HashSet<String>(handler.getLog())));
-					tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
-					tr.setStatus(GluuStatus.INACTIVE);
-					TrustService.instance().updateTrustRelationship(tr);
+				});
+				futures.add(future);
+				workerExecutorService.getExecutor().execute(future);
+			}
+
+			for (int i = 0; i < tasks.size(); i++) {
+				try {
+					result |= futures.get(i).get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException ex) {
+					log.error("Failed to update trust relationship of metadata file '{0}'", ex.getCause(), tasks.get(i).metadataFN);
 				}
 			}
+		} finally {
+			for (Future<Boolean> future : futures) {
+				future.cancel(true);
+			}
 		}
 
+		this.lastRunDate = startDate;
+		this.lastRunDuration = System.currentTimeMillis() - startDate.getTime();
+		this.lastBatchSize = tasks.size();
+		this.lastBatchMaxQueueWaitTime = maxQueueWaitTime;
+		log.info("Validated {0} metadata files in {1} ms, {2} files are in queue", tasks.size(), lastRunDuration, metadataUpdates.size());
+
 		return result;
 	}
+
+	/*
+	 * Validate metadata file and set trust relationship properties. Caller
+	 * should persist trust relationship
+	 */
+	private boolean validateMetadataFile(MetadataValidationTask task, ApplicationConfiguration applicationConfiguration) {
+		String metadataFN = task.metadataFN;
+		File metadata = task.metadata;
+		File target = task.target;
+		GluuSAMLTrustRelationship tr = task.trustRelationship;
+
+		long startTime = System.currentTimeMillis();
+		GluuErrorHandler handler = null;
+		List<String> validationLog = null;
+		InputStream is = null;
+		try {
+			is = new FileInputStream(metadata);
+			handler = Shibboleth2ConfService.validateMetadata(is);
+		} catch (Exception e) {
+			failValidation(tr, e);
+			log.warn("Validation of " + tr.getInum() + " failed: " + e.getMessage() );
+
+			return false;
+		} finally {
+			IOUtils.closeQuietly(is);
+			addValidationTime(System.currentTimeMillis() - startTime, (handler == null) || !handler.isValid());
+		}
+
+		if (handler.isValid()) {
+			tr.setValidationLog(handler.getLog());
+			tr.setValidationStatus(GluuValidationStatus.VALIDATION_SUCCESS);
+			if (((!target.exists()) || target.delete()) && (!metadata.renameTo(target))) {
+				log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
+				tr.setStatus(GluuStatus.INACTIVE);
+			} else {
+				tr.setSpMetaDataFN(metadataFN.replaceAll(".{4}\\..{4}$", ""));
+			}
+			boolean federation = TrustService.instance().isFederation(tr);
+			tr.setFederation(federation);
+			String idpMetadataFolder = applicationConfiguration.getShibboleth2IdpRootDir() + File.separator
+					+ Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator;
+			File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
+			
+			
+			List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+			Set<String> entityIdSet = new TreeSet<String>();
+			Set<String> duplicatesSet = new TreeSet<String>(); 
+			if(entityIdList != null && ! entityIdList.isEmpty()){
+
+				for (String entityId : entityIdList) {
+					if (!entityIdSet.add(entityId)) {
+						duplicatesSet.add(entityId);
+					}
+				}
+			}
+
+			
+			if(! duplicatesSet.isEmpty()){
+				validationLog = tr.getValidationLog();
+				if(validationLog != null){
+					validationLog = new LinkedList<String>(validationLog);
+				}else{
+					validationLog = new LinkedList<String>();
+				}
+				validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
+			}
+			tr.setValidationLog(validationLog);
+			tr.setGluuEntityId(entityIdSet);
+			tr.setStatus(GluuStatus.ACTIVE);
+
+			return true;
+		}else if(applicationConfiguration.isIgnoreValidation()){
+			tr.setValidationLog(new ArrayList<String>(new HashSet<String>(handler.getLog())));
+			tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+			if( (( ! target.exists() ) ||  target.delete()) && ( ! metadata.renameTo(target) )){
+				log.error("Failed to move metadata file to location:" + target.getAbsolutePath());
+				tr.setStatus(GluuStatus.INACTIVE);
+			}else{
+				tr.setSpMetaDataFN(metadataFN.replaceAll("....$", ""));
+			}
+			boolean federation = TrustService.instance().isFederation(tr);
+			tr.setFederation(federation);
+			String idpMetadataFolder = applicationConfiguration.getShibboleth2IdpRootDir() + File.separator + Shibboleth2ConfService.SHIB2_IDP_METADATA_FOLDER + File.separator;
+			File metadataFile = new File(idpMetadataFolder + tr.getSpMetaDataFN());
+			
+			List<String> entityIdList = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+			Set<String> duplicatesSet = new TreeSet<String>(); 
+			Set<String> entityIdSet = new TreeSet<String>();
+
+			for (String entityId : entityIdList) {
+				if (!entityIdSet.add(entityId)) {
+					duplicatesSet.add(entityId);
+				}
+			}
+			
+			tr.setGluuEntityId(entityIdSet);
+			tr.setStatus(GluuStatus.ACTIVE);	
+			validationLog = tr.getValidationLog();
+			if(! duplicatesSet.isEmpty()){
+				validationLog.add("This metadata contains multiple instances of entityId: " + Arrays.toString(duplicatesSet.toArray()));
+			}
+
+			return true;
+		} else {
+			tr.setValidationLog(new ArrayList<String>(new HashSet<String>(handler.getLog())));
+			tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+			tr.setStatus(GluuStatus.INACTIVE);
+
+			return false;
+		}
+	}
+
+	private void failValidation(GluuSAMLTrustRelationship tr, Throwable ex) {
+		tr.setValidationStatus(GluuValidationStatus.VALIDATION_FAILED);
+		tr.setStatus(GluuStatus.INACTIVE);
+		List<String> validationLog = new ArrayList<String>();
+		validationLog.add(ex.getMessage());
+		tr.setValidationLog(validationLog);
+	}
+
+	private void addValidationTime(long validationTime, boolean failed) {
+		validatedFiles.incrementAndGet();
+		if (failed) {
+			failedFiles.incrementAndGet();
+		}
+		totalValidationTime.addAndGet(validationTime);
+
+		long max;
+		while ((max = maxValidationTime.get()) < validationTime) {
+			if (maxValidationTime.compareAndSet(max, validationTime)) {
+				break;
+			}
+		}
+	}
+
+	public MetadataValidationMetrics getMetrics() {
+		MetadataValidationMetrics metrics = new MetadataValidationMetrics();
+		metrics.setQueueDepth(metadataUpdates.size());
+		metrics.setLastRunDate(lastRunDate);
+		metrics.setLastRunDuration(lastRunDuration);
+		metrics.setLastBatchSize(lastBatchSize);
+		metrics.setLastBatchMaxQueueWaitTime(lastBatchMaxQueueWaitTime);
+
+		long validated = validatedFiles.get();
+		metrics.setValidatedFiles(validated);
+		metrics.setFailedFiles(failedFiles.get());
+		metrics.setAverageValidationTime((validated == 0) ? 0 : totalValidationTime.get() / validated);
+		metrics.setMaxValidationTime(maxValidationTime.get());
+
+		return metrics;
+	}
 	
 	@Asynchronous
 	public void newThreadSaveSpMetaDataFileSourceTypeURI(UpdateTrustRelationshipAction updateTrustRelationshipAction){
@@ -252,4 +406,33 @@ public class MetadataValidationTimer {
 	 			e.printStackTrace();
 	 		}
 	    }
+
+	private static class QueuedMetadata {
+
+		private final String fileName;
+		private final long queuedTime;
+
+		public QueuedMetadata(String fileName) {
+			this.fileName = fileName;
+			this.queuedTime = System.currentTimeMillis();
+		}
+
+	}
+
+	private static class MetadataValidationTask {
+
+		private final String metadataFN;
+		private final GluuSAMLTrustRelationship trustRelationship;
+		private final File metadata;
+		private final File target;
+
+		public MetadataValidationTask(String metadataFN, GluuSAMLTrustRelationship trustRelationship, File metadata, File target) {
+			this.metadataFN = metadataFN;
+			this.trustRelationship = trustRelationship;
+			this.metadata = metadata;
+			this.target = target;
+		}
+
+	}
+
 }
@@ -238,6 +238,24 @@ public class PersonService implements Serializable, IPersonService {
 		return result;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.gluu.oxtrust.ldap.service.IPersonService#findPersonsByInums(java.util.List, java.lang.String[])
+	 */
+	@Override
+	public List<GluuCustomPerson> findPersonsByInums(List<String> inums, String[] returnAttributes) throws Exception {
+		List<Filter> inumFilters = new ArrayList<Filter>();
+		for (String inum : inums) {
+			inumFilters.add(Filter.createEqualityFilter(OxTrustConstants.inum, inum));
+		}
+
+		Filter filter = Filter.createORFilter(inumFilters);
+
+		List<GluuCustomPerson> result = ldapEntryManager
+				.findEntries(getDnForPerson(null), GluuCustomPerson.class, returnAttributes, filter);
+
+		return result;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.gluu.oxtrust.ldap.service.IPersonService#findPersonByDn(java.lang.String, java.lang.String)
 	 */
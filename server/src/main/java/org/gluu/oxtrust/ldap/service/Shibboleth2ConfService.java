@@ -20,6 +20,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -89,6 +90,11 @@ public class Shibboleth2ConfService implements Serializable {
 
 	private static final long serialVersionUID = -7645397652175481054L;
 
+	private static final String SHIB2_CONF_GENERATOR = "shibboleth2";
+
+	// Compiled metadata schema shared by all validations
+	private static volatile Schema metadataSchema;
+
 	private static final String SHIB2_IDP = "idp";
 	private static final String SHIB2_SP = "sp";
 
@@ -134,6 +140,9 @@ public class Shibboleth2ConfService implements Serializable {
 	@In
 	private TemplateService templateService;
 
+	@In
+	private ShibbolethConfGenerator shibbolethConfGenerator;
+
 	@Logger
 	private Log log;
 
@@ -163,9 +172,11 @@ public class Shibboleth2ConfService implements Serializable {
 		                            + SHIB2_IDP_METADATA_FOLDER 
 		                            + File.separator;
 
+		ShibbolethConfGenerator.GenerationSummary summary = shibbolethConfGenerator.startGeneration(SHIB2_CONF_GENERATOR, trustRelationships);
+
 		// Prepare data for files
 		initAttributes(trustRelationships);
-		HashMap<String, Object> trustParams = initTrustParamMap(trustRelationships);
+		HashMap<String, Object> trustParams = initTrustParamMap(trustRelationships, summary);
 		HashMap<String, Object> attrParams = initAttributeParamMap(trustRelationships);
 
 		boolean result = (trustParams != null) && (attrParams != null);
@@ -174,41 +185,25 @@ public class Shibboleth2ConfService implements Serializable {
 		}
 
 		VelocityContext context = prepareVelocityContext(trustParams, attrParams, idpMetadataFolder);
+		summary.finishPrepare();
 
-		// Generate attribute-resolver.xml
-		String attributeResolver = templateService.generateConfFile(SHIB2_IDP_ATTRIBUTE_RESOLVER_FILE, context);
-		// Generate attribute-filter.xml
-		String attributeFilter = templateService.generateConfFile(SHIB2_IDP_ATTRIBUTE_FILTER_FILE, context);
-		// Generate relying-party.xml
-		String relyingParty = templateService.generateConfFile(SHIB2_IDP_RELYING_PARTY, context);
-		// Generate shibboleth2.xml
-		String shibConfig = templateService.generateConfFile(SHIB2_SP_SHIBBOLETH2, context);
-		// Generate handler.xml
-		String profileHandler = templateService.generateConfFile(SHIB2_IDP_PROFILE_HADLER, context);
+		// Only new and changed trust relationships are rendered again
+		if (!shibbolethConfGenerator.renderTrustRelationshipFragments(summary, context, trustRelationships)) {
+			return false;
+		}
+
+		// Files are rendered and written only if template input or file were changed
+		Map<String, String> confFiles = new LinkedHashMap<String, String>();
+		confFiles.put(SHIB2_IDP_ATTRIBUTE_RESOLVER_FILE, idpConfFolder + SHIB2_IDP_ATTRIBUTE_RESOLVER_FILE);
+		confFiles.put(SHIB2_IDP_ATTRIBUTE_FILTER_FILE, idpConfFolder + SHIB2_IDP_ATTRIBUTE_FILTER_FILE);
+		confFiles.put(SHIB2_IDP_RELYING_PARTY, idpConfFolder + SHIB2_IDP_RELYING_PARTY);
+		confFiles.put(SHIB2_SP_SHIBBOLETH2, getSpShibboleth2FilePath());
+		confFiles.put(SHIB2_IDP_PROFILE_HADLER, idpConfFolder + SHIB2_IDP_PROFILE_HADLER);
 
 		// Generate attribute-map.xml
-		// String attributeMap =
-		// templateService.generateConfFile(SHIB2_SP_ATTRIBUTE_MAP, context);
-
-		result = (attributeFilter != null) && (attributeResolver != null) && (relyingParty != null) && (shibConfig != null)
-				&& (profileHandler != null);
-
-		// Write attribute-resolver.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB2_IDP_ATTRIBUTE_RESOLVER_FILE, attributeResolver);
-		// Write attribute-filter.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB2_IDP_ATTRIBUTE_FILTER_FILE, attributeFilter);
-		// Write relying-party.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB2_IDP_RELYING_PARTY, relyingParty);
-		// Write shibboleth2.xml
-		result &= templateService.writeConfFile(getSpShibboleth2FilePath(), shibConfig);
-		// Write handler.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB2_IDP_PROFILE_HADLER, profileHandler);
-
-		// Write attribute-map.xml
-		// result &= templateService.writeConfFile(spConfFolder +
-		// SHIB2_SP_ATTRIBUTE_MAP, attributeMap);
+		// confFiles.put(SHIB2_SP_ATTRIBUTE_MAP, spConfFolder + SHIB2_SP_ATTRIBUTE_MAP);
 
-		return result;
+		return shibbolethConfGenerator.generateConfFiles(summary, context, confFiles);
 	}
 
 	/*
@@ -247,7 +242,8 @@ public class Shibboleth2ConfService implements Serializable {
 	/*
 	 * Prepare trustRelationships to generate files
 	 */
-	private HashMap<String, Object> initTrustParamMap(List<GluuSAMLTrustRelationship> trustRelationships) {
+	private HashMap<String, Object> initTrustParamMap(List<GluuSAMLTrustRelationship> trustRelationships,
+			ShibbolethConfGenerator.GenerationSummary summary) {
 		log.trace("Starting trust parameters map initialization.");
 		HashMap<String, Object> trustParams = new HashMap<String, Object>();
 
@@ -284,7 +280,7 @@ public class Shibboleth2ConfService implements Serializable {
 				                            + SHIB2_IDP_METADATA_FOLDER
 				                            + File.separator;
 				File metadataFile = new File(idpMetadataFolder + trustRelationship.getSpMetaDataFN());
-				List<String> entityIds = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+				List<String> entityIds = shibbolethConfGenerator.getEntityIds(metadataFile, summary);
 				// if for some reason metadata is corrupted or missing - mark
 				// trust relationship INACTIVE
 				// user will be able to fix this in UI
@@ -1217,11 +1213,28 @@ public class Shibboleth2ConfService implements Serializable {
 	 */
 	public static GluuErrorHandler validateMetadata(InputStream stream) 
                     throws ParserConfigurationException, SAXException, IOException {
-		String schemaDir = OxTrustConfiguration.DIR + "shibboleth2" + File.separator
-		                        + "idp" + File.separator + "schema" + File.separator;
-		Schema schema = SchemaBuilder.buildSchema(SchemaLanguage.XML, schemaDir);
-                
-		return XMLValidator.validateMetadata(stream, schema);
+		// Schema is thread safe. Validator is created per call
+		return XMLValidator.validateMetadata(stream, getMetadataSchema());
+	}
+
+	/*
+	 * Build metadata schema once. Building it loads and compiles all schema files
+	 */
+	private static Schema getMetadataSchema() throws ParserConfigurationException, SAXException, IOException {
+		Schema schema = metadataSchema;
+		if (schema == null) {
+			synchronized (Shibboleth2ConfService.class) {
+				schema = metadataSchema;
+				if (schema == null) {
+					String schemaDir = OxTrustConfiguration.DIR + "shibboleth2" + File.separator
+					                        + "idp" + File.separator + "schema" + File.separator;
+					schema = SchemaBuilder.buildSchema(SchemaLanguage.XML, schemaDir);
+					metadataSchema = schema;
+				}
+			}
+		}
+
+		return schema;
 	}
 	
 	public  boolean existsResourceUri(String URLName){
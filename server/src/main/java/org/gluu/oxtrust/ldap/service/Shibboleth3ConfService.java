@@ -17,12 +17,12 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.validation.Schema;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
@@ -31,7 +31,6 @@ import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.velocity.VelocityContext;
-import org.gluu.oxtrust.config.OxTrustConfiguration;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuMetadataSourceType;
 import org.gluu.oxtrust.model.GluuSAMLFederationProposal;
@@ -49,8 +48,6 @@ import org.jboss.seam.annotations.Logger;
 import org.jboss.seam.annotations.Name;
 import org.jboss.seam.annotations.Scope;
 import org.jboss.seam.log.Log;
-import org.opensaml.xml.schema.SchemaBuilder;
-import org.opensaml.xml.schema.SchemaBuilder.SchemaLanguage;
 import org.w3c.dom.Document;
 import org.xdi.config.oxtrust.ApplicationConfiguration;
 import org.xdi.ldap.model.GluuStatus;
@@ -71,7 +68,6 @@ import org.xml.sax.SAXException;
 
 import com.unboundid.ldap.sdk.schema.AttributeTypeDefinition;
 import org.xdi.xml.GluuErrorHandler;
-import org.xdi.xml.XMLValidator;
 
 /**
  * Provides operations with attributes
@@ -85,6 +81,8 @@ public class Shibboleth3ConfService implements Serializable {
 
 	private static final long serialVersionUID = 6752452480800274694L;
     
+	private static final String SHIB3_CONF_GENERATOR = "shibboleth3";
+
         private static final String SHIB3_IDP = "idp";
 	private static final String SHIB3_SP = "sp";
 
@@ -130,6 +128,9 @@ public class Shibboleth3ConfService implements Serializable {
 	@In
 	private TemplateService templateService;
 
+	@In
+	private ShibbolethConfGenerator shibbolethConfGenerator;
+
 	@Logger
 	private Log log;
 
@@ -161,9 +162,11 @@ public class Shibboleth3ConfService implements Serializable {
 		                            + SHIB3_IDP_METADATA_FOLDER 
 		                            + File.separator;
 
+		ShibbolethConfGenerator.GenerationSummary summary = shibbolethConfGenerator.startGeneration(SHIB3_CONF_GENERATOR, trustRelationships);
+
 		// Prepare data for files
 		initAttributes(trustRelationships);
-		HashMap<String, Object> trustParams = initTrustParamMap(trustRelationships);
+		HashMap<String, Object> trustParams = initTrustParamMap(trustRelationships, summary);
 		HashMap<String, Object> attrParams = initAttributeParamMap(trustRelationships);
 
 		boolean result = (trustParams != null) && (attrParams != null);
@@ -172,41 +175,25 @@ public class Shibboleth3ConfService implements Serializable {
 		}
 
 		VelocityContext context = prepareVelocityContext(trustParams, attrParams, idpMetadataFolder);
+		summary.finishPrepare();
 
-		// Generate attribute-resolver.xml
-		String attributeResolver = templateService.generateConfFile(SHIB3_IDP_ATTRIBUTE_RESOLVER_FILE, context);
-		// Generate attribute-filter.xml
-		String attributeFilter = templateService.generateConfFile(SHIB3_IDP_ATTRIBUTE_FILTER_FILE, context);
-		// Generate relying-party.xml
-		String relyingParty = templateService.generateConfFile(SHIB3_IDP_RELYING_PARTY, context);
-		// Generate shibboleth2.xml
-		String shibConfig = templateService.generateConfFile(SHIB3_SP_SHIBBOLETH2, context);
-		// Generate handler.xml
-		String profileHandler = templateService.generateConfFile(SHIB3_IDP_PROFILE_HADLER, context);
+		// Only new and changed trust relationships are rendered again
+		if (!shibbolethConfGenerator.renderTrustRelationshipFragments(summary, context, trustRelationships)) {
+			return false;
+		}
+
+		// Files are rendered and written only if template input or file were changed
+		Map<String, String> confFiles = new LinkedHashMap<String, String>();
+		confFiles.put(SHIB3_IDP_ATTRIBUTE_RESOLVER_FILE, idpConfFolder + SHIB3_IDP_ATTRIBUTE_RESOLVER_FILE);
+		confFiles.put(SHIB3_IDP_ATTRIBUTE_FILTER_FILE, idpConfFolder + SHIB3_IDP_ATTRIBUTE_FILTER_FILE);
+		confFiles.put(SHIB3_IDP_RELYING_PARTY, idpConfFolder + SHIB3_IDP_RELYING_PARTY);
+		confFiles.put(SHIB3_SP_SHIBBOLETH2, getSpShibboleth3FilePath());
+		confFiles.put(SHIB3_IDP_PROFILE_HADLER, idpConfFolder + SHIB3_IDP_PROFILE_HADLER);
 
 		// Generate attribute-map.xml
-		// String attributeMap =
-		// templateService.generateConfFile(SHIB2_SP_ATTRIBUTE_MAP, context);
-
-		result = (attributeFilter != null) && (attributeResolver != null) && (relyingParty != null) && (shibConfig != null)
-				&& (profileHandler != null);
-
-		// Write attribute-resolver.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_ATTRIBUTE_RESOLVER_FILE, attributeResolver);
-		// Write attribute-filter.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_ATTRIBUTE_FILTER_FILE, attributeFilter);
-		// Write relying-party.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_RELYING_PARTY, relyingParty);
-		// Write shibboleth2.xml
-		result &= templateService.writeConfFile(getSpShibboleth3FilePath(), shibConfig);
-		// Write handler.xml
-		result &= templateService.writeConfFile(idpConfFolder + SHIB3_IDP_PROFILE_HADLER, profileHandler);
-
-		// Write attribute-map.xml
-		// result &= templateService.writeConfFile(spConfFolder +
-		// SHIB2_SP_ATTRIBUTE_MAP, attributeMap);
+		// confFiles.put(SHIB3_SP_ATTRIBUTE_MAP, spConfFolder + SHIB3_SP_ATTRIBUTE_MAP);
 
-		return result;
+		return shibbolethConfGenerator.generateConfFiles(summary, context, confFiles);
 	}
 
 	/*
@@ -247,7 +234,8 @@ public class Shibboleth3ConfService implements Serializable {
 	/*
 	 * Prepare trustRelationships to generate files
 	 */
-	private HashMap<String, Object> initTrustParamMap(List<GluuSAMLTrustRelationship> trustRelationships) {
+	private HashMap<String, Object> initTrustParamMap(List<GluuSAMLTrustRelationship> trustRelationships,
+			ShibbolethConfGenerator.GenerationSummary summary) {
             //TODO: change for IDP3
             
 		log.trace("Starting trust parameters map initialization.");
@@ -286,7 +274,7 @@ public class Shibboleth3ConfService implements Serializable {
 				                            + SHIB3_IDP_METADATA_FOLDER
 				                            + File.separator;
 				File metadataFile = new File(idpMetadataFolder + trustRelationship.getSpMetaDataFN());
-				List<String> entityIds = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+				List<String> entityIds = shibbolethConfGenerator.getEntityIds(metadataFile, summary);
 				// if for some reason metadata is corrupted or missing - mark
 				// trust relationship INACTIVE
 				// user will be able to fix this in UI
@@ -1260,10 +1248,7 @@ public class Shibboleth3ConfService implements Serializable {
 	public static GluuErrorHandler validateMetadata(InputStream stream) 
                     throws ParserConfigurationException, SAXException, IOException {
             //TODO: change for IDP3
-		String schemaDir = OxTrustConfiguration.DIR + "shibboleth2" + File.separator
-		                        + "idp" + File.separator + "schema" + File.separator;
-		Schema schema = SchemaBuilder.buildSchema(SchemaLanguage.XML, schemaDir);
-                
-		return XMLValidator.validateMetadata(stream, schema);
+		// Uses the same compiled schema
+		return Shibboleth2ConfService.validateMetadata(stream);
 	}
 }
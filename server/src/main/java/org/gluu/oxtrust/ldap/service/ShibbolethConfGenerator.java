@@ -0,0 +1,629 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.velocity.VelocityContext;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.gluu.saml.metadata.SAMLMetadataParser;
+import org.gluu.site.ldap.persistence.annotation.LdapAttribute;
+import org.gluu.site.ldap.persistence.annotation.LdapEntry;
+import org.jboss.seam.Component;
+import org.jboss.seam.ScopeType;
+import org.jboss.seam.annotations.AutoCreate;
+import org.jboss.seam.annotations.In;
+import org.jboss.seam.annotations.Logger;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.annotations.Scope;
+import org.jboss.seam.log.Log;
+import org.xdi.ldap.model.Entry;
+
+/**
+ * Keeps state between Shibboleth configuration generations to avoid repeated
+ * work:
+ * - entityIDs of SP metadata files are cached until file size or modification
+ * time changes
+ * - parts of files which describe single trust relationship are rendered from
+ * fragment templates. Fragment is cached with fingerprint of its input and is
+ * rendered again only for new or changed trust relationship. Files are
+ * assembled from cached fragments
+ * - every generated file is keyed by fingerprint of all template input. File
+ * is rendered only if key changed or file was modified outside of oxTrust
+ * - file is rendered into temporary file which atomically replaces target
+ * file only if its content changed
+ */
+@Scope(ScopeType.APPLICATION)
+@Name("shibbolethConfGenerator")
+@AutoCreate
+public class ShibbolethConfGenerator implements Serializable {
+
+	private static final long serialVersionUID = -2352619785147263215L;
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	public static final String TRUST_FRAGMENTS = "trustFragments";
+
+	private static final String FRAGMENT_RELYING_PARTY = "relying-party-trust.xml";
+	private static final String FRAGMENT_METADATA_PROVIDER = "relying-party-metadata-provider.xml";
+	private static final String FRAGMENT_CREDENTIALS = "relying-party-credentials.xml";
+	private static final String FRAGMENT_ATTRIBUTE_FILTER_POLICY = "attribute-filter-policy.xml";
+	private static final String FRAGMENT_FEDERATED_ATTRIBUTE_FILTER_POLICY = "attribute-filter-federated-policy.xml";
+
+	@Logger
+	private Log log;
+
+	@In
+	private TemplateService templateService;
+
+	private final ConcurrentMap<String, MetadataEntityIds> metadataEntityIds = new ConcurrentHashMap<String, MetadataEntityIds>();
+
+	private final ConcurrentMap<String, ConfFileState> confFileStates = new ConcurrentHashMap<String, ConfFileState>();
+
+	// Trust relationship fingerprints of last successful generation per generator
+	private final ConcurrentMap<String, Map<String, String>> trustRelationshipFingerprints = new ConcurrentHashMap<String, Map<String, String>>();
+
+	// Trust relationship fragments of last generation per generator
+	private final ConcurrentMap<String, Map<String, RenderedFragment>> trustRelationshipFragments = new ConcurrentHashMap<String, Map<String, RenderedFragment>>();
+
+	private final ConcurrentMap<Class<?>, List<Field>> ldapAttributeFields = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+	/*
+	 * Compare trust relationships with trust relationships of previous generation
+	 */
+	public GenerationSummary startGeneration(String generator, List<GluuSAMLTrustRelationship> trustRelationships) {
+		GenerationSummary summary = new GenerationSummary(generator);
+
+		Map<String, String> previousFingerprints = trustRelationshipFingerprints.get(generator);
+		for (GluuSAMLTrustRelationship trustRelationship : trustRelationships) {
+			String fingerprint = fingerprint(trustRelationship);
+			summary.fingerprints.put(trustRelationship.getInum(), fingerprint);
+
+			String previousFingerprint = (previousFingerprints == null) ? null : previousFingerprints.get(trustRelationship.getInum());
+			if (previousFingerprint == null) {
+				summary.addedTrustRelationships++;
+			} else if (!previousFingerprint.equals(fingerprint)) {
+				summary.changedTrustRelationships.add(trustRelationship.getInum());
+			}
+		}
+
+		if (previousFingerprints != null) {
+			for (String inum : previousFingerprints.keySet()) {
+				if (!summary.fingerprints.containsKey(inum)) {
+					summary.removedTrustRelationships++;
+				}
+			}
+		}
+
+		return summary;
+	}
+
+	/*
+	 * Get entityIDs from metadata file. Returns new list which caller can modify
+	 */
+	public List<String> getEntityIds(File metadataFile, GenerationSummary summary) {
+		String path = metadataFile.getAbsolutePath();
+		long length = metadataFile.length();
+		long lastModified = metadataFile.lastModified();
+
+		MetadataEntityIds cached = metadataEntityIds.get(path);
+		if ((cached != null) && (cached.length == length) && (cached.lastModified == lastModified)) {
+			summary.metadataCached++;
+			return new ArrayList<String>(cached.entityIds);
+		}
+
+		List<String> entityIds = SAMLMetadataParser.getEntityIdFromMetadataFile(metadataFile);
+		summary.metadataParsed++;
+		if (entityIds == null) {
+			metadataEntityIds.remove(path);
+			return null;
+		}
+
+		metadataEntityIds.put(path, new MetadataEntityIds(length, lastModified, new ArrayList<String>(entityIds)));
+
+		return new ArrayList<String>(entityIds);
+	}
+
+	/*
+	 * Render parts of relying-party.xml and attribute-filter.xml which belong
+	 * to single trust relationship and put them into context as trustFragments.
+	 * Fragment is rendered only if its input changed since previous generation
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized boolean renderTrustRelationshipFragments(GenerationSummary summary, VelocityContext context,
+			List<GluuSAMLTrustRelationship> trustRelationships) {
+		long startTime = System.currentTimeMillis();
+
+		Map<String, Object> trustParams = (Map<String, Object>) context.get("trustParams");
+		Map<String, String> trustIds = (Map<String, String>) trustParams.get("trustIds");
+		Map<String, List<String>> trustEntityIds = (Map<String, List<String>>) trustParams.get("trustEntityIds");
+		Map<String, String> deconstructedIds = (Map<String, String>) trustParams.get("deconstructedIds");
+		List<GluuSAMLTrustRelationship> deconstructed = (List<GluuSAMLTrustRelationship>) trustParams.get("deconstructed");
+
+		Object idpUrl = context.get("idpUrl");
+		Object medataFolder = context.get("medataFolder");
+		Object idpCredentialsPath = trustParams.get("idpCredentialsPath");
+
+		Map<String, RenderedFragment> previousFragments = trustRelationshipFragments.get(summary.generator);
+		Map<String, RenderedFragment> fragments = new HashMap<String, RenderedFragment>();
+
+		List<String> relyingParties = new ArrayList<String>();
+		List<String> metadataProviders = new ArrayList<String>();
+		List<String> credentials = new ArrayList<String>();
+		List<String> attributeFilterPolicies = new ArrayList<String>();
+		List<String> federatedAttributeFilterPolicies = new ArrayList<String>();
+
+		// Fragment input is persistent state of trust relationship and every
+		// other value which fragment template reads
+		for (GluuSAMLTrustRelationship trustRelationship : trustRelationships) {
+			String inum = trustRelationship.getInum();
+			String fingerprint = summary.fingerprints.get(inum);
+
+			VelocityContext fragmentContext = new VelocityContext(context);
+			fragmentContext.put("trustRelationship", trustRelationship);
+
+			String relyingParty = renderFragment(summary, previousFragments, fragments, FRAGMENT_RELYING_PARTY, inum, fragmentContext,
+					fingerprint, idpUrl);
+			String metadataProvider = renderFragment(summary, previousFragments, fragments, FRAGMENT_METADATA_PROVIDER, inum, fragmentContext,
+					fingerprint, trustRelationship.getGluuSAMLMetaDataFilter(), trustIds.get(inum), medataFolder);
+			String credential = renderFragment(summary, previousFragments, fragments, FRAGMENT_CREDENTIALS, inum, fragmentContext,
+					fingerprint, trustRelationship.getProfileConfigurations(), idpCredentialsPath);
+			String attributeFilterPolicy = renderFragment(summary, previousFragments, fragments, FRAGMENT_ATTRIBUTE_FILTER_POLICY, inum,
+					fragmentContext, fingerprint, getReleasedAttributeNames(trustRelationship), trustIds.get(inum), trustEntityIds.get(inum));
+			if ((relyingParty == null) || (metadataProvider == null) || (credential == null) || (attributeFilterPolicy == null)) {
+				return false;
+			}
+
+			addFragment(relyingParties, relyingParty);
+			addFragment(metadataProviders, metadataProvider);
+			addFragment(credentials, credential);
+			addFragment(attributeFilterPolicies, attributeFilterPolicy);
+		}
+
+		for (GluuSAMLTrustRelationship trustRelationship : deconstructed) {
+			String inum = trustRelationship.getInum();
+
+			VelocityContext fragmentContext = new VelocityContext(context);
+			fragmentContext.put("trustRelationship", trustRelationship);
+
+			String federatedAttributeFilterPolicy = renderFragment(summary, previousFragments, fragments, FRAGMENT_FEDERATED_ATTRIBUTE_FILTER_POLICY,
+					inum, fragmentContext, summary.fingerprints.get(inum), getReleasedAttributeNames(trustRelationship),
+					deconstructedIds.get(trustRelationship.getEntityId()));
+			if (federatedAttributeFilterPolicy == null) {
+				return false;
+			}
+
+			addFragment(federatedAttributeFilterPolicies, federatedAttributeFilterPolicy);
+		}
+
+		// Fragments of removed trust relationships are dropped
+		trustRelationshipFragments.put(summary.generator, fragments);
+
+		Map<String, List<String>> trustFragments = new HashMap<String, List<String>>();
+		trustFragments.put("relyingParties", relyingParties);
+		trustFragments.put("metadataProviders", metadataProviders);
+		trustFragments.put("credentials", credentials);
+		trustFragments.put("attributeFilterPolicies", attributeFilterPolicies);
+		trustFragments.put("federatedAttributeFilterPolicies", federatedAttributeFilterPolicies);
+		context.put(TRUST_FRAGMENTS, trustFragments);
+
+		summary.fragmentTime = System.currentTimeMillis() - startTime;
+
+		return true;
+	}
+
+	private String renderFragment(GenerationSummary summary, Map<String, RenderedFragment> previousFragments, Map<String, RenderedFragment> fragments,
+			String template, String inum, VelocityContext fragmentContext, Object... input) {
+		String cacheKey = template + ":" + inum;
+		String key = fingerprint(Arrays.asList(input));
+
+		RenderedFragment fragment = (previousFragments == null) ? null : previousFragments.get(cacheKey);
+		if ((fragment != null) && fragment.key.equals(key)) {
+			summary.cachedFragments++;
+		} else {
+			String content = templateService.generateConfFile(template, fragmentContext);
+			if (content == null) {
+				return null;
+			}
+
+			fragment = new RenderedFragment(key, content);
+			summary.renderedFragments++;
+		}
+		fragments.put(cacheKey, fragment);
+
+		return fragment.content;
+	}
+
+	/*
+	 * Templates write new line after each fragment. Empty fragments are skipped
+	 */
+	private void addFragment(List<String> fragments, String fragment) {
+		if (fragment.trim().length() == 0) {
+			return;
+		}
+
+		if (fragment.endsWith("\n")) {
+			fragments.add(fragment.substring(0, fragment.length() - 1));
+		} else {
+			fragments.add(fragment);
+		}
+	}
+
+	private List<String> getReleasedAttributeNames(GluuSAMLTrustRelationship trustRelationship) {
+		List<String> releasedAttributeNames = new ArrayList<String>();
+		if (trustRelationship.getReleasedCustomAttributes() != null) {
+			for (GluuCustomAttribute releasedCustomAttribute : trustRelationship.getReleasedCustomAttributes()) {
+				releasedAttributeNames.add(releasedCustomAttribute.getName());
+			}
+		}
+
+		return releasedAttributeNames;
+	}
+
+	/*
+	 * Render templates and write them into files
+	 *
+	 * @param confFiles map of template name to configuration file path
+	 */
+	public synchronized boolean generateConfFiles(GenerationSummary summary, VelocityContext context, Map<String, String> confFiles) {
+		long startTime = System.currentTimeMillis();
+		String contextFingerprint = fingerprint(context);
+		summary.fingerprintTime = System.currentTimeMillis() - startTime;
+
+		boolean result = true;
+		for (Map.Entry<String, String> confFileEntry : confFiles.entrySet()) {
+			String template = confFileEntry.getKey();
+			String confFile = confFileEntry.getValue();
+			File file = new File(confFile);
+
+			String key = digest(summary.generator + ":" + template + ":" + contextFingerprint);
+
+			ConfFileState state = confFileStates.get(confFile);
+			boolean stateMatchesFile = (state != null) && state.matches(file);
+			if (stateMatchesFile && state.key.equals(key)) {
+				summary.skippedFiles.add(template);
+				continue;
+			}
+
+			// Render straight into temporary file to keep memory usage independent of file size
+			long renderStartTime = System.currentTimeMillis();
+			TemplateService.RenderedConfFile renderedConfFile = templateService.renderConfFile(template, context, confFile);
+			summary.renderTime += System.currentTimeMillis() - renderStartTime;
+			summary.renderedFiles.add(template);
+			if (renderedConfFile == null) {
+				confFileStates.remove(confFile);
+				result = false;
+				continue;
+			}
+
+			long writeStartTime = System.currentTimeMillis();
+			try {
+				String digest = renderedConfFile.getDigest();
+				String fileDigest = stateMatchesFile ? state.digest : digest(file);
+				if (digest.equals(fileDigest)) {
+					templateService.discardConfFile(renderedConfFile);
+				} else {
+					if (!templateService.commitConfFile(renderedConfFile)) {
+						confFileStates.remove(confFile);
+						result = false;
+						continue;
+					}
+					summary.writtenFiles.add(template);
+				}
+
+				confFileStates.put(confFile, new ConfFileState(key, digest, file.length(), file.lastModified()));
+			} finally {
+				summary.writeTime += System.currentTimeMillis() - writeStartTime;
+			}
+		}
+
+		if (result) {
+			trustRelationshipFingerprints.put(summary.generator, summary.fingerprints);
+		}
+
+		log.info("Generated {0} configuration: {1}", summary.generator, summary);
+
+		return result;
+	}
+
+	private String fingerprint(Object value) {
+		MessageDigest messageDigest = createMessageDigest();
+		appendFingerprint(messageDigest, value);
+
+		return Hex.encodeHexString(messageDigest.digest());
+	}
+
+	private void appendFingerprint(MessageDigest messageDigest, Object value) {
+		if (value == null) {
+			update(messageDigest, "\u0000");
+		} else if (value instanceof VelocityContext) {
+			VelocityContext context = (VelocityContext) value;
+			Map<String, Object> values = new HashMap<String, Object>();
+			for (Object key : context.getKeys()) {
+				values.put(String.valueOf(key), context.get(String.valueOf(key)));
+			}
+			appendFingerprint(messageDigest, values);
+		} else if (value instanceof Map) {
+			Map<String, Object> sortedValues = new TreeMap<String, Object>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				sortedValues.put(String.valueOf(entry.getKey()), entry.getValue());
+			}
+
+			update(messageDigest, "{" + sortedValues.size());
+			for (Map.Entry<String, Object> entry : sortedValues.entrySet()) {
+				update(messageDigest, entry.getKey());
+				appendFingerprint(messageDigest, entry.getValue());
+			}
+		} else if (value instanceof Collection) {
+			Collection<?> values = (Collection<?>) value;
+			update(messageDigest, "[" + values.size());
+			for (Object item : values) {
+				appendFingerprint(messageDigest, item);
+			}
+		} else if (value instanceof Object[]) {
+			appendFingerprint(messageDigest, Arrays.asList((Object[]) value));
+		} else if (value.getClass().isAnnotationPresent(LdapEntry.class)) {
+			// Use only persistent state of LDAP entries
+			update(messageDigest, value.getClass().getName());
+			if (value instanceof Entry) {
+				appendFingerprint(messageDigest, ((Entry) value).getDn());
+			}
+			for (Field field : getLdapAttributeFields(value.getClass())) {
+				update(messageDigest, field.getName());
+				try {
+					appendFingerprint(messageDigest, field.get(value));
+				} catch (IllegalAccessException ex) {
+					throw new IllegalStateException("Failed to read field " + field.getName(), ex);
+				}
+			}
+		} else {
+			update(messageDigest, value.toString());
+		}
+	}
+
+	private List<Field> getLdapAttributeFields(Class<?> entryClass) {
+		List<Field> fields = ldapAttributeFields.get(entryClass);
+		if (fields != null) {
+			return fields;
+		}
+
+		fields = new ArrayList<Field>();
+		for (Class<?> clazz = entryClass; clazz != null; clazz = clazz.getSuperclass()) {
+			for (Field field : clazz.getDeclaredFields()) {
+				if (field.isAnnotationPresent(LdapAttribute.class)) {
+					field.setAccessible(true);
+					fields.add(field);
+				}
+			}
+		}
+		ldapAttributeFields.put(entryClass, fields);
+
+		return fields;
+	}
+
+	private void update(MessageDigest messageDigest, String value) {
+		byte[] bytes = getBytes(value);
+
+		// Length prefix makes fingerprint of adjacent values unambiguous
+		int length = bytes.length;
+		messageDigest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+		messageDigest.update(bytes);
+	}
+
+	private String digest(String value) {
+		return Hex.encodeHexString(createMessageDigest().digest(getBytes(value)));
+	}
+
+	private String digest(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		MessageDigest messageDigest = createMessageDigest();
+		InputStream is = null;
+		try {
+			is = new FileInputStream(file);
+			byte[] buffer = new byte[64 * 1024];
+			int count;
+			while ((count = is.read(buffer)) != -1) {
+				messageDigest.update(buffer, 0, count);
+			}
+		} catch (IOException ex) {
+			log.warn("Failed to calculate digest of file '{0}'", ex, file);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		return Hex.encodeHexString(messageDigest.digest());
+	}
+
+	private byte[] getBytes(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException("UTF-8 is not supported", ex);
+		}
+	}
+
+	private MessageDigest createMessageDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("Failed to create message digest", ex);
+		}
+	}
+
+	/**
+	 * Get shibbolethConfGenerator instance
+	 *
+	 * @return ShibbolethConfGenerator instance
+	 */
+	public static ShibbolethConfGenerator instance() {
+		return (ShibbolethConfGenerator) Component.getInstance(ShibbolethConfGenerator.class);
+	}
+
+	private static class MetadataEntityIds {
+
+		private final long length;
+		private final long lastModified;
+		private final List<String> entityIds;
+
+		public MetadataEntityIds(long length, long lastModified, List<String> entityIds) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.entityIds = entityIds;
+		}
+
+	}
+
+	private static class RenderedFragment {
+
+		private final String key;
+		private final String content;
+
+		public RenderedFragment(String key, String content) {
+			this.key = key;
+			this.content = content;
+		}
+
+	}
+
+	private static class ConfFileState {
+
+		private final String key;
+		private final String digest;
+		private final long length;
+		private final long lastModified;
+
+		public ConfFileState(String key, String digest, long length, long lastModified) {
+			this.key = key;
+			this.digest = digest;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		public boolean matches(File file) {
+			return (file.length() == length) && (file.lastModified() == lastModified);
+		}
+
+	}
+
+	/**
+	 * What was done during one configuration generation and time spent on
+	 * each step
+	 */
+	public static class GenerationSummary {
+
+		private final String generator;
+		private final long startTime;
+
+		private final Map<String, String> fingerprints = new HashMap<String, String>();
+
+		private int addedTrustRelationships;
+		private int removedTrustRelationships;
+		private final List<String> changedTrustRelationships = new ArrayList<String>();
+
+		private int metadataParsed;
+		private int metadataCached;
+
+		private int renderedFragments;
+		private int cachedFragments;
+
+		private final List<String> renderedFiles = new ArrayList<String>();
+		private final List<String> writtenFiles = new ArrayList<String>();
+		private final List<String> skippedFiles = new ArrayList<String>();
+
+		private long prepareTime;
+		private long fragmentTime;
+		private long fingerprintTime;
+		private long renderTime;
+		private long writeTime;
+
+		public GenerationSummary(String generator) {
+			this.generator = generator;
+			this.startTime = System.currentTimeMillis();
+		}
+
+		public void finishPrepare() {
+			this.prepareTime = System.currentTimeMillis() - startTime;
+		}
+
+		public int getAddedTrustRelationships() {
+			return addedTrustRelationships;
+		}
+
+		public int getRemovedTrustRelationships() {
+			return removedTrustRelationships;
+		}
+
+		public List<String> getChangedTrustRelationships() {
+			return changedTrustRelationships;
+		}
+
+		public int getMetadataParsed() {
+			return metadataParsed;
+		}
+
+		public int getMetadataCached() {
+			return metadataCached;
+		}
+
+		public int getRenderedFragments() {
+			return renderedFragments;
+		}
+
+		public int getCachedFragments() {
+			return cachedFragments;
+		}
+
+		public List<String> getRenderedFiles() {
+			return renderedFiles;
+		}
+
+		public List<String> getWrittenFiles() {
+			return writtenFiles;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("trustRelationships=").append(fingerprints.size()).append(", added=").append(addedTrustRelationships)
+					.append(", changed=").append(changedTrustRelationships).append(", removed=").append(removedTrustRelationships)
+					.append(", metadataParsed=").append(metadataParsed).append(", metadataCached=").append(metadataCached)
+					.append(", renderedFragments=").append(renderedFragments).append(", cachedFragments=").append(cachedFragments)
+					.append(", rendered=").append(renderedFiles).append(", written=").append(writtenFiles).append(", skipped=")
+					.append(skippedFiles).append(", prepareTime=").append(prepareTime).append("ms, fragmentTime=").append(fragmentTime)
+					.append("ms, fingerprintTime=").append(fingerprintTime).append("ms, renderTime=").append(renderTime)
+					.append("ms, writeTime=").append(writeTime).append("ms, totalTime=").append(System.currentTimeMillis() - startTime).append("ms");
+
+			return builder.toString();
+		}
+
+	}
+
+}
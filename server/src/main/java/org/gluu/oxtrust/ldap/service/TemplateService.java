@@ -6,15 +6,25 @@
 
 package org.gluu.oxtrust.ldap.service;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.Velocity;
 import org.gluu.oxtrust.config.OxTrustConfiguration;
@@ -40,19 +50,26 @@ public class TemplateService implements Serializable {
 
 	private static final long serialVersionUID = 4898430090669045605L;
 
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
 	@Logger
 	private Log log;
 
 	@In(value = "#{oxTrustConfiguration.applicationConfiguration}")
 	private ApplicationConfiguration applicationConfiguration;
 
+	// Parsed templates are thread safe and can be merged concurrently
+	private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+
 	/*
 	 * Generate relying-party.xml using relying-party.xml.vm template
 	 */
 	public String generateConfFile(String template, VelocityContext context) {
 		StringWriter sw = new StringWriter();
 		try {
-			Velocity.mergeTemplate(template + ".vm", "UTF-8", context, sw);
+			getTemplate(template).merge(context, sw);
 		} catch (Exception ex) {
 			log.error("Failed to load velocity template '{0}'", ex, template);
 			return null;
@@ -61,17 +78,126 @@ public class TemplateService implements Serializable {
 		return sw.toString();
 	}
 
+	/*
+	 * Render template directly into temporary file in folder of confFile.
+	 * Caller should commit or discard result
+	 */
+	public RenderedConfFile renderConfFile(String template, VelocityContext context, String confFile) {
+		File file = new File(confFile);
+		File tempFile = null;
+		FileOutputStream fos = null;
+		Writer writer = null;
+		try {
+			tempFile = createTempFile(file);
+
+			MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+			fos = new FileOutputStream(tempFile);
+			writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(fos, messageDigest), "UTF-8"), WRITE_BUFFER_SIZE);
+
+			getTemplate(template).merge(context, writer);
+
+			writer.flush();
+			fos.getFD().sync();
+			writer.close();
+			writer = null;
+
+			RenderedConfFile renderedConfFile = new RenderedConfFile(file, tempFile, Hex.encodeHexString(messageDigest.digest()));
+			tempFile = null;
+
+			return renderedConfFile;
+		} catch (Exception ex) {
+			log.error("Failed to generate configuration file '{0}' from velocity template '{1}'", ex, confFile, template);
+			return null;
+		} finally {
+			IOUtils.closeQuietly(writer);
+			IOUtils.closeQuietly(fos);
+			FileUtils.deleteQuietly(tempFile);
+		}
+	}
+
+	/*
+	 * Replace configuration file with rendered one
+	 */
+	public boolean commitConfFile(RenderedConfFile renderedConfFile) {
+		try {
+			moveFile(renderedConfFile.tempFile, renderedConfFile.file);
+		} catch (IOException ex) {
+			log.error("Failed to write IDP configuration file '{0}'", ex, renderedConfFile.file);
+			return false;
+		} finally {
+			FileUtils.deleteQuietly(renderedConfFile.tempFile);
+		}
+
+		return true;
+	}
+
+	public void discardConfFile(RenderedConfFile renderedConfFile) {
+		FileUtils.deleteQuietly(renderedConfFile.tempFile);
+	}
+
+	/*
+	 * Write configuration into temporary file and rename it to target file.
+	 * Readers see either previous or new file content
+	 */
 	public boolean writeConfFile(String confFile, String conf) {
+		File file = new File(confFile);
+		File tempFile = null;
+		FileOutputStream fos = null;
 		try {
-			FileUtils.writeStringToFile(new File(confFile), conf, "UTF-8");
+			tempFile = createTempFile(file);
+			fos = new FileOutputStream(tempFile);
+			fos.write(conf.getBytes("UTF-8"));
+			fos.flush();
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+
+			moveFile(tempFile, file);
 		} catch (IOException ex) {
 			log.error("Failed to write IDP configuration file '{0}'", ex, confFile);
 			return false;
+		} finally {
+			IOUtils.closeQuietly(fos);
+			FileUtils.deleteQuietly(tempFile);
 		}
 
 		return true;
 	}
 
+	private File createTempFile(File file) throws IOException {
+		File folder = file.getAbsoluteFile().getParentFile();
+		FileUtils.forceMkdir(folder);
+
+		// Temporary file should be in same file system to allow atomic rename
+		return File.createTempFile("." + file.getName() + ".", ".tmp", folder);
+	}
+
+	private void moveFile(File tempFile, File file) throws IOException {
+		if (!tempFile.renameTo(file)) {
+			// Rename can't replace existing file on some platforms
+			if (!file.delete() || !tempFile.renameTo(file)) {
+				throw new IOException("Failed to rename '" + tempFile + "' to '" + file + "'");
+			}
+		}
+	}
+
+	/*
+	 * Get parsed template. Template is parsed again only if source was modified
+	 */
+	private Template getTemplate(String template) throws Exception {
+		String templateName = template + ".vm";
+
+		Template cachedTemplate = templates.get(templateName);
+		if ((cachedTemplate != null) && !cachedTemplate.isSourceModified()) {
+			return cachedTemplate;
+		}
+
+		Template loadedTemplate = Velocity.getTemplate(templateName, "UTF-8");
+		templates.put(templateName, loadedTemplate);
+
+		return loadedTemplate;
+	}
+
 	public boolean writeApplicationConfFile(String confFile, String conf) {
 		return writeConfFile(OxTrustConfiguration.DIR + confFile, conf);
 	}
@@ -120,6 +246,7 @@ public class TemplateService implements Serializable {
 	 * Initialize singleton instance during startup
 	 */
 	public void initTemplateEngine() {
+		templates.clear();
 		try {
 			Velocity.init(getTemplateEngineConfiguration());
 		} catch (Exception ex) {
@@ -136,4 +263,28 @@ public class TemplateService implements Serializable {
 		return (TemplateService) Component.getInstance(TemplateService.class);
 	}
 
+	/**
+	 * Configuration file rendered into temporary file
+	 */
+	public static class RenderedConfFile {
+
+		private final File file;
+		private final File tempFile;
+		private final String digest;
+
+		public RenderedConfFile(File file, File tempFile, String digest) {
+			this.file = file;
+			this.tempFile = tempFile;
+			this.digest = digest;
+		}
+
+		/**
+		 * SHA-256 digest of rendered content
+		 */
+		public String getDigest() {
+			return digest;
+		}
+
+	}
+
 }
@@ -0,0 +1,128 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Statistics of one entityId monitoring run
+ */
+public class EntityIdMonitoringRunMetrics implements Serializable {
+
+	private static final long serialVersionUID = -4385072361549718342L;
+
+	private Date startDate;
+	private long duration;
+
+	private int trustRelationships;
+	private int metadataFiles;
+	private int unchangedFiles;
+	private int touchedFiles;
+	private int parsedFiles;
+	private int failedFiles;
+	private long bytesScanned;
+	private int updatedTrustRelationships;
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	public int getTrustRelationships() {
+		return trustRelationships;
+	}
+
+	public void setTrustRelationships(int trustRelationships) {
+		this.trustRelationships = trustRelationships;
+	}
+
+	public int getMetadataFiles() {
+		return metadataFiles;
+	}
+
+	public void setMetadataFiles(int metadataFiles) {
+		this.metadataFiles = metadataFiles;
+	}
+
+	/**
+	 * Files with same size and modification time as in previous run
+	 */
+	public int getUnchangedFiles() {
+		return unchangedFiles;
+	}
+
+	public void setUnchangedFiles(int unchangedFiles) {
+		this.unchangedFiles = unchangedFiles;
+	}
+
+	/**
+	 * Files with new modification time but same content digest
+	 */
+	public int getTouchedFiles() {
+		return touchedFiles;
+	}
+
+	public void setTouchedFiles(int touchedFiles) {
+		this.touchedFiles = touchedFiles;
+	}
+
+	public int getParsedFiles() {
+		return parsedFiles;
+	}
+
+	public void setParsedFiles(int parsedFiles) {
+		this.parsedFiles = parsedFiles;
+	}
+
+	public int getFailedFiles() {
+		return failedFiles;
+	}
+
+	public void setFailedFiles(int failedFiles) {
+		this.failedFiles = failedFiles;
+	}
+
+	public long getBytesScanned() {
+		return bytesScanned;
+	}
+
+	public void setBytesScanned(long bytesScanned) {
+		this.bytesScanned = bytesScanned;
+	}
+
+	public int getUpdatedTrustRelationships() {
+		return updatedTrustRelationships;
+	}
+
+	public void setUpdatedTrustRelationships(int updatedTrustRelationships) {
+		this.updatedTrustRelationships = updatedTrustRelationships;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("EntityIdMonitoringRunMetrics [startDate=").append(startDate).append(", duration=").append(duration)
+				.append(", trustRelationships=").append(trustRelationships).append(", metadataFiles=").append(metadataFiles)
+				.append(", unchangedFiles=").append(unchangedFiles).append(", touchedFiles=").append(touchedFiles)
+				.append(", parsedFiles=").append(parsedFiles).append(", failedFiles=").append(failedFiles).append(", bytesScanned=")
+				.append(bytesScanned).append(", updatedTrustRelationships=").append(updatedTrustRelationships).append("]");
+		return builder.toString();
+	}
+
+}
@@ -20,6 +20,7 @@ import org.gluu.site.ldap.persistence.annotation.LdapObjectClass;
 import org.xdi.ldap.model.GluuBoolean;
 import org.xdi.ldap.model.GluuStatus;
 import org.xdi.model.GluuIMAPData;
+import org.xdi.util.StringHelper;
 
 /**
  * Person
@@ -53,6 +54,14 @@ public class GluuCustomPerson extends User
     private Set<String> schemas = new HashSet<String>();
     private Map<String, Extension> extensions = new HashMap<String, Extension>();
 
+    // Lazily built index of customAttributes by lower-cased name. It's rebuilt
+    // after modifications done by this class and when list instance, size or
+    // last element changes after direct modifications of customAttributes list
+    private transient Map<String, GluuCustomAttribute> attributesIndex;
+    private transient List<GluuCustomAttribute> indexedAttributes;
+    private transient int indexedAttributesSize;
+    private transient GluuCustomAttribute indexedLastAttribute;
+
     public String getIname() {
         return getAttribute("iname");
     }
@@ -135,11 +144,9 @@ public class GluuCustomPerson extends User
 
     public List<String> getMemberOf() {
         String[] value = {};
-        for (GluuCustomAttribute attribute : customAttributes) {
-            if (attribute.getName().equalsIgnoreCase("memberOf")) {
-                value = attribute.getValues();
-                break;
-            }
+        GluuCustomAttribute attribute = getGluuCustomAttribute("memberOf");
+        if (attribute != null) {
+            value = attribute.getValues();
         }
         return Arrays.asList(value);
     }
@@ -185,14 +192,21 @@ public class GluuCustomPerson extends User
     }
 
     public String getAttribute(String attributeName) {
-        String value = null;
-        for (GluuCustomAttribute attribute : customAttributes) {
-            if (attribute.getName().equalsIgnoreCase(attributeName)) {
-                value = attribute.getValue();
-                break;
-            }
+        GluuCustomAttribute attribute = getGluuCustomAttribute(attributeName);
+        if (attribute == null) {
+            return null;
         }
-        return value;
+
+        return attribute.getValue();
+    }
+
+    @Override
+    public String[] getAttributes(String attributeName) {
+        if (StringHelper.isEmpty(attributeName)) {
+            return null;
+        }
+
+        return getAttributeArray(attributeName);
     }
 
     public String[] getAttributeArray(String attributeName) {
@@ -206,27 +220,66 @@ public class GluuCustomPerson extends User
     }
 
     public GluuCustomAttribute getGluuCustomAttribute(String attributeName) {
-        for (GluuCustomAttribute gluuCustomAttribute : customAttributes) {
-            if (gluuCustomAttribute.getName().equalsIgnoreCase(attributeName)) {
-                return gluuCustomAttribute;
+        if (attributeName == null) {
+            return null;
+        }
+
+        GluuCustomAttribute gluuCustomAttribute = getAttributesIndex().get(StringHelper.toLowerCase(attributeName));
+        if ((gluuCustomAttribute != null) && !attributeName.equalsIgnoreCase(gluuCustomAttribute.getName())) {
+            // Attribute was renamed after building index
+            invalidateAttributesIndex();
+            gluuCustomAttribute = getAttributesIndex().get(StringHelper.toLowerCase(attributeName));
+        }
+
+        return gluuCustomAttribute;
+    }
+
+    private Map<String, GluuCustomAttribute> getAttributesIndex() {
+        List<GluuCustomAttribute> attributes = customAttributes;
+        int size = attributes.size();
+        GluuCustomAttribute lastAttribute = (size == 0) ? null : attributes.get(size - 1);
+
+        if ((attributesIndex == null) || (indexedAttributes != attributes) || (indexedAttributesSize != size)
+                || (indexedLastAttribute != lastAttribute)) {
+            // Map is never modified after build because cloned entries share it
+            Map<String, GluuCustomAttribute> index = new HashMap<String, GluuCustomAttribute>(size * 2);
+            for (GluuCustomAttribute attribute : attributes) {
+                String key = StringHelper.toLowerCase(attribute.getName());
+                if ((key != null) && !index.containsKey(key)) {
+                    index.put(key, attribute);
+                }
             }
+
+            this.attributesIndex = index;
+            this.indexedAttributes = attributes;
+            this.indexedAttributesSize = size;
+            this.indexedLastAttribute = lastAttribute;
         }
 
-        return null;
+        return attributesIndex;
+    }
+
+    private void invalidateAttributesIndex() {
+        this.attributesIndex = null;
     }
 
     public void setAttribute(String attributeName, String attributeValue) {
         GluuCustomAttribute attribute = new GluuCustomAttribute(attributeName, 
                                                                 attributeValue);
-        customAttributes.remove(attribute);
-        customAttributes.add(attribute);
+        setAttribute(attribute);
     }
 
     public void setAttribute(String attributeName, String[] attributeValue) {
         GluuCustomAttribute attribute = new GluuCustomAttribute(attributeName, 
                                                                 attributeValue);
+        setAttribute(attribute);
+    }
+
+    @Override
+    public void setAttribute(GluuCustomAttribute attribute) {
         customAttributes.remove(attribute);
         customAttributes.add(attribute);
+        invalidateAttributesIndex();
     }
 
     public void removeAttribute(String attributeName) {
@@ -235,6 +288,7 @@ public class GluuCustomPerson extends User
             GluuCustomAttribute attribute = (GluuCustomAttribute) it.next();
             if (attribute.getName().equalsIgnoreCase(attributeName)) {
                 it.remove();
+                invalidateAttributesIndex();
                 break;
             }
         }
@@ -0,0 +1,117 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Statistics of SP metadata validation queue
+ */
+public class MetadataValidationMetrics implements Serializable {
+
+	private static final long serialVersionUID = 3179446630542071932L;
+
+	private int queueDepth;
+
+	private Date lastRunDate;
+	private long lastRunDuration;
+	private int lastBatchSize;
+	private long lastBatchMaxQueueWaitTime;
+
+	private long validatedFiles;
+	private long failedFiles;
+	private long averageValidationTime;
+	private long maxValidationTime;
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public Date getLastRunDate() {
+		return lastRunDate;
+	}
+
+	public void setLastRunDate(Date lastRunDate) {
+		this.lastRunDate = lastRunDate;
+	}
+
+	public long getLastRunDuration() {
+		return lastRunDuration;
+	}
+
+	public void setLastRunDuration(long lastRunDuration) {
+		this.lastRunDuration = lastRunDuration;
+	}
+
+	public int getLastBatchSize() {
+		return lastBatchSize;
+	}
+
+	public void setLastBatchSize(int lastBatchSize) {
+		this.lastBatchSize = lastBatchSize;
+	}
+
+	/**
+	 * Longest time which file of last batch spent in queue
+	 */
+	public long getLastBatchMaxQueueWaitTime() {
+		return lastBatchMaxQueueWaitTime;
+	}
+
+	public void setLastBatchMaxQueueWaitTime(long lastBatchMaxQueueWaitTime) {
+		this.lastBatchMaxQueueWaitTime = lastBatchMaxQueueWaitTime;
+	}
+
+	public long getValidatedFiles() {
+		return validatedFiles;
+	}
+
+	public void setValidatedFiles(long validatedFiles) {
+		this.validatedFiles = validatedFiles;
+	}
+
+	public long getFailedFiles() {
+		return failedFiles;
+	}
+
+	public void setFailedFiles(long failedFiles) {
+		this.failedFiles = failedFiles;
+	}
+
+	public long getAverageValidationTime() {
+		return averageValidationTime;
+	}
+
+	public void setAverageValidationTime(long averageValidationTime) {
+		this.averageValidationTime = averageValidationTime;
+	}
+
+	public long getMaxValidationTime() {
+		return maxValidationTime;
+	}
+
+	public void setMaxValidationTime(long maxValidationTime) {
+		this.maxValidationTime = maxValidationTime;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("MetadataValidationMetrics [queueDepth=").append(queueDepth).append(", lastRunDate=").append(lastRunDate)
+				.append(", lastRunDuration=").append(lastRunDuration).append(", lastBatchSize=").append(lastBatchSize)
+				.append(", lastBatchMaxQueueWaitTime=").append(lastBatchMaxQueueWaitTime).append(", validatedFiles=").append(validatedFiles)
+				.append(", failedFiles=").append(failedFiles).append(", averageValidationTime=").append(averageValidationTime)
+				.append(", maxValidationTime=").append(maxValidationTime).append("]");
+		return builder.toString();
+	}
+
+}
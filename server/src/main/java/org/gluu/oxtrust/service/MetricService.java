@@ -15,10 +15,18 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.gluu.oxtrust.config.OxTrustConfiguration;
+import org.gluu.oxtrust.ldap.cache.model.CacheRefreshRunMetrics;
+import org.gluu.oxtrust.ldap.cache.service.CacheRefreshTimer;
 import org.gluu.oxtrust.ldap.service.ApplianceService;
+import org.gluu.oxtrust.ldap.service.EntityIDMonitoringService;
+import org.gluu.oxtrust.ldap.service.MetadataValidationTimer;
 import org.gluu.oxtrust.ldap.service.OrganizationService;
 import org.gluu.oxtrust.model.AuthenticationChartDto;
+import org.gluu.oxtrust.model.EntityIdMonitoringRunMetrics;
 import org.gluu.oxtrust.model.GluuOrganization;
+import org.gluu.oxtrust.model.MetadataValidationMetrics;
+import org.gluu.oxtrust.service.scim2.ScimPhaseMetrics;
+import org.gluu.oxtrust.service.scim2.ScimRequestTrace;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.jboss.seam.Component;
 import org.jboss.seam.ScopeType;
@@ -65,6 +73,15 @@ public class MetricService extends org.xdi.service.metric.MetricService {
 	@In
 	private OxTrustConfiguration oxTrustConfiguration;
 
+	@In
+	private CacheRefreshTimer cacheRefreshTimer;
+
+	@In
+	private EntityIDMonitoringService entityIDMonitoringService;
+
+	@In
+	private MetadataValidationTimer metadataValidationTimer;
+
 	public AuthenticationChartDto genereateAuthenticationChartDto(int countDays) {
 		String key = OxTrustConstants.CACHE_METRICS_KEY + "#home";
 		AuthenticationChartDto authenticationChartDto = (AuthenticationChartDto) cacheService.get(OxTrustConstants.CACHE_METRICS_NAME, key);
@@ -96,6 +113,43 @@ public class MetricService extends org.xdi.service.metric.MetricService {
 		return authenticationChartDto;
 	}
 
+	/**
+	 * Returns metrics of last Cache Refresh runs. Last run is first
+	 */
+	public List<CacheRefreshRunMetrics> getCacheRefreshRunMetrics() {
+		return cacheRefreshTimer.getRunMetricsHistory();
+	}
+
+	public CacheRefreshRunMetrics getLastCacheRefreshRunMetrics() {
+		List<CacheRefreshRunMetrics> runMetrics = cacheRefreshTimer.getRunMetricsHistory();
+		if (runMetrics.isEmpty()) {
+			return null;
+		}
+
+		return runMetrics.get(0);
+	}
+
+	/**
+	 * Returns statistics of last entityId monitoring run
+	 */
+	public EntityIdMonitoringRunMetrics getEntityIdMonitoringRunMetrics() {
+		return entityIDMonitoringService.getLastRunMetrics();
+	}
+
+	/**
+	 * Returns SP metadata validation queue statistics
+	 */
+	public MetadataValidationMetrics getMetadataValidationMetrics() {
+		return metadataValidationTimer.getMetrics();
+	}
+
+	/**
+	 * Returns aggregated timings of SCIM endpoints request phases
+	 */
+	public List<ScimPhaseMetrics> getScimRequestMetrics() {
+		return ScimRequestTrace.getPhaseMetrics();
+	}
+
 	private Map<MetricType, List<? extends MetricEntry>> findAuthenticationMetrics(int countDays) {
 		List<MetricType> metricTypes = new ArrayList<MetricType>();
 		metricTypes.add(MetricType.OXAUTH_USER_AUTHENTICATION_FAILURES);
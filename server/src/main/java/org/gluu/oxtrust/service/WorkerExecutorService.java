@@ -0,0 +1,164 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.service;
+
+import java.io.Serializable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gluu.oxtrust.config.OxTrustConfiguration;
+import org.jboss.seam.Component;
+import org.jboss.seam.ScopeType;
+import org.jboss.seam.annotations.AutoCreate;
+import org.jboss.seam.annotations.Create;
+import org.jboss.seam.annotations.Destroy;
+import org.jboss.seam.annotations.In;
+import org.jboss.seam.annotations.Logger;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.annotations.Scope;
+import org.jboss.seam.contexts.Contexts;
+import org.jboss.seam.contexts.Lifecycle;
+import org.jboss.seam.log.Log;
+import org.xdi.util.StringHelper;
+import org.xdi.util.properties.FileConfiguration;
+
+/**
+ * Bounded thread pool shared by services which process work in parallel
+ *
+ * Pool size is defined by workerThreadsCount property in oxtrust-ldap.properties.
+ * Task which finds no free worker runs in submitting thread. Because of this
+ * services which are called from other workers can use pool too without risk of
+ * deadlock. Workers run tasks inside Seam call context
+ */
+@Scope(ScopeType.APPLICATION)
+@Name("workerExecutorService")
+@AutoCreate
+public class WorkerExecutorService implements Serializable {
+
+	private static final long serialVersionUID = -6049370436318542153L;
+
+	public static final String WORKER_THREADS_COUNT_PROPERTY = "workerThreadsCount";
+
+	private static final int MIN_THREADS_COUNT = 4;
+	private static final long KEEP_ALIVE_TIME = 60;
+
+	@Logger
+	private Log log;
+
+	@In
+	private OxTrustConfiguration oxTrustConfiguration;
+
+	private int threadsCount;
+	private transient ThreadPoolExecutor threadPoolExecutor;
+	private transient Executor executor;
+
+	@Create
+	public void init() {
+		this.threadsCount = determineThreadsCount();
+
+		this.threadPoolExecutor = new ThreadPoolExecutor(threadsCount, threadsCount, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new WorkerThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+		this.threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+		this.executor = new Executor() {
+			public void execute(Runnable command) {
+				threadPoolExecutor.execute(new ContextualRunnable(command));
+			}
+		};
+
+		log.info("Created worker thread pool with {0} threads", threadsCount);
+	}
+
+	@Destroy
+	public void destroy() {
+		if (this.threadPoolExecutor != null) {
+			this.threadPoolExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Executor to use with ExecutorCompletionService. It's shared, so callers
+	 * cancel own futures instead of shutting it down
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Maximum number of tasks which run in parallel. Callers use it to limit
+	 * number of tasks they submit at once
+	 */
+	public int getThreadsCount() {
+		return threadsCount;
+	}
+
+	private int determineThreadsCount() {
+		int defaultThreadsCount = Math.max(MIN_THREADS_COUNT, Runtime.getRuntime().availableProcessors());
+
+		FileConfiguration ldapConfiguration = oxTrustConfiguration.getLdapConfiguration();
+		if (ldapConfiguration == null) {
+			return defaultThreadsCount;
+		}
+
+		int value = StringHelper.toInteger(ldapConfiguration.getString(WORKER_THREADS_COUNT_PROPERTY, null), defaultThreadsCount);
+		if (value < 1) {
+			log.warn("Ignoring invalid value '{0}' of property '{1}'", value, WORKER_THREADS_COUNT_PROPERTY);
+			return defaultThreadsCount;
+		}
+
+		return value;
+	}
+
+	/*
+	 * Task which runs in submitting thread already has Seam contexts
+	 */
+	private static class ContextualRunnable implements Runnable {
+
+		private final Runnable command;
+
+		public ContextualRunnable(Runnable command) {
+			this.command = command;
+		}
+
+		public void run() {
+			if (Contexts.isApplicationContextActive()) {
+				command.run();
+				return;
+			}
+
+			Lifecycle.beginCall();
+			try {
+				command.run();
+			} finally {
+				Lifecycle.endCall();
+			}
+		}
+
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "oxtrust-worker-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+
+	}
+
+	public static WorkerExecutorService instance() {
+		return (WorkerExecutorService) Component.getInstance(WorkerExecutorService.class);
+	}
+
+}
@@ -315,6 +315,16 @@ public class MainScimFilterVisitor extends ScimFilterBaseVisitor<String> {
 
         String result = ctx.getText();
         result = result.replaceAll("^\"|\"$", "");
+
+        return escapeCriteria(result);
+    }
+
+    /**
+     * Escapes criteria value without surrounding quotes
+     */
+    public static String escapeCriteria(String criteria) {
+
+        String result = criteria;
         result = result.replaceAll("\\\\", "\5c");
         result = result.replaceAll("\\*", "\2a");
         result = result.replaceAll("\\(", "\28");
@@ -21,6 +21,10 @@ import org.jboss.seam.annotations.Scope;
 import org.jboss.seam.log.Log;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Val Pecaoco
@@ -30,31 +34,144 @@ import java.io.Serializable;
 @AutoCreate
 public class ScimFilterParserService implements Serializable {
 
+    private static final int FILTER_TEMPLATES_CACHE_SIZE = 1000;
+
+    // LDAP filter templates by class and SCIM filter shape. Shared by all instances of stateless component
+    private static final Map<String, FilterTemplateEntry> filterTemplatesCache = new LinkedHashMap<String, FilterTemplateEntry>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = -1270436342637544380L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FilterTemplateEntry> eldest) {
+            return size() > FILTER_TEMPLATES_CACHE_SIZE;
+        }
+    };
+
+    private static final AtomicLong cacheHitCount = new AtomicLong();
+    private static final AtomicLong cacheMissCount = new AtomicLong();
+
+    private static final ScimFilterPlanner filterPlanner = new ScimFilterPlanner();
+
     @Logger
     private Log log;
 
     public Filter createFilter(String filterString, Class clazz) throws Exception {
 
-        log.info(" createFilter() ");
+        log.debug(" createFilter() ");
 
-        Filter filter = null;
-        if (filterString != null && !filterString.isEmpty()) {
+        ScimFilterTemplate filterTemplate = parseFilterTemplate(filterString);
+        FilterTemplateEntry filterTemplateEntry = (filterTemplate == null) ? null : getFilterTemplateEntry(filterTemplate, clazz);
 
-            // Visit tree
-            String result = visitTree(filterString, clazz);
+        ScimFilterPlan filterPlan = planFilter(filterString, translateFilter(filterString, clazz, filterTemplate, filterTemplateEntry));
+        if (!filterPlan.isIndexed()) {
+            // Filters with the same template have the same plan. Report each template once
+            if ((filterTemplateEntry != null) && filterTemplateEntry.unindexedReported.compareAndSet(false, true)) {
+                log.warn("SCIM filter '{0}' requires unindexed LDAP search: {1}", filterTemplate.getShape(), filterPlan.getUnindexedComponents());
+            } else {
+                log.debug("SCIM filter '{0}' requires unindexed LDAP search: {1}", filterString, filterPlan.getUnindexedComponents());
+            }
+        }
+
+        return filterPlan.getFilter();
+    }
 
-            filter = Filter.create(result);
+    /**
+     * Translates SCIM filter into LDAP filter and returns plan with LDAP filter
+     * rewritten to use indexed attributes
+     */
+    public ScimFilterPlan explainFilter(String filterString, Class clazz) throws Exception {
 
-        } else {
+        ScimFilterTemplate filterTemplate = parseFilterTemplate(filterString);
+        FilterTemplateEntry filterTemplateEntry = (filterTemplate == null) ? null : getFilterTemplateEntry(filterTemplate, clazz);
+
+        return planFilter(filterString, translateFilter(filterString, clazz, filterTemplate, filterTemplateEntry));
+    }
+
+    private ScimFilterPlan planFilter(String filterString, Filter filter) {
+
+        ScimFilterPlan filterPlan = filterPlanner.plan(filterString, filter);
+        if (!filterPlan.getRewrites().isEmpty()) {
+            log.debug("Rewritten SCIM filter '{0}': {1}", filterString, filterPlan.getRewrites());
+        }
+
+        return filterPlan;
+    }
+
+    private ScimFilterTemplate parseFilterTemplate(String filterString) {
+
+        if (filterString == null || filterString.isEmpty()) {
             throw new IllegalArgumentException("Filter string is null or empty");
         }
 
-        return filter;
+        return ScimFilterTemplate.parse(filterString);
+    }
+
+    private FilterTemplateEntry getFilterTemplateEntry(ScimFilterTemplate filterTemplate, Class clazz) throws Exception {
+
+        String cacheKey = clazz.getName() + ":" + filterTemplate.getShape();
+
+        FilterTemplateEntry filterTemplateEntry;
+        synchronized (filterTemplatesCache) {
+            filterTemplateEntry = filterTemplatesCache.get(cacheKey);
+        }
+
+        if (filterTemplateEntry == null) {
+
+            cacheMissCount.incrementAndGet();
+
+            // Visit tree of filter shape
+            filterTemplateEntry = new FilterTemplateEntry(visitTree(filterTemplate.getShape(), clazz));
+
+            synchronized (filterTemplatesCache) {
+                FilterTemplateEntry cachedFilterTemplateEntry = filterTemplatesCache.get(cacheKey);
+                if (cachedFilterTemplateEntry == null) {
+                    filterTemplatesCache.put(cacheKey, filterTemplateEntry);
+                } else {
+                    filterTemplateEntry = cachedFilterTemplateEntry;
+                }
+            }
+
+        } else {
+            cacheHitCount.incrementAndGet();
+        }
+
+        return filterTemplateEntry;
+    }
+
+    private Filter translateFilter(String filterString, Class clazz, ScimFilterTemplate filterTemplate, FilterTemplateEntry filterTemplateEntry)
+            throws Exception {
+
+        String result;
+        if (filterTemplate == null) {
+
+            // Visit tree
+            result = visitTree(filterString, clazz);
+
+        } else {
+
+            result = filterTemplate.apply(filterTemplateEntry.ldapFilterTemplate);
+        }
+
+        return Filter.create(result);
+    }
+
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    public long getCacheMissCount() {
+        return cacheMissCount.get();
+    }
+
+    public int getCacheSize() {
+        synchronized (filterTemplatesCache) {
+            return filterTemplatesCache.size();
+        }
     }
 
     private String visitTree(String filter, Class clazz) throws Exception {
 
-        log.info(" visitTree() ");
+        log.debug(" visitTree() ");
 
         ParseTree parseTree = getParser(filter).scimFilter();
 
@@ -67,7 +184,7 @@ public class ScimFilterParserService implements Serializable {
 
     private ScimFilterParser getParser(String filter) throws Exception {
 
-        log.info(" getParser() ");
+        log.debug(" getParser() ");
 
         // Get lexer
         ANTLRInputStream input = new ANTLRInputStream(filter);
@@ -80,10 +197,21 @@ public class ScimFilterParserService implements Serializable {
         ScimFilterParser parser = new ScimFilterParser(tokens);
         parser.setBuildParseTree(true);
         parser.setTrimParseTree(true);
-        parser.setProfile(true);
+        parser.setProfile(false);
         parser.removeErrorListeners();
         parser.setErrorHandler(new ScimFilterErrorHandler());
 
         return parser;
     }
+
+    private static class FilterTemplateEntry {
+
+        private final String ldapFilterTemplate;
+        private final AtomicBoolean unindexedReported = new AtomicBoolean();
+
+        public FilterTemplateEntry(String ldapFilterTemplate) {
+            this.ldapFilterTemplate = ldapFilterTemplate;
+        }
+
+    }
 }
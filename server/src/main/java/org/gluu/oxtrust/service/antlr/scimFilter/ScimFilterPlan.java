@@ -0,0 +1,93 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+import com.unboundid.ldap.sdk.Filter;
+
+/**
+ * Result of SCIM filter planning: LDAP filter produced by visitor, filter
+ * which will be sent to LDAP server and information about indexes usage
+ */
+public class ScimFilterPlan implements Serializable {
+
+    private static final long serialVersionUID = 2473626092683167785L;
+
+    private String scimFilter;
+    private String translatedFilter;
+
+    private transient Filter filter;
+
+    private boolean indexed;
+
+    private List<String> rewrites = new ArrayList<String>();
+    private List<String> unindexedComponents = new ArrayList<String>();
+
+    public String getScimFilter() {
+        return scimFilter;
+    }
+
+    public void setScimFilter(String scimFilter) {
+        this.scimFilter = scimFilter;
+    }
+
+    public String getTranslatedFilter() {
+        return translatedFilter;
+    }
+
+    public void setTranslatedFilter(String translatedFilter) {
+        this.translatedFilter = translatedFilter;
+    }
+
+    @JsonIgnore
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    public String getPlannedFilter() {
+        return (filter == null) ? null : filter.toString();
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    public List<String> getRewrites() {
+        return rewrites;
+    }
+
+    public void setRewrites(List<String> rewrites) {
+        this.rewrites = rewrites;
+    }
+
+    public List<String> getUnindexedComponents() {
+        return unindexedComponents;
+    }
+
+    public void setUnindexedComponents(List<String> unindexedComponents) {
+        this.unindexedComponents = unindexedComponents;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScimFilterPlan [scimFilter=%s, translatedFilter=%s, plannedFilter=%s, indexed=%s, rewrites=%s, unindexedComponents=%s]",
+                scimFilter, translatedFilter, getPlannedFilter(), indexed, rewrites, unindexedComponents);
+    }
+
+}
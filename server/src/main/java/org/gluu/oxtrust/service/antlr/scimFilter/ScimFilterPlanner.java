@@ -0,0 +1,199 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.unboundid.ldap.sdk.Filter;
+
+/**
+ * Rewrites LDAP filter produced by SCIM filter visitor to use indexed
+ * attributes where equivalent indexed attribute exists and checks if LDAP
+ * server can resolve filter using indexes.
+ *
+ * Emails are stored as JSON values in oxTrustEmail. SCIM writes also copy
+ * their "value" fields into multi-valued mail attribute, but entries written
+ * by other clients may have only oxTrustEmail. Because of this "emails.value"
+ * predicate is evaluated against mail OR original oxTrustEmail predicate. It
+ * returns the same entries as original filter, but stays unindexed while
+ * oxTrustEmail has no index.
+ */
+public final class ScimFilterPlanner {
+
+    // Attributes which have equality and substring indexes in default server configuration
+    public static final Set<String> DEFAULT_INDEXED_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "objectclass", "inum", "iname", "uid", "mail", "displayname", "cn", "sn", "givenname", "memberof", "member", "gluustatus")));
+
+    private static final String EMAIL_ATTRIBUTE = "oxTrustEmail";
+    private static final String MAIL_ATTRIBUTE = "mail";
+
+    private static final String JSON_VALUE_FIELD = "\"value\":";
+
+    private final Set<String> indexedAttributes;
+
+    public ScimFilterPlanner() {
+        this(DEFAULT_INDEXED_ATTRIBUTES);
+    }
+
+    /**
+     * @param indexedAttributes lower-cased names of indexed attributes
+     */
+    public ScimFilterPlanner(Set<String> indexedAttributes) {
+        this.indexedAttributes = indexedAttributes;
+    }
+
+    public ScimFilterPlan plan(String scimFilter, Filter filter) {
+        ScimFilterPlan plan = new ScimFilterPlan();
+        plan.setScimFilter(scimFilter);
+        plan.setTranslatedFilter(filter.toString());
+
+        Filter plannedFilter = rewrite(filter, plan.getRewrites());
+        plan.setFilter(plannedFilter);
+        plan.setIndexed(isIndexed(plannedFilter, plan.getUnindexedComponents()));
+
+        return plan;
+    }
+
+    private Filter rewrite(Filter filter, List<String> rewrites) {
+        switch (filter.getFilterType()) {
+            case Filter.FILTER_TYPE_AND:
+            case Filter.FILTER_TYPE_OR:
+                Filter[] components = filter.getComponents();
+                List<Filter> rewrittenComponents = new ArrayList<Filter>(components.length);
+                boolean changed = false;
+                for (Filter component : components) {
+                    Filter rewrittenComponent = rewrite(component, rewrites);
+                    changed |= (rewrittenComponent != component);
+                    rewrittenComponents.add(rewrittenComponent);
+                }
+
+                if (!changed) {
+                    return filter;
+                }
+
+                return (filter.getFilterType() == Filter.FILTER_TYPE_AND) ? Filter.createANDFilter(rewrittenComponents) : Filter
+                        .createORFilter(rewrittenComponents);
+
+            case Filter.FILTER_TYPE_NOT:
+                Filter notComponent = filter.getNOTComponent();
+                Filter rewrittenNotComponent = rewrite(notComponent, rewrites);
+
+                return (rewrittenNotComponent == notComponent) ? filter : Filter.createNOTFilter(rewrittenNotComponent);
+
+            case Filter.FILTER_TYPE_SUBSTRING:
+                Filter emailFilter = rewriteEmailFilter(filter);
+                if (emailFilter != null) {
+                    Filter fallbackFilter = Filter.createORFilter(emailFilter, filter);
+                    rewrites.add(String.format("%s -> %s", filter, fallbackFilter));
+                    return fallbackFilter;
+                }
+
+                return filter;
+
+            default:
+                return filter;
+        }
+    }
+
+    /*
+     * Visitor produces these filters for "emails.value" predicates:
+     *   eq: oxTrustEmail=*"value":"x"*
+     *   sw: oxTrustEmail=*"value":"x*
+     *   co: oxTrustEmail=*"value":*x*
+     *   ew: oxTrustEmail=*"value":*x"*
+     */
+    private Filter rewriteEmailFilter(Filter filter) {
+        if (!EMAIL_ATTRIBUTE.equalsIgnoreCase(filter.getAttributeName()) || (filter.getSubInitialString() != null)
+                || (filter.getSubFinalString() != null)) {
+            return null;
+        }
+
+        String[] subAny = filter.getSubAnyStrings();
+        if (subAny.length == 1) {
+            String component = subAny[0];
+            if (!component.startsWith(JSON_VALUE_FIELD + "\"")) {
+                return null;
+            }
+
+            String value = component.substring(JSON_VALUE_FIELD.length() + 1);
+            if (value.endsWith("\"")) {
+                value = value.substring(0, value.length() - 1);
+                if (isPlainValue(value)) {
+                    return Filter.createEqualityFilter(MAIL_ATTRIBUTE, value);
+                }
+            } else if (isPlainValue(value)) {
+                return Filter.createSubstringFilter(MAIL_ATTRIBUTE, value, null, null);
+            }
+        } else if ((subAny.length == 2) && JSON_VALUE_FIELD.equals(subAny[0])) {
+            String value = subAny[1];
+            if (value.endsWith("\"")) {
+                value = value.substring(0, value.length() - 1);
+                if (isPlainValue(value)) {
+                    return Filter.createSubstringFilter(MAIL_ATTRIBUTE, null, null, value);
+                }
+            } else if (isPlainValue(value)) {
+                return Filter.createSubstringFilter(MAIL_ATTRIBUTE, null, new String[] { value }, null);
+            }
+        }
+
+        return null;
+    }
+
+    private boolean isPlainValue(String value) {
+        return !value.isEmpty() && (value.indexOf('"') == -1);
+    }
+
+    /*
+     * AND filter is indexed if at least one component is indexed. Server
+     * evaluates the rest against candidates. OR filter is indexed if all
+     * components are indexed. NOT filter requires full scan
+     */
+    private boolean isIndexed(Filter filter, List<String> unindexedComponents) {
+        switch (filter.getFilterType()) {
+            case Filter.FILTER_TYPE_AND:
+                List<String> andUnindexedComponents = new ArrayList<String>();
+                boolean andIndexed = false;
+                for (Filter component : filter.getComponents()) {
+                    andIndexed |= isIndexed(component, andUnindexedComponents);
+                }
+                if (!andIndexed) {
+                    unindexedComponents.addAll(andUnindexedComponents);
+                }
+
+                return andIndexed;
+
+            case Filter.FILTER_TYPE_OR:
+                boolean orIndexed = true;
+                for (Filter component : filter.getComponents()) {
+                    orIndexed &= isIndexed(component, unindexedComponents);
+                }
+
+                return orIndexed;
+
+            case Filter.FILTER_TYPE_NOT:
+                unindexedComponents.add(filter.toString());
+
+                return false;
+
+            default:
+                String attributeName = filter.getAttributeName();
+                if ((attributeName != null) && indexedAttributes.contains(attributeName.toLowerCase(Locale.ENGLISH))) {
+                    return true;
+                }
+
+                unindexedComponents.add(filter.toString());
+
+                return false;
+        }
+    }
+
+}
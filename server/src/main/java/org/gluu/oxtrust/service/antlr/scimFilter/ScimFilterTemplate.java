@@ -0,0 +1,122 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shape of SCIM filter with quoted criteria values replaced by placeholders.
+ * Filters which differ only in criteria values have the same shape, so LDAP
+ * filter built for one of them can be reused for others
+ */
+public class ScimFilterTemplate {
+
+    private static final String PLACEHOLDER_PREFIX = "zScimFilterParam";
+    private static final char PLACEHOLDER_SUFFIX = 'z';
+
+    private final String shape;
+    private final List<String> values;
+
+    private ScimFilterTemplate(String shape, List<String> values) {
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /**
+     * Splits SCIM filter into shape and criteria values. Criteria is
+     * everything between quote and next quote like in grammar. Returns null if
+     * filter can't be parameterized safely
+     */
+    public static ScimFilterTemplate parse(String filter) {
+
+        if (filter.contains(PLACEHOLDER_PREFIX)) {
+            return null;
+        }
+
+        StringBuilder shape = new StringBuilder(filter.length());
+        List<String> values = new ArrayList<String>();
+
+        int index = 0;
+        while (index < filter.length()) {
+
+            int start = filter.indexOf('"', index);
+            if (start == -1) {
+                shape.append(filter, index, filter.length());
+                break;
+            }
+
+            int end = filter.indexOf('"', start + 1);
+            if (end == -1) {
+                // Unterminated criteria
+                return null;
+            }
+
+            String value = filter.substring(start + 1, end);
+            if (value.isEmpty() || (value.indexOf('=') != -1)) {
+                // Visitors split expressions by '='. Such values should be processed by parser
+                return null;
+            }
+
+            shape.append(filter, index, start + 1);
+            shape.append(getPlaceholder(values.size()));
+            shape.append('"');
+            values.add(value);
+
+            index = end + 1;
+        }
+
+        return new ScimFilterTemplate(shape.toString(), Collections.unmodifiableList(values));
+    }
+
+    private static String getPlaceholder(int index) {
+        return PLACEHOLDER_PREFIX + index + PLACEHOLDER_SUFFIX;
+    }
+
+    public String getShape() {
+        return shape;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Replaces placeholders in LDAP filter built from shape with escaped
+     * criteria values of this filter
+     */
+    public String apply(String ldapFilterTemplate) {
+
+        StringBuilder result = new StringBuilder(ldapFilterTemplate.length());
+
+        int index = 0;
+        while (index < ldapFilterTemplate.length()) {
+
+            int start = ldapFilterTemplate.indexOf(PLACEHOLDER_PREFIX, index);
+            if (start == -1) {
+                result.append(ldapFilterTemplate, index, ldapFilterTemplate.length());
+                break;
+            }
+
+            int numberStart = start + PLACEHOLDER_PREFIX.length();
+            int numberEnd = ldapFilterTemplate.indexOf(PLACEHOLDER_SUFFIX, numberStart);
+            if (numberEnd == -1) {
+                throw new IllegalStateException("Invalid filter template: " + ldapFilterTemplate);
+            }
+
+            int valueIndex = Integer.parseInt(ldapFilterTemplate.substring(numberStart, numberEnd));
+
+            result.append(ldapFilterTemplate, index, start);
+            result.append(MainScimFilterVisitor.escapeCriteria(values.get(valueIndex)));
+
+            index = numberEnd + 1;
+        }
+
+        return result.toString();
+    }
+
+}
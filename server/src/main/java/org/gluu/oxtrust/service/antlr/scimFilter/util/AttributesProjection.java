@@ -0,0 +1,132 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled form of the "attributes" request parameter. Attribute names are
+ * stripped of schema URNs, lower-cased and indexed by parent once per request
+ * so serializers don't have to split and compare them for every field of every
+ * resource.
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public class AttributesProjection {
+
+    // Top level names. Resource fields with these names are always included
+    private final Set<String> names;
+
+    // Attributes without sub-attribute. All children of these fields are included
+    private final Set<String> wholeAttributes;
+
+    // Sub-attributes indexed by parent
+    private final Map<String, Set<String>> subAttributes;
+
+    // Stripped attribute names, used to match extension fields
+    private final Set<String> attributes;
+
+    private AttributesProjection() {
+        this.names = new HashSet<String>();
+        this.wholeAttributes = new HashSet<String>();
+        this.subAttributes = new HashMap<String, Set<String>>();
+        this.attributes = new HashSet<String>();
+    }
+
+    /**
+     * Returns null if attributesArray is empty. Such requests should get all
+     * resource attributes
+     */
+    public static AttributesProjection compile(String attributesArray, String... defaultAttributes) {
+        if ((attributesArray == null) || attributesArray.isEmpty()) {
+            return null;
+        }
+
+        AttributesProjection projection = new AttributesProjection();
+        for (String attribute : attributesArray.split("\\,")) {
+            projection.add(attribute);
+        }
+
+        for (String attribute : defaultAttributes) {
+            projection.add(attribute);
+        }
+
+        return projection;
+    }
+
+    private void add(String attribute) {
+        attribute = FilterUtil.stripScim2Schema(attribute);
+        attributes.add(toLowerCase(attribute));
+
+        String[] split = attribute.split("\\.");
+        if (split.length == 0) {
+            return;
+        }
+
+        String name = toLowerCase(split[0]);
+        names.add(name);
+
+        if (split.length == 1) {
+            wholeAttributes.add(name);
+            return;
+        }
+
+        String subAttribute = split[1];
+        if ((split.length == 2) && subAttribute.equalsIgnoreCase("$ref")) {
+            subAttribute = "reference";
+        }
+
+        Set<String> children = subAttributes.get(name);
+        if (children == null) {
+            children = new HashSet<String>();
+            subAttributes.put(name, children);
+        }
+        children.add(toLowerCase(subAttribute));
+    }
+
+    /**
+     * Checks if field of resource should be written
+     *
+     * @param parent name of enclosing field with stripped schema or null for top level fields
+     * @param name field name
+     */
+    public boolean isIncluded(String parent, String name) {
+        String lowerName = toLowerCase(name);
+        if (names.contains(lowerName)) {
+            return true;
+        }
+
+        if ((parent == null) || parent.isEmpty()) {
+            return false;
+        }
+
+        String lowerParent = toLowerCase(parent);
+        if (wholeAttributes.contains(lowerParent)) {
+            return true;
+        }
+
+        Set<String> children = subAttributes.get(lowerParent);
+
+        return (children != null) && children.contains(lowerName);
+    }
+
+    /**
+     * Checks if attribute with given stripped name was requested. Used for
+     * extension fields
+     */
+    public boolean containsAttribute(String attribute) {
+        return attributes.contains(toLowerCase(attribute));
+    }
+
+    private static String toLowerCase(String value) {
+        return value.toLowerCase(Locale.ENGLISH);
+    }
+
+}
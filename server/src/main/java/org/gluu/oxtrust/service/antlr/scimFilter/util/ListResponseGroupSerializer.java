@@ -6,21 +6,14 @@
 package org.gluu.oxtrust.service.antlr.scimFilter.util;
 
 import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.JsonSerializer;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.map.SerializerProvider;
-import org.codehaus.jackson.node.*;
 import org.gluu.oxtrust.model.scim2.Group;
 import org.jboss.seam.annotations.Logger;
 import org.jboss.seam.annotations.Name;
 import org.jboss.seam.log.Log;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 
 import java.io.IOException;
-import java.util.*;
 
 import static org.gluu.oxtrust.util.OxTrustConstants.INTERNAL_SERVER_ERROR_MESSAGE;
 
@@ -33,155 +26,33 @@ public class ListResponseGroupSerializer extends JsonSerializer<Group> {
     @Logger
     private static Log log;
 
+    // Attributes which are always returned
+    public static final String[] DEFAULT_ATTRIBUTES = { "schemas", "id", "displayName", "meta.created", "meta.lastModified", "meta.location",
+        "meta.version", "meta.resourceType" };
+
     private String attributesArray;
-    private Set<String> attributes;
+
+    // Compiled once in setAttributesArray(). Serializer is shared by concurrent requests
+    private AttributesProjection attributesProjection;
 
     @Override
     public void serialize(Group group, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
 
-        log.info(" serialize() ");
-
         try {
 
-            jsonGenerator.writeStartObject();
-
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
-
-            attributes = (attributesArray != null && !attributesArray.isEmpty()) ? new LinkedHashSet<String>(Arrays.asList(attributesArray.split("\\,"))) : null;
-            // attributes = (attributesArray != null && !attributesArray.isEmpty()) ? new LinkedHashSet<String>(Arrays.asList(mapper.readValue(attributesArray, String[].class))) : null;
-            if (attributes != null && attributes.size() > 0) {
-                attributes.add("schemas");
-                attributes.add("id");
-                attributes.add("displayName");
-                attributes.add("meta.created");
-                attributes.add("meta.lastModified");
-                attributes.add("meta.location");
-                attributes.add("meta.version");
-                attributes.add("meta.resourceType");
-            }
-
-            JsonNode rootNode = mapper.convertValue(group, JsonNode.class);
+            // No Group Extension Schema yet
+            JsonGenerator projectingJsonGenerator = new ProjectingJsonGenerator(jsonGenerator, attributesProjection, "members");
 
-            processNodes(null, rootNode, jsonGenerator);
-
-            jsonGenerator.writeEndObject();
+            ListResponseMappers.getTreeMapper().writeValue(projectingJsonGenerator, group);
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to serialize group", e);
             throw new IOException(INTERNAL_SERVER_ERROR_MESSAGE);
         }
     }
 
-    /*
-     * This is a recursive method to completely process all the nodes
-     */
-    private void processNodes(String parent, JsonNode rootNode, JsonGenerator jsonGenerator) throws Exception {
-
-        // log.info(" ##### PARENT: " + parent);
-
-        if (parent != null) {
-            parent = FilterUtil.stripScim2Schema(parent);
-        }
-
-        Iterator<Map.Entry<String, JsonNode>> iterator = rootNode.getFields();
-
-        while (iterator.hasNext()) {
-
-            Map.Entry<String, JsonNode> rootNodeEntry = iterator.next();
-
-            if (attributes != null && attributes.size() > 0) {
-
-                for (String attribute : attributes) {
-
-                    attribute = FilterUtil.stripScim2Schema(attribute);
-                    String[] split = attribute.split("\\.");
-
-                    if (split.length == 2 && split[1] != null) {
-                        if (split[1].equalsIgnoreCase("$ref")) {
-                            split[1] = "reference";
-                        }
-                    }
-
-                    if ((((parent != null && !parent.isEmpty()) && parent.equalsIgnoreCase(split[0])) && rootNodeEntry.getKey().equalsIgnoreCase(split[1])) ||
-                        rootNodeEntry.getKey().equalsIgnoreCase(split[0])) {
-
-                        // log.info(" ##### MATCH: " + attribute);
-                        writeStructure(parent, rootNodeEntry, jsonGenerator);
-                        break;
-                    }
-                }
-
-            } else {
-                writeStructure(parent, rootNodeEntry, jsonGenerator);
-            }
-        }
-    }
-
-    private void writeStructure(String parent, Map.Entry<String, JsonNode> rootNodeEntry, JsonGenerator jsonGenerator) throws Exception {
-
-        // No Group Extension Schema yet
-
-        if ((parent != null && !parent.isEmpty()) && parent.equalsIgnoreCase("members") && rootNodeEntry.getKey().equalsIgnoreCase("reference")) {
-            jsonGenerator.writeFieldName("$ref");
-        } else {
-            jsonGenerator.writeFieldName(rootNodeEntry.getKey());
-        }
-
-        if (rootNodeEntry.getValue() instanceof ObjectNode) {
-
-            jsonGenerator.writeStartObject();
-            processNodes(rootNodeEntry.getKey(), rootNodeEntry.getValue(), jsonGenerator);  // Recursion
-            jsonGenerator.writeEndObject();
-
-        } else if (rootNodeEntry.getValue() instanceof ArrayNode) {
-
-            ArrayNode arrayNode = (ArrayNode) rootNodeEntry.getValue();
-
-            jsonGenerator.writeStartArray();
-
-            if (arrayNode.size() > 0) {
-
-                for (int i = 0; i < arrayNode.size(); i++) {
-
-                    JsonNode arrayNodeElement = arrayNode.get(i);
-
-                    if (arrayNodeElement.isObject()) {
-
-                        jsonGenerator.writeStartObject();
-                        processNodes(rootNodeEntry.getKey(), arrayNodeElement, jsonGenerator);  // Recursion
-                        jsonGenerator.writeEndObject();
-
-                    } else {
-                        jsonGenerator.writeObject(arrayNodeElement);
-                    }
-                }
-            }
-
-            jsonGenerator.writeEndArray();
-
-        } else {
-
-            if (parent != null && parent.equalsIgnoreCase("meta")) {
-
-                if (rootNodeEntry.getValue() instanceof LongNode && (rootNodeEntry.getKey().equalsIgnoreCase("created") || rootNodeEntry.getKey().equalsIgnoreCase("lastModified"))) {
-
-                    DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTime().withZoneUTC();  // Date should be in UTC format
-
-                    // In millis convert to string date
-                    jsonGenerator.writeObject(dateTimeFormatter.print(Long.valueOf(rootNodeEntry.getValue().asText()).longValue()));
-
-                } else {
-                    jsonGenerator.writeObject(rootNodeEntry.getValue());
-                }
-
-            } else {
-                jsonGenerator.writeObject(rootNodeEntry.getValue());
-            }
-        }
-    }
-
     public void setAttributesArray(String attributesArray) {
         this.attributesArray = attributesArray;
+        this.attributesProjection = AttributesProjection.compile(attributesArray, DEFAULT_ATTRIBUTES);
     }
 }
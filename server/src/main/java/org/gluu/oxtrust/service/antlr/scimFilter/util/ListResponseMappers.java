@@ -0,0 +1,98 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.Version;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.map.module.SimpleModule;
+import org.gluu.oxtrust.model.scim2.Group;
+import org.gluu.oxtrust.model.scim2.User;
+
+/**
+ * Shared pre-configured object mappers for SCIM 2.0 resources serialization.
+ *
+ * Creating ObjectMapper is expensive because each new instance has to
+ * introspect resource classes again. Configured mappers are thread-safe, so
+ * they are created once and reused. Mappers with custom User and Group
+ * serializers depend on the "attributes" projection and are cached by it.
+ */
+public final class ListResponseMappers {
+
+    private static final int MAPPERS_CACHE_SIZE = 64;
+
+    private static final ObjectMapper TREE_MAPPER = createMapper();
+
+    private static final Map<String, ObjectMapper> listResponseMappers = new LinkedHashMap<String, ObjectMapper>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = -2754376581416423470L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ObjectMapper> eldest) {
+            return size() > MAPPERS_CACHE_SIZE;
+        }
+    };
+
+    private ListResponseMappers() {
+    }
+
+    /**
+     * Mapper without custom serializers. Serializers use it to write resources
+     * through ProjectingJsonGenerator and to parse extension values
+     */
+    public static ObjectMapper getTreeMapper() {
+        return TREE_MAPPER;
+    }
+
+    /**
+     * Mapper with User and Group serializers limited to attributesArray
+     */
+    public static ObjectMapper getListResponseMapper(String attributesArray) {
+        String key = (attributesArray == null) ? "" : attributesArray;
+
+        synchronized (listResponseMappers) {
+            ObjectMapper mapper = listResponseMappers.get(key);
+            if (mapper != null) {
+                return mapper;
+            }
+        }
+
+        ObjectMapper mapper = createListResponseMapper(attributesArray);
+        synchronized (listResponseMappers) {
+            listResponseMappers.put(key, mapper);
+        }
+
+        return mapper;
+    }
+
+    private static ObjectMapper createListResponseMapper(String attributesArray) {
+        ListResponseUserSerializer userSerializer = new ListResponseUserSerializer();
+        userSerializer.setAttributesArray(attributesArray);
+
+        ListResponseGroupSerializer groupSerializer = new ListResponseGroupSerializer();
+        groupSerializer.setAttributesArray(attributesArray);
+
+        SimpleModule customScimFilterModule = new SimpleModule("CustomScim2FilterModule", new Version(1, 0, 0, ""));
+        customScimFilterModule.addSerializer(User.class, userSerializer);
+        customScimFilterModule.addSerializer(Group.class, groupSerializer);
+
+        ObjectMapper mapper = createMapper();
+        mapper.registerModule(customScimFilterModule);
+
+        return mapper;
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
+
+        return mapper;
+    }
+
+}
@@ -6,13 +6,8 @@
 package org.gluu.oxtrust.service.antlr.scimFilter.util;
 
 import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.map.SerializerProvider;
-import org.codehaus.jackson.node.ArrayNode;
-import org.codehaus.jackson.node.LongNode;
-import org.codehaus.jackson.node.ObjectNode;
 import org.gluu.oxtrust.model.scim2.Constants;
 import org.gluu.oxtrust.model.scim2.Extension;
 import org.gluu.oxtrust.model.scim2.User;
@@ -22,11 +17,8 @@ import org.gluu.oxtrust.service.scim2.schema.SchemaTypeMapping;
 import org.jboss.seam.annotations.Logger;
 import org.jboss.seam.annotations.Name;
 import org.jboss.seam.log.Log;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 
 import java.io.IOException;
-import java.util.*;
 
 import static org.gluu.oxtrust.util.OxTrustConstants.INTERNAL_SERVER_ERROR_MESSAGE;
 
@@ -39,204 +31,79 @@ public class ListResponseUserSerializer extends UserSerializer {
     @Logger
     private static Log log;
 
-    @Override
-    public void serialize(User user, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+    // Attributes which are always returned
+    public static final String[] DEFAULT_ATTRIBUTES = { "schemas", "id", "userName", "meta.created", "meta.lastModified", "meta.location",
+        "meta.version", "meta.resourceType" };
 
-        log.info(" serialize() ");
+    @Override
+    public void serialize(final User user, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
 
         try {
 
-            jsonGenerator.writeStartObject();
-
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
-
-            attributes = (attributesArray != null && !attributesArray.isEmpty()) ? new LinkedHashSet<String>(Arrays.asList(attributesArray.split("\\,"))) : null;
-            // attributes = (attributesArray != null && !attributesArray.isEmpty()) ? new LinkedHashSet<String>(Arrays.asList(mapper.readValue(attributesArray, String[].class))) : null;
-            if (attributes != null && attributes.size() > 0) {
-                attributes.add("schemas");
-                attributes.add("id");
-                attributes.add("userName");
-                attributes.add("meta.created");
-                attributes.add("meta.lastModified");
-                attributes.add("meta.location");
-                attributes.add("meta.version");
-                attributes.add("meta.resourceType");
-            }
-
-            JsonNode rootNode = mapper.convertValue(user, JsonNode.class);
-
-            processNodes(null, rootNode, mapper, user, jsonGenerator);
-
-            jsonGenerator.writeEndObject();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException(INTERNAL_SERVER_ERROR_MESSAGE);
-        }
-    }
-
-    /*
-     * This is a recursive method to completely process all the nodes
-     */
-    private void processNodes(String parent, JsonNode rootNode, ObjectMapper mapper, User user, JsonGenerator jsonGenerator) throws Exception {
-
-        // log.info(" ##### PARENT: " + parent);
-
-        if (parent != null) {
-            parent = FilterUtil.stripScim2Schema(parent);
-        }
-
-        Iterator<Map.Entry<String, JsonNode>> iterator = rootNode.getFields();
-
-        while (iterator.hasNext()) {
-
-            Map.Entry<String, JsonNode> rootNodeEntry = iterator.next();
-
-            if (attributes != null && attributes.size() > 0) {
+            final ObjectMapper mapper = ListResponseMappers.getTreeMapper();
+            final boolean hasUserExtensionsInAttributes = hasUserExtensionsInAttributes(user);
 
-                for (String attribute : attributes) {
+            JsonGenerator projectingJsonGenerator = new ProjectingJsonGenerator(jsonGenerator, attributesProjection, "groups") {
 
-                    attribute = FilterUtil.stripScim2Schema(attribute);
-                    String[] split = attribute.split("\\.");
-
-                    if (split.length == 2 && split[1] != null) {
-                        if (split[1].equalsIgnoreCase("$ref")) {
-                            split[1] = "reference";
-                        }
-                    }
-
-                    if ((((parent != null && !parent.isEmpty()) && parent.equalsIgnoreCase(split[0])) && rootNodeEntry.getKey().equalsIgnoreCase(split[1])) ||
-                        rootNodeEntry.getKey().equalsIgnoreCase(split[0])) {
-
-                        // log.info(" ##### MATCH: " + attribute);
-                        writeStructure(parent, rootNodeEntry, mapper, user, jsonGenerator);
-                        break;
-                    }
-
-                    if ((SchemaTypeMapping.getSchemaTypeInstance(rootNodeEntry.getKey()) instanceof UserExtensionSchema)) {
-
-                        writeStructure(parent, rootNodeEntry, mapper, user, jsonGenerator);
-                        break;
+                @Override
+                protected boolean isExtension(String name) throws IOException {
+                    try {
+                        return SchemaTypeMapping.getSchemaTypeInstance(name) instanceof UserExtensionSchema;
+                    } catch (Exception ex) {
+                        throw new IOException(ex);
                     }
                 }
 
-            } else {
-                writeStructure(parent, rootNodeEntry, mapper, user, jsonGenerator);
-            }
-        }
-    }
-
-    private void writeStructure(String parent, Map.Entry<String, JsonNode> rootNodeEntry, ObjectMapper mapper, User user, JsonGenerator jsonGenerator) throws Exception {
-
-        if (!(SchemaTypeMapping.getSchemaTypeInstance(rootNodeEntry.getKey()) instanceof UserExtensionSchema)) {
-
-            if ((parent != null && !parent.isEmpty()) && parent.equalsIgnoreCase("groups") && rootNodeEntry.getKey().equalsIgnoreCase("reference")) {
-                jsonGenerator.writeFieldName("$ref");
-            } else {
-                jsonGenerator.writeFieldName(rootNodeEntry.getKey());
-            }
-
-            if (rootNodeEntry.getValue() instanceof ObjectNode) {
-
-                jsonGenerator.writeStartObject();
-                processNodes(rootNodeEntry.getKey(), rootNodeEntry.getValue(), mapper, user, jsonGenerator);  // Recursion
-                jsonGenerator.writeEndObject();
-
-            } else if (rootNodeEntry.getValue() instanceof ArrayNode) {
-
-                ArrayNode arrayNode = (ArrayNode) rootNodeEntry.getValue();
-
-                jsonGenerator.writeStartArray();
-
-                if (rootNodeEntry.getKey().equalsIgnoreCase("schemas")) {
-
-                    for (int i = 0; i < arrayNode.size(); i++) {
-
-                        JsonNode arrayNodeElement = arrayNode.get(i);
-
-                        if (arrayNodeElement.getTextValue().equalsIgnoreCase(Constants.USER_EXT_SCHEMA_ID)) {
-
-                            boolean hasUserExtensionsInAttributes = false;
-                            Extension extension = user.getExtension(Constants.USER_EXT_SCHEMA_ID);
-
-                            if (attributes != null && attributes.size() > 0) {
-
-                                for (Map.Entry<String, Extension.Field> extEntry : extension.getFields().entrySet()) {
-
-                                    for (String attribute : attributes) {
-
-                                        attribute = FilterUtil.stripScim2Schema(attribute);
-
-                                        if (extEntry.getKey().equalsIgnoreCase(attribute)) {
-
-                                            hasUserExtensionsInAttributes = true;
-                                            break;
-                                        }
-                                    }
-                                }
-
-                            } else {
-
-                                if (extension != null && !extension.getFields().isEmpty()) {
-                                    hasUserExtensionsInAttributes = true;
-                                }
-                            }
-
-                            if (hasUserExtensionsInAttributes) {
-                                jsonGenerator.writeObject(arrayNodeElement);
-                            }
-
-                        } else {
-                            jsonGenerator.writeObject(arrayNodeElement);
-                        }
+                @Override
+                protected void writeExtension(JsonGenerator jsonGenerator, String name) throws IOException {
+                    try {
+                        serializeUserExtension(name, mapper, user, jsonGenerator);
+                    } catch (IOException ex) {
+                        throw ex;
+                    } catch (Exception ex) {
+                        throw new IOException(ex);
                     }
+                }
 
-                } else {
-
-                    if (arrayNode.size() > 0) {
-
-                        for (int i = 0; i < arrayNode.size(); i++) {
-
-                            JsonNode arrayNodeElement = arrayNode.get(i);
-
-                            if (arrayNodeElement.isObject()) {
-
-                                jsonGenerator.writeStartObject();
-                                processNodes(rootNodeEntry.getKey(), arrayNodeElement, mapper, user, jsonGenerator);  // Recursion
-                                jsonGenerator.writeEndObject();
-
-                            } else {
-                                jsonGenerator.writeObject(arrayNodeElement);
-                            }
-                        }
-                    }
+                @Override
+                protected boolean isSchemaIncluded(String schema) {
+                    return hasUserExtensionsInAttributes || !schema.equalsIgnoreCase(Constants.USER_EXT_SCHEMA_ID);
                 }
 
-                jsonGenerator.writeEndArray();
+            };
 
-            } else {
+            mapper.writeValue(projectingJsonGenerator, user);
 
-                if (parent != null && parent.equalsIgnoreCase("meta")) {
+        } catch (Exception e) {
+            log.error("Failed to serialize user", e);
+            throw new IOException(INTERNAL_SERVER_ERROR_MESSAGE);
+        }
+    }
 
-                    if (rootNodeEntry.getValue() instanceof LongNode && (rootNodeEntry.getKey().equalsIgnoreCase("created") || rootNodeEntry.getKey().equalsIgnoreCase("lastModified"))) {
+    private boolean hasUserExtensionsInAttributes(User user) {
 
-                        DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTime().withZoneUTC();  // Date should be in UTC format
+        Extension extension = user.getExtension(Constants.USER_EXT_SCHEMA_ID);
+        if (extension == null) {
+            return false;
+        }
 
-                        // In millis convert to string date
-                        jsonGenerator.writeObject(dateTimeFormatter.print(Long.valueOf(rootNodeEntry.getValue().asText()).longValue()));
+        if (attributesProjection == null) {
+            return !extension.getFields().isEmpty();
+        }
 
-                    } else {
-                        jsonGenerator.writeObject(rootNodeEntry.getValue());
-                    }
+        for (String extFieldName : extension.getFields().keySet()) {
 
-                } else {
-                    jsonGenerator.writeObject(rootNodeEntry.getValue());
-                }
+            if (attributesProjection.containsAttribute(extFieldName)) {
+                return true;
             }
-
-        } else {
-            serializeUserExtension(rootNodeEntry, mapper, user, jsonGenerator);
         }
+
+        return false;
+    }
+
+    @Override
+    public void setAttributesArray(String attributesArray) {
+        super.setAttributesArray(attributesArray);
+        this.attributesProjection = AttributesProjection.compile(attributesArray, DEFAULT_ATTRIBUTES);
     }
 }
@@ -0,0 +1,397 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.Base64Variant;
+import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.SerializableString;
+import org.codehaus.jackson.io.SerializedString;
+import org.codehaus.jackson.util.JsonGeneratorDelegate;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Generator which applies "attributes" projection to events of resource bean
+ * serializer and passes the rest to the response generator. Resource is
+ * written straight to response without intermediate tree.
+ *
+ * Output is the same as ListResponse serializers produced from tree before:
+ * - fields of root object, of nested objects and of objects in arrays are
+ *   filtered with AttributesProjection
+ * - "reference" field of referenceParent objects is written as "$ref"
+ * - meta.created and meta.lastModified timestamps are written as UTC dates
+ *
+ * Instance is created for each resource and is not thread safe
+ */
+public class ProjectingJsonGenerator extends JsonGeneratorDelegate {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = ISODateTimeFormat.dateTime().withZoneUTC();  // Date should be in UTC format
+
+    private final AttributesProjection attributesProjection;
+    private final String referenceParent;
+
+    private final List<Frame> frames = new ArrayList<Frame>();
+
+    // Excluded field value is skipped together with all nested events
+    private boolean skipNextValue;
+    private int skippedDepth;
+
+    public ProjectingJsonGenerator(JsonGenerator jsonGenerator, AttributesProjection attributesProjection, String referenceParent) {
+        super(jsonGenerator);
+        this.attributesProjection = attributesProjection;
+        this.referenceParent = referenceParent;
+    }
+
+    /**
+     * Extension fields are written by writeExtension() instead of bean serializer
+     */
+    protected boolean isExtension(String name) throws IOException {
+        return false;
+    }
+
+    /**
+     * Writes extension field with name and value directly to response generator
+     */
+    protected void writeExtension(JsonGenerator jsonGenerator, String name) throws IOException {
+    }
+
+    /**
+     * Allows to skip values of "schemas" array
+     */
+    protected boolean isSchemaIncluded(String schema) {
+        return true;
+    }
+
+    @Override
+    public void writeStartObject() throws IOException, JsonGenerationException {
+        if (skipValue()) {
+            skippedDepth++;
+            return;
+        }
+
+        Frame current = currentFrame();
+        if (current == null) {
+            frames.add(new Frame(true, true, null, null));
+        } else if (current.object) {
+            frames.add(new Frame(true, current.filtered, current.fieldName, stripSchema(current.fieldName)));
+        } else {
+            // Objects in array are filtered with name of array field as parent
+            frames.add(new Frame(true, current.filtered && !current.isSchemas(), null, current.parent));
+        }
+
+        delegate.writeStartObject();
+    }
+
+    @Override
+    public void writeEndObject() throws IOException, JsonGenerationException {
+        if (skippedDepth > 0) {
+            skippedDepth--;
+            return;
+        }
+
+        frames.remove(frames.size() - 1);
+        delegate.writeEndObject();
+    }
+
+    @Override
+    public void writeStartArray() throws IOException, JsonGenerationException {
+        if (skipValue()) {
+            skippedDepth++;
+            return;
+        }
+
+        Frame current = currentFrame();
+        if ((current != null) && current.object) {
+            frames.add(new Frame(false, current.filtered, current.fieldName, stripSchema(current.fieldName)));
+        } else {
+            frames.add(new Frame(false, false, null, null));
+        }
+
+        delegate.writeStartArray();
+    }
+
+    @Override
+    public void writeEndArray() throws IOException, JsonGenerationException {
+        if (skippedDepth > 0) {
+            skippedDepth--;
+            return;
+        }
+
+        frames.remove(frames.size() - 1);
+        delegate.writeEndArray();
+    }
+
+    @Override
+    public void writeFieldName(String name) throws IOException, JsonGenerationException {
+        if (skippedDepth > 0) {
+            return;
+        }
+
+        Frame current = currentFrame();
+        current.fieldName = name;
+        if (!current.filtered) {
+            delegate.writeFieldName(name);
+            return;
+        }
+
+        if (isExtension(name)) {
+            skipNextValue = true;
+            writeExtension(delegate, name);
+            return;
+        }
+
+        if ((attributesProjection != null) && !attributesProjection.isIncluded(current.parent, name)) {
+            skipNextValue = true;
+            return;
+        }
+
+        if ((current.parent != null) && current.parent.equalsIgnoreCase(referenceParent) && name.equalsIgnoreCase("reference")) {
+            delegate.writeFieldName("$ref");
+        } else {
+            delegate.writeFieldName(name);
+        }
+    }
+
+    @Override
+    public void writeFieldName(SerializedString name) throws IOException, JsonGenerationException {
+        writeFieldName(name.getValue());
+    }
+
+    @Override
+    public void writeFieldName(SerializableString name) throws IOException, JsonGenerationException {
+        writeFieldName(name.getValue());
+    }
+
+    @Override
+    public void writeString(String text) throws IOException, JsonGenerationException {
+        if (skipValue()) {
+            return;
+        }
+
+        Frame current = currentFrame();
+        if ((current != null) && current.filtered && !current.object && current.isSchemas() && !isSchemaIncluded(text)) {
+            return;
+        }
+
+        delegate.writeString(text);
+    }
+
+    @Override
+    public void writeString(char[] text, int offset, int len) throws IOException, JsonGenerationException {
+        writeString(new String(text, offset, len));
+    }
+
+    @Override
+    public void writeString(SerializableString text) throws IOException, JsonGenerationException {
+        writeString(text.getValue());
+    }
+
+    @Override
+    public void writeRawUTF8String(byte[] text, int offset, int length) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeRawUTF8String(text, offset, length);
+        }
+    }
+
+    @Override
+    public void writeUTF8String(byte[] text, int offset, int length) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeUTF8String(text, offset, length);
+        }
+    }
+
+    @Override
+    public void writeRawValue(String text) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeRawValue(text);
+        }
+    }
+
+    @Override
+    public void writeRawValue(String text, int offset, int len) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeRawValue(text, offset, len);
+        }
+    }
+
+    @Override
+    public void writeRawValue(char[] text, int offset, int len) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeRawValue(text, offset, len);
+        }
+    }
+
+    @Override
+    public void writeBinary(Base64Variant b64variant, byte[] data, int offset, int len) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeBinary(b64variant, data, offset, len);
+        }
+    }
+
+    @Override
+    public void writeNumber(int value) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(long value) throws IOException, JsonGenerationException {
+        if (skipValue()) {
+            return;
+        }
+
+        Frame current = currentFrame();
+        if ((current != null) && current.filtered && current.isMetaDate()) {
+            // In millis convert to string date
+            delegate.writeString(DATE_TIME_FORMATTER.print(value));
+        } else {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(BigInteger value) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(double value) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(float value) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(BigDecimal value) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNumber(value);
+        }
+    }
+
+    @Override
+    public void writeNumber(String encodedValue) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNumber(encodedValue);
+        }
+    }
+
+    @Override
+    public void writeBoolean(boolean state) throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeBoolean(state);
+        }
+    }
+
+    @Override
+    public void writeNull() throws IOException, JsonGenerationException {
+        if (!skipValue()) {
+            delegate.writeNull();
+        }
+    }
+
+    @Override
+    public void writeObject(Object pojo) throws IOException, JsonProcessingException {
+        if (!skipValue()) {
+            delegate.writeObject(pojo);
+        }
+    }
+
+    @Override
+    public void writeTree(JsonNode rootNode) throws IOException, JsonProcessingException {
+        if (!skipValue()) {
+            delegate.writeTree(rootNode);
+        }
+    }
+
+    /*
+     * Enclosing serializer flushes response generator
+     */
+    @Override
+    public void flush() throws IOException {
+    }
+
+    /*
+     * Returns true and consumes pending skip if value event should not be written
+     */
+    private boolean skipValue() {
+        if (skippedDepth > 0) {
+            return true;
+        }
+
+        if (skipNextValue) {
+            skipNextValue = false;
+            return true;
+        }
+
+        return false;
+    }
+
+    private Frame currentFrame() {
+        if (frames.isEmpty()) {
+            return null;
+        }
+
+        return frames.get(frames.size() - 1);
+    }
+
+    private static String stripSchema(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        return FilterUtil.stripScim2Schema(name);
+    }
+
+    private static class Frame {
+
+        private final boolean object;
+
+        // Fields of filtered objects are checked against projection
+        private final boolean filtered;
+
+        // Name of field with this value with stripped schema. Null for root object
+        private final String parent;
+
+        // Object: name of last written field. Array: name of field with this array
+        private String fieldName;
+
+        public Frame(boolean object, boolean filtered, String fieldName, String parent) {
+            this.object = object;
+            this.filtered = filtered;
+            this.fieldName = object ? null : fieldName;
+            this.parent = parent;
+        }
+
+        public boolean isSchemas() {
+            return "schemas".equalsIgnoreCase(fieldName);
+        }
+
+        public boolean isMetaDate() {
+            return object && "meta".equalsIgnoreCase(parent) && ("created".equalsIgnoreCase(fieldName) || "lastModified".equalsIgnoreCase(fieldName));
+        }
+
+    }
+
+}
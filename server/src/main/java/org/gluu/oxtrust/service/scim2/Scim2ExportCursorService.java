@@ -0,0 +1,117 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gluu.oxtrust.ldap.service.LdapPagedSearchCursor;
+import org.jboss.seam.ScopeType;
+import org.jboss.seam.annotations.AutoCreate;
+import org.jboss.seam.annotations.Destroy;
+import org.jboss.seam.annotations.Logger;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.annotations.Scope;
+import org.jboss.seam.log.Log;
+
+/**
+ * Keeps LDAP paged search cursors of unfinished SCIM exports between requests
+ *
+ * Each cursor holds LDAP connection, so number of open cursors is limited and
+ * cursors which client doesn't continue expire
+ */
+@Name("scim2ExportCursorService")
+@Scope(ScopeType.APPLICATION)
+@AutoCreate
+public class Scim2ExportCursorService implements Serializable {
+
+    private static final long serialVersionUID = 2870437562187349014L;
+
+    public static final int MAX_OPEN_CURSORS = 4;
+    public static final long CURSOR_TIMEOUT = 5 * 60 * 1000L;
+
+    @Logger
+    private Log log;
+
+    private transient ConcurrentMap<String, OpenCursor> cursors = new ConcurrentHashMap<String, OpenCursor>();
+
+    /**
+     * Returns cursor id or null if there are too many open cursors. In this
+     * case cursor is closed
+     */
+    public String register(LdapPagedSearchCursor cursor) {
+        closeExpired();
+
+        if (cursors.size() >= MAX_OPEN_CURSORS) {
+            cursor.close();
+            return null;
+        }
+
+        String cursorId = UUID.randomUUID().toString();
+        cursors.put(cursorId, new OpenCursor(cursor));
+
+        return cursorId;
+    }
+
+    public boolean isFull() {
+        closeExpired();
+
+        return cursors.size() >= MAX_OPEN_CURSORS;
+    }
+
+    /**
+     * Removes cursor from registry. Caller either closes it or registers it again
+     */
+    public LdapPagedSearchCursor take(String cursorId) {
+        closeExpired();
+
+        OpenCursor openCursor = cursors.remove(cursorId);
+        if (openCursor == null) {
+            return null;
+        }
+
+        return openCursor.cursor;
+    }
+
+    @Destroy
+    public void destroy() {
+        for (Iterator<OpenCursor> it = cursors.values().iterator(); it.hasNext();) {
+            it.next().cursor.close();
+            it.remove();
+        }
+    }
+
+    private void closeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, OpenCursor>> it = cursors.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, OpenCursor> entry = it.next();
+            if (now - entry.getValue().registrationTime > CURSOR_TIMEOUT) {
+                // Another thread may take cursor concurrently
+                if (cursors.remove(entry.getKey(), entry.getValue())) {
+                    log.debug("Closing expired export cursor '{0}'", entry.getKey());
+                    entry.getValue().cursor.close();
+                }
+            }
+        }
+    }
+
+    private static class OpenCursor {
+
+        private final LdapPagedSearchCursor cursor;
+        private final long registrationTime;
+
+        public OpenCursor(LdapPagedSearchCursor cursor) {
+            this.cursor = cursor;
+            this.registrationTime = System.currentTimeMillis();
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.gluu.oxtrust.ldap.service.IGroupService;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.model.GluuGroup;
+
+/**
+ * Request scoped resolver of groups referenced by users memberOf attribute.
+ * Groups of all users in response are loaded together before conversion to
+ * avoid LDAP lookup per group per user
+ */
+public class Scim2GroupResolver {
+
+    private final IGroupService groupService;
+    private final Map<String, GluuGroup> groups;
+
+    public Scim2GroupResolver(IGroupService groupService) {
+        this.groupService = groupService;
+        this.groups = new HashMap<String, GluuGroup>();
+    }
+
+    /**
+     * Loads all distinct groups of specified persons
+     */
+    public void prefetch(List<GluuCustomPerson> persons) {
+        Set<String> groupDns = new LinkedHashSet<String>();
+        for (GluuCustomPerson person : persons) {
+            List<String> memberOf = person.getMemberOf();
+            if (memberOf != null) {
+                groupDns.addAll(memberOf);
+            }
+        }
+        groupDns.removeAll(groups.keySet());
+
+        if (!groupDns.isEmpty()) {
+            groups.putAll(groupService.getGroupSummariesByDns(groupDns));
+        }
+    }
+
+    public GluuGroup getGroup(String groupDn) {
+        GluuGroup group = groups.get(groupDn);
+        if (group == null) {
+            group = groupService.getGroupSummariesByDns(Collections.singletonList(groupDn)).get(groupDn);
+            groups.put(groupDn, group);
+        }
+
+        return group;
+    }
+
+}
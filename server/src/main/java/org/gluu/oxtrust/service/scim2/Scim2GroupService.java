@@ -7,6 +7,7 @@ package org.gluu.oxtrust.service.scim2;
 
 import org.gluu.oxtrust.ldap.service.GroupService;
 import org.gluu.oxtrust.ldap.service.IGroupService;
+import org.gluu.oxtrust.ldap.service.MemberOfSyncService;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.scim2.Group;
 import org.gluu.oxtrust.service.external.ExternalScimService;
@@ -22,6 +23,7 @@ import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -127,11 +129,12 @@ public class Scim2GroupService implements Serializable {
             }
         }
 
+        List<String> oldMembers = (gluuGroup.getMembers() == null) ? new ArrayList<String>() : new ArrayList<String>(gluuGroup.getMembers());
+
         GluuGroup updatedGluuGroup = CopyUtils2.copy(group, gluuGroup, true);
 
-        if (group.getMembers().size() > 0) {
-            Utils.personMembersAdder(updatedGluuGroup, groupService.getDnForGroup(id));
-        }
+        // Update memberOf only of added and removed members
+        MemberOfSyncService.instance().syncMembers(groupService.getDnForGroup(id), oldMembers, updatedGluuGroup.getMembers());
 
         log.info(" Setting meta: update group ");
         DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTime().withZoneUTC();  // Date should be in UTC format
@@ -176,19 +179,7 @@ public class Scim2GroupService implements Serializable {
                 externalScimService.executeScimDeleteGroupMethods(gluuGroup);
             }
 
-            log.info(" getting started to delete members from groups ");
-            if (gluuGroup.getMembers() != null) {
-
-                if (gluuGroup.getMembers().size() > 0) {
-
-                    log.info(" getting dn for group ");
-                    String dn = groupService.getDnForGroup(id);
-                    log.info(" DN : " + dn);
-
-                    Utils.deleteGroupFromPerson(gluuGroup, dn);
-                }
-            }
-
+            // Group removal also deletes it from members memberOf
             log.info(" removing the group ");
             groupService.removeGroup(gluuGroup);
         }
@@ -0,0 +1,73 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import java.io.Serializable;
+
+/**
+ * Aggregated timing of one phase of SCIM endpoint requests
+ */
+public class ScimPhaseMetrics implements Serializable {
+
+    private static final long serialVersionUID = 6046839018263815460L;
+
+    private String endpoint;
+    private String phase;
+    private long count;
+    private long totalDuration;
+    private long maxDuration;
+
+    public ScimPhaseMetrics(String endpoint, String phase, long count, long totalDuration, long maxDuration) {
+        this.endpoint = endpoint;
+        this.phase = phase;
+        this.count = count;
+        this.totalDuration = totalDuration;
+        this.maxDuration = maxDuration;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Total duration in microseconds
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Max duration in microseconds
+     */
+    public long getMaxDuration() {
+        return maxDuration;
+    }
+
+    public long getAverageDuration() {
+        if (count == 0) {
+            return 0;
+        }
+
+        return totalDuration / count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ScimPhaseMetrics [endpoint=").append(endpoint).append(", phase=").append(phase).append(", count=").append(count)
+                .append(", totalDuration=").append(totalDuration).append(", maxDuration=").append(maxDuration).append("]");
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.scim2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timing of SCIM endpoint request phases
+ *
+ * Durations of all requests are added to shared per endpoint and phase
+ * counters which are cheap enough to be always on. Every SAMPLE_RATE request
+ * is also written as one debug line if debug level is enabled.
+ *
+ * Trace should be used from one thread at a time.
+ */
+public class ScimRequestTrace {
+
+    private static final Logger log = LoggerFactory.getLogger(ScimRequestTrace.class);
+
+    public static final String PHASE_AUTHORIZATION = "authorization";
+    public static final String PHASE_FILTER_PARSE = "filterParse";
+    public static final String PHASE_LDAP = "ldap";
+    public static final String PHASE_CONVERSION = "conversion";
+    public static final String PHASE_SERIALIZATION = "serialization";
+    public static final String PHASE_TOTAL = "total";
+
+    private static final int SAMPLE_RATE = 100;
+
+    private static final AtomicLong requestCount = new AtomicLong();
+
+    private static final ConcurrentMap<String, PhaseCounter> phaseCounters = new ConcurrentHashMap<String, PhaseCounter>();
+
+    private final String endpoint;
+    private final boolean sampled;
+    private final long startTime;
+
+    // Only sampled requests keep phase durations
+    private final Map<String, Long> durations;
+
+    private String currentPhase;
+    private long currentPhaseStartTime;
+    private long itemCount;
+
+    public ScimRequestTrace(String endpoint) {
+        this.endpoint = endpoint;
+        this.sampled = log.isDebugEnabled() && (requestCount.incrementAndGet() % SAMPLE_RATE == 0);
+        this.startTime = System.nanoTime();
+        this.durations = sampled ? new LinkedHashMap<String, Long>() : null;
+    }
+
+    public void startPhase(String phase) {
+        endPhase();
+
+        this.currentPhase = phase;
+        this.currentPhaseStartTime = System.nanoTime();
+    }
+
+    public void endPhase() {
+        if (currentPhase == null) {
+            return;
+        }
+
+        record(currentPhase, System.nanoTime() - currentPhaseStartTime);
+        this.currentPhase = null;
+    }
+
+    public void setItemCount(long itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public void finish() {
+        endPhase();
+        record(PHASE_TOTAL, System.nanoTime() - startTime);
+
+        if (sampled) {
+            StringBuilder message = new StringBuilder("SCIM request trace: endpoint=").append(endpoint);
+            for (Map.Entry<String, Long> duration : durations.entrySet()) {
+                message.append(", ").append(duration.getKey()).append("=").append(duration.getValue()).append("us");
+            }
+            message.append(", items=").append(itemCount);
+
+            log.debug(message.toString());
+        }
+    }
+
+    private void record(String phase, long durationNanos) {
+        long duration = durationNanos / 1000;
+        getPhaseCounter(endpoint, phase).add(duration);
+
+        if (sampled) {
+            Long previous = durations.get(phase);
+            durations.put(phase, (previous == null) ? duration : previous + duration);
+        }
+    }
+
+    private static PhaseCounter getPhaseCounter(String endpoint, String phase) {
+        String key = endpoint + ":" + phase;
+
+        PhaseCounter phaseCounter = phaseCounters.get(key);
+        if (phaseCounter == null) {
+            phaseCounter = new PhaseCounter(endpoint, phase);
+            PhaseCounter previousPhaseCounter = phaseCounters.putIfAbsent(key, phaseCounter);
+            if (previousPhaseCounter != null) {
+                phaseCounter = previousPhaseCounter;
+            }
+        }
+
+        return phaseCounter;
+    }
+
+    /**
+     * Returns snapshot of aggregated phase metrics of all endpoints
+     */
+    public static List<ScimPhaseMetrics> getPhaseMetrics() {
+        List<ScimPhaseMetrics> result = new ArrayList<ScimPhaseMetrics>(phaseCounters.size());
+        for (PhaseCounter phaseCounter : phaseCounters.values()) {
+            result.add(phaseCounter.toMetrics());
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    private static class PhaseCounter {
+
+        private final String endpoint;
+        private final String phase;
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalDuration = new AtomicLong();
+        private final AtomicLong maxDuration = new AtomicLong();
+
+        public PhaseCounter(String endpoint, String phase) {
+            this.endpoint = endpoint;
+            this.phase = phase;
+        }
+
+        public void add(long duration) {
+            count.incrementAndGet();
+            totalDuration.addAndGet(duration);
+
+            long max;
+            while ((max = maxDuration.get()) < duration) {
+                if (maxDuration.compareAndSet(max, duration)) {
+                    break;
+                }
+            }
+        }
+
+        public ScimPhaseMetrics toMetrics() {
+            return new ScimPhaseMetrics(endpoint, phase, count.get(), totalDuration.get(), maxDuration.get());
+        }
+
+    }
+
+}
@@ -13,7 +13,8 @@ import org.gluu.oxtrust.ldap.service.AttributeService;
 import org.gluu.oxtrust.model.scim2.Extension;
 import org.gluu.oxtrust.model.scim2.User;
 import org.gluu.oxtrust.model.scim2.schema.extension.UserExtensionSchema;
-import org.gluu.oxtrust.service.antlr.scimFilter.util.FilterUtil;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.AttributesProjection;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
 import org.gluu.oxtrust.service.scim2.schema.SchemaTypeMapping;
 import org.jboss.seam.annotations.Logger;
 import org.jboss.seam.annotations.Name;
@@ -42,20 +43,21 @@ public class UserSerializer extends JsonSerializer<User> {
     @Logger
     private static Log log;
 
+    protected static final DateTimeFormatter DATE_TIME_FORMATTER = ISODateTimeFormat.dateTime().withZoneUTC();
+
     protected String attributesArray;
-    protected Set<String> attributes;
+
+    // Compiled once in setAttributesArray(). Serializer is shared by concurrent requests
+    protected AttributesProjection attributesProjection;
 
     @Override
     public void serialize(User user, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
 
-        log.info(" serialize() ");
-
         try {
 
             jsonGenerator.writeStartObject();
 
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
+            ObjectMapper mapper = ListResponseMappers.getTreeMapper();
 
             JsonNode rootNode = mapper.convertValue(user, JsonNode.class);
 
@@ -68,7 +70,7 @@ public class UserSerializer extends JsonSerializer<User> {
 
                 if (SchemaTypeMapping.getSchemaTypeInstance(rootNodeEntry.getKey()) instanceof UserExtensionSchema) {
 
-                    serializeUserExtension(rootNodeEntry, mapper, user, jsonGenerator);
+                    serializeUserExtension(rootNodeEntry.getKey(), mapper, user, jsonGenerator);
 
                 } else {
 
@@ -79,41 +81,35 @@ public class UserSerializer extends JsonSerializer<User> {
             jsonGenerator.writeEndObject();
 
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to serialize user", e);
             throw new IOException(INTERNAL_SERVER_ERROR_MESSAGE);
         }
     }
 
-    protected void serializeUserExtension(Map.Entry<String, JsonNode> rootNodeEntry, ObjectMapper mapper, User user, JsonGenerator jsonGenerator) throws Exception {
+    protected void serializeUserExtension(String extensionSchemaId, ObjectMapper mapper, User user, JsonGenerator jsonGenerator) throws Exception {
 
         AttributeService attributeService = AttributeService.instance();
-        Extension extension = user.getExtension(rootNodeEntry.getKey());
+        Extension extension = user.getExtension(extensionSchemaId);
 
         Map<String, Object> list = new HashMap<String, Object>();
 
         boolean enclosingWritten = false;
         for (Map.Entry<String, Extension.Field> extEntry : extension.getFields().entrySet()) {
 
-            if (attributes != null && attributes.size() > 0) {
+            if (attributesProjection != null) {
 
-                for (String attribute : attributes) {
+                if (attributesProjection.containsAttribute(extEntry.getKey())) {
 
-                    attribute = FilterUtil.stripScim2Schema(attribute);
+                    if (!enclosingWritten) {
 
-                    if (extEntry.getKey().equalsIgnoreCase(attribute)) {
-
-                        if (!enclosingWritten) {
-
-                            jsonGenerator.writeFieldName(rootNodeEntry.getKey());
-                            enclosingWritten = true;
-                        }
-                        break;
+                        jsonGenerator.writeFieldName(extensionSchemaId);
+                        enclosingWritten = true;
                     }
                 }
 
             } else {
                 if (!enclosingWritten) {
-                    jsonGenerator.writeFieldName(rootNodeEntry.getKey());
+                    jsonGenerator.writeFieldName(extensionSchemaId);
                     enclosingWritten = true;
                 }
             }
@@ -134,9 +130,8 @@ public class UserSerializer extends JsonSerializer<User> {
 
                         List<Date> dateList = Arrays.asList(mapper.readValue(extEntry.getValue().getValue(), Date[].class));
                         List<String> stringList = new ArrayList<String>();
-                        DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTime().withZoneUTC();
                         for (Date date : dateList) {
-                            String dateString = dateTimeFormatter.print(date.getTime());
+                            String dateString = DATE_TIME_FORMATTER.print(date.getTime());
                             stringList.add(dateString);
                         }
                         list.put(extEntry.getKey(), stringList);
@@ -150,8 +145,7 @@ public class UserSerializer extends JsonSerializer<User> {
                 } else {
 
                     if (attributeDataType.equals(GluuAttributeDataType.DATE)) {
-                        DateTimeFormatter dateTimeFormatter = ISODateTimeFormat.dateTime().withZoneUTC();
-                        list.put(extEntry.getKey(), dateTimeFormatter.print(new Long(extEntry.getValue().getValue())));
+                        list.put(extEntry.getKey(), DATE_TIME_FORMATTER.print(new Long(extEntry.getValue().getValue())));
                     } else {
                         list.put(extEntry.getKey(), extEntry.getValue().getValue());
                     }
@@ -542,8 +542,9 @@ public class CopyUtils implements Serializable {
 			destination.setUserName(source.getUid());
 		}
 		log.trace(" setting ExternalID ");
-		if (source.getAttribute(OX_TRUST_EXTERNAL_ID) != null) {
-			destination.setExternalId(source.getAttribute(OX_TRUST_EXTERNAL_ID));
+		String externalId = source.getAttribute(OX_TRUST_EXTERNAL_ID);
+		if (externalId != null) {
+			destination.setExternalId(externalId);
 		}
 		log.trace(" setting givenname ");
 		if (source.getGivenName() != null) {
@@ -554,18 +555,21 @@ public class CopyUtils implements Serializable {
 			destination.getName().setFamilyName(source.getSurname());
 		}
 		log.trace(" getting middlename ");
-		if (source.getAttribute(OX_TRUST_MIDDLE_NAME) != null) {
-			destination.getName().setMiddleName(source.getAttribute(OX_TRUST_MIDDLE_NAME));
+		String middleName = source.getAttribute(OX_TRUST_MIDDLE_NAME);
+		if (middleName != null) {
+			destination.getName().setMiddleName(middleName);
 		}
 		;
 		log.trace(" getting honorificPrefix ");
-		if (source.getAttribute(OX_TRUSTHONORIFIC_PREFIX) != null) {
-			destination.getName().setHonorificPrefix(source.getAttribute(OX_TRUSTHONORIFIC_PREFIX));
+		String honorificPrefix = source.getAttribute(OX_TRUSTHONORIFIC_PREFIX);
+		if (honorificPrefix != null) {
+			destination.getName().setHonorificPrefix(honorificPrefix);
 		}
 		;
 		log.trace(" getting honorificSuffix ");
-		if (source.getAttribute(OX_TRUSTHONORIFIC_SUFFIX) != null) {
-			destination.getName().setHonorificSuffix(source.getAttribute(OX_TRUSTHONORIFIC_SUFFIX));
+		String honorificSuffix = source.getAttribute(OX_TRUSTHONORIFIC_SUFFIX);
+		if (honorificSuffix != null) {
+			destination.getName().setHonorificSuffix(honorificSuffix);
 		}
 		;
 		log.trace(" getting displayname ");
@@ -573,12 +577,14 @@ public class CopyUtils implements Serializable {
 			destination.setDisplayName(source.getDisplayName());
 		}
 		log.trace(" getting nickname ");
-		if (source.getAttribute(OX_TRUST_NICK_NAME) != null) {
-			destination.setNickName(source.getAttribute(OX_TRUST_NICK_NAME));
+		String nickName = source.getAttribute(OX_TRUST_NICK_NAME);
+		if (nickName != null) {
+			destination.setNickName(nickName);
 		}
 		log.trace(" getting profileURL ");
-		if (source.getAttribute(OX_TRUST_PROFILE_URL) != null) {
-			destination.setProfileUrl(source.getAttribute(OX_TRUST_PROFILE_URL));
+		String profileUrl = source.getAttribute(OX_TRUST_PROFILE_URL);
+		if (profileUrl != null) {
+			destination.setProfileUrl(profileUrl);
 		}
 
 		log.trace(" getting emails ");
@@ -755,16 +761,19 @@ public class CopyUtils implements Serializable {
 		}
 
 		log.trace(" setting userType ");
-		if (source.getAttribute(OX_TRUST_USER_TYPE) != null) {
-			destination.setUserType(source.getAttribute(OX_TRUST_USER_TYPE));
+		String userType = source.getAttribute(OX_TRUST_USER_TYPE);
+		if (userType != null) {
+			destination.setUserType(userType);
 		}
 		log.trace(" setting title ");
-		if (source.getAttribute(OX_TRUST_TITLE) != null) {
-			destination.setTitle(source.getAttribute(OX_TRUST_TITLE));
+		String title = source.getAttribute(OX_TRUST_TITLE);
+		if (title != null) {
+			destination.setTitle(title);
 		}
 		log.trace(" setting Locale ");
-		if (source.getAttribute(OX_TRUST_LOCALE) != null) {
-			destination.setLocale(source.getAttribute(OX_TRUST_LOCALE));
+		String locale = source.getAttribute(OX_TRUST_LOCALE);
+		if (locale != null) {
+			destination.setLocale(locale);
 		}
 		log.trace(" setting preferredLanguage ");
 		if (source.getPreferredLanguage() != null) {
@@ -775,8 +784,9 @@ public class CopyUtils implements Serializable {
 			destination.setTimezone(source.getTimezone());
 		}
 		log.trace(" setting active ");
-		if (source.getAttribute(OX_TRUST_ACTIVE) != null) {
-			destination.setActive(source.getAttribute(OX_TRUST_ACTIVE));
+		String active = source.getAttribute(OX_TRUST_ACTIVE);
+		if (active != null) {
+			destination.setActive(active);
 		}
 		log.trace(" setting password ");
 		destination.setPassword("Hidden for Privacy Reasons");
@@ -868,14 +878,17 @@ public class CopyUtils implements Serializable {
 
 		log.trace(" setting meta ");
 		// getting meta data
-		if (source.getAttribute(OX_TRUST_META_CREATED) != null) {
-			destination.getMeta().setCreated(source.getAttribute(OX_TRUST_META_CREATED));
+		String created = source.getAttribute(OX_TRUST_META_CREATED);
+		if (created != null) {
+			destination.getMeta().setCreated(created);
 		}
-		if (source.getAttribute(OX_TRUST_META_LAST_MODIFIED) != null) {
-			destination.getMeta().setLastModified(source.getAttribute(OX_TRUST_META_LAST_MODIFIED));
+		String lastModified = source.getAttribute(OX_TRUST_META_LAST_MODIFIED);
+		if (lastModified != null) {
+			destination.getMeta().setLastModified(lastModified);
 		}
-		if (source.getAttribute(OX_TRUST_META_VERSION) != null) {
-			destination.getMeta().setVersion(source.getAttribute(OX_TRUST_META_VERSION));
+		String version = source.getAttribute(OX_TRUST_META_VERSION);
+		if (version != null) {
+			destination.getMeta().setVersion(version);
 		}
 		// if (source.getAttribute(OX_TRUST_META_LOCATION) != null) {
 			// destination.getMeta().setLocation(source.getAttribute(OX_TRUST_META_LOCATION));
@@ -45,6 +45,8 @@ import org.gluu.oxtrust.model.scim.Scimx509CertificatesPatch;
 import org.gluu.oxtrust.model.scim2.*;
 import org.gluu.oxtrust.model.scim2.User;
 import org.gluu.oxtrust.model.scim2.fido.FidoDevice;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.AttributesProjection;
+import org.gluu.oxtrust.service.scim2.Scim2GroupResolver;
 import org.hibernate.internal.util.StringHelper;
 import org.jboss.seam.annotations.Logger;
 import org.jboss.seam.annotations.Name;
@@ -583,7 +585,7 @@ public class CopyUtils2 implements Serializable {
 				*/
 
 			} catch (Exception ex) {
-				ex.printStackTrace();
+				log.error("Failed to copy user", ex);
 				return null;
 			}
 		}
@@ -639,6 +641,37 @@ public class CopyUtils2 implements Serializable {
 	 * @throws Exception
 	 */
 	public static User copy(GluuCustomPerson source, User destination) throws Exception {
+		return copy(source, destination, null);
+	}
+
+	/**
+	 * Copy data from GluuCustomPerson object to ScimPerson object. Conversions
+	 * of attributes which are not in projection are skipped. They may require
+	 * additional LDAP lookups
+	 * 
+	 * @param source
+	 * @param destination
+	 * @param attributesProjection attributes requested by client or null to copy all attributes
+	 * @return
+	 * @throws Exception
+	 */
+	public static User copy(GluuCustomPerson source, User destination, AttributesProjection attributesProjection) throws Exception {
+		return copy(source, destination, attributesProjection, null);
+	}
+
+	/**
+	 * Copy data from GluuCustomPerson object to ScimPerson object. Groups are
+	 * resolved by groupResolver which can be shared by all users in response
+	 * 
+	 * @param source
+	 * @param destination
+	 * @param attributesProjection attributes requested by client or null to copy all attributes
+	 * @param groupResolver request scoped group resolver or null to create new one
+	 * @return
+	 * @throws Exception
+	 */
+	public static User copy(GluuCustomPerson source, User destination, AttributesProjection attributesProjection, Scim2GroupResolver groupResolver)
+			throws Exception {
 
 		if (source == null) {
 			return null;
@@ -659,8 +692,9 @@ public class CopyUtils2 implements Serializable {
 		}
 		
 		log.trace(" setting ExternalID ");
-		if (source.getAttribute("oxTrustExternalId") != null) {
-			destination.setExternalId(source.getAttribute("oxTrustExternalId"));
+		String externalId = source.getAttribute("oxTrustExternalId");
+		if (externalId != null) {
+			destination.setExternalId(externalId);
 		}
 		log.trace(" setting givenname ");
 		if (source.getGivenName() != null) {
@@ -668,16 +702,19 @@ public class CopyUtils2 implements Serializable {
 			name.setGivenName(source.getGivenName());
 			if (source.getSurname() != null)  
 				name.setFamilyName(source.getSurname());
-			if (source.getAttribute("middleName") != null)
-				name.setMiddleName(source.getAttribute("middleName"));
+			String middleName = source.getAttribute("middleName");
+			if (middleName != null)
+				name.setMiddleName(middleName);
 			/*
 			if (source.getAttribute("oxTrustMiddleName") != null)
 				name.setMiddleName(source.getAttribute("oxTrustMiddleName"));
 			*/
-			if (source.getAttribute("oxTrusthonorificPrefix") != null)
-				name.setHonorificPrefix(source.getAttribute("oxTrusthonorificPrefix"));
-			if (source.getAttribute("oxTrusthonorificSuffix") != null) 
-				name.setHonorificSuffix(source.getAttribute("oxTrusthonorificSuffix"));
+			String honorificPrefix = source.getAttribute("oxTrusthonorificPrefix");
+			if (honorificPrefix != null)
+				name.setHonorificPrefix(honorificPrefix);
+			String honorificSuffix = source.getAttribute("oxTrusthonorificSuffix");
+			if (honorificSuffix != null) 
+				name.setHonorificSuffix(honorificSuffix);
 			name.setFormatted(name.getFormatted());
 			destination.setName(name);
 		}
@@ -692,17 +729,20 @@ public class CopyUtils2 implements Serializable {
 			destination.setNickName(source.getAttribute("oxTrustNickName"));
 		}
 		*/
-		if (source.getAttribute("nickname") != null) {
-			destination.setNickName(source.getAttribute("nickname"));
+		String nickName = source.getAttribute("nickname");
+		if (nickName != null) {
+			destination.setNickName(nickName);
 		}
 		log.trace(" getting profileURL ");
-		if (source.getAttribute("oxTrustProfileURL") != null) {
-			destination.setProfileUrl(source.getAttribute("oxTrustProfileURL"));
+		String profileUrl = source.getAttribute("oxTrustProfileURL");
+		if (profileUrl != null) {
+			destination.setProfileUrl(profileUrl);
 		}
 
 		log.trace(" getting emails ");
 		// source = Utils.syncEmailReverse(source, true);
-		if (source.getAttributeArray("oxTrustEmail") != null) {
+		String[] emailValues = isRequested(attributesProjection, "emails") ? source.getAttributeArray("oxTrustEmail") : null;
+		if (emailValues != null) {
 
 			/*
 			String[] emailArray = source.getAttributeArray("oxTrustEmail");
@@ -717,46 +757,52 @@ public class CopyUtils2 implements Serializable {
 			// destination.setEmails(listOfEmails);
 			*/
 
-			List<Email> emails = getAttributeListValue(source, Email.class, "oxTrustEmail");
+			List<Email> emails = getAttributeListValue(emailValues, Email.class);
 			destination.setEmails(emails);
 		}
 
 		log.trace(" getting addresses ");
 		// getting addresses
-		if (source.getAttribute("oxTrustAddresses") != null) {
-			List<Address> addresses = getAttributeListValue(source, Address.class, "oxTrustAddresses");
+		GluuCustomAttribute addressesAttribute = isRequested(attributesProjection, "addresses") ? source.getGluuCustomAttribute("oxTrustAddresses") : null;
+		if ((addressesAttribute != null) && (addressesAttribute.getValue() != null)) {
+			List<Address> addresses = getAttributeListValue(addressesAttribute.getValues(), Address.class);
 			destination.setAddresses(addresses);
 		}
 
 		log.trace(" setting phoneNumber ");
 		// getting user's PhoneNumber
-		if (source.getAttribute("oxTrustPhoneValue") != null) {
-			List<PhoneNumber> phoneNumbers = getAttributeListValue(source, PhoneNumber.class, "oxTrustPhoneValue");
+		GluuCustomAttribute phoneNumbersAttribute = isRequested(attributesProjection, "phoneNumbers") ? source.getGluuCustomAttribute("oxTrustPhoneValue") : null;
+		if ((phoneNumbersAttribute != null) && (phoneNumbersAttribute.getValue() != null)) {
+			List<PhoneNumber> phoneNumbers = getAttributeListValue(phoneNumbersAttribute.getValues(), PhoneNumber.class);
 			destination.setPhoneNumbers(phoneNumbers);
 		}
 
 		log.trace(" getting ims ");
 		// getting ims
-		if (source.getAttribute("oxTrustImsValue") != null) {
-			List<Im> ims = getAttributeListValue(source, Im.class, "oxTrustImsValue");
+		GluuCustomAttribute imsAttribute = isRequested(attributesProjection, "ims") ? source.getGluuCustomAttribute("oxTrustImsValue") : null;
+		if ((imsAttribute != null) && (imsAttribute.getValue() != null)) {
+			List<Im> ims = getAttributeListValue(imsAttribute.getValues(), Im.class);
 			destination.setIms(ims);
 		}
 
 		log.trace(" setting photos ");
 		// getting photos
-		if (source.getAttribute("oxTrustPhotos") != null) {
-			List<Photo> photos = getAttributeListValue(source, Photo.class, "oxTrustPhotos");
+		GluuCustomAttribute photosAttribute = isRequested(attributesProjection, "photos") ? source.getGluuCustomAttribute("oxTrustPhotos") : null;
+		if ((photosAttribute != null) && (photosAttribute.getValue() != null)) {
+			List<Photo> photos = getAttributeListValue(photosAttribute.getValues(), Photo.class);
 			destination.setPhotos(photos);
 		}
 
 		log.trace(" setting userType ");
-		if (source.getAttribute("oxTrustUserType") != null) {
-			destination.setUserType(source.getAttribute("oxTrustUserType"));
+		String userType = source.getAttribute("oxTrustUserType");
+		if (userType != null) {
+			destination.setUserType(userType);
 		}
 
 		log.trace(" setting title ");
-		if (source.getAttribute("oxTrustTitle") != null) {
-			destination.setTitle(source.getAttribute("oxTrustTitle"));
+		String title = source.getAttribute("oxTrustTitle");
+		if (title != null) {
+			destination.setTitle(title);
 		}
 		log.trace(" setting Locale ");
 		/*
@@ -764,8 +810,9 @@ public class CopyUtils2 implements Serializable {
 			destination.setLocale(source.getAttribute("oxTrustLocale"));
 		}
 		*/
-		if (source.getAttribute("locale") != null) {
-			destination.setLocale(source.getAttribute("locale"));
+		String locale = source.getAttribute("locale");
+		if (locale != null) {
+			destination.setLocale(locale);
 		}
 		log.trace(" setting preferredLanguage ");
 		if (source.getPreferredLanguage() != null) {
@@ -776,28 +823,32 @@ public class CopyUtils2 implements Serializable {
 			destination.setTimezone(source.getTimezone());
 		}
 		log.trace(" setting active ");
-		if (source.getAttribute("oxTrustActive") != null) {
-			destination.setActive(Boolean.parseBoolean(source.getAttribute("oxTrustActive")));
+		String active = source.getAttribute("oxTrustActive");
+		if (active != null) {
+			destination.setActive(Boolean.parseBoolean(active));
 		}
 		log.trace(" setting password ");
 		destination.setPassword("Hidden for Privacy Reasons");
 
 		// getting user groups
 		log.trace(" setting  groups ");
-		if (source.getMemberOf() != null) {
-			IGroupService groupService = GroupService.instance();
+		if (isRequested(attributesProjection, "groups") && (source.getMemberOf() != null)) {
+			if (groupResolver == null) {
+				groupResolver = new Scim2GroupResolver(GroupService.instance());
+			}
 
 			List<String> listOfGroups = source.getMemberOf();
 			List<GroupRef> groupRefList = new ArrayList<GroupRef>();
-			
+
+			String baseEndpoint = OxTrustConfiguration.instance().getApplicationConfiguration().getBaseEndpoint();
 			for (String groupDN : listOfGroups) {
 
-				GluuGroup gluuGroup = groupService.getGroupByDn(groupDN);
+				GluuGroup gluuGroup = groupResolver.getGroup(groupDN);
 				
 				GroupRef groupRef = new GroupRef();
 				groupRef.setDisplay(gluuGroup.getDisplayName());
 				groupRef.setValue(gluuGroup.getInum());
-				String reference = OxTrustConfiguration.instance().getApplicationConfiguration().getBaseEndpoint() + "/scim/v2/Groups/" + gluuGroup.getInum();
+				String reference = baseEndpoint + "/scim/v2/Groups/" + gluuGroup.getInum();
 				groupRef.setReference(reference);
 
 				groupRefList.add(groupRef);
@@ -807,30 +858,36 @@ public class CopyUtils2 implements Serializable {
 		}
 
 		// getting roles
-		if (source.getAttribute("oxTrustRole") != null) {
-			List<Role> roles = getAttributeListValue(source, Role.class, "oxTrustRole");
+		GluuCustomAttribute rolesAttribute = isRequested(attributesProjection, "roles") ? source.getGluuCustomAttribute("oxTrustRole") : null;
+		if ((rolesAttribute != null) && (rolesAttribute.getValue() != null)) {
+			List<Role> roles = getAttributeListValue(rolesAttribute.getValues(), Role.class);
 			destination.setRoles(roles);
 		}
 
 		log.trace(" getting entitlements ");
 		// getting entitlements
-		if (source.getAttribute("oxTrustEntitlements") != null) {
-			List<Entitlement> entitlements = getAttributeListValue(source, Entitlement.class, "oxTrustEntitlements");
+		GluuCustomAttribute entitlementsAttribute = isRequested(attributesProjection, "entitlements") ? source.getGluuCustomAttribute("oxTrustEntitlements") : null;
+		if ((entitlementsAttribute != null) && (entitlementsAttribute.getValue() != null)) {
+			List<Entitlement> entitlements = getAttributeListValue(entitlementsAttribute.getValues(), Entitlement.class);
 			destination.setEntitlements(entitlements);
 		}
 
 		// getting x509Certificates
 		log.trace(" setting certs ");
-		if (source.getAttribute("oxTrustx509Certificate") != null) {
-			List<X509Certificate> x509Certificates = getAttributeListValue(source, X509Certificate.class, "oxTrustx509Certificate");
+		GluuCustomAttribute x509CertificatesAttribute = isRequested(attributesProjection, "x509Certificates") ? source.getGluuCustomAttribute("oxTrustx509Certificate") : null;
+		if ((x509CertificatesAttribute != null) && (x509CertificatesAttribute.getValue() != null)) {
+			List<X509Certificate> x509Certificates = getAttributeListValue(x509CertificatesAttribute.getValues(), X509Certificate.class);
 			destination.setX509Certificates(x509Certificates);
 		}
 
 		log.trace(" setting extensions ");
 
-		AttributeService attributeService = AttributeService.instance();
-		// List<GluuAttribute> scimCustomAttributes = attributeService.getSCIMRelatedAttributesImpl(attributeService.getCustomAttributes());
-		List<GluuAttribute> scimCustomAttributes = attributeService.getSCIMRelatedAttributes();
+		List<GluuAttribute> scimCustomAttributes = null;
+		if (isExtensionRequested(attributesProjection, source)) {
+			AttributeService attributeService = AttributeService.instance();
+			// scimCustomAttributes = attributeService.getSCIMRelatedAttributesImpl(attributeService.getCustomAttributes());
+			scimCustomAttributes = attributeService.getSCIMRelatedAttributes();
+		}
 
 		if (scimCustomAttributes != null && !scimCustomAttributes.isEmpty()) {
 
@@ -842,6 +899,10 @@ public class CopyUtils2 implements Serializable {
 			outer:
 			for (GluuCustomAttribute customAttribute : source.getCustomAttributes()) {
 
+				if ((attributesProjection != null) && !attributesProjection.containsAttribute(customAttribute.getName())) {
+					continue;
+				}
+
 				for (GluuAttribute scimCustomAttribute : scimCustomAttributes) {
 
 					if (customAttribute.getName().equals(scimCustomAttribute.getName())) {
@@ -882,8 +943,9 @@ public class CopyUtils2 implements Serializable {
 
 		Meta meta = (destination.getMeta() != null) ? destination.getMeta() : new Meta();
 
-		if (source.getAttribute("oxTrustMetaVersion") != null) {
-			meta.setVersion(source.getAttribute("oxTrustMetaVersion"));
+		String version = source.getAttribute("oxTrustMetaVersion");
+		if (version != null) {
+			meta.setVersion(version);
 		}
 
 		String location = source.getAttribute("oxTrustMetaLocation");
@@ -896,32 +958,34 @@ public class CopyUtils2 implements Serializable {
 		}
 		meta.setLocation(location);
 
-		if (source.getAttribute("oxTrustMetaCreated") != null && !source.getAttribute("oxTrustMetaCreated").isEmpty()) {
+		String metaCreated = source.getAttribute("oxTrustMetaCreated");
+		if (metaCreated != null && !metaCreated.isEmpty()) {
 
 			try {
-				DateTime dateTimeUtc = new DateTime(source.getAttribute("oxTrustMetaCreated"), DateTimeZone.UTC);
+				DateTime dateTimeUtc = new DateTime(metaCreated, DateTimeZone.UTC);
 				meta.setCreated(dateTimeUtc.toDate());
 			} catch (Exception e) {
 				log.error(" Date parse exception (NEW format), continuing...", e);
 				// For backward compatibility
 				try {
-					meta.setCreated(new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse(source.getAttribute("oxTrustMetaCreated")));
+					meta.setCreated(new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse(metaCreated));
 				} catch (Exception ex) {
 					log.error(" Date parse exception (OLD format)", ex);
 				}
 			}
 		}
 
-		if (source.getAttribute("oxTrustMetaLastModified") != null && !source.getAttribute("oxTrustMetaLastModified").isEmpty()) {
+		String metaLastModified = source.getAttribute("oxTrustMetaLastModified");
+		if (metaLastModified != null && !metaLastModified.isEmpty()) {
 
 			try {
-				DateTime dateTimeUtc = new DateTime(source.getAttribute("oxTrustMetaLastModified"), DateTimeZone.UTC);
+				DateTime dateTimeUtc = new DateTime(metaLastModified, DateTimeZone.UTC);
 				meta.setLastModified(dateTimeUtc.toDate());
 			} catch (Exception e) {
 				log.error(" Date parse exception (NEW format), continuing...", e);
 				// For backward compatibility
 				try {
-					meta.setLastModified(new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse(source.getAttribute("oxTrustMetaLastModified")));
+					meta.setLastModified(new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy").parse(metaLastModified));
 				} catch (Exception ex) {
 					log.error(" Date parse exception (OLD format)", ex);
 				}
@@ -961,6 +1025,24 @@ public class CopyUtils2 implements Serializable {
 		return destination;
 	}
 
+	private static boolean isRequested(AttributesProjection attributesProjection, String attributeName) {
+		return (attributesProjection == null) || attributesProjection.isIncluded(null, attributeName);
+	}
+
+	private static boolean isExtensionRequested(AttributesProjection attributesProjection, GluuCustomPerson source) {
+		if (attributesProjection == null) {
+			return true;
+		}
+
+		for (GluuCustomAttribute customAttribute : source.getCustomAttributes()) {
+			if (attributesProjection.containsAttribute(customAttribute.getName())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Copy data from ScimPerson object to GluuCustomPerson object
 	 * 
@@ -1071,6 +1153,20 @@ public class CopyUtils2 implements Serializable {
 	 */
 
 	public static Group copy(GluuGroup source, Group destination) throws Exception {
+		return copy(source, destination, null);
+	}
+
+	/**
+	 * Copy data from GluuGroup object to ScimGroup object. Members are
+	 * resolved only if they are in projection
+	 * 
+	 * @param source
+	 * @param destination
+	 * @param attributesProjection attributes requested by client or null to copy all attributes
+	 * @return
+	 * @throws Exception
+	 */
+	public static Group copy(GluuGroup source, Group destination, AttributesProjection attributesProjection) throws Exception {
 
 		if (source == null) {
 			return null;
@@ -1084,7 +1180,7 @@ public class CopyUtils2 implements Serializable {
 		destination.setDisplayName(source.getDisplayName());
 		destination.setId(source.getInum());
 
-		if (source.getMembers() != null) {
+		if (isRequested(attributesProjection, "members") && (source.getMembers() != null)) {
 
 			if (source.getMembers().size() > 0) {
 
@@ -1870,11 +1966,10 @@ public class CopyUtils2 implements Serializable {
 		destination.setAttribute(attributeName, itemList.toArray(new String[]{}));
 	}
 
-	private static <T extends MultiValuedAttribute> List<T> getAttributeListValue(GluuCustomPerson source, Class<T> clazz, String attributeName) throws Exception {
+	private static <T extends MultiValuedAttribute> List<T> getAttributeListValue(String[] attributeArray, Class<T> clazz) throws Exception {
 
 		ObjectMapper mapper = Utils.getObjectMapper();
 
-		String[] attributeArray = source.getAttributeArray(attributeName);
 		List<T> items = new ArrayList<T>();
 
 		for (String attribute : attributeArray) {
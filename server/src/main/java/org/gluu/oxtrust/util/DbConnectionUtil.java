@@ -8,6 +8,7 @@ package org.gluu.oxtrust.util;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.Statement;
 
 import org.apache.log4j.Logger;
 import org.gluu.oxtrust.config.OxTrustConfiguration;
@@ -68,4 +69,14 @@ public class DbConnectionUtil {
 		}
 	}
 
+	public void closeStatement(Statement statement) {
+		try {
+			if (statement != null) {
+				statement.close();
+			}
+		} catch (Exception ex) {
+			log.error("Error in Statement Closing.");
+		}
+	}
+
 }
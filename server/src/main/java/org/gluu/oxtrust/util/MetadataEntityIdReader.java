@@ -0,0 +1,76 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Extracts entityIDs from SAML metadata with single StAX pass. Unlike DOM
+ * parsing memory usage doesn't depend on metadata size
+ */
+public final class MetadataEntityIdReader {
+
+	private static final String ENTITY_DESCRIPTOR = "EntityDescriptor";
+	private static final String ENTITY_ID_ATTRIBUTE = "entityID";
+
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	private MetadataEntityIdReader() {
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+
+		return inputFactory;
+	}
+
+	public static List<String> readEntityIds(File metadataFile) throws IOException, XMLStreamException {
+		InputStream is = new BufferedInputStream(new FileInputStream(metadataFile), 64 * 1024);
+		try {
+			return readEntityIds(is);
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	public static List<String> readEntityIds(InputStream is) throws XMLStreamException {
+		List<String> entityIds = new ArrayList<String>();
+
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(is);
+		try {
+			while (reader.hasNext()) {
+				if ((reader.next() == XMLStreamConstants.START_ELEMENT) && ENTITY_DESCRIPTOR.equals(reader.getLocalName())) {
+					String entityId = reader.getAttributeValue(null, ENTITY_ID_ATTRIBUTE);
+					if (entityId != null) {
+						entityIds.add(entityId);
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		return entityIds;
+	}
+
+}
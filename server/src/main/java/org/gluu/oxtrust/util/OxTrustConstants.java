@@ -69,6 +69,7 @@ public final class OxTrustConstants extends OxConstants {
     public static final String CACHE_ATTRIBUTE_CUSTOM_KEY_LIST = "customAttributeList";
     public static final String CACHE_ATTRIBUTE_ORIGIN_KEY_LIST = "attributeOriginList";
     public static final String CACHE_ORGANIZATION_CUSTOM_MESSAGE_KEY = "organizationCustomMessage";
+    public static final String CACHE_GROUP_SUMMARY_NAME = "GroupSummaryCache";
     public static final String CACHE_REFRESH_DEFAULT_BASE_DN = "o=site";
 
     public static final String EVENT_CLEAR_ATTRIBUTES = "eventClearAttributes";
@@ -18,8 +18,7 @@ import org.codehaus.jackson.map.SerializationConfig;
 import org.gluu.oxtrust.config.OxTrustConfiguration;
 import org.gluu.oxtrust.ldap.service.GroupService;
 import org.gluu.oxtrust.ldap.service.IGroupService;
-import org.gluu.oxtrust.ldap.service.IPersonService;
-import org.gluu.oxtrust.ldap.service.PersonService;
+import org.gluu.oxtrust.ldap.service.MemberOfSyncService;
 import org.gluu.oxtrust.model.GluuCustomAttribute;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
@@ -54,38 +53,7 @@ public class Utils implements Serializable {
 	 * @throws Exception
 	 */
 	public static void deleteGroupFromPerson(GluuGroup group, String dn) throws Exception {
-
-		IPersonService personService = PersonService.instance();
-
-		List<String> persons = group.getMembers();
-		for (String onePerson : persons) {
-
-			GluuCustomPerson gluuPerson = personService.getPersonByDn(onePerson);
-			List<String> memberOflist = gluuPerson.getMemberOf();
-
-			List<String> tempMemberOf = new ArrayList<String>();
-			for (String aMemberOf : memberOflist) {
-				tempMemberOf.add(aMemberOf);
-			}
-
-			for (String oneMemberOf : tempMemberOf) {
-				if (oneMemberOf.equalsIgnoreCase(dn)) {
-					tempMemberOf.remove(oneMemberOf);
-					break;
-				}
-			}
-
-			List<String> cleanMemberOf = new ArrayList<String>();
-
-			for (String aMemberOf : tempMemberOf) {
-				cleanMemberOf.add(aMemberOf);
-			}
-
-			gluuPerson.setMemberOf(cleanMemberOf);
-			personService.updatePerson(gluuPerson);
-
-		}
-
+		MemberOfSyncService.instance().removeMemberOf(dn, group.getMembers());
 	}
 
 	public static String iterableToString(Iterable<?> list) {
@@ -159,43 +127,7 @@ public class Utils implements Serializable {
 	 * @throws Exception
 	 */
 	public static void personMembersAdder(GluuGroup gluuGroup, String dn) throws Exception {
-		IPersonService personService = PersonService.instance();
-
-		List<String> members = gluuGroup.getMembers();
-
-		for (String member : members) {
-			GluuCustomPerson gluuPerson = personService.getPersonByDn(member);
-
-			List<String> groups = gluuPerson.getMemberOf();
-			if (!isMemberOfExist(groups, dn)) {
-
-				List<String> cleanGroups = new ArrayList<String>();
-				cleanGroups.add(dn);
-				for (String aGroup : groups) {
-					cleanGroups.add(aGroup);
-				}
-				;
-				gluuPerson.setMemberOf(cleanGroups);
-				personService.updatePerson(gluuPerson);
-			}
-
-		}
-
-	}
-
-	/**
-	 * checks if the memeberOf attribute already contains a given group
-	 * 
-	 * @return boolean
-	 */
-	private static boolean isMemberOfExist(List<String> groups, String dn) {
-		for (String group : groups) {
-			if (group.equalsIgnoreCase(dn)) {
-				return true;
-			}
-
-		}
-		return false;
+		MemberOfSyncService.instance().addMemberOf(dn, gluuGroup.getMembers());
 	}
 
 	/**
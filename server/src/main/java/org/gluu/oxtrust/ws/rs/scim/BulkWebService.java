@@ -26,6 +26,7 @@ import org.apache.log4j.Logger;
 import org.gluu.oxtrust.ldap.service.GroupService;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.MemberOfSyncService;
 import org.gluu.oxtrust.ldap.service.PersonService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
@@ -513,11 +514,12 @@ public class BulkWebService extends BaseScimWebService {
 				return false;
 			}
 
+			List<String> oldMembers = (gluuGroup.getMembers() == null) ? new ArrayList<String>() : new ArrayList<String>(gluuGroup.getMembers());
+
 			GluuGroup newGluuGroup = CopyUtils.copy(group, gluuGroup, true);
 
-			if (group.getMembers().size() > 0) {
-				Utils.personMembersAdder(newGluuGroup, groupService.getDnForGroup(id));
-			}
+			// Update memberOf only of added and removed members
+			MemberOfSyncService.instance().syncMembers(groupService.getDnForGroup(id), oldMembers, newGluuGroup.getMembers());
 
 			// For custom script: update group
 			if (externalScimService.isEnabled()) {
@@ -558,14 +560,7 @@ public class BulkWebService extends BaseScimWebService {
 					externalScimService.executeScimDeleteGroupMethods(gluuGroup);
 				}
 
-				if (gluuGroup.getMembers() != null) {
-
-					if (gluuGroup.getMembers().size() > 0) {
-						String dn = groupService.getDnForGroup(id);
-						Utils.deleteGroupFromPerson(gluuGroup, dn);
-					}
-				}
-
+				// Group removal also deletes it from members memberOf
 				groupService.removeGroup(gluuGroup);
 			}
 
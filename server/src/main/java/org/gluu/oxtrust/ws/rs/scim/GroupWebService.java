@@ -20,6 +20,7 @@ import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.map.module.SimpleModule;
 import org.gluu.oxtrust.ldap.service.GroupService;
 import org.gluu.oxtrust.ldap.service.IGroupService;
+import org.gluu.oxtrust.ldap.service.MemberOfSyncService;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.GluuGroupList;
 import org.gluu.oxtrust.model.scim.ScimGroup;
@@ -293,11 +294,12 @@ public class GroupWebService extends BaseScimWebService {
 				}
 			}
 
+			List<String> oldMembers = (gluuGroup.getMembers() == null) ? new ArrayList<String>() : new ArrayList<String>(gluuGroup.getMembers());
+
 			GluuGroup newGluuGroup = CopyUtils.copy(group, gluuGroup, true);
 
-			if (group.getMembers().size() > 0) {
-				Utils.personMembersAdder(newGluuGroup, groupService.getDnForGroup(id));
-			}
+			// Update memberOf only of added and removed members
+			MemberOfSyncService.instance().syncMembers(groupService.getDnForGroup(id), oldMembers, newGluuGroup.getMembers());
 
 			// For custom script: update group
 			if (externalScimService.isEnabled()) {
@@ -364,19 +366,7 @@ public class GroupWebService extends BaseScimWebService {
 					externalScimService.executeScimDeleteGroupMethods(gluuGroup);
 				}
 
-				log.info(" getting started to delete members from groups ");
-				if (gluuGroup.getMembers() != null) {
-
-					if (gluuGroup.getMembers().size() > 0) {
-
-						log.info(" getting dn for group ");
-						String dn = groupService.getDnForGroup(id);
-						log.info(" DN : " + dn);
-
-						Utils.deleteGroupFromPerson(gluuGroup, dn);
-					}
-				}
-
+				// Group removal also deletes it from members memberOf
 				log.info(" removing the group ");
 				groupService.removeGroup(gluuGroup);
 			}
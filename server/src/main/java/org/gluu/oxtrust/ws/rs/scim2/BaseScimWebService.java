@@ -6,12 +6,19 @@
 
 package org.gluu.oxtrust.ws.rs.scim2;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.gluu.oxtrust.ldap.service.ApplianceService;
 import org.gluu.oxtrust.ldap.service.JsonConfigurationService;
+import org.gluu.oxtrust.ldap.service.LdapPagedSearchCursor;
 import org.gluu.oxtrust.model.GluuAppliance;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
@@ -19,10 +26,13 @@ import org.gluu.oxtrust.model.fido.GluuCustomFidoDevice;
 import org.gluu.oxtrust.model.scim2.*;
 import org.gluu.oxtrust.model.scim2.fido.FidoDevice;
 import org.gluu.oxtrust.service.UmaAuthenticationService;
+import org.gluu.oxtrust.service.scim2.ScimRequestTrace;
 import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterParserService;
 import org.gluu.oxtrust.service.antlr.scimFilter.util.FilterUtil;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.site.ldap.persistence.LdapEntryManager;
+import org.gluu.site.ldap.persistence.annotation.LdapObjectClass;
 import org.jboss.seam.annotations.In;
 import org.jboss.seam.annotations.Logger;
 import org.jboss.seam.contexts.Contexts;
@@ -50,6 +60,8 @@ import static org.gluu.oxtrust.service.antlr.scimFilter.visitor.scim2.fido.FidoD
  */
 public class BaseScimWebService {
 
+	private static final int SERIALIZATION_BUFFER_SIZE = 64 * 1024;
+
 	@Logger
 	private Log log;
 
@@ -69,7 +81,7 @@ public class BaseScimWebService {
 	private LdapEntryManager ldapEntryManager;
 
 	@In
-	private ScimFilterParserService scimFilterParserService;
+	protected ScimFilterParserService scimFilterParserService;
 
 	protected Response processTestModeAuthorization(String token) throws Exception {
 
@@ -80,11 +92,10 @@ public class BaseScimWebService {
 			ValidateTokenClient validateTokenClient = new ValidateTokenClient(validateTokenEndpoint);
 			ValidateTokenResponse validateTokenResponse = validateTokenClient.execValidateToken(token);
 
-			log.info(" (BaseScimWebService) validateToken token = " + token);
-			log.info(" (BaseScimWebService) validateToken status = " + validateTokenResponse.getStatus());
-			log.info(" (BaseScimWebService) validateToken entity = " + validateTokenResponse.getEntity());
-			log.info(" (BaseScimWebService) validateToken isValid = " + validateTokenResponse.isValid());
-			log.info(" (BaseScimWebService) validateToken expires = " + validateTokenResponse.getExpiresIn());
+			if (log.isDebugEnabled()) {
+				log.debug(" (BaseScimWebService) validateToken status = {0}, isValid = {1}, expires = {2}", validateTokenResponse.getStatus(),
+						validateTokenResponse.isValid(), validateTokenResponse.getExpiresIn());
+			}
 
 			if (!validateTokenResponse.isValid() ||
 				(validateTokenResponse.getExpiresIn() == null || (validateTokenResponse.getExpiresIn() != null && validateTokenResponse.getExpiresIn() <= 0)) ||
@@ -93,7 +104,7 @@ public class BaseScimWebService {
 			}
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			log.error("Failed to validate token", e);
 			return getErrorResponse(Response.Status.FORBIDDEN, "User isn't authorized");
 		}
 
@@ -144,35 +155,22 @@ public class BaseScimWebService {
 	}
 
 	public <T> List<T> search(String dn, Class<T> entryClass, String filterString, int startIndex, int count, String sortBy, String sortOrder, VirtualListViewResponse vlvResponse, String attributesArray) throws Exception {
+		return search(dn, entryClass, filterString, startIndex, count, sortBy, sortOrder, vlvResponse, attributesArray, null);
+	}
 
-		log.info("----------");
-		log.info(" ### RAW PARAMS ###");
-		log.info(" filter string = " + filterString);
-		log.info(" startIndex = " + startIndex);
-		log.info(" count = " + count);
-		log.info(" sortBy = " + sortBy);
-		log.info(" sortOrder = " + sortOrder);
-		log.info(" attributes = " + attributesArray);
+	public <T> List<T> search(String dn, Class<T> entryClass, String filterString, int startIndex, int count, String sortBy, String sortOrder, VirtualListViewResponse vlvResponse, String attributesArray, ScimRequestTrace trace) throws Exception {
 
-		Filter filter;
-		if (filterString == null || (filterString != null && filterString.isEmpty())) {
-			if (entryClass.getName().equals(GluuCustomFidoDevice.class.getName())) {
-				filter = Filter.create("oxId=*");
-			} else {
-				filter = Filter.create("inum=*");
-			}
-		} else {
-			Class clazz = null;
-			if (entryClass.getName().equals(GluuCustomPerson.class.getName())) {
-				clazz = User.class;
-			} else if (entryClass.getName().equals(GluuGroup.class.getName())) {
-				clazz = Group.class;
-			} else if (entryClass.getName().equals(GluuCustomFidoDevice.class.getName())) {
-				clazz = FidoDevice.class;
-			}
-			filter = scimFilterParserService.createFilter(filterString, clazz);
+		if (log.isDebugEnabled()) {
+			log.debug(" Search raw params: filter = {0}, startIndex = {1}, count = {2}, sortBy = {3}, sortOrder = {4}, attributes = {5}", filterString,
+					startIndex, count, sortBy, sortOrder, attributesArray);
+		}
+
+		if (trace != null) {
+			trace.startPhase(ScimRequestTrace.PHASE_FILTER_PARSE);
 		}
 
+		Filter filter = createSearchFilter(entryClass, filterString);
+
 		startIndex = (startIndex < 1) ? 1 : startIndex;
 
 		count = (count < 1) ? DEFAULT_COUNT : count;
@@ -199,6 +197,99 @@ public class BaseScimWebService {
 			sortOrderEnum = SortOrder.ASCENDING;
 		}
 
+		String[] attributes = getSearchAttributes(entryClass, attributesArray);
+
+		if (log.isDebugEnabled()) {
+			log.debug(" Search converted params: filter = {0}, startIndex = {1}, count = {2}, sortBy = {3}, sortOrder = {4}, attributes = {5}", filter,
+					startIndex, count, sortBy, sortOrderEnum.getValue(), (attributes == null) ? null : Arrays.toString(attributes));
+		}
+
+		if (trace != null) {
+			trace.startPhase(ScimRequestTrace.PHASE_LDAP);
+		}
+
+		List<T> result = ldapEntryManager.findEntriesVirtualListView(dn, entryClass, filter, startIndex, count, sortBy, sortOrderEnum, vlvResponse, attributes);
+
+		if (trace != null) {
+			trace.endPhase();
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(" Search results: totalResults = {0}, itemsPerPage = {1}, startIndex = {2}", vlvResponse.getTotalResults(),
+					vlvResponse.getItemsPerPage(), vlvResponse.getStartIndex());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Opens cursor which reads search results page by page with simple paged
+	 * results control. Unlike search() it's not limited by MAX_COUNT and doesn't
+	 * ask server to sort results. Caller closes cursor or keeps it to continue
+	 * search later
+	 */
+	protected LdapPagedSearchCursor openPagedSearchCursor(String dn, Class<?> entryClass, String filterString, String attributesArray, int pageSize)
+			throws Exception {
+
+		Filter filter = Filter.createANDFilter(createObjectClassFilter(entryClass), createSearchFilter(entryClass, filterString));
+		String[] attributes = getSearchAttributes(entryClass, attributesArray);
+
+		log.debug(" Paged search: filter = {0}, pageSize = {1}", filter, pageSize);
+
+		LDAPConnectionPool connectionPool = ldapEntryManager.getLdapOperationService().getConnectionProvider().getConnectionPool();
+
+		return new LdapPagedSearchCursor(connectionPool, dn, filter, attributes, pageSize);
+	}
+
+	private Filter createObjectClassFilter(Class<?> entryClass) {
+		List<Filter> objectClassFilters = new ArrayList<Filter>();
+
+		LdapObjectClass ldapObjectClass = entryClass.getAnnotation(LdapObjectClass.class);
+		if (ldapObjectClass != null) {
+			for (String objectClass : ldapObjectClass.values()) {
+				if (!"top".equalsIgnoreCase(objectClass)) {
+					objectClassFilters.add(Filter.createEqualityFilter("objectClass", objectClass));
+				}
+			}
+		}
+
+		if (objectClassFilters.isEmpty()) {
+			return Filter.createPresenceFilter("objectClass");
+		}
+
+		return Filter.createANDFilter(objectClassFilters);
+	}
+
+	protected List<String> getBinaryAttributes() {
+		return ldapEntryManager.getLdapOperationService().getConnectionProvider().getBinaryAttributes();
+	}
+
+	private Filter createSearchFilter(Class<?> entryClass, String filterString) throws Exception {
+
+		Filter filter;
+		if (filterString == null || (filterString != null && filterString.isEmpty())) {
+			if (entryClass.getName().equals(GluuCustomFidoDevice.class.getName())) {
+				filter = Filter.create("oxId=*");
+			} else {
+				filter = Filter.create("inum=*");
+			}
+		} else {
+			Class clazz = null;
+			if (entryClass.getName().equals(GluuCustomPerson.class.getName())) {
+				clazz = User.class;
+			} else if (entryClass.getName().equals(GluuGroup.class.getName())) {
+				clazz = Group.class;
+			} else if (entryClass.getName().equals(GluuCustomFidoDevice.class.getName())) {
+				clazz = FidoDevice.class;
+			}
+			filter = scimFilterParserService.createFilter(filterString, clazz);
+		}
+
+		return filter;
+	}
+
+	private String[] getSearchAttributes(Class<?> entryClass, String attributesArray) throws Exception {
+
 		// String[] attributes = (attributesArray != null && !attributesArray.isEmpty()) ? mapper.readValue(attributesArray, String[].class) : null;
 		String[] attributes = (attributesArray != null && !attributesArray.isEmpty()) ? attributesArray.split("\\,") : null;
 		if (attributes != null && attributes.length > 0) {
@@ -262,23 +353,7 @@ public class BaseScimWebService {
 			}
 		}
 
-		log.info(" ### CONVERTED PARAMS ###");
-		log.info(" parsed filter = " + filter.toString());
-		log.info(" startIndex = " + startIndex);
-		log.info(" count = " + count);
-		log.info(" sortBy = " + sortBy);
-		log.info(" sortOrder = " + sortOrderEnum.getValue());
-		log.info(" attributes = " + ((attributes != null && attributes.length > 0) ? new ObjectMapper().writeValueAsString(attributes) : null));
-
-		List<T> result = ldapEntryManager.findEntriesVirtualListView(dn, entryClass, filter, startIndex, count, sortBy, sortOrderEnum, vlvResponse, attributes);
-
-		log.info(" ### RESULTS INFO ###");
-		log.info(" totalResults = " + vlvResponse.getTotalResults());
-		log.info(" itemsPerPage = " + vlvResponse.getItemsPerPage());
-		log.info(" startIndex = " + vlvResponse.getStartIndex());
-		log.info("----------");
-
-		return result;
+		return attributes;
 	}
 
 	/*
@@ -316,4 +391,29 @@ public class BaseScimWebService {
 
 		return Response.status(statusCode).entity(errorResponse).build();
 	}
+
+	/*
+	 * List response is serialized before response is returned. Serialization
+	 * error gives error response instead of truncated 200 response. Size of
+	 * buffer is limited by MAX_COUNT
+	 */
+	protected StreamingOutput serializeToStream(Object object, String attributesArray, final ScimRequestTrace trace) throws Exception {
+
+		ObjectMapper mapper = ListResponseMappers.getListResponseMapper(attributesArray);
+
+		trace.startPhase(ScimRequestTrace.PHASE_SERIALIZATION);
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream(SERIALIZATION_BUFFER_SIZE);
+		mapper.writeValue(buffer, object);
+
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				try {
+					buffer.writeTo(output);
+				} finally {
+					trace.finish();
+				}
+			}
+		};
+	}
 }
@@ -0,0 +1,186 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.ws.rs.scim2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves "bulkId:" references in SCIM 2.0 bulk operations
+ *
+ * Operation data is walked as parsed by Jackson, without serializing it back
+ * to JSON. Each reference is looked up in map of processed bulkIds, so cost of
+ * operation doesn't depend on number of operations processed before it
+ */
+public final class BulkIdResolver {
+
+	public static final String BULK_ID_PREFIX = "bulkId:";
+
+	private BulkIdResolver() {
+	}
+
+	/**
+	 * Returns bulkIds referenced in operation data parsed into maps, lists and
+	 * values
+	 */
+	public static Set<String> getReferencedBulkIds(Object data) {
+		Set<String> bulkIds = new LinkedHashSet<String>();
+		addReferencedBulkIds(data, bulkIds);
+
+		return bulkIds;
+	}
+
+	/**
+	 * Replaces references to processed bulkIds with resource ids. Unknown
+	 * references are left as is. Data isn't modified, only maps and lists with
+	 * resolved references are copied
+	 */
+	public static Object resolve(Object data, Map<String, String> processedBulkIds) {
+		if ((data == null) || processedBulkIds.isEmpty()) {
+			return data;
+		}
+
+		if (data instanceof String) {
+			return resolveValue((String) data, processedBulkIds);
+		}
+
+		if (data instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) data;
+			Map<Object, Object> result = null;
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				Object value = entry.getValue();
+				Object resolvedValue = resolve(value, processedBulkIds);
+				if ((resolvedValue != value) && (result == null)) {
+					result = new LinkedHashMap<Object, Object>(map);
+				}
+				if (result != null) {
+					result.put(entry.getKey(), resolvedValue);
+				}
+			}
+
+			return (result == null) ? data : result;
+		}
+
+		if (data instanceof List) {
+			List<?> list = (List<?>) data;
+			List<Object> result = null;
+			for (int i = 0; i < list.size(); i++) {
+				Object value = list.get(i);
+				Object resolvedValue = resolve(value, processedBulkIds);
+				if ((resolvedValue != value) && (result == null)) {
+					result = new ArrayList<Object>(list);
+				}
+				if (result != null) {
+					result.set(i, resolvedValue);
+				}
+			}
+
+			return (result == null) ? data : result;
+		}
+
+		return data;
+	}
+
+	/**
+	 * Returns bulkId if resource id from operation path is reference
+	 */
+	public static String getPathBulkId(String pathId) {
+		if ((pathId == null) || !pathId.regionMatches(true, 0, BULK_ID_PREFIX, 0, BULK_ID_PREFIX.length())) {
+			return null;
+		}
+
+		return pathId.substring(BULK_ID_PREFIX.length());
+	}
+
+	/**
+	 * Returns resource id from operation path with resolved bulkId reference
+	 */
+	public static String resolvePathId(String pathId, Map<String, String> processedBulkIds) {
+		String bulkId = getPathBulkId(pathId);
+		if (bulkId == null) {
+			return pathId;
+		}
+
+		String id = processedBulkIds.get(bulkId);
+
+		return (id == null) ? pathId : id;
+	}
+
+	private static void addReferencedBulkIds(Object data, Set<String> bulkIds) {
+		if (data instanceof String) {
+			String value = (String) data;
+			int index = value.indexOf(BULK_ID_PREFIX);
+			while (index >= 0) {
+				int start = index + BULK_ID_PREFIX.length();
+				int end = getBulkIdEnd(value, start);
+				if (end > start) {
+					bulkIds.add(value.substring(start, end));
+				}
+
+				index = value.indexOf(BULK_ID_PREFIX, end);
+			}
+		} else if (data instanceof Map) {
+			for (Object value : ((Map<?, ?>) data).values()) {
+				addReferencedBulkIds(value, bulkIds);
+			}
+		} else if (data instanceof Collection) {
+			for (Object value : (Collection<?>) data) {
+				addReferencedBulkIds(value, bulkIds);
+			}
+		}
+	}
+
+	private static String resolveValue(String value, Map<String, String> processedBulkIds) {
+		int index = value.indexOf(BULK_ID_PREFIX);
+		if (index < 0) {
+			return value;
+		}
+
+		StringBuilder result = null;
+		int copied = 0;
+		while (index >= 0) {
+			int start = index + BULK_ID_PREFIX.length();
+			int end = getBulkIdEnd(value, start);
+
+			String id = processedBulkIds.get(value.substring(start, end));
+			if (id != null) {
+				if (result == null) {
+					result = new StringBuilder(value.length());
+				}
+				result.append(value, copied, index).append(id);
+				copied = end;
+			}
+
+			index = value.indexOf(BULK_ID_PREFIX, end);
+		}
+
+		if (result == null) {
+			return value;
+		}
+		result.append(value, copied, value.length());
+
+		return result.toString();
+	}
+
+	private static int getBulkIdEnd(String data, int start) {
+		int end = start;
+		while (end < data.length()) {
+			char ch = data.charAt(end);
+			if ((ch == '/') || (ch == ',') || (ch == '}') || (ch == ']') || Character.isWhitespace(ch)) {
+				break;
+			}
+			end++;
+		}
+
+		return end;
+	}
+
+}
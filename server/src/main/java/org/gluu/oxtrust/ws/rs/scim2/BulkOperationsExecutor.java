@@ -0,0 +1,433 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.ws.rs.scim2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
+
+import org.apache.log4j.Logger;
+import org.gluu.oxtrust.model.scim2.BulkOperation;
+
+/**
+ * Executes SCIM 2.0 bulk operations concurrently
+ *
+ * Operation depends on earlier operations with bulkIds it references and on
+ * earlier operation with the same resource path. Group operations update
+ * memberOf of member persons, so user and group operations don't overlap:
+ * operation waits for preceding operations of the other resource type.
+ * Independent operations run in shared worker pool. Each operation gets only
+ * bulkIds of its dependencies, so
+ * results are the same as in sequential processing. Operations which
+ * sequential processing would skip because of failOnErrors are not started.
+ *
+ * Operations which modify the same resource are serialized by lock on
+ * resolved resource path, also between concurrent bulk requests
+ */
+public class BulkOperationsExecutor {
+
+	private static final Logger log = Logger.getLogger(BulkOperationsExecutor.class);
+
+	private static final String USERS_RESOURCE_TYPE = "Users";
+	private static final String GROUPS_RESOURCE_TYPE = "Groups";
+
+	private static final int RESOURCE_LOCKS_COUNT = 64;
+	private static final ReentrantLock[] resourceLocks = new ReentrantLock[RESOURCE_LOCKS_COUNT];
+
+	static {
+		for (int i = 0; i < RESOURCE_LOCKS_COUNT; i++) {
+			resourceLocks[i] = new ReentrantLock();
+		}
+	}
+
+	private final Executor executor;
+	private final int threadsCount;
+
+	public BulkOperationsExecutor(Executor executor, int threadsCount) {
+		this.executor = executor;
+		this.threadsCount = threadsCount;
+	}
+
+	public interface OperationProcessor {
+
+		/**
+		 * Processes operation. Processor puts bulkId of successfully processed
+		 * operation into processedBulkIds
+		 */
+		BulkOperation process(BulkOperation operation, Map<String, String> processedBulkIds) throws Exception;
+
+	}
+
+	/**
+	 * Returns processed operations in request order. List ends with operation
+	 * which reached failOnErrors limit
+	 */
+	public List<BulkOperation> execute(List<BulkOperation> operations, int failOnErrorsLimit,
+			OperationProcessor processor) throws Exception {
+		long startTime = System.currentTimeMillis();
+
+		int count = operations.size();
+		List<List<Integer>> dependencies = buildDependencies(operations);
+
+		List<List<Integer>> dependents = new ArrayList<List<Integer>>(count);
+		int[] remainingDependencies = new int[count];
+		for (int i = 0; i < count; i++) {
+			dependents.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < count; i++) {
+			remainingDependencies[i] = dependencies.get(i).size();
+			for (Integer dependency : dependencies.get(i)) {
+				dependents.get(dependency).add(i);
+			}
+		}
+
+		OperationResult[] results = new OperationResult[count];
+		boolean[] finished = new boolean[count];
+
+		TreeSet<Integer> ready = new TreeSet<Integer>();
+		for (int i = 0; i < count; i++) {
+			if (remainingDependencies[i] == 0) {
+				ready.add(i);
+			}
+		}
+
+		int poolSize = Math.max(1, Math.min(threadsCount, count));
+		CompletionService<OperationResult> completionService = new ExecutorCompletionService<OperationResult>(executor);
+		List<Future<OperationResult>> futures = new ArrayList<Future<OperationResult>>(count);
+
+		int running = 0, maxRunning = 0, skipped = 0;
+		Exception failure = null;
+		try {
+			while (true) {
+				// Start ready operations in request order
+				for (Integer index : new ArrayList<Integer>(ready)) {
+					if ((failure != null) || (running >= poolSize)) {
+						break;
+					}
+
+					Decision decision = decide(index, results, finished, failOnErrorsLimit);
+					if (decision == Decision.WAIT) {
+						break;
+					}
+
+					ready.remove(index);
+					if (decision == Decision.SKIP) {
+						finished[index] = true;
+						skipped++;
+						releaseDependents(index, dependents, remainingDependencies, ready);
+						continue;
+					}
+
+					Map<String, String> processedBulkIds = getProcessedBulkIds(dependencies.get(index), operations, results);
+					futures.add(completionService.submit(new OperationTask(index, operations.get(index),
+							processedBulkIds, processor)));
+					running++;
+					maxRunning = Math.max(maxRunning, running);
+				}
+
+				if (running == 0) {
+					break;
+				}
+
+				OperationResult result;
+				try {
+					result = completionService.take().get();
+				} catch (ExecutionException ex) {
+					// Stop starting new operations and wait for running ones
+					running--;
+					if (failure == null) {
+						failure = (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+					}
+					continue;
+				}
+				running--;
+
+				results[result.index] = result;
+				finished[result.index] = true;
+				releaseDependents(result.index, dependents, remainingDependencies, ready);
+			}
+		} finally {
+			for (Future<OperationResult> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		List<BulkOperation> processedOperations = new ArrayList<BulkOperation>(count);
+		int failOnErrorsCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (results[i] == null) {
+				break;
+			}
+
+			processedOperations.add(results[i].operation);
+			if (!results[i].successful) {
+				failOnErrorsCount++;
+				if ((failOnErrorsLimit > 0) && (failOnErrorsCount >= failOnErrorsLimit)) {
+					break;
+				}
+			}
+		}
+
+		log.info("Processed bulk of " + count + " operations in " + (System.currentTimeMillis() - startTime) + " ms, threads: " + poolSize
+				+ ", max concurrent operations: " + maxRunning + ", skipped: " + skipped + ", errors: " + failOnErrorsCount);
+
+		return processedOperations;
+	}
+
+	/*
+	 * Operation depends on all earlier operations with referenced bulkIds because
+	 * only successful ones register their bulkIds. It also depends on previous
+	 * operation with the same resource path
+	 */
+	private List<List<Integer>> buildDependencies(List<BulkOperation> operations) {
+		int count = operations.size();
+		List<List<Integer>> dependencies = new ArrayList<List<Integer>>(count);
+
+		Map<String, List<Integer>> operationsByBulkId = new HashMap<String, List<Integer>>();
+		Map<String, Integer> lastOperationByPath = new HashMap<String, Integer>();
+
+		String currentResourceType = null;
+		List<Integer> currentResourceTypeOperations = new ArrayList<Integer>();
+		List<Integer> previousResourceTypeOperations = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			BulkOperation operation = operations.get(i);
+			String pathId = getPathId(operation.getPath());
+
+			Set<String> referencedBulkIds = BulkIdResolver.getReferencedBulkIds(operation.getData());
+			String pathBulkId = BulkIdResolver.getPathBulkId(pathId);
+			if (pathBulkId != null) {
+				referencedBulkIds.add(pathBulkId);
+			}
+
+			TreeSet<Integer> operationDependencies = new TreeSet<Integer>();
+			for (String referencedBulkId : referencedBulkIds) {
+				List<Integer> bulkIdOperations = operationsByBulkId.get(referencedBulkId);
+				if (bulkIdOperations != null) {
+					operationDependencies.addAll(bulkIdOperations);
+				}
+			}
+
+			if (pathId != null) {
+				String path = operation.getPath().toLowerCase();
+				Integer previous = lastOperationByPath.get(path);
+				if (previous != null) {
+					operationDependencies.add(previous);
+				}
+				lastOperationByPath.put(path, i);
+			}
+
+			// Operations of previous run of other resource type transitively cover all earlier ones
+			String resourceType = getResourceType(operation.getPath());
+			if (resourceType != null) {
+				if (!resourceType.equals(currentResourceType)) {
+					currentResourceType = resourceType;
+					previousResourceTypeOperations = currentResourceTypeOperations;
+					currentResourceTypeOperations = new ArrayList<Integer>();
+				}
+				operationDependencies.addAll(previousResourceTypeOperations);
+				currentResourceTypeOperations.add(i);
+			}
+
+			dependencies.add(new ArrayList<Integer>(operationDependencies));
+
+			if (operation.getBulkId() != null) {
+				List<Integer> bulkIdOperations = operationsByBulkId.get(operation.getBulkId());
+				if (bulkIdOperations == null) {
+					bulkIdOperations = new ArrayList<Integer>();
+					operationsByBulkId.put(operation.getBulkId(), bulkIdOperations);
+				}
+				bulkIdOperations.add(i);
+			}
+		}
+
+		return dependencies;
+	}
+
+	private Map<String, String> getProcessedBulkIds(List<Integer> dependencies, List<BulkOperation> operations, OperationResult[] results) {
+		// Dependencies are sorted. Later operation overrides bulkId like in sequential processing
+		Map<String, String> processedBulkIds = new LinkedHashMap<String, String>();
+		for (Integer dependency : dependencies) {
+			OperationResult result = results[dependency];
+			if ((result != null) && (result.registeredId != null)) {
+				processedBulkIds.put(operations.get(dependency).getBulkId(), result.registeredId);
+			}
+		}
+
+		return processedBulkIds;
+	}
+
+	private void releaseDependents(int index, List<List<Integer>> dependents, int[] remainingDependencies, TreeSet<Integer> ready) {
+		for (Integer dependent : dependents.get(index)) {
+			remainingDependencies[dependent]--;
+			if (remainingDependencies[dependent] == 0) {
+				ready.add(dependent);
+			}
+		}
+	}
+
+	private enum Decision {
+		RUN, SKIP, WAIT
+	}
+
+	/*
+	 * Sequential processing runs operation only if earlier operations have less
+	 * errors than failOnErrors limit. Operation waits while it depends on results
+	 * of unfinished earlier operations
+	 */
+	private Decision decide(int index, OperationResult[] results, boolean[] finished, int failOnErrorsLimit) {
+		if (failOnErrorsLimit <= 0) {
+			return Decision.RUN;
+		}
+
+		int errors = 0, unfinished = 0;
+		for (int i = 0; i < index; i++) {
+			if (!finished[i]) {
+				unfinished++;
+			} else if ((results[i] == null) || !results[i].successful) {
+				// Skipped operations are after limit
+				errors++;
+			}
+		}
+
+		if (errors >= failOnErrorsLimit) {
+			return Decision.SKIP;
+		}
+
+		if (errors + unfinished < failOnErrorsLimit) {
+			return Decision.RUN;
+		}
+
+		return Decision.WAIT;
+	}
+
+	private static String getPathId(String path) {
+		if (path == null) {
+			return null;
+		}
+
+		String[] parts = path.split("/");
+		if (parts.length < 3) {
+			return null;
+		}
+
+		return parts[2];
+	}
+
+	private static String getResourceType(String path) {
+		if (path == null) {
+			return null;
+		}
+
+		String[] parts = path.split("/");
+		if (parts.length < 2) {
+			return null;
+		}
+
+		if (USERS_RESOURCE_TYPE.equalsIgnoreCase(parts[1])) {
+			return USERS_RESOURCE_TYPE;
+		} else if (GROUPS_RESOURCE_TYPE.equalsIgnoreCase(parts[1])) {
+			return GROUPS_RESOURCE_TYPE;
+		}
+
+		return null;
+	}
+
+	private static String resolvePath(String path, Map<String, String> processedBulkIds) {
+		String pathId = getPathId(path);
+		if (pathId == null) {
+			return null;
+		}
+
+		return path.substring(0, path.length() - pathId.length()) + BulkIdResolver.resolvePathId(pathId, processedBulkIds);
+	}
+
+	private static ReentrantLock getResourceLock(String resolvedPath) {
+		int hash = resolvedPath.toLowerCase().hashCode();
+
+		return resourceLocks[(hash & 0x7FFFFFFF) % RESOURCE_LOCKS_COUNT];
+	}
+
+	private static class OperationResult {
+
+		private final int index;
+		private final BulkOperation operation;
+		private final boolean successful;
+		private final String registeredId;
+
+		public OperationResult(int index, BulkOperation operation, boolean successful, String registeredId) {
+			this.index = index;
+			this.operation = operation;
+			this.successful = successful;
+			this.registeredId = registeredId;
+		}
+
+	}
+
+	private static class OperationTask implements Callable<OperationResult> {
+
+		private final int index;
+		private final BulkOperation operation;
+		private final Map<String, String> processedBulkIds;
+		private final OperationProcessor processor;
+
+		public OperationTask(int index, BulkOperation operation, Map<String, String> processedBulkIds,
+				OperationProcessor processor) {
+			this.index = index;
+			this.operation = operation;
+			this.processedBulkIds = processedBulkIds;
+			this.processor = processor;
+		}
+
+		public OperationResult call() throws Exception {
+			String resolvedPath = HttpMethod.POST.equalsIgnoreCase(operation.getMethod()) ? null : resolvePath(operation.getPath(),
+					processedBulkIds);
+
+			ReentrantLock lock = (resolvedPath == null) ? null : getResourceLock(resolvedPath);
+			if (lock != null) {
+				lock.lock();
+			}
+
+			try {
+				BulkOperation processedOperation = processor.process(operation, processedBulkIds);
+
+				String status = processedOperation.getStatus();
+				boolean successful = String.valueOf(Response.Status.OK.getStatusCode()).equalsIgnoreCase(status)
+						|| String.valueOf(Response.Status.CREATED.getStatusCode()).equalsIgnoreCase(status);
+
+				String registeredId = null;
+				if (successful && (processedOperation.getBulkId() != null)) {
+					registeredId = processedBulkIds.get(processedOperation.getBulkId());
+				}
+
+				return new OperationResult(index, processedOperation, successful, registeredId);
+			} finally {
+				if (lock != null) {
+					lock.unlock();
+				}
+			}
+		}
+
+	}
+
+}
@@ -7,7 +7,6 @@ package org.gluu.oxtrust.ws.rs.scim2;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,7 +21,6 @@ import org.apache.log4j.Logger;
 import org.codehaus.jackson.Version;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.map.module.SimpleModule;
 import org.gluu.oxtrust.exception.PersonRequiredFieldsException;
 import org.gluu.oxtrust.ldap.service.GroupService;
@@ -32,8 +30,8 @@ import org.gluu.oxtrust.ldap.service.PersonService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.scim2.*;
-import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseGroupSerializer;
-import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseUserSerializer;
+import org.gluu.oxtrust.service.WorkerExecutorService;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
 import org.gluu.oxtrust.service.scim2.Scim2GroupService;
 import org.gluu.oxtrust.service.scim2.Scim2UserService;
 import org.gluu.oxtrust.service.scim2.jackson.custom.UserDeserializer;
@@ -65,6 +63,10 @@ public class BulkWebService extends BaseScimWebService {
 
 	private static final Logger log = Logger.getLogger(BulkWebService.class);
 
+	// Configured mappers are thread-safe and shared by all operations
+	private static final ObjectMapper USER_MAPPER = createUserMapper();
+	private static final ObjectMapper GROUP_MAPPER = createGroupMapper();
+
 	@In
 	private IPersonService personService;
 
@@ -77,6 +79,9 @@ public class BulkWebService extends BaseScimWebService {
     @In
     private Scim2GroupService scim2GroupService;
 
+    @In
+    private WorkerExecutorService workerExecutorService;
+
     @POST
 	@Consumes({Constants.MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
 	@Produces({Constants.MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
@@ -140,58 +145,43 @@ public class BulkWebService extends BaseScimWebService {
             }
 
             int failOnErrorsLimit = (bulkRequest.getFailOnErrors() != null) ? bulkRequest.getFailOnErrors() : 0;
-            int failOnErrorsCount = 0;
 
             List<BulkOperation> bulkOperations = bulkRequest.getOperations();
 
-            BulkResponse bulkResponse = new BulkResponse();
-            Map<String, String> processedBulkIds = new LinkedHashMap<String, String>();
-
-            operationsLoop:
-            for (BulkOperation operation : bulkOperations) {
+            BulkOperationsExecutor bulkOperationsExecutor = new BulkOperationsExecutor(workerExecutorService.getExecutor(),
+                    workerExecutorService.getThreadsCount());
+            List<BulkOperation> processedOperations = bulkOperationsExecutor.execute(bulkOperations, failOnErrorsLimit,
+                    new BulkOperationsExecutor.OperationProcessor() {
 
-                log.info(" Checking operations... ");
+                        public BulkOperation process(BulkOperation operation, Map<String, String> processedBulkIds) throws Exception {
+                            if (log.isDebugEnabled()) {
+                                log.debug(" Checking operation: method = " + operation.getMethod() + ", path = " + operation.getPath());
+                            }
 
-                if (operation.getPath().startsWith("/Users")) {
+                            if (operation.getPath().startsWith("/Users")) {
 
-                    // operation = processUserOperation(operation, domain);
-                    operation = processUserOperation(operation, processedBulkIds);
+                                // operation = processUserOperation(operation, domain);
+                                operation = processUserOperation(operation, processedBulkIds);
 
-                } else if (operation.getPath().startsWith("/Groups")) {
+                            } else if (operation.getPath().startsWith("/Groups")) {
 
-                    // operation = processGroupOperation(operation, domain);
-                    operation = processGroupOperation(operation, processedBulkIds);
-                }
+                                // operation = processGroupOperation(operation, domain);
+                                operation = processGroupOperation(operation, processedBulkIds);
+                            }
 
-                bulkResponse.getOperations().add(operation);
+                            return operation;
+                        }
+                    });
 
-                // Error handling
-                String okCode = String.valueOf(Response.Status.OK.getStatusCode());
-                String createdCode = String.valueOf(Response.Status.CREATED.getStatusCode());
-                if (!operation.getStatus().equalsIgnoreCase(okCode) && !operation.getStatus().equalsIgnoreCase(createdCode)) {
-                    failOnErrorsCount++;
-                    if ((failOnErrorsLimit > 0) && (failOnErrorsCount >= failOnErrorsLimit)) {
-                        break operationsLoop;
-                    }
-                }
-            }
+            BulkResponse bulkResponse = new BulkResponse();
+            bulkResponse.getOperations().addAll(processedOperations);
 
             URI location = new URI(applicationConfiguration.getBaseEndpoint() + "/scim/v2/Bulk");
 
             // Serialize to JSON
 
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
-
-            SimpleModule customBulkOperationsModule = new SimpleModule("CustomBulkOperationsModule", new Version(1, 0, 0, ""));
-
-            // Custom serializers for both User and Group
-            ListResponseUserSerializer userSerializer = new ListResponseUserSerializer();
-            ListResponseGroupSerializer groupSerializer = new ListResponseGroupSerializer();
-            customBulkOperationsModule.addSerializer(User.class, userSerializer);
-            customBulkOperationsModule.addSerializer(Group.class, groupSerializer);
-
-            mapper.registerModule(customBulkOperationsModule);
+            // Shared mapper with custom serializers for both User and Group
+            ObjectMapper mapper = ListResponseMappers.getListResponseMapper(null);
 
             String json = mapper.writeValueAsString(bulkResponse);
 
@@ -207,27 +197,27 @@ public class BulkWebService extends BaseScimWebService {
 
 	private BulkOperation processUserOperation(BulkOperation operation, Map<String, String> processedBulkIds) throws Exception {
 
-        log.info(" Operation is for User ");
+        if (log.isDebugEnabled()) {
+            log.debug(" Operation is for User ");
+        }
 
         // Intercept bulkId
         User user = null;
         if (operation.getData() != null) {  // Required in a request when "method" is "POST", "PUT", or "PATCH".
 
-            String serializedData = serialize(operation.getData());
-
-            for (Map.Entry<String, String> entry : processedBulkIds.entrySet()) {
-                String key = "bulkId:" + entry.getKey();
-                serializedData = serializedData.replaceAll(key, entry.getValue());
-            }
+            // Resolve parsed data and convert it without writing JSON text
+            Object data = BulkIdResolver.resolve(operation.getData(), processedBulkIds);
 
-            user = deserializeToUser(serializedData);
+            user = convertToUser(data);
         }
 
 		String userRootEndpoint = applicationConfiguration.getBaseEndpoint() + "/scim/v2/Users/";
 
 		if (operation.getMethod().equalsIgnoreCase(HttpMethod.POST)) {
 
-			log.info(" Method is POST ");
+			if (log.isDebugEnabled()) {
+				log.debug(" Method is POST ");
+			}
 
 			try {
 
@@ -271,18 +261,12 @@ public class BulkWebService extends BaseScimWebService {
 
 		} else if (operation.getMethod().equalsIgnoreCase(HttpMethod.PUT)) {
 
-			log.info(" Method is PUT ");
+			if (log.isDebugEnabled()) {
+				log.debug(" Method is PUT ");
+			}
 
             String path = operation.getPath();
-            String id = getId(path);
-
-            for (Map.Entry<String, String> entry : processedBulkIds.entrySet()) {
-                String key = "bulkId:" + entry.getKey();
-                if (id.equalsIgnoreCase(key)) {
-                    id = id.replaceAll(key, entry.getValue());
-                    break;
-                }
-            }
+            String id = BulkIdResolver.resolvePathId(getId(path), processedBulkIds);
 
 			try {
 
@@ -325,18 +309,12 @@ public class BulkWebService extends BaseScimWebService {
 
 		} else if (operation.getMethod().equalsIgnoreCase(HttpMethod.DELETE)) {
 
-			log.info(" Method is DELETE ");
+			if (log.isDebugEnabled()) {
+				log.debug(" Method is DELETE ");
+			}
 
 			String path = operation.getPath();
-			String id = getId(path);
-
-            for (Map.Entry<String, String> entry : processedBulkIds.entrySet()) {
-                String key = "bulkId:" + entry.getKey();
-                if (id.equalsIgnoreCase(key)) {
-                    id = id.replaceAll(key, entry.getValue());
-                    break;
-                }
-            }
+			String id = BulkIdResolver.resolvePathId(getId(path), processedBulkIds);
 
 			try {
 
@@ -373,27 +351,27 @@ public class BulkWebService extends BaseScimWebService {
 
 	private BulkOperation processGroupOperation(BulkOperation operation, Map<String, String> processedBulkIds) throws Exception {
 
-        log.info(" Operation is for Group ");
+        if (log.isDebugEnabled()) {
+            log.debug(" Operation is for Group ");
+        }
 
         // Intercept bulkId
         Group group = null;
         if (operation.getData() != null) {  // Required in a request when "method" is "POST", "PUT", or "PATCH".
 
-            String serializedData = serialize(operation.getData());
+            // Resolve parsed data and convert it without writing JSON text
+            Object data = BulkIdResolver.resolve(operation.getData(), processedBulkIds);
 
-            for (Map.Entry<String, String> entry : processedBulkIds.entrySet()) {
-                String key = "bulkId:" + entry.getKey();
-                serializedData = serializedData.replaceAll(key, entry.getValue());
-            }
-
-            group = deserializeToGroup(serializedData);
+            group = convertToGroup(data);
         }
 
 		String groupRootEndpoint = applicationConfiguration.getBaseEndpoint() + "/scim/v2/Groups/";
 
 		if (operation.getMethod().equalsIgnoreCase(HttpMethod.POST)) {
 
-			log.info(" Method is POST ");
+			if (log.isDebugEnabled()) {
+				log.debug(" Method is POST ");
+			}
 
 			try {
 
@@ -431,18 +409,12 @@ public class BulkWebService extends BaseScimWebService {
 
 		} else if (operation.getMethod().equalsIgnoreCase(HttpMethod.PUT)) {
 
-			log.info(" Method is PUT ");
+			if (log.isDebugEnabled()) {
+				log.debug(" Method is PUT ");
+			}
 
 			String path = operation.getPath();
-			String id = getId(path);
-
-            for (Map.Entry<String, String> entry : processedBulkIds.entrySet()) {
-                String key = "bulkId:" + entry.getKey();
-                if (id.equalsIgnoreCase(key)) {
-                    id = id.replaceAll(key, entry.getValue());
-                    break;
-                }
-            }
+			String id = BulkIdResolver.resolvePathId(getId(path), processedBulkIds);
 
 			try {
 
@@ -485,18 +457,12 @@ public class BulkWebService extends BaseScimWebService {
 
 		} else if (operation.getMethod().equalsIgnoreCase(HttpMethod.DELETE)) {
 
-			log.info(" Method is DELETE ");
+			if (log.isDebugEnabled()) {
+				log.debug(" Method is DELETE ");
+			}
 
 			String path = operation.getPath();
-			String id = getId(path);
-
-            for (Map.Entry<String, String> entry : processedBulkIds.entrySet()) {
-                String key = "bulkId:" + entry.getKey();
-                if (id.equalsIgnoreCase(key)) {
-                    id = id.replaceAll(key, entry.getValue());
-                    break;
-                }
-            }
+			String id = BulkIdResolver.resolvePathId(getId(path), processedBulkIds);
 
 			try {
 
@@ -537,15 +503,17 @@ public class BulkWebService extends BaseScimWebService {
 		return str[2];
 	}
 
-    private String serialize(Object object) throws Exception {
+	private User convertToUser(Object data) {
 
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
+		return USER_MAPPER.convertValue(data, User.class);
+	}
+	
+	private Group convertToGroup(Object data) {
 
-        return mapper.writeValueAsString(object);
-    }
+		return GROUP_MAPPER.convertValue(data, Group.class);
+	}
 
-	private User deserializeToUser(String dataString) throws Exception {
+	private static ObjectMapper createUserMapper() {
 
         ObjectMapper mapper = new ObjectMapper();
         mapper.disable(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES);
@@ -553,15 +521,15 @@ public class BulkWebService extends BaseScimWebService {
         simpleModule.addDeserializer(User.class, new UserDeserializer());
         mapper.registerModule(simpleModule);
 
-		return mapper.readValue(dataString, User.class);
+		return mapper;
 	}
-	
-	private Group deserializeToGroup(String dataString) throws Exception {
+
+	private static ObjectMapper createGroupMapper() {
 
 		ObjectMapper mapper = new ObjectMapper();
         mapper.disable(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES);
 
-		return mapper.readValue(dataString, Group.class);
+		return mapper;
 	}
 
     private ErrorResponse createErrorResponse(Response.Status status, ErrorScimType scimType, String detail) {
@@ -0,0 +1,94 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.ws.rs.scim2;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.gluu.oxtrust.model.scim2.Constants;
+import org.gluu.oxtrust.model.scim2.ErrorScimType;
+import org.gluu.oxtrust.model.scim2.Group;
+import org.gluu.oxtrust.model.scim2.User;
+import org.gluu.oxtrust.model.scim2.fido.FidoDevice;
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterPlan;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
+import org.gluu.oxtrust.util.OxTrustConstants;
+import org.jboss.seam.annotations.Logger;
+import org.jboss.seam.annotations.Name;
+import org.jboss.seam.log.Log;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.Authorization;
+
+/**
+ * Shows how SCIM filter is translated into LDAP filter and whether LDAP
+ * server can use indexes to evaluate it. Helps to size LDAP indexes
+ */
+@Name("scim2FilterPlanEndpoint")
+@Path("/scim/v2/FilterPlan")
+@Api(value = "/v2/FilterPlan", description = "SCIM 2.0 filter plan debug endpoint", authorizations = {@Authorization(value = "Authorization", type = "uma")})
+public class FilterPlanWebService extends BaseScimWebService {
+
+	@Logger
+	private Log log;
+
+	@GET
+	@Produces({Constants.MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
+	@HeaderParam("Accept") @DefaultValue(Constants.MEDIA_TYPE_SCIM_JSON)
+	@ApiOperation(value = "Explain filter", notes = "Returns LDAP filter plan of SCIM filter")
+	public Response explainFilter(
+		@HeaderParam("Authorization") String authorization,
+		@QueryParam(OxTrustConstants.QUERY_PARAMETER_TEST_MODE_OAUTH2_TOKEN) final String token,
+		@QueryParam(OxTrustConstants.QUERY_PARAMETER_FILTER) final String filterString,
+		@QueryParam("resourceType") @DefaultValue("User") final String resourceType) throws Exception {
+
+		Response authorizationResponse;
+		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
+			authorizationResponse = processTestModeAuthorization(token);
+		} else {
+			authorizationResponse = processAuthorization(authorization);
+		}
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		Class<?> clazz;
+		if ("User".equalsIgnoreCase(resourceType)) {
+			clazz = User.class;
+		} else if ("Group".equalsIgnoreCase(resourceType)) {
+			clazz = Group.class;
+		} else if ("FidoDevice".equalsIgnoreCase(resourceType)) {
+			clazz = FidoDevice.class;
+		} else {
+			return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_VALUE, "Unsupported resourceType: " + resourceType);
+		}
+
+		if ((filterString == null) || filterString.isEmpty()) {
+			return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, "Filter is required");
+		}
+
+		ScimFilterPlan filterPlan;
+		try {
+			filterPlan = scimFilterParserService.explainFilter(filterString, clazz);
+		} catch (Exception ex) {
+			log.debug("Failed to explain filter '{0}'", ex, filterString);
+			return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, "Invalid filter: " + filterString);
+		}
+
+		String json = ListResponseMappers.getTreeMapper().writeValueAsString(filterPlan);
+
+		return Response.ok(json).build();
+	}
+
+}
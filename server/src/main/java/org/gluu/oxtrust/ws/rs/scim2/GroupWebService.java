@@ -14,16 +14,16 @@ import javax.ws.rs.core.Response;
 
 import com.wordnik.swagger.annotations.*;
 
-import org.codehaus.jackson.Version;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
-import org.codehaus.jackson.map.module.SimpleModule;
 import org.gluu.oxtrust.ldap.service.GroupService;
 import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.model.GluuGroup;
 import org.gluu.oxtrust.model.scim2.*;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.AttributesProjection;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
 import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseGroupSerializer;
 import org.gluu.oxtrust.service.scim2.Scim2GroupService;
+import org.gluu.oxtrust.service.scim2.ScimRequestTrace;
 import org.gluu.oxtrust.util.CopyUtils2;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.site.ldap.exception.DuplicateEntryException;
@@ -69,14 +69,18 @@ public class GroupWebService extends BaseScimWebService {
 		@QueryParam(OxTrustConstants.QUERY_PARAMETER_SORT_ORDER) final String sortOrder,
 		@QueryParam(OxTrustConstants.QUERY_PARAMETER_ATTRIBUTES) final String attributesArray) throws Exception {
 
+		ScimRequestTrace trace = new ScimRequestTrace("searchGroups");
+		trace.startPhase(ScimRequestTrace.PHASE_AUTHORIZATION);
+
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
 		}
 		if (authorizationResponse != null) {
+			trace.finish();
 			return authorizationResponse;
 		}
 
@@ -84,26 +88,29 @@ public class GroupWebService extends BaseScimWebService {
 
 			if (count > MAX_COUNT) {
 
+				trace.finish();
+
 				String detail = "Too many results (=" + count + ") would be returned; max is " + MAX_COUNT + " only.";
 				return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.TOO_MANY, detail);
 
 			} else {
 
-				log.info(" Searching groups from LDAP ");
+				log.debug(" Searching groups from LDAP ");
 
 				groupService = GroupService.instance();
 
 				VirtualListViewResponse vlvResponse = new VirtualListViewResponse();
 
-				List<GluuGroup> groupList = search(groupService.getDnForGroup(null), GluuGroup.class, filterString, startIndex, count, sortBy, sortOrder, vlvResponse, attributesArray);
+				List<GluuGroup> groupList = search(groupService.getDnForGroup(null), GluuGroup.class, filterString, startIndex, count, sortBy, sortOrder, vlvResponse, attributesArray, trace);
 				// List<GluuGroup> groupList = groupService.getAllGroupsList();
 
+				trace.startPhase(ScimRequestTrace.PHASE_CONVERSION);
+
 				ListResponse groupsListResponse = new ListResponse();
 
 				List<String> schema = new ArrayList<String>();
 				schema.add(Constants.LIST_RESPONSE_SCHEMA_ID);
 
-				log.info(" setting schema");
 				groupsListResponse.setSchemas(schema);
 
 				// Set total
@@ -111,36 +118,33 @@ public class GroupWebService extends BaseScimWebService {
 
 				if (count > 0 && groupList != null && !groupList.isEmpty()) {
 
-					// log.info(" LDAP group list is not empty ");
+					// Skip conversions of attributes which were not requested
+					AttributesProjection attributesProjection = AttributesProjection.compile(attributesArray, ListResponseGroupSerializer.DEFAULT_ATTRIBUTES);
 
 					for (GluuGroup gluuGroup : groupList) {
 
-						Group group = CopyUtils2.copy(gluuGroup, null);
-
-						log.info(" group to be added displayName : " + group.getDisplayName());
+						Group group = CopyUtils2.copy(gluuGroup, null, attributesProjection);
 
 						groupsListResponse.getResources().add(group);
-
-						log.info(" group added? : " + groupsListResponse.getResources().contains(group));
 					}
 
+					trace.setItemCount(groupList.size());
+
 					// Set the rest of results info
 					groupsListResponse.setItemsPerPage(vlvResponse.getItemsPerPage());
 					groupsListResponse.setStartIndex(vlvResponse.getStartIndex());
 				}
 
-				// Serialize to JSON
-				String json = serializeToJson(groupsListResponse, attributesArray);
-
 				URI location = new URI(applicationConfiguration.getBaseEndpoint() + "/scim/v2/Groups");
 
-				return Response.ok(json).location(location).build();
+				return Response.ok(serializeToStream(groupsListResponse, attributesArray, trace)).location(location).build();
 			}
 
 		} catch (Exception ex) {
 
+			trace.finish();
+
             log.error("Error in searchGroups", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -158,7 +162,7 @@ public class GroupWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -181,12 +185,12 @@ public class GroupWebService extends BaseScimWebService {
 				// sets HTTP status code 404 Not Found
 				return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource " + id + " not found");
 			} else {
-				log.info(" Resource " + id + " found ");
+				log.debug(" Resource {0} found ", id);
 			}
 
 			GluuGroup gluuGroup = groupList.get(0);
 
-			Group group = CopyUtils2.copy(gluuGroup, null);
+			Group group = CopyUtils2.copy(gluuGroup, null, AttributesProjection.compile(attributesArray, ListResponseGroupSerializer.DEFAULT_ATTRIBUTES));
 
 			// Serialize to JSON
 			String json = serializeToJson(group, attributesArray);
@@ -198,13 +202,11 @@ public class GroupWebService extends BaseScimWebService {
 		} catch (EntryPersistenceException ex) {
 
             log.error("Error in getGroupById", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource " + id + " not found");
 
 		} catch (Exception ex) {
 
             log.error("Error in getGroupById", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -222,7 +224,7 @@ public class GroupWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -246,13 +248,11 @@ public class GroupWebService extends BaseScimWebService {
 		} catch (DuplicateEntryException ex) {
 
 			log.error("DuplicateEntryException", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.CONFLICT, ErrorScimType.UNIQUENESS, ex.getMessage());
 
 		} catch (Exception ex) {
 
 			log.error("Failed to create group", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -272,7 +272,7 @@ public class GroupWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -295,19 +295,16 @@ public class GroupWebService extends BaseScimWebService {
 		} catch (EntryPersistenceException ex) {
 
             log.error("Failed to update group", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource " + id + " not found");
 
 		} catch (DuplicateEntryException ex) {
 
 			log.error("DuplicateEntryException", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.CONFLICT, ErrorScimType.UNIQUENESS, ex.getMessage());
 
 		} catch (Exception ex) {
 
 			log.error("Failed to update group", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -324,7 +321,7 @@ public class GroupWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -342,13 +339,11 @@ public class GroupWebService extends BaseScimWebService {
 		} catch (EntryPersistenceException ex) {
 
             log.error("Failed to delete group", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, "Resource " + id + " not found");
 
 		} catch (Exception ex) {
 
             log.error("Failed to delete group", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -365,7 +360,7 @@ public class GroupWebService extends BaseScimWebService {
 
         try {
 
-            log.info("IN GroupWebService.searchGroupsPost()...");
+            log.debug("IN GroupWebService.searchGroupsPost()...");
 
             // Authorization check is done in searchGroups()
             Response response = searchGroups(
@@ -381,20 +376,18 @@ public class GroupWebService extends BaseScimWebService {
 
             URI location = new URI(applicationConfiguration.getBaseEndpoint() + "/scim/v2/Groups/.search");
 
-            log.info("LEAVING GroupWebService.searchGroupsPost()...");
+            log.debug("LEAVING GroupWebService.searchGroupsPost()...");
 
             return Response.fromResponse(response).location(location).build();
 
         } catch (EntryPersistenceException ex) {
 
             log.error("Error in searchGroupsPost", ex);
-            ex.printStackTrace();
             return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource not found");
 
         } catch (Exception ex) {
 
             log.error("Error in searchGroupsPost", ex);
-            ex.printStackTrace();
             return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, INTERNAL_SERVER_ERROR_MESSAGE);
         }
     }
@@ -419,13 +412,7 @@ public class GroupWebService extends BaseScimWebService {
 
 	private String serializeToJson(Object object, String attributesArray) throws Exception {
 
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
-		SimpleModule customScimFilterModule = new SimpleModule("CustomScim2GroupFilterModule", new Version(1, 0, 0, ""));
-		ListResponseGroupSerializer serializer = new ListResponseGroupSerializer();
-		serializer.setAttributesArray(attributesArray);
-		customScimFilterModule.addSerializer(Group.class, serializer);
-		mapper.registerModule(customScimFilterModule);
+		ObjectMapper mapper = ListResponseMappers.getListResponseMapper(attributesArray);
 
 		return mapper.writeValueAsString(object);
 	}
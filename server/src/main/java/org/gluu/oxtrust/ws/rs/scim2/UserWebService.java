@@ -5,31 +5,43 @@
  */
 package org.gluu.oxtrust.ws.rs.scim2;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.*;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import com.wordnik.swagger.annotations.*;
 
-import org.codehaus.jackson.Version;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
-import org.codehaus.jackson.map.module.SimpleModule;
 import org.gluu.oxtrust.exception.PersonRequiredFieldsException;
+import org.gluu.oxtrust.ldap.service.GroupService;
+import org.gluu.oxtrust.ldap.service.IGroupService;
 import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.LdapPagedSearch;
+import org.gluu.oxtrust.ldap.service.LdapPagedSearchCursor;
 import org.gluu.oxtrust.ldap.service.PersonService;
 import org.gluu.oxtrust.model.GluuCustomPerson;
 import org.gluu.oxtrust.model.scim.ScimPersonPatch;
 import org.gluu.oxtrust.model.scim2.*;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.AttributesProjection;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseMappers;
 import org.gluu.oxtrust.service.antlr.scimFilter.util.ListResponseUserSerializer;
+import org.gluu.oxtrust.service.scim2.Scim2ExportCursorService;
+import org.gluu.oxtrust.service.scim2.Scim2GroupResolver;
 import org.gluu.oxtrust.service.scim2.Scim2UserService;
+import org.gluu.oxtrust.service.scim2.ScimRequestTrace;
 import org.gluu.oxtrust.util.CopyUtils2;
 import org.gluu.oxtrust.util.OxTrustConstants;
 import org.gluu.oxtrust.ws.rs.scim.PATCH;
 import org.gluu.site.ldap.exception.DuplicateEntryException;
+import org.gluu.site.ldap.persistence.AttributeData;
 import org.gluu.site.ldap.persistence.exception.EntryPersistenceException;
 import org.jboss.seam.annotations.In;
 import org.jboss.seam.annotations.Logger;
@@ -37,6 +49,10 @@ import org.jboss.seam.annotations.Name;
 import org.jboss.seam.log.Log;
 import org.xdi.ldap.model.SortOrder;
 import org.xdi.ldap.model.VirtualListViewResponse;
+import org.xdi.util.StringHelper;
+
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.SearchResultEntry;
 
 import static org.gluu.oxtrust.model.scim2.Constants.MAX_COUNT;
 import static org.gluu.oxtrust.util.OxTrustConstants.INTERNAL_SERVER_ERROR_MESSAGE;
@@ -51,15 +67,25 @@ import static org.gluu.oxtrust.util.OxTrustConstants.INTERNAL_SERVER_ERROR_MESSA
 @Api(value = "/v2/Users", description = "SCIM 2.0 User Endpoint (https://tools.ietf.org/html/rfc7644#section-3.2)", authorizations = {@Authorization(value = "Authorization", type = "uma")})
 public class UserWebService extends BaseScimWebService {
 
+	private static final int EXPORT_PAGE_SIZE = 500;
+
+	private static final String QUERY_PARAMETER_CURSOR = "cursor";
+
 	@Logger
 	private Log log;
 
 	@In
 	private IPersonService personService;
 
+	@In
+	private IGroupService groupService;
+
     @In
     private Scim2UserService scim2UserService;
 
+    @In
+    private Scim2ExportCursorService scim2ExportCursorService;
+
 	@GET
 	@Produces({Constants.MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
 	@HeaderParam("Accept") @DefaultValue(Constants.MEDIA_TYPE_SCIM_JSON)
@@ -74,14 +100,18 @@ public class UserWebService extends BaseScimWebService {
 		@QueryParam(OxTrustConstants.QUERY_PARAMETER_SORT_ORDER) final String sortOrder,
 		@QueryParam(OxTrustConstants.QUERY_PARAMETER_ATTRIBUTES) final String attributesArray) throws Exception {
 
+		ScimRequestTrace trace = new ScimRequestTrace("searchUsers");
+		trace.startPhase(ScimRequestTrace.PHASE_AUTHORIZATION);
+
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
 		}
 		if (authorizationResponse != null) {
+			trace.finish();
 			return authorizationResponse;
 		}
 
@@ -89,26 +119,29 @@ public class UserWebService extends BaseScimWebService {
 
 			if (count > MAX_COUNT) {
 
+				trace.finish();
+
 				String detail = "Too many results (=" + count + ") would be returned; max is " + MAX_COUNT + " only.";
 				return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.TOO_MANY, detail);
 
 			} else {
 
-				log.info(" Searching users from LDAP ");
+				log.debug(" Searching users from LDAP ");
 
 				personService = PersonService.instance();
 
 				VirtualListViewResponse vlvResponse = new VirtualListViewResponse();
 
-				List<GluuCustomPerson> gluuCustomPersons = search(personService.getDnForPerson(null), GluuCustomPerson.class, filterString, startIndex, count, sortBy, sortOrder, vlvResponse, attributesArray);
+				List<GluuCustomPerson> gluuCustomPersons = search(personService.getDnForPerson(null), GluuCustomPerson.class, filterString, startIndex, count, sortBy, sortOrder, vlvResponse, attributesArray, trace);
 				// List<GluuCustomPerson> personList = personService.findAllPersons(null);
 
+				trace.startPhase(ScimRequestTrace.PHASE_CONVERSION);
+
 				ListResponse usersListResponse = new ListResponse();
 
 				List<String> schema = new ArrayList<String>();
 				schema.add(Constants.LIST_RESPONSE_SCHEMA_ID);
 
-				log.info(" setting schema");
 				usersListResponse.setSchemas(schema);
 
 				// Set total
@@ -116,40 +149,220 @@ public class UserWebService extends BaseScimWebService {
 
 				if (count > 0 && gluuCustomPersons != null && !gluuCustomPersons.isEmpty()) {
 
-					// log.info(" LDAP person list is not empty ");
+					// Skip conversions of attributes which were not requested
+					AttributesProjection attributesProjection = AttributesProjection.compile(attributesArray, ListResponseUserSerializer.DEFAULT_ATTRIBUTES);
 
-					for (GluuCustomPerson gluuPerson : gluuCustomPersons) {
+					// Load groups of all users in page together
+					Scim2GroupResolver groupResolver = new Scim2GroupResolver(GroupService.instance());
+					if ((attributesProjection == null) || attributesProjection.isIncluded(null, "groups")) {
+						groupResolver.prefetch(gluuCustomPersons);
+					}
 
-						User user = CopyUtils2.copy(gluuPerson, null);
+					for (GluuCustomPerson gluuPerson : gluuCustomPersons) {
 
-						log.info(" user to be added id : " + user.getUserName());
+						User user = CopyUtils2.copy(gluuPerson, null, attributesProjection, groupResolver);
 
 						usersListResponse.getResources().add(user);
-
-						log.info(" user added? : " + usersListResponse.getResources().contains(user));
 					}
 
+					trace.setItemCount(gluuCustomPersons.size());
+
 					// Set the rest of results info
 					usersListResponse.setItemsPerPage(vlvResponse.getItemsPerPage());
 					usersListResponse.setStartIndex(vlvResponse.getStartIndex());
 				}
 
-				// Serialize to JSON
-				String json = serializeToJson(usersListResponse, attributesArray);
-
 				URI location = new URI(applicationConfiguration.getBaseEndpoint() + "/scim/v2/Users");
 
-				return Response.ok(json).location(location).build();
+				return Response.ok(serializeToStream(usersListResponse, attributesArray, trace)).location(location).build();
 			}
 
 		} catch (Exception ex) {
 
+			trace.finish();
+
             log.error("Error in searchUsers", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
 
+	@Path("/Export")
+	@GET
+	@Produces({Constants.MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
+	@HeaderParam("Accept") @DefaultValue(Constants.MEDIA_TYPE_SCIM_JSON)
+	@ApiOperation(value = "Export users", notes = "Streams all users which match filter without count limit. Results are not sorted. With count response has at most count users rounded up to page size and nextCursor if there are more users. Pass nextCursor as cursor to continue export", response = ListResponse.class)
+	public Response exportUsers(
+		@HeaderParam("Authorization") String authorization,
+		@QueryParam(OxTrustConstants.QUERY_PARAMETER_TEST_MODE_OAUTH2_TOKEN) final String token,
+		@QueryParam(OxTrustConstants.QUERY_PARAMETER_FILTER) final String filterString,
+		@QueryParam(OxTrustConstants.QUERY_PARAMETER_COUNT) final Integer count,
+		@QueryParam(QUERY_PARAMETER_CURSOR) final String cursorId,
+		@QueryParam(OxTrustConstants.QUERY_PARAMETER_ATTRIBUTES) final String attributesArray) throws Exception {
+
+		Response authorizationResponse;
+		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
+			authorizationResponse = processTestModeAuthorization(token);
+		} else {
+			authorizationResponse = processAuthorization(authorization);
+		}
+		if (authorizationResponse != null) {
+			return authorizationResponse;
+		}
+
+		log.debug(" Exporting users from LDAP ");
+
+		personService = PersonService.instance();
+		groupService = GroupService.instance();
+
+		final int limit = ((count == null) || (count < 1)) ? Integer.MAX_VALUE : count;
+
+		final LdapPagedSearchCursor cursor;
+		if (StringHelper.isEmpty(cursorId)) {
+			if ((limit != Integer.MAX_VALUE) && scim2ExportCursorService.isFull()) {
+				return getErrorResponse(Response.Status.SERVICE_UNAVAILABLE, "Too many unfinished exports");
+			}
+
+			try {
+				cursor = openPagedSearchCursor(personService.getDnForPerson(null), GluuCustomPerson.class, filterString, attributesArray,
+						Math.min(limit, EXPORT_PAGE_SIZE));
+			} catch (LDAPException ex) {
+				log.error("Failed to start users export", ex);
+				return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
+			} catch (Exception ex) {
+				log.error("Failed to start users export", ex);
+				return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, "Invalid filter");
+			}
+		} else {
+			cursor = scim2ExportCursorService.take(cursorId);
+			if (cursor == null) {
+				return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_VALUE, "Export cursor doesn't exist or expired");
+			}
+		}
+
+		// Read first page before response is committed. Client gets error response if LDAP search fails
+		final int firstIndex = cursor.getReturnedCount() + 1;
+		final List<SearchResultEntry> firstPage;
+		try {
+			firstPage = cursor.nextPage();
+		} catch (LDAPException ex) {
+			log.error("Failed to export users", ex);
+			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
+		}
+
+		List<String> binaryAttributes = getBinaryAttributes();
+
+		URI location = new URI(applicationConfiguration.getBaseEndpoint() + "/scim/v2/Users");
+
+		return Response.ok(createExportOutput(cursor, firstPage, firstIndex, limit, attributesArray, binaryAttributes)).location(location).build();
+	}
+
+	/**
+	 * Output is written after resource method returns and Seam disinjects
+	 * component fields, so services are captured here
+	 */
+	protected StreamingOutput createExportOutput(final LdapPagedSearchCursor cursor, final List<SearchResultEntry> firstPage, final int firstIndex,
+			final int limit, String attributesArray, final List<String> binaryAttributes) {
+		final IPersonService personService = this.personService;
+		final IGroupService groupService = this.groupService;
+		final Scim2ExportCursorService exportCursorService = this.scim2ExportCursorService;
+
+		final AttributesProjection attributesProjection = AttributesProjection.compile(attributesArray, ListResponseUserSerializer.DEFAULT_ATTRIBUTES);
+		final ObjectMapper mapper = ListResponseMappers.getListResponseMapper(attributesArray);
+
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				long startTime = System.currentTimeMillis();
+
+				String nextCursorId = null;
+				int exported = 0;
+				try {
+					JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(output, JsonEncoding.UTF8);
+					generator.writeStartObject();
+					generator.writeArrayFieldStart("schemas");
+					generator.writeString(Constants.LIST_RESPONSE_SCHEMA_ID);
+					generator.writeEndArray();
+					generator.writeNumberField("startIndex", firstIndex);
+					generator.writeArrayFieldStart("Resources");
+
+					List<SearchResultEntry> page = firstPage;
+					while (true) {
+						exported += writeUsers(generator, page, binaryAttributes, attributesProjection, personService, groupService);
+
+						// Send page to client
+						generator.flush();
+
+						if (!cursor.hasMore() || (exported >= limit)) {
+							break;
+						}
+						page = cursor.nextPage();
+					}
+
+					if (cursor.hasMore()) {
+						nextCursorId = exportCursorService.register(cursor);
+						if (nextCursorId == null) {
+							throw new IOException("Too many unfinished exports");
+						}
+					}
+
+					generator.writeEndArray();
+					// Final value in response without nextCursor
+					generator.writeNumberField("totalResults", cursor.getReturnedCount());
+					generator.writeNumberField("itemsPerPage", exported);
+					if (nextCursorId != null) {
+						generator.writeStringField("nextCursor", nextCursorId);
+					}
+					generator.writeEndObject();
+					generator.close();
+				} catch (IOException ex) {
+					throw ex;
+				} catch (Exception ex) {
+					// Response is already committed. Client gets incomplete JSON
+					log.error("Failed to export users", ex);
+					throw new IOException("Failed to export users", ex);
+				} finally {
+					if (nextCursorId == null) {
+						cursor.close();
+					}
+				}
+
+				log.info("Exported {0} users in {1} ms, more: {2}", exported, System.currentTimeMillis() - startTime, nextCursorId != null);
+			}
+		};
+	}
+
+	private static int writeUsers(JsonGenerator generator, List<SearchResultEntry> entries, List<String> binaryAttributes,
+			AttributesProjection attributesProjection, IPersonService personService, IGroupService groupService) throws Exception {
+		if (entries.isEmpty()) {
+			return 0;
+		}
+
+		// Convert all entries of page together
+		Map<String, List<AttributeData>> entriesAttributes = new LinkedHashMap<String, List<AttributeData>>();
+		for (SearchResultEntry entry : entries) {
+			entriesAttributes.put(entry.getDN(), LdapPagedSearch.toAttributeDataList(entry, binaryAttributes));
+		}
+
+		List<GluuCustomPerson> gluuCustomPersons = personService.createEntities(entriesAttributes);
+		int index = 0;
+		for (String dn : entriesAttributes.keySet()) {
+			gluuCustomPersons.get(index++).setDn(dn);
+		}
+
+		// Load groups of all users in page together
+		Scim2GroupResolver groupResolver = new Scim2GroupResolver(groupService);
+		if ((attributesProjection == null) || attributesProjection.isIncluded(null, "groups")) {
+			groupResolver.prefetch(gluuCustomPersons);
+		}
+
+		for (GluuCustomPerson gluuPerson : gluuCustomPersons) {
+			generator.writeObject(CopyUtils2.copy(gluuPerson, null, attributesProjection, groupResolver));
+		}
+
+		return gluuCustomPersons.size();
+	}
+
 	@Path("{id}")
 	@GET
 	@Produces({Constants.MEDIA_TYPE_SCIM_JSON, MediaType.APPLICATION_JSON})
@@ -163,7 +376,7 @@ public class UserWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -186,12 +399,12 @@ public class UserWebService extends BaseScimWebService {
 				// sets HTTP status code 404 Not Found
 				return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource " + id + " not found");
 			} else {
-				log.info(" Resource " + id + " found ");
+				log.debug(" Resource {0} found ", id);
 			}
 
 			GluuCustomPerson gluuPerson = personList.get(0);
 
-			User user = CopyUtils2.copy(gluuPerson, null);
+			User user = CopyUtils2.copy(gluuPerson, null, AttributesProjection.compile(attributesArray, ListResponseUserSerializer.DEFAULT_ATTRIBUTES));
 
 			// Serialize to JSON
 			String json = serializeToJson(user, attributesArray);
@@ -203,13 +416,11 @@ public class UserWebService extends BaseScimWebService {
 		} catch (EntryPersistenceException ex) {
 
             log.error("Error in getUserById", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource " + id + " not found");
 
 		} catch (Exception ex) {
 
             log.error("Error in getUserById", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -227,7 +438,7 @@ public class UserWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -251,7 +462,6 @@ public class UserWebService extends BaseScimWebService {
 		} catch (DuplicateEntryException ex) {
 
 			log.error("DuplicateEntryException", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.CONFLICT, ErrorScimType.UNIQUENESS, ex.getMessage());
 
 		} catch (PersonRequiredFieldsException ex) {
@@ -262,7 +472,6 @@ public class UserWebService extends BaseScimWebService {
 		} catch (Exception ex) {
 
 			log.error("Failed to create user", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -282,7 +491,7 @@ public class UserWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -305,19 +514,16 @@ public class UserWebService extends BaseScimWebService {
 		} catch (EntryPersistenceException ex) {
 
             log.error("Failed to update user", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource " + id + " not found");
 
 		} catch (DuplicateEntryException ex) {
 
 			log.error("DuplicateEntryException", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.CONFLICT, ErrorScimType.UNIQUENESS, ex.getMessage());
 
 		} catch (Exception ex) {
 
 			log.error("Failed to update user", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -334,7 +540,7 @@ public class UserWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -352,13 +558,11 @@ public class UserWebService extends BaseScimWebService {
 		} catch (EntryPersistenceException ex) {
 
             log.error("Failed to delete user", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, "Resource " + id + " not found");
 
 		} catch (Exception ex) {
 
             log.error("Failed to delete user", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.INTERNAL_SERVER_ERROR, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -375,7 +579,7 @@ public class UserWebService extends BaseScimWebService {
 
 		Response authorizationResponse;
 		if (jsonConfigurationService.getOxTrustApplicationConfiguration().isScimTestMode()) {
-			log.info(" ##### SCIM Test Mode is ACTIVE");
+			log.debug(" ##### SCIM Test Mode is ACTIVE");
 			authorizationResponse = processTestModeAuthorization(token);
 		} else {
 			authorizationResponse = processAuthorization(authorization);
@@ -399,7 +603,7 @@ public class UserWebService extends BaseScimWebService {
 
 		try {
 
-			log.info("IN UserWebService.searchUsersPost()...");
+			log.debug("IN UserWebService.searchUsersPost()...");
 
 			// Authorization check is done in searchUsers()
 			Response response = searchUsers(
@@ -415,20 +619,18 @@ public class UserWebService extends BaseScimWebService {
 
 			URI location = new URI(applicationConfiguration.getBaseEndpoint() + "/scim/v2/Users/.search");
 
-			log.info("LEAVING UserWebService.searchUsersPost()...");
+			log.debug("LEAVING UserWebService.searchUsersPost()...");
 
 			return Response.fromResponse(response).location(location).build();
 
 		} catch (EntryPersistenceException ex) {
 
 			log.error("Error in searchUsersPost", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.NOT_FOUND, ErrorScimType.INVALID_VALUE, "Resource not found");
 
 		} catch (Exception ex) {
 
 			log.error("Error in searchUsersPost", ex);
-			ex.printStackTrace();
 			return getErrorResponse(Response.Status.BAD_REQUEST, ErrorScimType.INVALID_FILTER, INTERNAL_SERVER_ERROR_MESSAGE);
 		}
 	}
@@ -453,13 +655,7 @@ public class UserWebService extends BaseScimWebService {
 
 	private String serializeToJson(Object object, String attributesArray) throws Exception {
 
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.disable(SerializationConfig.Feature.FAIL_ON_EMPTY_BEANS);
-		SimpleModule customScimFilterModule = new SimpleModule("CustomScim2UserFilterModule", new Version(1, 0, 0, ""));
-		ListResponseUserSerializer serializer = new ListResponseUserSerializer();
-		serializer.setAttributesArray(attributesArray);
-		customScimFilterModule.addSerializer(User.class, serializer);
-		mapper.registerModule(customScimFilterModule);
+		ObjectMapper mapper = ListResponseMappers.getListResponseMapper(attributesArray);
 
 		return mapper.writeValueAsString(object);
 	}
@@ -0,0 +1,115 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.cache.service.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.gluu.oxtrust.ldap.cache.model.GluuSimplePerson;
+import org.gluu.oxtrust.ldap.cache.service.CacheRefreshDigestMethod;
+import org.gluu.oxtrust.ldap.cache.service.EntryDigester;
+import org.gluu.oxtrust.ldap.cache.service.Murmur64EntryDigester;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.testng.annotations.Test;
+
+public class Murmur64EntryDigesterTest {
+
+	private final EntryDigester entryDigester = new Murmur64EntryDigester();
+
+	@Test
+	public void testDigestMethod() {
+		assertEquals(CacheRefreshDigestMethod.MURMUR64, entryDigester.getDigestMethod());
+	}
+
+	@Test
+	public void testDigestIsStable() {
+		GluuSimplePerson person = createPerson(new GluuCustomAttribute("uid", "jdoe"), new GluuCustomAttribute("mail", new String[] { "a@example.com",
+				"b@example.com" }));
+
+		assertEquals(entryDigester.digest(person), entryDigester.digest(person));
+		assertEquals(entryDigester.digest(person), new Murmur64EntryDigester().digest(person));
+	}
+
+	@Test
+	public void testAttributesOrderIsIgnored() {
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("uid", "jdoe"), new GluuCustomAttribute("mail", "jdoe@example.com"));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("mail", "jdoe@example.com"), new GluuCustomAttribute("uid", "jdoe"));
+
+		assertEquals(entryDigester.digest(person1), entryDigester.digest(person2));
+	}
+
+	@Test
+	public void testValuesOrderIsIgnored() {
+		String[] values = new String[] { "b@example.com", "a@example.com" };
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("mail", values));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("mail", new String[] { "a@example.com", "b@example.com" }));
+
+		assertEquals(entryDigester.digest(person1), entryDigester.digest(person2));
+
+		// Digester shouldn't sort values of entry
+		assertEquals("b@example.com", values[0]);
+	}
+
+	@Test
+	public void testAttributeNameCaseIsIgnored() {
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("givenName", "John"));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("givenname", "John"));
+
+		assertEquals(entryDigester.digest(person1), entryDigester.digest(person2));
+	}
+
+	@Test
+	public void testValueCaseIsSignificant() {
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("givenName", "John"));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("givenName", "john"));
+
+		assertFalse(entryDigester.digest(person1) == entryDigester.digest(person2));
+	}
+
+	@Test
+	public void testValuesBoundariesAreSignificant() {
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("cn", new String[] { "ab", "c" }));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("cn", new String[] { "a", "bc" }));
+		GluuSimplePerson person3 = createPerson(new GluuCustomAttribute("cn", "abc"));
+
+		assertFalse(entryDigester.digest(person1) == entryDigester.digest(person2));
+		assertFalse(entryDigester.digest(person1) == entryDigester.digest(person3));
+		assertFalse(entryDigester.digest(person2) == entryDigester.digest(person3));
+	}
+
+	@Test
+	public void testValueMovedToAnotherAttribute() {
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("cn", "John"), new GluuCustomAttribute("sn", "Doe"));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("cn", "Doe"), new GluuCustomAttribute("sn", "John"));
+
+		assertFalse(entryDigester.digest(person1) == entryDigester.digest(person2));
+	}
+
+	@Test
+	public void testAttributeWithoutValuesIsIgnored() {
+		GluuSimplePerson person1 = createPerson(new GluuCustomAttribute("uid", "jdoe"));
+		GluuSimplePerson person2 = createPerson(new GluuCustomAttribute("uid", "jdoe"), new GluuCustomAttribute("mail", (String[]) null));
+
+		assertEquals(entryDigester.digest(person1), entryDigester.digest(person2));
+	}
+
+	private GluuSimplePerson createPerson(GluuCustomAttribute... attributes) {
+		List<GluuCustomAttribute> customAttributes = new ArrayList<GluuCustomAttribute>();
+		for (GluuCustomAttribute attribute : attributes) {
+			customAttributes.add(attribute);
+		}
+
+		GluuSimplePerson person = new GluuSimplePerson();
+		person.setCustomAttributes(customAttributes);
+
+		return person;
+	}
+
+}
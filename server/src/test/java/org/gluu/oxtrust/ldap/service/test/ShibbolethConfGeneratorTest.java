@@ -0,0 +1,322 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ldap.service.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.velocity.VelocityContext;
+import org.gluu.oxtrust.ldap.service.ShibbolethConfGenerator;
+import org.gluu.oxtrust.ldap.service.ShibbolethConfGenerator.GenerationSummary;
+import org.gluu.oxtrust.ldap.service.TemplateService;
+import org.gluu.oxtrust.model.GluuCustomAttribute;
+import org.gluu.oxtrust.model.GluuSAMLTrustRelationship;
+import org.jboss.seam.log.Logging;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that configuration files and trust relationship fragments are
+ * rendered only when template input or file on disk changes
+ */
+public class ShibbolethConfGeneratorTest {
+
+	private static final String GENERATOR = "test";
+	private static final String TEMPLATE = "test.xml.vm";
+
+	private File confFolder;
+	private String confFile;
+
+	private CountingTemplateService templateService;
+	private ShibbolethConfGenerator shibbolethConfGenerator;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		confFolder = File.createTempFile("oxtrust-shibboleth", "");
+		confFolder.delete();
+		confFolder.mkdirs();
+		confFile = new File(confFolder, "test.xml").getAbsolutePath();
+
+		templateService = new CountingTemplateService();
+
+		shibbolethConfGenerator = new ShibbolethConfGenerator();
+		setField(shibbolethConfGenerator, "log", Logging.getLog(ShibbolethConfGenerator.class));
+		setField(shibbolethConfGenerator, "templateService", templateService);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		FileUtils.deleteQuietly(confFolder);
+	}
+
+	@Test
+	public void testUnchangedContextSkipsRendering() throws IOException {
+		GenerationSummary summary = generate(createContext("content", null));
+		assertEquals(Arrays.asList(TEMPLATE), summary.getRenderedFiles());
+		assertEquals(Arrays.asList(TEMPLATE), summary.getWrittenFiles());
+		assertEquals("content", FileUtils.readFileToString(new File(confFile), "UTF-8"));
+
+		summary = generate(createContext("content", null));
+		assertTrue(summary.getRenderedFiles().isEmpty());
+		assertEquals(1, templateService.renderCount);
+	}
+
+	@Test
+	public void testChangedContextRendersFile() throws IOException {
+		generate(createContext("content", null));
+
+		GenerationSummary summary = generate(createContext("new content", null));
+		assertEquals(Arrays.asList(TEMPLATE), summary.getWrittenFiles());
+		assertEquals("new content", FileUtils.readFileToString(new File(confFile), "UTF-8"));
+	}
+
+	@Test
+	public void testSameContentIsNotWritten() {
+		generate(createContext("content", null));
+		long lastModified = new File(confFile).lastModified();
+
+		// Value which isn't used by template changes fingerprint, but not content
+		GenerationSummary summary = generate(createContext("content", "unused"));
+		assertEquals(Arrays.asList(TEMPLATE), summary.getRenderedFiles());
+		assertTrue(summary.getWrittenFiles().isEmpty());
+		assertEquals(lastModified, new File(confFile).lastModified());
+	}
+
+	@Test
+	public void testFileModifiedOutsideIsRendered() throws IOException {
+		generate(createContext("content", null));
+
+		File file = new File(confFile);
+		FileUtils.writeStringToFile(file, "modified content", "UTF-8");
+		file.setLastModified(file.lastModified() + 60 * 1000L);
+
+		GenerationSummary summary = generate(createContext("content", null));
+		assertEquals(Arrays.asList(TEMPLATE), summary.getWrittenFiles());
+		assertEquals("content", FileUtils.readFileToString(file, "UTF-8"));
+	}
+
+	@Test
+	public void testMapsOrderIsIgnored() {
+		Map<String, String> values1 = new LinkedHashMap<String, String>();
+		values1.put("a", "1");
+		values1.put("b", "2");
+
+		Map<String, String> values2 = new LinkedHashMap<String, String>();
+		values2.put("b", "2");
+		values2.put("a", "1");
+
+		generate(createContext("content", values1));
+
+		GenerationSummary summary = generate(createContext("content", values2));
+		assertTrue(summary.getRenderedFiles().isEmpty());
+	}
+
+	@Test
+	public void testTrustRelationshipChanges() {
+		GluuSAMLTrustRelationship trustRelationship1 = createTrustRelationship("@!1111", "SP 1");
+		GluuSAMLTrustRelationship trustRelationship2 = createTrustRelationship("@!2222", "SP 2");
+
+		GenerationSummary summary = shibbolethConfGenerator.startGeneration(GENERATOR, Arrays.asList(trustRelationship1, trustRelationship2));
+		assertEquals(2, summary.getAddedTrustRelationships());
+		shibbolethConfGenerator.generateConfFiles(summary, createContext("content", null), Collections.<String, String> emptyMap());
+
+		// Only persistent attributes are part of trust relationship fingerprint
+		List<GluuCustomAttribute> releasedCustomAttributes = new ArrayList<GluuCustomAttribute>();
+		releasedCustomAttributes.add(new GluuCustomAttribute("uid", "jdoe"));
+		trustRelationship1.setReleasedCustomAttributes(releasedCustomAttributes);
+
+		summary = shibbolethConfGenerator.startGeneration(GENERATOR, Arrays.asList(trustRelationship1, trustRelationship2));
+		assertEquals(0, summary.getAddedTrustRelationships());
+		assertEquals(0, summary.getRemovedTrustRelationships());
+		assertTrue(summary.getChangedTrustRelationships().isEmpty());
+
+		trustRelationship2.setDisplayName("SP 2 changed");
+		GluuSAMLTrustRelationship trustRelationship3 = createTrustRelationship("@!3333", "SP 3");
+
+		summary = shibbolethConfGenerator.startGeneration(GENERATOR, Arrays.asList(trustRelationship2, trustRelationship3));
+		assertEquals(1, summary.getAddedTrustRelationships());
+		assertEquals(1, summary.getRemovedTrustRelationships());
+		assertEquals(Arrays.asList("@!2222"), summary.getChangedTrustRelationships());
+	}
+
+	@Test
+	public void testOnlyChangedTrustRelationshipFragmentsAreRendered() {
+		GluuSAMLTrustRelationship trustRelationship1 = createTrustRelationship("@!1111", "SP 1");
+		GluuSAMLTrustRelationship trustRelationship2 = createTrustRelationship("@!2222", "SP 2");
+		List<GluuSAMLTrustRelationship> trustRelationships = Arrays.asList(trustRelationship1, trustRelationship2);
+
+		VelocityContext context = createTrustContext(trustRelationships, "2");
+		GenerationSummary summary = renderFragments(trustRelationships, context);
+		assertEquals(8, summary.getRenderedFragments());
+		assertEquals(0, summary.getCachedFragments());
+		assertEquals(Arrays.asList("relying-party-trust.xml:SP 1", "relying-party-trust.xml:SP 2"), getFragments(context, "relyingParties"));
+
+		// Empty fragments aren't added to files
+		assertTrue(getFragments(context, "credentials").isEmpty());
+
+		trustRelationship2.setDisplayName("SP 2 changed");
+
+		context = createTrustContext(trustRelationships, "2");
+		summary = renderFragments(trustRelationships, context);
+		assertEquals(4, summary.getRenderedFragments());
+		assertEquals(4, summary.getCachedFragments());
+		assertEquals(Arrays.asList("attribute-filter-policy.xml:SP 1", "attribute-filter-policy.xml:SP 2 changed"),
+				getFragments(context, "attributeFilterPolicies"));
+		assertEquals(12, templateService.fragmentRenderCount);
+	}
+
+	@Test
+	public void testFragmentIsRenderedWhenItsInputChanges() {
+		GluuSAMLTrustRelationship trustRelationship1 = createTrustRelationship("@!1111", "SP 1");
+		GluuSAMLTrustRelationship trustRelationship2 = createTrustRelationship("@!2222", "SP 2");
+		List<GluuSAMLTrustRelationship> trustRelationships = Arrays.asList(trustRelationship1, trustRelationship2);
+
+		renderFragments(trustRelationships, createTrustContext(trustRelationships, "2"));
+
+		// Only metadata provider and attribute filter policy use id of trust relationship
+		GenerationSummary summary = renderFragments(trustRelationships, createTrustContext(trustRelationships, "3"));
+		assertEquals(2, summary.getRenderedFragments());
+
+		// Fragments of removed trust relationship are dropped
+		renderFragments(Arrays.asList(trustRelationship1), createTrustContext(Arrays.asList(trustRelationship1), "3"));
+		summary = renderFragments(trustRelationships, createTrustContext(trustRelationships, "3"));
+		assertEquals(4, summary.getRenderedFragments());
+		assertEquals(4, summary.getCachedFragments());
+	}
+
+	private GenerationSummary generate(VelocityContext context) {
+		GenerationSummary summary = shibbolethConfGenerator.startGeneration(GENERATOR, Collections.<GluuSAMLTrustRelationship> emptyList());
+		assertTrue(shibbolethConfGenerator.generateConfFiles(summary, context, Collections.singletonMap(TEMPLATE, confFile)));
+
+		return summary;
+	}
+
+	private VelocityContext createContext(String content, Object unused) {
+		VelocityContext context = new VelocityContext();
+		context.put("content", content);
+		if (unused != null) {
+			context.put("unused", unused);
+		}
+
+		return context;
+	}
+
+	private GenerationSummary renderFragments(List<GluuSAMLTrustRelationship> trustRelationships, VelocityContext context) {
+		GenerationSummary summary = shibbolethConfGenerator.startGeneration(GENERATOR, trustRelationships);
+		assertTrue(shibbolethConfGenerator.renderTrustRelationshipFragments(summary, context, trustRelationships));
+
+		return summary;
+	}
+
+	private VelocityContext createTrustContext(List<GluuSAMLTrustRelationship> trustRelationships, String secondTrustId) {
+		Map<String, String> trustIds = new HashMap<String, String>();
+		Map<String, List<String>> trustEntityIds = new HashMap<String, List<String>>();
+		int id = 1;
+		for (GluuSAMLTrustRelationship trustRelationship : trustRelationships) {
+			trustIds.put(trustRelationship.getInum(), (id == 2) ? secondTrustId : String.valueOf(id));
+			trustEntityIds.put(trustRelationship.getInum(), Arrays.asList("https://sp" + id + ".example.com/shibboleth"));
+			id++;
+		}
+
+		Map<String, Object> trustParams = new HashMap<String, Object>();
+		trustParams.put("trusts", trustRelationships);
+		trustParams.put("trustIds", trustIds);
+		trustParams.put("trustEntityIds", trustEntityIds);
+		trustParams.put("deconstructed", Collections.emptyList());
+		trustParams.put("deconstructedIds", Collections.emptyMap());
+		trustParams.put("idpCredentialsPath", "/opt/idp/metadata/credentials/");
+
+		VelocityContext context = new VelocityContext();
+		context.put("trustParams", trustParams);
+		context.put("idpUrl", "https://idp.example.com");
+		context.put("medataFolder", "/opt/idp/metadata/");
+
+		return context;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> getFragments(VelocityContext context, String name) {
+		return ((Map<String, List<String>>) context.get(ShibbolethConfGenerator.TRUST_FRAGMENTS)).get(name);
+	}
+
+	private GluuSAMLTrustRelationship createTrustRelationship(String inum, String displayName) {
+		GluuSAMLTrustRelationship trustRelationship = new GluuSAMLTrustRelationship();
+		trustRelationship.setInum(inum);
+		trustRelationship.setDisplayName(displayName);
+
+		return trustRelationship;
+	}
+
+	private void setField(Object target, String name, Object value) throws Exception {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	/*
+	 * Renders "content" value of context instead of Velocity template
+	 */
+	private static class CountingTemplateService extends TemplateService {
+
+		private static final long serialVersionUID = 7381937489251748401L;
+
+		private int renderCount;
+		private int fragmentRenderCount;
+
+		/*
+		 * Fragment is template name and display name of trust relationship.
+		 * Credentials fragment is empty
+		 */
+		@Override
+		public String generateConfFile(String template, VelocityContext context) {
+			fragmentRenderCount++;
+			if (template.startsWith("relying-party-credentials")) {
+				return "\n";
+			}
+
+			return template + ":" + ((GluuSAMLTrustRelationship) context.get("trustRelationship")).getDisplayName() + "\n";
+		}
+
+		@Override
+		public RenderedConfFile renderConfFile(String template, VelocityContext context, String confFile) {
+			renderCount++;
+
+			File file = new File(confFile);
+			try {
+				String content = String.valueOf(context.get("content"));
+				File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+				FileUtils.writeStringToFile(tempFile, content, "UTF-8");
+
+				MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+
+				return new RenderedConfFile(file, tempFile, Hex.encodeHexString(messageDigest.digest(content.getBytes("UTF-8"))));
+			} catch (IOException ex) {
+				throw new IllegalStateException("Failed to render configuration file", ex);
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException("Failed to render configuration file", ex);
+			}
+		}
+
+	}
+
+}
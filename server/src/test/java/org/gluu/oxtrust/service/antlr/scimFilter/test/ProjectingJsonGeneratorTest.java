@@ -0,0 +1,178 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.AttributesProjection;
+import org.gluu.oxtrust.service.antlr.scimFilter.util.ProjectingJsonGenerator;
+import org.testng.annotations.Test;
+
+public class ProjectingJsonGeneratorTest {
+
+    private static final String[] DEFAULT_ATTRIBUTES = { "schemas", "id", "meta.created", "meta.lastModified" };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testWithoutProjection() throws IOException {
+
+        String json = write(createUser(), null, new ProjectingJsonGeneratorFactory());
+
+        assertEquals("{\"schemas\":[\"urn:core\",\"urn:extension\"],\"id\":\"1\",\"userName\":\"jdoe\","
+            + "\"name\":{\"givenName\":\"John\",\"familyName\":\"Doe\"},"
+            + "\"emails\":[{\"value\":\"jdoe@example.com\",\"type\":\"work\"},{\"value\":\"john@example.com\",\"type\":\"home\"}],"
+            + "\"groups\":[{\"value\":\"g1\",\"$ref\":\"https://example.com/Groups/g1\"}],"
+            + "\"meta\":{\"created\":\"1970-01-01T00:00:00.000Z\",\"lastModified\":\"1970-01-02T00:00:00.000Z\",\"version\":\"1\"}}", json);
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+
+        AttributesProjection attributesProjection = AttributesProjection.compile("userName,emails.value", DEFAULT_ATTRIBUTES);
+        String json = write(createUser(), attributesProjection, new ProjectingJsonGeneratorFactory());
+
+        assertEquals("{\"schemas\":[\"urn:core\",\"urn:extension\"],\"id\":\"1\",\"userName\":\"jdoe\","
+            + "\"emails\":[{\"value\":\"jdoe@example.com\"},{\"value\":\"john@example.com\"}],"
+            + "\"meta\":{\"created\":\"1970-01-01T00:00:00.000Z\",\"lastModified\":\"1970-01-02T00:00:00.000Z\"}}", json);
+    }
+
+    @Test
+    public void testWholeAttributeProjection() throws IOException {
+
+        AttributesProjection attributesProjection = AttributesProjection.compile("name,groups", DEFAULT_ATTRIBUTES);
+        String json = write(createUser(), attributesProjection, new ProjectingJsonGeneratorFactory());
+
+        assertEquals("{\"schemas\":[\"urn:core\",\"urn:extension\"],\"id\":\"1\","
+            + "\"name\":{\"givenName\":\"John\",\"familyName\":\"Doe\"},"
+            + "\"groups\":[{\"value\":\"g1\",\"$ref\":\"https://example.com/Groups/g1\"}],"
+            + "\"meta\":{\"created\":\"1970-01-01T00:00:00.000Z\",\"lastModified\":\"1970-01-02T00:00:00.000Z\"}}", json);
+    }
+
+    @Test
+    public void testReferenceProjection() throws IOException {
+
+        AttributesProjection attributesProjection = AttributesProjection.compile("groups.$ref", DEFAULT_ATTRIBUTES);
+        String json = write(createUser(), attributesProjection, new ProjectingJsonGeneratorFactory());
+
+        assertEquals("{\"schemas\":[\"urn:core\",\"urn:extension\"],\"id\":\"1\","
+            + "\"groups\":[{\"$ref\":\"https://example.com/Groups/g1\"}],"
+            + "\"meta\":{\"created\":\"1970-01-01T00:00:00.000Z\",\"lastModified\":\"1970-01-02T00:00:00.000Z\"}}", json);
+    }
+
+    @Test
+    public void testSchemasAndExtension() throws IOException {
+
+        Map<String, Object> user = createUser();
+        user.put("urn:extension", "original");
+
+        ProjectingJsonGeneratorFactory generatorFactory = new ProjectingJsonGeneratorFactory() {
+
+            @Override
+            protected ProjectingJsonGenerator create(JsonGenerator jsonGenerator, AttributesProjection attributesProjection) {
+
+                return new ProjectingJsonGenerator(jsonGenerator, attributesProjection, "groups") {
+
+                    @Override
+                    protected boolean isExtension(String name) {
+                        return "urn:extension".equals(name);
+                    }
+
+                    @Override
+                    protected void writeExtension(JsonGenerator jsonGenerator, String name) throws IOException {
+                        jsonGenerator.writeFieldName(name);
+                        jsonGenerator.writeStartObject();
+                        jsonGenerator.writeStringField("department", "IT");
+                        jsonGenerator.writeEndObject();
+                    }
+
+                    @Override
+                    protected boolean isSchemaIncluded(String schema) {
+                        return "urn:core".equals(schema);
+                    }
+                };
+            }
+        };
+
+        AttributesProjection attributesProjection = AttributesProjection.compile("userName", DEFAULT_ATTRIBUTES);
+        String json = write(user, attributesProjection, generatorFactory);
+
+        assertEquals("{\"schemas\":[\"urn:core\"],\"id\":\"1\",\"userName\":\"jdoe\","
+            + "\"meta\":{\"created\":\"1970-01-01T00:00:00.000Z\",\"lastModified\":\"1970-01-02T00:00:00.000Z\"},"
+            + "\"urn:extension\":{\"department\":\"IT\"}}", json);
+    }
+
+    private String write(Map<String, Object> resource, AttributesProjection attributesProjection, ProjectingJsonGeneratorFactory generatorFactory)
+        throws IOException {
+
+        StringWriter writer = new StringWriter();
+        JsonGenerator jsonGenerator = new JsonFactory().createJsonGenerator(writer);
+
+        mapper.writeValue(generatorFactory.create(jsonGenerator, attributesProjection), resource);
+        jsonGenerator.flush();
+
+        return writer.toString();
+    }
+
+    private Map<String, Object> createUser() {
+
+        Map<String, Object> user = new LinkedHashMap<String, Object>();
+        user.put("schemas", Arrays.asList("urn:core", "urn:extension"));
+        user.put("id", "1");
+        user.put("userName", "jdoe");
+
+        Map<String, Object> name = new LinkedHashMap<String, Object>();
+        name.put("givenName", "John");
+        name.put("familyName", "Doe");
+        user.put("name", name);
+
+        List<Map<String, Object>> emails = new ArrayList<Map<String, Object>>();
+        emails.add(createMultiValued("jdoe@example.com", "type", "work"));
+        emails.add(createMultiValued("john@example.com", "type", "home"));
+        user.put("emails", emails);
+
+        List<Map<String, Object>> groups = new ArrayList<Map<String, Object>>();
+        groups.add(createMultiValued("g1", "reference", "https://example.com/Groups/g1"));
+        user.put("groups", groups);
+
+        Map<String, Object> meta = new LinkedHashMap<String, Object>();
+        meta.put("created", 0L);
+        meta.put("lastModified", 24 * 60 * 60 * 1000L);
+        meta.put("version", "1");
+        user.put("meta", meta);
+
+        return user;
+    }
+
+    private Map<String, Object> createMultiValued(String value, String name, String nameValue) {
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("value", value);
+        result.put(name, nameValue);
+
+        return result;
+    }
+
+    private static class ProjectingJsonGeneratorFactory {
+
+        protected ProjectingJsonGenerator create(JsonGenerator jsonGenerator, AttributesProjection attributesProjection) {
+            return new ProjectingJsonGenerator(jsonGenerator, attributesProjection, "groups");
+        }
+
+    }
+
+}
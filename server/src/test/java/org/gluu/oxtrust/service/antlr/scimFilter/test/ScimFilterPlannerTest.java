@@ -0,0 +1,140 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterPlan;
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterPlanner;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+
+public class ScimFilterPlannerTest {
+
+    private final ScimFilterPlanner scimFilterPlanner = new ScimFilterPlanner();
+
+    @Test
+    public void testEmailEqualsIsEvaluatedAgainstMailOrOriginal() throws LDAPException {
+
+        Filter filter = Filter.create("(oxTrustEmail=*\"value\":\"jdoe@example.com\"*)");
+        ScimFilterPlan plan = scimFilterPlanner.plan("emails.value eq \"jdoe@example.com\"", filter);
+
+        assertEquals(Filter.createORFilter(Filter.createEqualityFilter("mail", "jdoe@example.com"), filter), plan.getFilter());
+        assertEquals(filter.toString(), plan.getTranslatedFilter());
+        assertEquals(1, plan.getRewrites().size());
+
+        // Original predicate keeps OR filter unindexed while oxTrustEmail has no index
+        assertFalse(plan.isIndexed());
+        assertEquals(Arrays.asList(filter.toString()), plan.getUnindexedComponents());
+    }
+
+    @Test
+    public void testEmailStartsWith() throws LDAPException {
+
+        Filter filter = Filter.create("(oxTrustEmail=*\"value\":\"jdoe*)");
+        ScimFilterPlan plan = scimFilterPlanner.plan("emails.value sw \"jdoe\"", filter);
+
+        assertEquals(Filter.createORFilter(Filter.createSubstringFilter("mail", "jdoe", null, null), filter), plan.getFilter());
+    }
+
+    @Test
+    public void testEmailContains() throws LDAPException {
+
+        Filter filter = Filter.create("(oxTrustEmail=*\"value\":*example*)");
+        ScimFilterPlan plan = scimFilterPlanner.plan("emails.value co \"example\"", filter);
+
+        assertEquals(Filter.createORFilter(Filter.createSubstringFilter("mail", null, new String[] { "example" }, null), filter), plan.getFilter());
+    }
+
+    @Test
+    public void testEmailEndsWith() throws LDAPException {
+
+        Filter filter = Filter.create("(oxTrustEmail=*\"value\":*example.com\"*)");
+        ScimFilterPlan plan = scimFilterPlanner.plan("emails.value ew \"example.com\"", filter);
+
+        assertEquals(Filter.createORFilter(Filter.createSubstringFilter("mail", null, null, "example.com"), filter), plan.getFilter());
+    }
+
+    @Test
+    public void testEmailRewriteIsIndexedWhenEmailAttributeIsIndexed() throws LDAPException {
+
+        Set<String> indexedAttributes = new HashSet<String>(ScimFilterPlanner.DEFAULT_INDEXED_ATTRIBUTES);
+        indexedAttributes.add("oxtrustemail");
+
+        Filter filter = Filter.create("(oxTrustEmail=*\"value\":\"jdoe@example.com\"*)");
+        ScimFilterPlan plan = new ScimFilterPlanner(indexedAttributes).plan("emails.value eq \"jdoe@example.com\"", filter);
+
+        assertTrue(plan.isIndexed());
+        assertTrue(plan.getUnindexedComponents().isEmpty());
+    }
+
+    @Test
+    public void testOtherEmailFieldIsNotRewritten() throws LDAPException {
+
+        Filter filter = Filter.create("(oxTrustEmail=*\"type\":\"work\"*)");
+        ScimFilterPlan plan = scimFilterPlanner.plan("emails.type eq \"work\"", filter);
+
+        assertSame(filter, plan.getFilter());
+        assertTrue(plan.getRewrites().isEmpty());
+    }
+
+    @Test
+    public void testNestedEmailFilterIsRewritten() throws LDAPException {
+
+        Filter emailFilter = Filter.create("(oxTrustEmail=*\"value\":\"jdoe@example.com\"*)");
+        Filter uidFilter = Filter.createEqualityFilter("uid", "jdoe");
+        Filter filter = Filter.createANDFilter(uidFilter, emailFilter);
+        ScimFilterPlan plan = scimFilterPlanner.plan("userName eq \"jdoe\" and emails.value eq \"jdoe@example.com\"", filter);
+
+        assertEquals(Filter.createANDFilter(uidFilter, Filter.createORFilter(Filter.createEqualityFilter("mail", "jdoe@example.com"), emailFilter)),
+                plan.getFilter());
+        assertTrue(plan.isIndexed());
+    }
+
+    @Test
+    public void testAndIsIndexedIfAnyComponentIsIndexed() throws LDAPException {
+
+        Filter filter = Filter.create("(&(uid=jdoe)(oxTrustTitle=Manager))");
+        ScimFilterPlan plan = scimFilterPlanner.plan("userName eq \"jdoe\" and title eq \"Manager\"", filter);
+
+        assertSame(filter, plan.getFilter());
+        assertTrue(plan.isIndexed());
+        assertTrue(plan.getUnindexedComponents().isEmpty());
+    }
+
+    @Test
+    public void testOrIsIndexedIfAllComponentsAreIndexed() throws LDAPException {
+
+        Filter indexedFilter = Filter.create("(|(uid=jdoe)(displayName=John*))");
+        assertTrue(scimFilterPlanner.plan("userName eq \"jdoe\" or displayName sw \"John\"", indexedFilter).isIndexed());
+
+        Filter unindexedFilter = Filter.create("(|(uid=jdoe)(oxTrustTitle=Manager))");
+        ScimFilterPlan plan = scimFilterPlanner.plan("userName eq \"jdoe\" or title eq \"Manager\"", unindexedFilter);
+
+        assertFalse(plan.isIndexed());
+        assertEquals(Arrays.asList("(oxTrustTitle=Manager)"), plan.getUnindexedComponents());
+    }
+
+    @Test
+    public void testNotIsUnindexed() throws LDAPException {
+
+        Filter filter = Filter.create("(!(uid=jdoe))");
+        ScimFilterPlan plan = scimFilterPlanner.plan("not (userName eq \"jdoe\")", filter);
+
+        assertFalse(plan.isIndexed());
+        assertEquals(Arrays.asList(filter.toString()), plan.getUnindexedComponents());
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+package org.gluu.oxtrust.service.antlr.scimFilter.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.gluu.oxtrust.service.antlr.scimFilter.MainScimFilterVisitor;
+import org.gluu.oxtrust.service.antlr.scimFilter.ScimFilterTemplate;
+import org.testng.annotations.Test;
+
+public class ScimFilterTemplateTest {
+
+    @Test
+    public void testParse() {
+
+        ScimFilterTemplate template = ScimFilterTemplate.parse("userName eq \"jdoe\" and emails.value co \"example.com\"");
+
+        assertNotNull(template);
+        assertEquals("userName eq \"zScimFilterParam0z\" and emails.value co \"zScimFilterParam1z\"", template.getShape());
+        assertEquals(Arrays.asList("jdoe", "example.com"), template.getValues());
+    }
+
+    @Test
+    public void testSameShapeForDifferentValues() {
+
+        ScimFilterTemplate template1 = ScimFilterTemplate.parse("userName eq \"jdoe\"");
+        ScimFilterTemplate template2 = ScimFilterTemplate.parse("userName eq \"admin\"");
+
+        assertEquals(template1.getShape(), template2.getShape());
+    }
+
+    @Test
+    public void testParseWithoutCriteria() {
+
+        ScimFilterTemplate template = ScimFilterTemplate.parse("title pr");
+
+        assertNotNull(template);
+        assertEquals("title pr", template.getShape());
+        assertEquals(Collections.<String>emptyList(), template.getValues());
+    }
+
+    @Test
+    public void testParseUnterminatedCriteria() {
+
+        assertNull(ScimFilterTemplate.parse("userName eq \"jdoe"));
+    }
+
+    @Test
+    public void testParseEmptyCriteria() {
+
+        assertNull(ScimFilterTemplate.parse("userName eq \"\""));
+    }
+
+    @Test
+    public void testParseCriteriaWithEqualsSign() {
+
+        assertNull(ScimFilterTemplate.parse("userName eq \"a=b\""));
+    }
+
+    @Test
+    public void testParseFilterWithPlaceholder() {
+
+        assertNull(ScimFilterTemplate.parse("userName eq \"zScimFilterParam0z\""));
+    }
+
+    @Test
+    public void testApply() {
+
+        ScimFilterTemplate template = ScimFilterTemplate.parse("userName eq \"jdoe\" and emails.value co \"example.com\"");
+        String ldapFilter = template.apply("(&(uid=zScimFilterParam0z)(mail=*zScimFilterParam1z*))");
+
+        assertEquals("(&(uid=jdoe)(mail=*example.com*))", ldapFilter);
+    }
+
+    @Test
+    public void testApplyReusesTemplateOfAnotherFilter() {
+
+        String ldapFilterTemplate = "(uid=zScimFilterParam0z)";
+
+        assertEquals("(uid=jdoe)", ScimFilterTemplate.parse("userName eq \"jdoe\"").apply(ldapFilterTemplate));
+        assertEquals("(uid=admin)", ScimFilterTemplate.parse("userName eq \"admin\"").apply(ldapFilterTemplate));
+    }
+
+    @Test
+    public void testApplyEscapesValues() {
+
+        String value = "a*(b)\\c";
+        ScimFilterTemplate template = ScimFilterTemplate.parse("displayName eq \"" + value + "\"");
+        String ldapFilter = template.apply("(displayName=zScimFilterParam0z)");
+
+        assertEquals("(displayName=" + MainScimFilterVisitor.escapeCriteria(value) + ")", ldapFilter);
+        assertTrue(ldapFilter.indexOf('*') == -1);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testApplyInvalidTemplate() {
+
+        ScimFilterTemplate.parse("userName eq \"jdoe\"").apply("(uid=zScimFilterParam0");
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.util.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.gluu.oxtrust.util.MetadataEntityIdReader;
+import org.testng.annotations.Test;
+
+public class MetadataEntityIdReaderTest {
+
+	private static final String SINGLE_ENTITY_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"https://sp1.example.com/shibboleth\">"
+			+ "<md:SPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\"/>"
+			+ "</md:EntityDescriptor>";
+
+	private static final String FEDERATION_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<EntitiesDescriptor xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\" Name=\"federation\">"
+			+ "<EntityDescriptor entityID=\"https://sp1.example.com/shibboleth\"><SPSSODescriptor/></EntityDescriptor>"
+			+ "<EntitiesDescriptor Name=\"nested\">"
+			+ "<EntityDescriptor entityID=\"https://sp2.example.com/shibboleth\"><SPSSODescriptor/></EntityDescriptor>"
+			+ "</EntitiesDescriptor>"
+			+ "<EntityDescriptor><SPSSODescriptor/></EntityDescriptor>"
+			+ "<EntityDescriptor entityID=\"https://idp.example.com/idp/shibboleth\"><IDPSSODescriptor/></EntityDescriptor>"
+			+ "</EntitiesDescriptor>";
+
+	@Test
+	public void testSingleEntity() throws Exception {
+		assertEquals(Arrays.asList("https://sp1.example.com/shibboleth"), MetadataEntityIdReader.readEntityIds(toInputStream(SINGLE_ENTITY_METADATA)));
+	}
+
+	@Test
+	public void testFederation() throws Exception {
+		assertEquals(Arrays.asList("https://sp1.example.com/shibboleth", "https://sp2.example.com/shibboleth", "https://idp.example.com/idp/shibboleth"),
+				MetadataEntityIdReader.readEntityIds(toInputStream(FEDERATION_METADATA)));
+	}
+
+	@Test
+	public void testWithoutEntities() throws Exception {
+		String metadata = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><EntitiesDescriptor xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\"/>";
+
+		assertTrue(MetadataEntityIdReader.readEntityIds(toInputStream(metadata)).isEmpty());
+	}
+
+	@Test(expectedExceptions = XMLStreamException.class)
+	public void testInvalidMetadata() throws Exception {
+		MetadataEntityIdReader.readEntityIds(toInputStream("<EntityDescriptor entityID=\"https://sp1.example.com/shibboleth\">"));
+	}
+
+	@Test
+	public void testReadFile() throws Exception {
+		File metadataFile = File.createTempFile("metadata", ".xml");
+		try {
+			OutputStream os = new FileOutputStream(metadataFile);
+			try {
+				os.write(FEDERATION_METADATA.getBytes("UTF-8"));
+			} finally {
+				os.close();
+			}
+
+			assertEquals(3, MetadataEntityIdReader.readEntityIds(metadataFile).size());
+		} finally {
+			metadataFile.delete();
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void testReadMissingFile() throws Exception {
+		MetadataEntityIdReader.readEntityIds(new File("missing-metadata-" + System.nanoTime() + ".xml"));
+	}
+
+	private InputStream toInputStream(String metadata) throws UnsupportedEncodingException {
+		return new ByteArrayInputStream(metadata.getBytes("UTF-8"));
+	}
+
+}
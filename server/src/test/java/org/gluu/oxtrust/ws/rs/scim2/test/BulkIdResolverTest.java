@@ -0,0 +1,132 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ws.rs.scim2.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.ws.rs.scim2.BulkIdResolver;
+import org.testng.annotations.Test;
+
+public class BulkIdResolverTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Test
+	public void testGetReferencedBulkIds() throws Exception {
+		Object data = parse("{\"members\":[{\"value\":\"bulkId:qwerty\"},{\"value\":\"bulkId:ytrewq\"},{\"value\":\"bulkId:qwerty\"}],"
+				+ "\"$ref\":\"https://example.com/scim/v2/Users/bulkId:asdfgh\"}");
+
+		assertEquals(Arrays.asList("qwerty", "ytrewq", "asdfgh"), new ArrayList<String>(BulkIdResolver.getReferencedBulkIds(data)));
+	}
+
+	@Test
+	public void testGetReferencedBulkIdsWithoutReferences() throws Exception {
+		assertTrue(BulkIdResolver.getReferencedBulkIds(parse("{\"displayName\":\"Group\",\"active\":true,\"count\":1}")).isEmpty());
+		assertTrue(BulkIdResolver.getReferencedBulkIds(parse("{\"value\":\"bulkId:\"}")).isEmpty());
+		assertTrue(BulkIdResolver.getReferencedBulkIds(null).isEmpty());
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		Map<String, String> processedBulkIds = new HashMap<String, String>();
+		processedBulkIds.put("qwerty", "@!1111");
+		processedBulkIds.put("ytrewq", "@!2222");
+
+		Object data = parse("{\"displayName\":\"Group\",\"members\":[{\"value\":\"bulkId:qwerty\"},{\"value\":\"bulkId:ytrewq\"},{\"value\":\"bulkId:qwerty\"}]}");
+
+		assertEquals(parse("{\"displayName\":\"Group\",\"members\":[{\"value\":\"@!1111\"},{\"value\":\"@!2222\"},{\"value\":\"@!1111\"}]}"),
+				BulkIdResolver.resolve(data, processedBulkIds));
+	}
+
+	@Test
+	public void testResolveDoesNotModifyData() throws Exception {
+		Map<String, String> processedBulkIds = Collections.singletonMap("qwerty", "@!1111");
+
+		String json = "{\"members\":[{\"value\":\"bulkId:qwerty\"}],\"meta\":{\"location\":\"https://example.com\"}}";
+		@SuppressWarnings("unchecked")
+		Map<String, Object> data = (Map<String, Object>) parse(json);
+
+		@SuppressWarnings("unchecked")
+		Map<String, Object> resolved = (Map<String, Object>) BulkIdResolver.resolve(data, processedBulkIds);
+
+		assertEquals(parse(json), data);
+		// Subtrees without references are shared
+		assertSame(data.get("meta"), resolved.get("meta"));
+	}
+
+	@Test
+	public void testResolveReference() throws Exception {
+		Map<String, String> processedBulkIds = Collections.singletonMap("asdfgh", "@!3333");
+
+		Object data = parse("{\"$ref\":\"https://example.com/scim/v2/Users/bulkId:asdfgh\"}");
+
+		assertEquals(parse("{\"$ref\":\"https://example.com/scim/v2/Users/@!3333\"}"), BulkIdResolver.resolve(data, processedBulkIds));
+	}
+
+	@Test
+	public void testResolveKeepsUnknownReferences() throws Exception {
+		Map<String, String> processedBulkIds = Collections.singletonMap("qwerty", "@!1111");
+
+		Object data = parse("{\"members\":[{\"value\":\"bulkId:unknown\"},{\"value\":\"bulkId:qwerty\"}]}");
+
+		assertEquals(parse("{\"members\":[{\"value\":\"bulkId:unknown\"},{\"value\":\"@!1111\"}]}"), BulkIdResolver.resolve(data, processedBulkIds));
+	}
+
+	@Test
+	public void testResolveDoesNotMatchLongerBulkId() throws Exception {
+		Map<String, String> processedBulkIds = Collections.singletonMap("qwerty", "@!1111");
+
+		Object data = parse("{\"value\":\"bulkId:qwerty2\"}");
+
+		assertSame(data, BulkIdResolver.resolve(data, processedBulkIds));
+	}
+
+	@Test
+	public void testResolveWithoutReferences() throws Exception {
+		Map<String, String> processedBulkIds = Collections.singletonMap("qwerty", "@!1111");
+
+		Object data = parse("{\"displayName\":\"Group\",\"members\":[]}");
+
+		assertSame(data, BulkIdResolver.resolve(data, processedBulkIds));
+		assertNull(BulkIdResolver.resolve(null, processedBulkIds));
+	}
+
+	@Test
+	public void testGetPathBulkId() {
+		assertEquals("qwerty", BulkIdResolver.getPathBulkId("bulkId:qwerty"));
+		assertEquals("qwerty", BulkIdResolver.getPathBulkId("BULKID:qwerty"));
+		assertNull(BulkIdResolver.getPathBulkId("@!1111"));
+		assertNull(BulkIdResolver.getPathBulkId(null));
+	}
+
+	@Test
+	public void testResolvePathId() {
+		Map<String, String> processedBulkIds = Collections.singletonMap("qwerty", "@!1111");
+
+		assertEquals("@!1111", BulkIdResolver.resolvePathId("bulkId:qwerty", processedBulkIds));
+		assertEquals("bulkId:unknown", BulkIdResolver.resolvePathId("bulkId:unknown", processedBulkIds));
+		assertEquals("@!2222", BulkIdResolver.resolvePathId("@!2222", processedBulkIds));
+	}
+
+	/*
+	 * Parses operation data the same way as it's parsed from bulk request
+	 */
+	private Object parse(String json) throws Exception {
+		return MAPPER.readValue(json, Object.class);
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * oxTrust is available under the MIT License (2008). See http://opensource.org/licenses/MIT for full text.
+ *
+ * Copyright (c) 2014, Gluu
+ */
+
+package org.gluu.oxtrust.ws.rs.scim2.test;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.gluu.oxtrust.ldap.service.IGroupService;
+import org.gluu.oxtrust.ldap.service.IPersonService;
+import org.gluu.oxtrust.ldap.service.LdapPagedSearchCursor;
+import org.gluu.oxtrust.model.GluuCustomPerson;
+import org.gluu.oxtrust.service.scim2.Scim2ExportCursorService;
+import org.gluu.oxtrust.ws.rs.scim2.UserWebService;
+import org.gluu.site.ldap.persistence.AttributeData;
+import org.jboss.seam.annotations.In;
+import org.jboss.seam.log.Logging;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+
+/**
+ * Checks that users export is written after Seam disinjected component fields
+ */
+public class UserExportOutputTest {
+
+	private static final String PEOPLE_DN = "ou=people,o=gluu";
+
+	private InMemoryDirectoryServer ldapServer;
+	private LDAPConnectionPool connectionPool;
+
+	private Scim2ExportCursorService exportCursorService;
+	private ExportUserWebService userWebService;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig("o=gluu");
+		config.setSchema(null);
+
+		ldapServer = new InMemoryDirectoryServer(config);
+		ldapServer.startListening();
+		ldapServer.add("dn: o=gluu", "objectClass: top", "objectClass: organization", "o: gluu");
+		ldapServer.add("dn: " + PEOPLE_DN, "objectClass: top", "objectClass: organizationalUnit", "ou: people");
+		for (int i = 1; i <= 3; i++) {
+			String inum = "@!000" + i;
+			ldapServer.add("dn: inum=" + inum + "," + PEOPLE_DN, "objectClass: top", "objectClass: gluuPerson", "inum: " + inum, "uid: user" + i,
+					"oxTrustMetaLocation: https://example.com/scim/v2/Users/" + inum);
+		}
+
+		connectionPool = ldapServer.getConnectionPool(2);
+
+		exportCursorService = new Scim2ExportCursorService();
+
+		userWebService = new ExportUserWebService();
+		setField(userWebService, UserWebService.class, "log", Logging.getLog(UserWebService.class));
+		setField(userWebService, UserWebService.class, "personService", createPersonService());
+		setField(userWebService, UserWebService.class, "groupService", createService(IGroupService.class));
+		setField(userWebService, UserWebService.class, "scim2ExportCursorService", exportCursorService);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		exportCursorService.destroy();
+		connectionPool.close();
+		ldapServer.shutDown(true);
+	}
+
+	@Test
+	public void testExportWithLimit() throws Exception {
+		LdapPagedSearchCursor cursor = openCursor();
+		StreamingOutput output = userWebService.createOutput(cursor, cursor.nextPage(), 1, 2);
+
+		disinject(userWebService);
+
+		JsonNode response = write(output);
+		assertEquals(2, response.get("itemsPerPage").getIntValue());
+		assertEquals(2, response.get("totalResults").getIntValue());
+		assertEquals(2, getUserNames(response).size());
+
+		// Not exported user is left for next request
+		assertTrue(cursor.hasMore());
+		assertSame(cursor, exportCursorService.take(response.get("nextCursor").getTextValue()));
+		cursor.close();
+	}
+
+	@Test
+	public void testExportAll() throws Exception {
+		LdapPagedSearchCursor cursor = openCursor();
+		StreamingOutput output = userWebService.createOutput(cursor, cursor.nextPage(), 1, Integer.MAX_VALUE);
+
+		disinject(userWebService);
+
+		JsonNode response = write(output);
+		assertEquals(3, response.get("itemsPerPage").getIntValue());
+		assertEquals(new HashSet<String>(Arrays.asList("user1", "user2", "user3")), getUserNames(response));
+		assertNull(response.get("nextCursor"));
+		assertFalse(cursor.hasMore());
+	}
+
+	private LdapPagedSearchCursor openCursor() throws Exception {
+		return new LdapPagedSearchCursor(connectionPool, PEOPLE_DN, Filter.createEqualityFilter("objectClass", "gluuPerson"), null, 1);
+	}
+
+	private JsonNode write(StreamingOutput output) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		output.write(os);
+
+		return new ObjectMapper().readTree(os.toString("UTF-8"));
+	}
+
+	private Set<String> getUserNames(JsonNode response) {
+		Set<String> userNames = new HashSet<String>();
+		for (JsonNode user : response.get("Resources")) {
+			userNames.add(user.get("userName").getTextValue());
+		}
+
+		return userNames;
+	}
+
+	/*
+	 * Clear @In fields like Seam does after resource method returns
+	 */
+	private void disinject(Object component) throws IllegalAccessException {
+		for (Class<?> clazz = component.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+			for (Field field : clazz.getDeclaredFields()) {
+				if (field.isAnnotationPresent(In.class)) {
+					field.setAccessible(true);
+					field.set(component, null);
+				}
+			}
+		}
+	}
+
+	private void setField(Object target, Class<?> clazz, String name, Object value) throws Exception {
+		Field field = clazz.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	private IPersonService createPersonService() {
+		return (IPersonService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { IPersonService.class }, new InvocationHandler() {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (!"createEntities".equals(method.getName())) {
+					throw new UnsupportedOperationException(method.getName());
+				}
+
+				List<GluuCustomPerson> persons = new ArrayList<GluuCustomPerson>();
+				for (List<AttributeData> attributes : ((Map<String, List<AttributeData>>) args[0]).values()) {
+					GluuCustomPerson person = new GluuCustomPerson();
+					for (AttributeData attribute : attributes) {
+						if ("inum".equalsIgnoreCase(attribute.getName())) {
+							person.setInum(attribute.getValue());
+						} else if ("uid".equalsIgnoreCase(attribute.getName())) {
+							person.setUid(attribute.getValue());
+						} else if (!"objectClass".equalsIgnoreCase(attribute.getName())) {
+							person.setAttribute(attribute.getName(), attribute.getValue());
+						}
+					}
+					persons.add(person);
+				}
+
+				return persons;
+			}
+
+		});
+	}
+
+	private <T> T createService(Class<T> serviceClass) {
+		return serviceClass.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { serviceClass }, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				throw new UnsupportedOperationException(method.getName());
+			}
+
+		}));
+	}
+
+	/*
+	 * Exposes export output factory of web service
+	 */
+	private static class ExportUserWebService extends UserWebService {
+
+		public StreamingOutput createOutput(LdapPagedSearchCursor cursor, List<SearchResultEntry> firstPage, int firstIndex, int limit) {
+			return createExportOutput(cursor, firstPage, firstIndex, limit, "userName", null);
+		}
+
+	}
+
+}